@@ -18,20 +18,62 @@
 
 package org.apache.jena.fuseki.mgt;
 
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.jena.riot.WebContent.charsetUTF8;
-import static org.apache.jena.riot.WebContent.contentTypeTextPlain;
+import static org.apache.jena.riot.WebContent.contentTypeJSON;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import javax.servlet.ServletOutputStream;
 
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonBuilder;
 import org.apache.jena.fuseki.ctl.ActionCtl;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.web.HttpSC;
+import org.apache.logging.log4j.Level;
 
+/**
+ * Recent log events from a {@link LogBuffer}.
+ * <p>
+ * GET {@code /$/logs} : the events as JSON, oldest first.<br/>
+ * GET {@code /$/logs?tail=true} (or "Accept: text/event-stream") : the events, then
+ * new events as they are logged, as Server-Sent Events. The event id is the sequence
+ * number so a reconnecting client continues from "Last-Event-ID".
+ * <p>
+ * Parameters: "level" (the least severe level to include, e.g. "WARN"), "logger"
+ * (logger name prefix) and "limit" (number of past events, default 100).
+ * A tail holds a request thread, so there are at most 4 at a time,
+ * each for at most an hour; clients reconnect.
+ */
 public class ActionLogs extends ActionCtl
 {
-    public ActionLogs() { super(); }
+    private static final String contentTypeEventStream = "text/event-stream";
+    private static final int  dftLimit        = 100;
+    private static final int  maxTails        = 4;
+    private static final long pollMillis      = 500;
+    private static final long keepAliveMillis = 15_000;
+    private static final long maxTailMillis   = TimeUnit.HOURS.toMillis(1);
+
+    private final LogBuffer buffer;
+    private final AtomicInteger tails = new AtomicInteger(0);
+    private volatile boolean stopped = false;
+
+    public ActionLogs(LogBuffer buffer) {
+        super();
+        this.buffer = buffer;
+    }
+
+    /** End any tails; called when the server stops. */
+    public void stop() {
+        stopped = true;
+    }
 
     @Override
     public void validate(HttpAction action) {}
@@ -43,14 +85,127 @@ public class ActionLogs extends ActionCtl
 
     @Override
     public void execute(HttpAction action) {
+        Predicate<LogBuffer.Entry> filter = filter(action);
+        int limit = dftLimit;
+        String x = action.getRequestParameter("limit");
+        if ( x != null ) {
+            try {
+                limit = Integer.parseInt(x);
+            } catch (NumberFormatException ex) {
+                ServletOps.errorBadRequest("Bad limit: "+x);
+            }
+        }
+        String accept = action.getRequest().getHeader("Accept");
+        boolean tail = "true".equals(action.getRequestParameter("tail"))
+                || ( accept != null && accept.contains(contentTypeEventStream) );
+        if ( tail )
+            tail(action, filter, limit);
+        else
+            list(action, filter, limit);
+    }
+
+    private Predicate<LogBuffer.Entry> filter(HttpAction action) {
+        Predicate<LogBuffer.Entry> filter = e -> true;
+        String levelName = action.getRequestParameter("level");
+        if ( levelName != null ) {
+            Level level = Level.toLevel(levelName, null);
+            if ( level == null )
+                ServletOps.errorBadRequest("Bad level: "+levelName);
+            filter = filter.and(e -> e.level.isMoreSpecificThan(level));
+        }
+        String logger = action.getRequestParameter("logger");
+        if ( logger != null )
+            filter = filter.and(e -> e.logger != null && e.logger.startsWith(logger));
+        return filter;
+    }
+
+    private void list(HttpAction action, Predicate<LogBuffer.Entry> filter, int limit) {
+        List<LogBuffer.Entry> entries = buffer.since(0, filter, limit);
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject();
+        builder.key("logs").startArray();
+        entries.forEach(e -> e.asJson(builder));
+        builder.finishArray();
+        builder.finishObject();
         try {
             ServletOutputStream out = action.getResponseOutputStream();
-            action.setResponseContentType(contentTypeTextPlain);
+            ServletOps.setNoCache(action);
+            action.setResponseContentType(contentTypeJSON);
             action.setResponseCharacterEncoding(charsetUTF8);
-            out.println("Not implemented yet");
+            JSON.write(out, builder.build());
             out.println();
             out.flush();
             ServletOps.success(action);
         } catch (IOException ex) { ServletOps.errorOccurred(ex); }
     }
+
+    private void tail(HttpAction action, Predicate<LogBuffer.Entry> filter, int limit) {
+        if ( tails.incrementAndGet() > maxTails ) {
+            tails.decrementAndGet();
+            ServletOps.error(HttpSC.SERVICE_UNAVAILABLE_503, "Too many log tails");
+        }
+        action.log.info(format("[%d] Log tail", action.id));
+        try {
+            long after = lastEventId(action);
+            if ( after < 0 ) {
+                long written = buffer.written(0);
+                List<LogBuffer.Entry> past = buffer.since(0, written, filter, limit);
+                after = past.isEmpty() ? written : past.get(0).seq() - 1;
+            }
+            ServletOps.setNoCache(action);
+            action.setResponseContentType(contentTypeEventStream);
+            action.setResponseCharacterEncoding(charsetUTF8);
+            ServletOutputStream out = action.getResponseOutputStream();
+            long start = System.currentTimeMillis();
+            long lastWrite = start;
+            while ( ! stopped && System.currentTimeMillis() - start < maxTailMillis ) {
+                long oldest = buffer.last() - buffer.size();
+                if ( after < oldest ) {
+                    write(out, ": missed "+(oldest - after)+" events\n\n");
+                    after = oldest;
+                }
+                // Never beyond an event that has not been written yet; it is sent next time.
+                long written = buffer.written(after);
+                List<LogBuffer.Entry> entries = buffer.since(after, written, filter, buffer.size());
+                for ( LogBuffer.Entry e : entries ) {
+                    JsonBuilder builder = new JsonBuilder();
+                    e.asJson(builder);
+                    write(out, "id: "+e.seq()+"\ndata: "+JSON.toStringFlat(builder.build())+"\n\n");
+                }
+                // Events filtered out are not looked at again.
+                after = written;
+                long now = System.currentTimeMillis();
+                if ( ! entries.isEmpty() )
+                    lastWrite = now;
+                else if ( now - lastWrite >= keepAliveMillis ) {
+                    write(out, ": keep-alive\n\n");
+                    lastWrite = now;
+                }
+                // Fails if the client has gone away.
+                out.flush();
+                Thread.sleep(pollMillis);
+            }
+        } catch (IOException ex) {
+            // Client closed the connection.
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            tails.decrementAndGet();
+        }
+    }
+
+    private static long lastEventId(HttpAction action) {
+        String x = action.getRequest().getHeader("Last-Event-ID");
+        if ( x == null )
+            return -1;
+        try {
+            return Long.parseLong(x.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static void write(ServletOutputStream out, String string) throws IOException {
+        out.write(string.getBytes(UTF_8));
+    }
 }
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mgt;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.apache.jena.atlas.json.JsonBuilder;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.ctl.ActionCtl;
+import org.apache.jena.fuseki.mod.admin.FusekiApp;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.web.HttpSC;
+
+/**
+ * Java Flight Recorder profiling of the server.
+ * <ul>
+ * <li>POST {@code /$/profile?settings=profile&duration=60} : start a recording.
+ *     "settings" is a JFR configuration, "default" (lower overhead) or "profile";
+ *     "duration" is in seconds.</li>
+ * <li>GET {@code /$/profile} : the current recording, if any, and the finished recordings.</li>
+ * <li>GET {@code /$/profile/NAME.jfr} : a finished recording.</li>
+ * </ul>
+ * One recording runs at a time. Recordings are written to the "profiles" directory
+ * of FUSEKI_BASE, which holds at most {@code FUSEKI_PROFILE_MAX_FILES} (default 10)
+ * files and {@code FUSEKI_PROFILE_MAX_MB} (default 500) megabytes; each recording is
+ * limited to an equal share of the space and the oldest files are deleted to make
+ * space for a new recording. The duration is at most
+ * {@code FUSEKI_PROFILE_MAX_SECONDS} (default 600).
+ */
+public class ActionProfile extends ActionCtl {
+
+    public static final String envMaxFiles   = "FUSEKI_PROFILE_MAX_FILES";
+    public static final String envMaxMB      = "FUSEKI_PROFILE_MAX_MB";
+    public static final String envMaxSeconds = "FUSEKI_PROFILE_MAX_SECONDS";
+
+    private static final String extJFR = ".jfr";
+    private static final Pattern fileNamePattern = Pattern.compile("[A-Za-z0-9_.-]+\\.jfr");
+    private static final DateTimeFormatter fileNameFormat = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final int maxFiles = envInt(envMaxFiles, 10);
+    private final long maxBytes = envInt(envMaxMB, 500) * 1024L * 1024L;
+    private final int maxSeconds = envInt(envMaxSeconds, 600);
+
+    // The current recording.
+    private Recording recording = null;
+    private Path recordingFile = null;
+    private String recordingSettings = null;
+
+    public ActionProfile() { super(); }
+
+    @Override
+    public void validate(HttpAction action) {}
+
+    @Override
+    public void execGet(HttpAction action) {
+        executeLifecycle(action);
+    }
+
+    @Override
+    public void execPost(HttpAction action) {
+        executeLifecycle(action);
+    }
+
+    @Override
+    public void execute(HttpAction action) {
+        Path dir = FusekiApp.dirProfiles;
+        if ( dir == null || ! Files.isDirectory(dir) )
+            ServletOps.errorOccurred(format("[%d] Profile area '%s' is not a directory", action.id, dir));
+        String fileName = action.getRequest().getPathInfo();
+        if ( fileName != null && fileName.startsWith("/") )
+            fileName = fileName.substring(1);
+        if ( fileName != null && fileName.isEmpty() )
+            fileName = null;
+
+        if ( "POST".equals(action.getRequestMethod()) ) {
+            if ( fileName != null )
+                ServletOps.errorBadRequest("POST to a profile not allowed");
+            start(action, dir);
+            return;
+        }
+        if ( fileName == null )
+            list(action, dir);
+        else
+            send(action, dir, fileName);
+    }
+
+    private synchronized void start(HttpAction action, Path dir) {
+        clearFinished();
+        if ( recording != null )
+            ServletOps.error(HttpSC.CONFLICT_409, "Recording in progress: "+recordingFile.getFileName());
+
+        String settings = action.getRequestParameter("settings");
+        if ( settings == null )
+            settings = "profile";
+        int seconds = 60;
+        String x = action.getRequestParameter("duration");
+        if ( x != null ) {
+            try {
+                seconds = Integer.parseInt(x);
+            } catch (NumberFormatException ex) {
+                ServletOps.errorBadRequest("Bad duration: "+x);
+            }
+        }
+        if ( seconds <= 0 || seconds > maxSeconds )
+            ServletOps.errorBadRequest(format("Duration must be between 1 and %d seconds", maxSeconds));
+
+        Configuration configuration = null;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (IOException | ParseException ex) {
+            ServletOps.errorBadRequest("Unknown JFR settings: "+settings);
+        }
+
+        makeSpace(dir);
+        Path file = dir.resolve("fuseki-"+LocalDateTime.now().format(fileNameFormat)+extJFR);
+        try {
+            Recording r = new Recording(configuration);
+            r.setName("Fuseki "+file.getFileName());
+            r.setToDisk(true);
+            r.setMaxSize(maxRecordingBytes());
+            r.setDuration(Duration.ofSeconds(seconds));
+            // Written when the recording stops.
+            r.setDestination(file);
+            r.start();
+            recording = r;
+            recordingFile = file;
+            recordingSettings = settings;
+        } catch (IOException | IllegalStateException | SecurityException ex) {
+            ServletOps.errorOccurred(ex);
+        }
+        action.log.info(format("[%d] Profile: start %s (%s, %ds)", action.id, file.getFileName(), settings, seconds));
+
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject();
+        recordingJson(builder);
+        builder.finishObject();
+        ServletOps.setNoCache(action);
+        ServletOps.sendJsonReponse(action, builder.build());
+    }
+
+    private synchronized void list(HttpAction action, Path dir) {
+        clearFinished();
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject();
+        if ( recording != null ) {
+            builder.key("recording").startObject();
+            recordingJson(builder);
+            builder.finishObject();
+        }
+        builder.key("profiles").startArray();
+        for ( Path p : files(dir) ) {
+            // Not yet written.
+            if ( p.equals(recordingFile) )
+                continue;
+            builder.startObject();
+            builder.key("name").value(p.getFileName().toString());
+            try {
+                builder.key("size").value(Files.size(p));
+                builder.key("modified").value(Files.getLastModifiedTime(p).toInstant().toString());
+            } catch (IOException ex) {}
+            builder.finishObject();
+        }
+        builder.finishArray();
+        builder.finishObject();
+        ServletOps.setNoCache(action);
+        ServletOps.sendJsonReponse(action, builder.build());
+    }
+
+    private void recordingJson(JsonBuilder builder) {
+        builder.key("name").value(recordingFile.getFileName().toString());
+        builder.key("settings").value(recordingSettings);
+        builder.key("state").value(recording.getState().name().toLowerCase());
+        Duration d = recording.getDuration();
+        if ( d != null )
+            builder.key("duration").value(d.getSeconds());
+    }
+
+    private void send(HttpAction action, Path dir, String fileName) {
+        if ( ! fileNamePattern.matcher(fileName).matches() )
+            ServletOps.errorBadRequest("Bad profile name: "+fileName);
+        Path file = dir.resolve(fileName);
+        synchronized(this) {
+            clearFinished();
+            if ( file.equals(recordingFile) )
+                ServletOps.error(HttpSC.CONFLICT_409, "Recording in progress: "+fileName);
+        }
+        if ( ! Files.isRegularFile(file) )
+            ServletOps.errorNotFound("Not found: profile "+fileName);
+        action.log.info(format("[%d] Profile: send %s", action.id, fileName));
+        try {
+            ServletOps.setNoCache(action);
+            action.setResponseContentType("application/octet-stream");
+            action.setResponseHeader("Content-Disposition", "attachment; filename=\""+fileName+"\"");
+            action.getResponse().setContentLengthLong(Files.size(file));
+            OutputStream out = action.getResponseOutputStream();
+            Files.copy(file, out);
+            out.flush();
+            ServletOps.success(action);
+        } catch (IOException ex) {
+            ServletOps.errorOccurred(ex);
+        }
+    }
+
+    /** Forget the current recording if it has finished (and so its file has been written). */
+    private void clearFinished() {
+        if ( recording == null )
+            return;
+        RecordingState state = recording.getState();
+        if ( state == RecordingState.STOPPED || state == RecordingState.CLOSED ) {
+            Fuseki.serverLog.info("Profile: finished "+recordingFile.getFileName());
+            recording.close();
+            recording = null;
+            recordingFile = null;
+            recordingSettings = null;
+        }
+    }
+
+    /** Each recording gets an equal share of the area. */
+    private long maxRecordingBytes() {
+        return maxBytes / Math.max(1, maxFiles);
+    }
+
+    /** Delete the oldest recordings so there is room for a new one. */
+    private void makeSpace(Path dir) {
+        List<Path> files = files(dir);
+        long total = 0;
+        for ( Path p : files )
+            total += size(p);
+        long space = maxRecordingBytes();
+        int i = 0;
+        while ( i < files.size() && ( files.size() - i >= maxFiles || total + space > maxBytes ) ) {
+            Path p = files.get(i++);
+            total -= size(p);
+            try {
+                Files.deleteIfExists(p);
+                Fuseki.serverLog.info("Profile: deleted "+p.getFileName());
+            } catch (IOException ex) {
+                Fuseki.serverLog.warn("Profile: failed to delete "+p+": "+ex.getMessage());
+            }
+        }
+    }
+
+    /** Recordings in the directory, oldest first. */
+    private static List<Path> files(Path dir) {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*"+extJFR)) {
+            stream.forEach(files::add);
+        } catch (IOException ex) {
+            Fuseki.serverLog.warn("Profile: can't list "+dir+": "+ex.getMessage());
+        }
+        files.sort(Comparator.comparing(Path::getFileName));
+        return files;
+    }
+
+    private static long size(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static int envInt(String name, int dftValue) {
+        String x = Lib.getenv(name);
+        if ( x == null )
+            return dftValue;
+        try {
+            return Integer.parseInt(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+name+": '"+x+"'");
+            return dftValue;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mgt;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+import org.apache.jena.atlas.json.JsonBuilder;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+
+/**
+ * The most recent log events, in a fixed-size ring buffer.
+ * <p>
+ * Adding an event is a sequence number increment and a write to an array slot; it
+ * does not lock or wait for readers. Readers find events by sequence number, so a
+ * reader that falls more than the buffer size behind misses events.
+ * <p>
+ * The slot of a sequence number is written just after the number is taken, so a
+ * reader can see a later event before an earlier one; {@link #written(long)} gives
+ * the point up to which all events have been written.
+ */
+public class LogBuffer {
+
+    /** A log event. */
+    public static class Entry {
+        // Set when the entry is added to the buffer.
+        private long seq;
+        public final long timestamp;
+        public final Level level;
+        public final String logger;
+        public final String thread;
+        public final String message;
+        public final String thrown;
+
+        Entry(long timestamp, Level level, String logger, String thread, String message, String thrown) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.logger = logger;
+            this.thread = thread;
+            this.message = message;
+            this.thrown = thrown;
+        }
+
+        public long seq() {
+            return seq;
+        }
+
+        public void asJson(JsonBuilder builder) {
+            builder.startObject();
+            builder.key("seq").value(seq);
+            builder.key("time").value(Instant.ofEpochMilli(timestamp).toString());
+            builder.key("level").value(level.name());
+            builder.key("logger").value(logger);
+            builder.key("thread").value(thread);
+            builder.key("message").value(message);
+            if ( thrown != null )
+                builder.key("thrown").value(thrown);
+            builder.finishObject();
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> buffer;
+    private final AtomicLong counter = new AtomicLong(0);
+
+    public LogBuffer(int size) {
+        this.buffer = new AtomicReferenceArray<>(Math.max(1, size));
+    }
+
+    public int size() {
+        return buffer.length();
+    }
+
+    /** Sequence number of the most recent event; 0 if none. */
+    public long last() {
+        return counter.get();
+    }
+
+    public void add(LogEvent event) {
+        // Build the entry first: the slot for a sequence number is then written straight after it is taken.
+        String thrown = null;
+        if ( event.getThrown() != null ) {
+            StringWriter sw = new StringWriter();
+            event.getThrown().printStackTrace(new PrintWriter(sw));
+            thrown = sw.toString();
+        }
+        String message = ( event.getMessage() == null ) ? "" : event.getMessage().getFormattedMessage();
+        Entry entry = new Entry(event.getTimeMillis(), event.getLevel(), event.getLoggerName(),
+                                event.getThreadName(), message, thrown);
+        write(next(), entry);
+    }
+
+    /** Take the next sequence number. */
+    long next() {
+        return counter.incrementAndGet();
+    }
+
+    /** Write the entry for a sequence number taken by {@link #next()}. */
+    void write(long seq, Entry entry) {
+        entry.seq = seq;
+        buffer.set((int)(seq % buffer.length()), entry);
+    }
+
+    /**
+     * The sequence number up to which all events after {@code afterSeq} have been
+     * written (or overwritten by later events). Events after it may not have been
+     * written yet.
+     */
+    public long written(long afterSeq) {
+        long last = counter.get();
+        int n = buffer.length();
+        long i = Math.max(afterSeq, last - n);
+        while ( i < last ) {
+            Entry e = buffer.get((int)((i+1) % n));
+            // Not written: empty, or still the event one buffer length earlier.
+            if ( e == null || e.seq < i+1 )
+                break;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Events after {@code afterSeq} that pass the filter, oldest first, at most
+     * {@code limit} (the most recent ones).
+     */
+    public List<Entry> since(long afterSeq, Predicate<Entry> filter, int limit) {
+        return since(afterSeq, counter.get(), filter, limit);
+    }
+
+    /**
+     * Events after {@code afterSeq}, up to and including {@code last}, that pass the
+     * filter, oldest first, at most {@code limit} (the most recent ones).
+     */
+    public List<Entry> since(long afterSeq, long last, Predicate<Entry> filter, int limit) {
+        int n = buffer.length();
+        List<Entry> list = new ArrayList<>();
+        for ( long i = last ; i > afterSeq && i > last - n && list.size() < limit ; i-- ) {
+            Entry e = buffer.get((int)(i % n));
+            // Slot not yet written, or overwritten by a later event.
+            if ( e == null || e.seq != i )
+                continue;
+            if ( filter.test(e) )
+                list.add(e);
+        }
+        Collections.reverse(list);
+        return list;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mgt;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.AbstractConfiguration;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Property;
+
+/**
+ * Log4j2 appender that adds events to a {@link LogBuffer}.
+ * <p>
+ * Appending does not do I/O or take locks, so it does not need a queue and
+ * thread of its own to keep logging off the request path.
+ */
+public class LogBufferAppender extends AbstractAppender {
+
+    public static final String appenderName = "FusekiLogBuffer";
+
+    private final LogBuffer buffer;
+
+    private LogBufferAppender(LogBuffer buffer) {
+        super(appenderName, null, null, true, Property.EMPTY_ARRAY);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        buffer.add(event);
+    }
+
+    /**
+     * Add an appender for the buffer to the root logger of the current Log4j2
+     * configuration. Returns false if logging is not by Log4j2.
+     * Events are those the logger configuration lets through.
+     */
+    public static boolean install(LogBuffer buffer) {
+        try {
+            if ( ! ( LogManager.getContext(false) instanceof LoggerContext ) ) {
+                Fuseki.configLog.warn("Log buffer: logging is not Log4j2 - no log events for /$/logs");
+                return false;
+            }
+            LoggerContext context = (LoggerContext)LogManager.getContext(false);
+            Configuration config = context.getConfiguration();
+            LogBufferAppender appender = new LogBufferAppender(buffer);
+            appender.start();
+            config.addAppender(appender);
+            config.getRootLogger().addAppender(appender, null, null);
+            context.updateLoggers();
+            return true;
+        } catch (NoClassDefFoundError ex) {
+            Fuseki.configLog.warn("Log buffer: no Log4j2 core - no log events for /$/logs");
+            return false;
+        }
+    }
+
+    /** Remove the appender installed by {@link #install}. */
+    public static void uninstall() {
+        try {
+            if ( ! ( LogManager.getContext(false) instanceof LoggerContext ) )
+                return;
+            LoggerContext context = (LoggerContext)LogManager.getContext(false);
+            Configuration config = context.getConfiguration();
+            if ( config instanceof AbstractConfiguration )
+                // Removes it from all loggers as well.
+                ((AbstractConfiguration)config).removeAppender(appenderName);
+            else
+                config.getRootLogger().removeAppender(appenderName);
+            context.updateLoggers();
+        } catch (NoClassDefFoundError ex) {}
+    }
+}
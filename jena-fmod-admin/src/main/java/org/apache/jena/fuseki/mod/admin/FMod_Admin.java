@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.jena.atlas.lib.Lib;
 import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.cmd.ArgModuleGeneral;
 import org.apache.jena.fuseki.Fuseki;
@@ -34,7 +35,13 @@ import org.apache.jena.fuseki.main.sys.FusekiModule;
 import org.apache.jena.fuseki.mgt.ActionBackup;
 import org.apache.jena.fuseki.mgt.ActionBackupList;
 import org.apache.jena.fuseki.mgt.ActionDatasets;
+import org.apache.jena.fuseki.mgt.ActionLogs;
+import org.apache.jena.fuseki.mgt.ActionProfile;
+import org.apache.jena.fuseki.mgt.LogBuffer;
+import org.apache.jena.fuseki.mgt.LogBufferAppender;
 import org.apache.jena.fuseki.mod.other.ActionServerStatus;
+import org.apache.jena.fuseki.mod.other.ActionStats;
+import org.apache.jena.fuseki.mod.other.EndpointRates;
 import org.apache.jena.fuseki.server.DataAccessPoint;
 import org.apache.jena.rdf.model.Model;
 import org.slf4j.Logger;
@@ -45,6 +52,14 @@ public class FMod_Admin implements FusekiModule {
 
     private static Logger LOG = Fuseki.configLog;
 
+    /** Number of recent log events held for {@code /$/logs}. */
+    public static final String envLogBufferSize = "FUSEKI_LOG_BUFFER";
+    private static final int dftLogBufferSize = 1000;
+
+    private final EndpointRates endpointRates = new EndpointRates();
+    private ActionLogs actionLogs = null;
+    private boolean logBufferInstalled = false;
+
     @Override
     public void start() {
         ArgModuleGeneral amg = new ArgModuleAdmin();
@@ -104,6 +119,10 @@ public class FMod_Admin implements FusekiModule {
             // ** builder.add(DataAccessPoint);
         });
 
+        LogBuffer logBuffer = new LogBuffer(logBufferSize());
+        logBufferInstalled = LogBufferAppender.install(logBuffer);
+        actionLogs = new ActionLogs(logBuffer);
+
         // Modify the server to include the admin operations.
         ActionCtl actionBackup = new ActionBackup();
         builder
@@ -111,15 +130,16 @@ public class FMod_Admin implements FusekiModule {
                 // .addFilter("/$/*", new LocalhostOnly())
 
                 .addServlet("/$/datasets", new ActionDatasets())
-                // .addServlet("/$/stats", new ActionDatasets())
+                .addServlet("/$/stats/*", new ActionStats(endpointRates))
                 .addServlet("/$/server", new ActionServerStatus())
 
                 // Require admin user
                 .addServlet("/$/backup", actionBackup).addServlet("/$/backups", actionBackup)
                 .addServlet("/$/backups-list", new ActionBackupList())
+                .addServlet("/$/profile/*", new ActionProfile())
+                .addServlet("/$/logs", actionLogs)
 
                 .enablePing(true)
-                .enableStats(true)
                 // Not required but helpful.
                 .enableCompact(true)
                 .enableMetrics(true)
@@ -127,4 +147,31 @@ public class FMod_Admin implements FusekiModule {
 
         LOG.info("Fuseki Admin loaded");
     }
+
+    @Override
+    public void server(FusekiServer server) {
+        endpointRates.start(server.getDataAccessPointRegistry());
+    }
+
+    @Override
+    public void serverStopped(FusekiServer server) {
+        endpointRates.stop();
+        if ( actionLogs != null )
+            actionLogs.stop();
+        if ( logBufferInstalled )
+            LogBufferAppender.uninstall();
+        logBufferInstalled = false;
+    }
+
+    private static int logBufferSize() {
+        String x = Lib.getenv(envLogBufferSize);
+        if ( x == null )
+            return dftLogBufferSize;
+        try {
+            return Integer.parseInt(x.trim());
+        } catch (NumberFormatException ex) {
+            LOG.warn("Bad value for "+envLogBufferSize+": '"+x+"'");
+            return dftLogBufferSize;
+        }
+    }
 }
@@ -65,6 +65,7 @@ public class FusekiApp {
     public static final String     backupDirNameBase        = "backups";
     public static final String     configDirNameBase        = "configuration";
     public static final String     logsNameBase             = "logs";
+    public static final String     profilesNameBase         = "profiles";
     public static final String     systemFileAreaBase       = "system_files";
     public static final String     templatesNameBase        = "templates";
     public static final String     DFT_SHIRO_INI            = "shiro.ini";
@@ -82,6 +83,9 @@ public class FusekiApp {
     /** Directory for assembler files */
     public static Path        dirLogs            = null;
 
+    /** Directory for profiling recordings */
+    public static Path        dirProfiles        = null;
+
 //    /** Directory for system database */
 //    public static Path        dirSystemDatabase  = null;
 
@@ -159,6 +163,7 @@ public class FusekiApp {
         dirBackups          = writeableDirectory(FUSEKI_BASE, backupDirNameBase);
         dirConfiguration    = writeableDirectory(FUSEKI_BASE, configDirNameBase);
         dirLogs             = writeableDirectory(FUSEKI_BASE, logsNameBase);
+        dirProfiles         = writeableDirectory(FUSEKI_BASE, profilesNameBase);
         dirSystemFileArea   = writeableDirectory(FUSEKI_BASE, systemFileAreaBase);
 
         // ---- Initialize with files.
@@ -19,28 +19,190 @@
 package org.apache.jena.fuseki.mod.other;
 
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.jena.atlas.json.JsonBuilder;
-import org.apache.jena.atlas.json.JsonObject;
-import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.atlas.json.*;
 import org.apache.jena.fuseki.ctl.ActionContainerItem;
+import org.apache.jena.fuseki.metrics.MetricsProviderRegistry;
 import org.apache.jena.fuseki.server.*;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
 
+/**
+ * Request statistics for all datasets ({@code /$/stats}) or one dataset ({@code /$/stats/NAME}).
+ * <p>
+ * The statistics of all datasets are written to the response a dataset at a time,
+ * as JSON or, for "?format=text" or "Accept: text/plain", in the Prometheus text
+ * format. If there are {@link EndpointRates}, each endpoint also has the request
+ * rates and error ratios over the last 1, 5 and 15 minutes.
+ */
 public class ActionStats extends ActionContainerItem
 {
     // For endpoint with "" as name.
     private static String emptyNameKeyPrefix = "_";
+    private static String metersKey = "meters";
+    private static String ratesKey = "rates";
+
+    private final EndpointRates rates;
 
-    public ActionStats() { super(); }
+    public ActionStats() { this(null); }
+
+    public ActionStats(EndpointRates rates) {
+        super();
+        this.rates = rates;
+    }
 
     @Override
     public void validate(HttpAction action) {}
 
+    @Override
+    public void execGet(HttpAction action) {
+        if ( getItemDatasetName(action) != null ) {
+            super.execGet(action);
+            return;
+        }
+        if ( action.verbose )
+            action.log.info(format("[%d] GET stats all (streamed)", action.id));
+        boolean text = "text".equals(action.getRequestParameter("format"));
+        String accept = action.getRequest().getHeader(HttpNames.hAccept);
+        if ( accept != null && accept.startsWith(WebContent.contentTypeTextPlain) )
+            text = true;
+        try {
+            ServletOps.setNoCache(action);
+            action.setResponseContentType(text ? WebContent.contentTypeTextPlain : WebContent.contentTypeJSON);
+            action.setResponseCharacterEncoding(WebContent.charsetUTF8);
+            Writer out = new BufferedWriter(new OutputStreamWriter(action.getResponseOutputStream(), UTF_8));
+            if ( text )
+                streamText(out, action.getDataAccessPointRegistry());
+            else
+                streamJson(out, action.getDataAccessPointRegistry());
+            out.flush();
+            ServletOps.success(action);
+        } catch (IOException ex) {
+            ServletOps.errorOccurred(ex);
+        }
+    }
+
+    /**
+     * Write the same JSON as {@link #generateStats(DataAccessPointRegistry)},
+     * building the JSON for one dataset at a time.
+     */
+    private void streamJson(Writer out, DataAccessPointRegistry registry) throws IOException {
+        out.write("{ ");
+        out.write(quote(ServerConst.datasets));
+        out.write(" : {");
+        String sep = "\n";
+        Map<String, List<Meter>> meters = datasetMeters();
+        for ( DataAccessPoint access : registry.accessPoints() ) {
+            JsonBuilder builder = new JsonBuilder();
+            builder.startObject();
+            statsDataset(builder, access, rates, meters);
+            builder.finishObject();
+            JsonValue v = builder.build().getAsObject().get(access.getName());
+            out.write(sep);
+            out.write(quote(access.getName()));
+            out.write(" : ");
+            out.write(v.toString());
+            sep = ",\n";
+        }
+        out.write("\n} }\n");
+    }
+
+    /**
+     * Endpoint counters and rates in the Prometheus text format.
+     * The lines of a metric family must be together, so there is one pass over the endpoints for each family.
+     */
+    private void streamText(Writer out, DataAccessPointRegistry registry) throws IOException {
+        out.write("# TYPE fuseki_stats_requests counter\n");
+        forEachEndpoint(registry, (endpoint, labels) -> {
+            for ( CounterName cn : endpoint.getCounters().counters() ) {
+                out.write("fuseki_stats_requests{" + labels + ",counter=" + quote(cn.getName()) + "} ");
+                out.write(Long.toString(endpoint.getCounters().value(cn)));
+                out.write('\n');
+            }
+        });
+        out.write("# TYPE fuseki_stats_request_rate gauge\n");
+        forEachRates(registry, (r, labels) -> {
+            for ( int i = 0 ; i < EndpointRates.windows.length ; i++ )
+                out.write("fuseki_stats_request_rate{" + labels + window(i) + r.requestRate(i) + "\n");
+        });
+        out.write("# TYPE fuseki_stats_error_ratio gauge\n");
+        forEachRates(registry, (r, labels) -> {
+            for ( int i = 0 ; i < EndpointRates.windows.length ; i++ )
+                out.write("fuseki_stats_error_ratio{" + labels + window(i) + r.errorRatio(i) + "\n");
+        });
+    }
+
+    @FunctionalInterface
+    private interface TextWriter<X> {
+        void write(X item, String labels) throws IOException;
+    }
+
+    private static void forEachEndpoint(DataAccessPointRegistry registry, TextWriter<Endpoint> writer) throws IOException {
+        for ( DataAccessPoint access : registry.accessPoints() ) {
+            DataService dSrv = access.getDataService();
+            for ( Operation operName : dSrv.getOperations() ) {
+                for ( Endpoint endpoint : dSrv.getEndpoints(operName) ) {
+                    String labels = "dataset=" + quote(access.getName())
+                            + ",endpoint=" + quote(endpoint.getName())
+                            + ",operation=" + quote(operName.getJsonName());
+                    writer.write(endpoint, labels);
+                }
+            }
+        }
+    }
+
+    private void forEachRates(DataAccessPointRegistry registry, TextWriter<EndpointRates.Rates> writer) throws IOException {
+        if ( rates == null )
+            return;
+        forEachEndpoint(registry, (endpoint, labels) -> {
+            EndpointRates.Rates r = rates.get(endpoint);
+            if ( r != null )
+                writer.write(r, labels);
+        });
+    }
+
+    private static String window(int i) {
+        return ",window=\"" + EndpointRates.windows[i] + "m\"} ";
+    }
+
+    /** A JSON string, which is also a Prometheus label value. */
+    private static String quote(String x) {
+        StringBuilder sb = new StringBuilder(x.length()+2);
+        sb.append('"');
+        for ( int i = 0 ; i < x.length() ; i++ ) {
+            char ch = x.charAt(i);
+            switch (ch) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                default:
+                    if ( ch < 0x20 )
+                        sb.append(String.format("\\u%04X", (int)ch));
+                    else
+                        sb.append(ch);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
     // This does not consult the system database for dormant etc.
     protected JsonValue execCommonContainer(HttpAction action) {
         if ( action.verbose )
@@ -53,7 +215,8 @@ public class ActionStats extends ActionContainerItem
         builder.startObject("top");
         builder.key(ServerConst.datasets);
         builder.startObject("datasets");
-        registry.forEach((name, access)->statsDataset(builder, access));
+        Map<String, List<Meter>> meters = datasetMeters();
+        registry.forEach((name, access)->statsDataset(builder, access, null, meters));
         builder.finishObject("datasets");
         builder.finishObject("top");
         return builder.build().getAsObject();
@@ -81,16 +244,16 @@ public class ActionStats extends ActionContainerItem
 
     public static JsonObject generateStats(DataAccessPoint access) {
         JsonBuilder builder = new JsonBuilder();
-        statsDataset(builder, access);
+        statsDataset(builder, access, null, datasetMeters());
         return builder.build().getAsObject();
     }
 
     private void statsDataset(JsonBuilder builder, String name, DataAccessPointRegistry registry) {
         DataAccessPoint access = registry.get(name);
-        statsDataset(builder, access);
+        statsDataset(builder, access, rates, datasetMeters());
     }
 
-    private static void statsDataset(JsonBuilder builder, DataAccessPoint access) {
+    private static void statsDataset(JsonBuilder builder, DataAccessPoint access, EndpointRates rates, Map<String, List<Meter>> meters) {
         // Object started
         builder.key(access.getName());
         DataService dSrv = access.getDataService();
@@ -114,6 +277,8 @@ public class ActionStats extends ActionContainerItem
                 builder.startObject();
 
                 operationCounters(builder, endpoint);
+                if ( rates != null )
+                    endpointRates(builder, rates.get(endpoint));
                 builder.key(ServerConst.operation).value(operName.getJsonName());
                 builder.key(ServerConst.description).value(operName.getDescription());
 
@@ -121,9 +286,88 @@ public class ActionStats extends ActionContainerItem
             }
         }
         builder.finishObject("endpoints");
+        if ( meters != null )
+            datasetMeters(builder, meters.getOrDefault(access.getName(), List.of()));
         builder.finishObject("counters");
     }
 
+    /**
+     * Meters of the metrics registry that are for a dataset but not per-endpoint
+     * (the endpoint counters are given separately), e.g. transaction metrics,
+     * by dataset name. The registry is read once for all datasets.
+     * Returns null if there is no metrics registry.
+     */
+    private static Map<String, List<Meter>> datasetMeters() {
+        if ( MetricsProviderRegistry.get() == null )
+            return null;
+        MeterRegistry meterRegistry = MetricsProviderRegistry.get().getMeterRegistry();
+        Map<String, List<Meter>> meters = new HashMap<>();
+        for ( Meter meter : meterRegistry.getMeters() ) {
+            Meter.Id id = meter.getId();
+            String datasetName = id.getTag("dataset");
+            if ( datasetName == null || id.getTag("endpoint") != null )
+                continue;
+            meters.computeIfAbsent(datasetName, k -> new ArrayList<>()).add(meter);
+        }
+        return meters;
+    }
+
+    /**
+     * The dataset meters (see {@link #datasetMeters()}).
+     * The key is the meter name with any other tags; the value is the single
+     * measurement or an object of the measurements by statistic.
+     */
+    private static void datasetMeters(JsonBuilder builder, List<Meter> meters) {
+        builder.key(metersKey).startObject("meters");
+        for ( Meter meter : meters ) {
+            Meter.Id id = meter.getId();
+            StringBuilder key = new StringBuilder(id.getName());
+            String sep = "{";
+            for ( Tag tag : id.getTags() ) {
+                if ( tag.getKey().equals("dataset") )
+                    continue;
+                key.append(sep).append(tag.getKey()).append('=').append(tag.getValue());
+                sep = ",";
+            }
+            if ( ! sep.equals("{") )
+                key.append('}');
+            builder.key(key.toString());
+            List<Measurement> measurements = new ArrayList<>();
+            meter.measure().forEach(measurements::add);
+            if ( measurements.size() == 1 ) {
+                builder.value(number(measurements.get(0).getValue()));
+                continue;
+            }
+            builder.startObject();
+            for ( Measurement m : measurements )
+                builder.key(m.getStatistic().getTagValueRepresentation()).value(number(m.getValue()));
+            builder.finishObject();
+        }
+        builder.finishObject("meters");
+    }
+
+    private static JsonValue number(double x) {
+        if ( Double.isNaN(x) || Double.isInfinite(x) )
+            return JsonNull.instance;
+        if ( x == Math.rint(x) && Math.abs(x) < 1e15 )
+            return JsonNumber.value((long)x);
+        return JsonNumber.value(x);
+    }
+
+    /** Requests per second and error ratio over each window, e.g. "rates": { "1m": { "requests": 2.5, "errorRatio": 0.01 }, ... } */
+    private static void endpointRates(JsonBuilder builder, EndpointRates.Rates r) {
+        if ( r == null )
+            return;
+        builder.key(ratesKey).startObject("rates");
+        for ( int i = 0 ; i < EndpointRates.windows.length ; i++ ) {
+            builder.key(EndpointRates.windows[i]+"m").startObject();
+            builder.key("requests").value(r.requestRate(i));
+            builder.key("errorRatio").value(r.errorRatio(i));
+            builder.finishObject();
+        }
+        builder.finishObject("rates");
+    }
+
     private static void operationCounters(JsonBuilder builder, Endpoint operation) {
         for (CounterName cn : operation.getCounters().counters()) {
             Counter c = operation.getCounters().get(cn);
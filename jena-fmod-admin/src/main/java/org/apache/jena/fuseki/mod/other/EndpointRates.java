@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.other;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.server.CounterName;
+import org.apache.jena.fuseki.server.CounterSet;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.Endpoint;
+
+/**
+ * Rolling request rates and error ratios for each endpoint, over 1, 5 and 15
+ * minutes (exponentially weighted moving averages).
+ * <p>
+ * The request path is not changed: every {@value #tickSeconds} seconds a
+ * background thread reads the request counters that Fuseki keeps for each
+ * endpoint and updates the averages from the change since the last tick. Each
+ * average has a single writer, the tick thread, so reading is lock-free.
+ */
+public class EndpointRates {
+
+    public static final long tickSeconds = 5;
+    /** Window lengths, in minutes. */
+    public static final int[] windows = { 1, 5, 15 };
+
+    private final Map<Endpoint, Rates> rates = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor = null;
+
+    public EndpointRates() {}
+
+    public synchronized void start(DataAccessPointRegistry registry) {
+        if ( executor != null )
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "EndpointRates");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(()->{
+            try { tick(registry); }
+            catch (Throwable th) { Fuseki.serverLog.warn("Endpoint rates", th); }
+        }, tickSeconds, tickSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if ( executor != null ) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        rates.clear();
+    }
+
+    /** The rates of an endpoint, or null if it has not yet been seen by a tick. */
+    public Rates get(Endpoint endpoint) {
+        return rates.get(endpoint);
+    }
+
+    /** Update the rates of the endpoints of the registry; called every {@value #tickSeconds} seconds. */
+    void tick(DataAccessPointRegistry registry) {
+        Set<Endpoint> seen = new HashSet<>();
+        registry.forEach((name, dap) -> dap.getDataService().forEachEndpoint(endpoint -> {
+            seen.add(endpoint);
+            Rates r = rates.computeIfAbsent(endpoint, Rates::new);
+            r.tick();
+        }));
+        // Endpoints of removed or replaced datasets.
+        rates.keySet().retainAll(seen);
+    }
+
+    /** Request rate and error rate of one endpoint. */
+    public static class Rates {
+        private final CounterSet counters;
+        private final Ewma[] requests = new Ewma[windows.length];
+        private final Ewma[] errors = new Ewma[windows.length];
+        private long lastRequests;
+        private long lastErrors;
+
+        private Rates(Endpoint endpoint) {
+            this.counters = endpoint.getCounters();
+            for ( int i = 0 ; i < windows.length ; i++ ) {
+                requests[i] = new Ewma(windows[i]);
+                errors[i] = new Ewma(windows[i]);
+            }
+            // Requests before the first tick are not counted as happening in the first interval.
+            this.lastRequests = value(counters, CounterName.Requests);
+            this.lastErrors = value(counters, CounterName.RequestsBad);
+        }
+
+        private void tick() {
+            long r = value(counters, CounterName.Requests);
+            long e = value(counters, CounterName.RequestsBad);
+            for ( int i = 0 ; i < windows.length ; i++ ) {
+                requests[i].update(r - lastRequests);
+                errors[i].update(e - lastErrors);
+            }
+            lastRequests = r;
+            lastErrors = e;
+        }
+
+        /** Requests per second over the window with index {@code i} of {@link EndpointRates#windows}. */
+        public double requestRate(int i) {
+            return requests[i].rate;
+        }
+
+        /** Fraction of requests that failed over the window with index {@code i} of {@link EndpointRates#windows}. */
+        public double errorRatio(int i) {
+            double r = requests[i].rate;
+            if ( r <= 0 )
+                return 0;
+            return Math.min(1.0, errors[i].rate / r);
+        }
+
+        private static long value(CounterSet counters, CounterName name) {
+            return counters.contains(name) ? counters.value(name) : 0;
+        }
+    }
+
+    /** Exponentially weighted moving average of a per-second rate. Updated by one thread. */
+    private static class Ewma {
+        private final double alpha;
+        private volatile double rate = 0;
+        private boolean initialized = false;
+
+        Ewma(int minutes) {
+            this.alpha = 1 - Math.exp(-tickSeconds / (60.0 * minutes));
+        }
+
+        void update(long count) {
+            double instantRate = (double)count / tickSeconds;
+            if ( initialized ) {
+                rate += alpha * (instantRate - rate);
+            } else {
+                rate = instantRate;
+                initialized = true;
+            }
+        }
+    }
+}
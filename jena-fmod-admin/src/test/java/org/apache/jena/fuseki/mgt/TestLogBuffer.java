@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mgt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.jena.fuseki.mgt.LogBuffer.Entry;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+/**
+ * Reading the {@link LogBuffer}, including while a writer has taken a sequence
+ * number but not yet written its slot.
+ */
+public class TestLogBuffer {
+
+    private static void add(LogBuffer buffer, String message) {
+        buffer.add(Log4jLogEvent.newBuilder()
+                       .setLoggerName("test")
+                       .setLevel(Level.INFO)
+                       .setMessage(new SimpleMessage(message))
+                       .setTimeMillis(System.currentTimeMillis())
+                       .build());
+    }
+
+    private static Entry entry(String message) {
+        return new Entry(System.currentTimeMillis(), Level.INFO, "test", "main", message, null);
+    }
+
+    private static List<String> messages(List<Entry> entries) {
+        return entries.stream().map(e -> e.message).collect(Collectors.toList());
+    }
+
+    @Test public void logBuffer_empty() {
+        LogBuffer buffer = new LogBuffer(4);
+        assertEquals(0, buffer.last());
+        assertEquals(0, buffer.written(0));
+        assertTrue(buffer.since(0, e -> true, 10).isEmpty());
+    }
+
+    @Test public void logBuffer_since() {
+        LogBuffer buffer = new LogBuffer(10);
+        add(buffer, "m1");
+        add(buffer, "m2");
+        add(buffer, "m3");
+        assertEquals(3, buffer.last());
+        assertEquals(3, buffer.written(0));
+        assertEquals(List.of("m1", "m2", "m3"), messages(buffer.since(0, e -> true, 10)));
+        assertEquals(List.of("m3"), messages(buffer.since(2, e -> true, 10)));
+        // The most recent, oldest first.
+        assertEquals(List.of("m2", "m3"), messages(buffer.since(0, e -> true, 2)));
+        assertEquals(List.of("m2"), messages(buffer.since(0, e -> e.message.equals("m2"), 10)));
+    }
+
+    @Test public void logBuffer_wrap() {
+        LogBuffer buffer = new LogBuffer(4);
+        for ( int i = 1 ; i <= 10 ; i++ )
+            add(buffer, "m"+i);
+        assertEquals(10, buffer.written(0));
+        // Only the last buffer size events are held.
+        assertEquals(List.of("m7", "m8", "m9", "m10"), messages(buffer.since(0, e -> true, 100)));
+        assertEquals(List.of("m9", "m10"), messages(buffer.since(8, e -> true, 100)));
+    }
+
+    @Test public void logBuffer_inFlight() {
+        LogBuffer buffer = new LogBuffer(10);
+        add(buffer, "m1");
+        // A writer has taken sequence number 2 but not yet written it.
+        long seq = buffer.next();
+        add(buffer, "m3");
+        assertEquals(3, buffer.last());
+        // All events up to 1 have been written.
+        assertEquals(1, buffer.written(0));
+        assertEquals(List.of("m1"), messages(buffer.since(0, buffer.written(0), e -> true, 10)));
+        // Reading to the last event skips the unwritten slot.
+        assertEquals(List.of("m1", "m3"), messages(buffer.since(0, e -> true, 10)));
+        // Reading on from the written point, once the writer finishes, gets the rest.
+        long written = buffer.written(0);
+        buffer.write(seq, entry("m2"));
+        assertEquals(3, buffer.written(written));
+        assertEquals(List.of("m2", "m3"), messages(buffer.since(written, buffer.written(written), e -> true, 10)));
+    }
+
+    @Test public void logBuffer_inFlightWrapped() {
+        LogBuffer buffer = new LogBuffer(2);
+        add(buffer, "m1");
+        add(buffer, "m2");
+        // The slot of 3 still holds event 1.
+        long seq = buffer.next();
+        assertEquals(2, buffer.written(0));
+        assertEquals(List.of("m2"), messages(buffer.since(0, e -> true, 10)));
+        buffer.write(seq, entry("m3"));
+        assertEquals(3, buffer.written(2));
+        assertEquals(List.of("m2", "m3"), messages(buffer.since(0, e -> true, 10)));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.other;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.fuseki.mod.other.EndpointRates.Rates;
+import org.apache.jena.fuseki.server.*;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Request rates and error ratios of {@link EndpointRates}, driven by calling {@code tick} directly. */
+public class TestEndpointRates {
+
+    private static final double delta = 1e-9;
+
+    private final EndpointRates endpointRates = new EndpointRates();
+    private DataAccessPointRegistry registry;
+    private Endpoint endpoint;
+
+    @Before public void before() {
+        DataService dSrv = DataService.newBuilder(DatasetGraphFactory.createTxnMem())
+                .addEndpoint(Operation.Query, "sparql")
+                .build();
+        DataAccessPoint dap = new DataAccessPoint("/ds", dSrv);
+        registry = new DataAccessPointRegistry();
+        registry.register(dap);
+        endpoint = dSrv.getEndpoints(Operation.Query).get(0);
+    }
+
+    private void requests(long n, long bad) {
+        for ( long i = 0 ; i < n ; i++ )
+            endpoint.getCounters().inc(CounterName.Requests);
+        for ( long i = 0 ; i < bad ; i++ )
+            endpoint.getCounters().inc(CounterName.RequestsBad);
+    }
+
+    @Test public void rates_beforeFirstTick() {
+        assertNull(endpointRates.get(endpoint));
+        // Requests before the endpoint is first seen are not counted.
+        requests(100, 10);
+        endpointRates.tick(registry);
+        Rates rates = endpointRates.get(endpoint);
+        assertNotNull(rates);
+        for ( int i = 0 ; i < EndpointRates.windows.length ; i++ ) {
+            assertEquals(0, rates.requestRate(i), delta);
+            assertEquals(0, rates.errorRatio(i), delta);
+        }
+    }
+
+    @Test public void rates_firstInterval() {
+        endpointRates.tick(registry);
+        requests(10 * EndpointRates.tickSeconds, EndpointRates.tickSeconds);
+        endpointRates.tick(registry);
+        Rates rates = endpointRates.get(endpoint);
+        for ( int i = 0 ; i < EndpointRates.windows.length ; i++ ) {
+            assertEquals(10, rates.requestRate(i), delta);
+            assertEquals(0.1, rates.errorRatio(i), delta);
+        }
+    }
+
+    @Test public void rates_decay() {
+        endpointRates.tick(registry);
+        requests(10 * EndpointRates.tickSeconds, 0);
+        endpointRates.tick(registry);
+        // No requests in the next interval: shorter windows fall faster.
+        endpointRates.tick(registry);
+        Rates rates = endpointRates.get(endpoint);
+        double r1 = rates.requestRate(0);
+        double r5 = rates.requestRate(1);
+        double r15 = rates.requestRate(2);
+        assertTrue(r1 < r5);
+        assertTrue(r5 < r15);
+        assertTrue(r15 < 10);
+        double alpha1 = 1 - Math.exp(-EndpointRates.tickSeconds / 60.0);
+        assertEquals(10 * (1 - alpha1), r1, delta);
+    }
+
+    @Test public void rates_removedDataset() {
+        endpointRates.tick(registry);
+        assertNotNull(endpointRates.get(endpoint));
+        registry.remove("/ds");
+        endpointRates.tick(registry);
+        assertNull(endpointRates.get(endpoint));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql.bench;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.jena.geosparql.implementation.datatype.WKTDatatype;
+import org.apache.jena.geosparql.implementation.vocabulary.Geo;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.system.Txn;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Synthetic GeoSPARQL data for the benchmarks.
+ * <p>
+ * Features are spread evenly over a number of named graphs, each with a geometry
+ * that is either a point or a small square polygon, in CRS84, in the area
+ * lon -10..10, lat 40..60. Generation is deterministic for a given seed.
+ */
+public class BenchData {
+
+    public static final String NS = "http://example/bench/";
+
+    public static final double LON_MIN = -10;
+    public static final double LON_MAX = 10;
+    public static final double LAT_MIN = 40;
+    public static final double LAT_MAX = 60;
+
+    /** Kinds of geometry generated. */
+    public enum Shape { points, polygons, mixed }
+
+    public static String graphName(int i) {
+        return NS+"graph/"+i;
+    }
+
+    /** Create an in-memory dataset with {@code size} features in {@code numGraphs} named graphs. */
+    public static Dataset create(int size, Shape shape, int numGraphs, long seed) {
+        Dataset ds = DatasetFactory.createTxnMem();
+        DatasetGraph dsg = ds.asDatasetGraph();
+        Random random = new Random(seed);
+        Node hasGeometry = Geo.HAS_GEOMETRY_NODE;
+        Node asWKT = Geo.AS_WKT_NODE;
+        Node type = RDF.Nodes.type;
+        Node featureClass = Geo.FEATURE_NODE;
+        Txn.executeWrite(dsg, ()->{
+            for ( int i = 0 ; i < size ; i++ ) {
+                Node g = NodeFactory.createURI(graphName(i % numGraphs));
+                Node feature = NodeFactory.createURI(NS+"feature/"+i);
+                Node geometry = NodeFactory.createURI(NS+"geometry/"+i);
+                boolean point = ( shape == Shape.points ) || ( shape == Shape.mixed && random.nextBoolean() );
+                String wkt = point ? pointWKT(random) : polygonWKT(random);
+                dsg.add(g, feature, type, featureClass);
+                dsg.add(g, feature, hasGeometry, geometry);
+                dsg.add(g, geometry, asWKT, NodeFactory.createLiteral(wkt, WKTDatatype.INSTANCE));
+            }
+        });
+        return ds;
+    }
+
+    private static String pointWKT(Random random) {
+        double lon = LON_MIN + random.nextDouble() * (LON_MAX - LON_MIN);
+        double lat = LAT_MIN + random.nextDouble() * (LAT_MAX - LAT_MIN);
+        return String.format(Locale.ROOT, "POINT(%.6f %.6f)", lon, lat);
+    }
+
+    private static String polygonWKT(Random random) {
+        double lon = LON_MIN + random.nextDouble() * (LON_MAX - LON_MIN);
+        double lat = LAT_MIN + random.nextDouble() * (LAT_MAX - LAT_MIN);
+        double d = 0.001 + random.nextDouble() * 0.05;
+        return String.format(Locale.ROOT, "POLYGON((%.6f %.6f, %.6f %.6f, %.6f %.6f, %.6f %.6f, %.6f %.6f))",
+                             lon, lat, lon+d, lat, lon+d, lat+d, lon, lat+d, lon, lat);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.fuseki.mod.geosparql.PointGridIndex;
+import org.apache.jena.fuseki.mod.geosparql.SpatialIndexComputeService;
+import org.apache.jena.geosparql.configuration.GeoSPARQLConfig;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.system.Txn;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Building, recomputing, saving and loading the spatial index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchSpatialIndex {
+    private static Logger LOG = LoggerFactory.getLogger(BenchSpatialIndex.class);
+
+    private static final String srsURI = SRS_URI.DEFAULT_WKT_CRS84;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"points", "polygons"})
+    public BenchData.Shape shape;
+
+    @Param({"10"})
+    public int graphs;
+
+    private Dataset dataset;
+    private SpatialIndex index;
+    private File indexFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws SpatialIndexException, IOException {
+        GeoSPARQLConfig.setupNoIndex();
+        dataset = BenchData.create(size, shape, graphs, 42);
+        index = SpatialIndex.buildSpatialIndex(dataset, srsURI, true);
+        indexFile = Files.createTempFile("spatial-index", ".bin").toFile();
+        SpatialIndexComputeService.saveIndexCarefully(indexFile, index, LOG);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if ( indexFile != null )
+            indexFile.delete();
+    }
+
+    @Benchmark
+    public SpatialIndex buildIndex() throws SpatialIndexException {
+        return SpatialIndex.buildSpatialIndex(dataset, srsURI, false);
+    }
+
+    @Benchmark
+    public SpatialIndex buildIndexPerGraph() throws SpatialIndexException {
+        return SpatialIndex.buildSpatialIndex(dataset, srsURI, true);
+    }
+
+    @Benchmark
+    public SpatialIndex recomputeOneGraph() throws SpatialIndexException {
+        return SpatialIndex.recomputeIndexForGraphs(index, dataset, List.of(BenchData.graphName(0)));
+    }
+
+    @Benchmark
+    public PointGridIndex buildGridIndex() throws SpatialIndexException {
+        return Txn.calculateRead(dataset, ()->{
+            try {
+                return PointGridIndex.build(SpatialIndex.getSpatialIndexItems(dataset, srsURI), new SRSInfo(srsURI));
+            } catch (SpatialIndexException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
+    @Benchmark
+    public boolean saveIndex() throws SpatialIndexException {
+        return SpatialIndexComputeService.saveIndexCarefully(indexFile, index, LOG);
+    }
+
+    @Benchmark
+    public SpatialIndex loadIndex() throws SpatialIndexException {
+        return SpatialIndex.load(indexFile);
+    }
+}
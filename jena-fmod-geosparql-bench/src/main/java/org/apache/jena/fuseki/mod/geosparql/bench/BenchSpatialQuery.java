@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.fuseki.mod.geosparql.SpatialIndexerConst;
+import org.apache.jena.fuseki.mod.geosparql.SpatialIndexerLib;
+import org.apache.jena.fuseki.mod.geosparql.SpatialLookupPF;
+import org.apache.jena.geosparql.configuration.GeoSPARQLConfig;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.ResultSetFormatter;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typical spatial queries sent to an in-process Fuseki server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchSpatialQuery {
+    private static Logger LOG = LoggerFactory.getLogger(BenchSpatialQuery.class);
+
+    private static final String PREFIXES = String.join("\n",
+        "PREFIX geo:     <http://www.opengis.net/ont/geosparql#>",
+        "PREFIX geof:    <http://www.opengis.net/def/function/geosparql/>",
+        "PREFIX spatial: <http://jena.apache.org/spatial#>",
+        "PREFIX units:   <http://www.opengis.net/def/uom/OGC/1.0/>",
+        "");
+
+    // Small areas near the middle of the data.
+    private static final String qWithinBox = PREFIXES +
+        "SELECT ?f { ?f spatial:withinBox(49.5 -0.5 50.5 0.5) }";
+    private static final String qNearby = PREFIXES +
+        "SELECT ?f { ?f spatial:nearby(50 0 25 units:kilometre) }";
+    private static final String qFilter = PREFIXES +
+        "SELECT ?f { ?f geo:hasGeometry ?g . ?g geo:asWKT ?wkt "+
+        "FILTER(geof:sfIntersects(?wkt, 'POLYGON((-0.5 49.5, 0.5 49.5, 0.5 50.5, -0.5 50.5, -0.5 49.5))'^^geo:wktLiteral)) }";
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"points", "mixed"})
+    public BenchData.Shape shape;
+
+    @Param({SpatialIndexerConst.indexTypeSTRtree, SpatialIndexerConst.indexTypeGrid})
+    public String indexType;
+
+    private FusekiServer server;
+    private String serviceURL;
+
+    @Setup(Level.Trial)
+    public void setup() throws SpatialIndexException {
+        GeoSPARQLConfig.setupNoIndex();
+        Dataset dataset = BenchData.create(size, shape, 10, 42);
+        SpatialIndex.buildSpatialIndex(dataset, SRS_URI.DEFAULT_WKT_CRS84);
+        dataset.getContext().set(SpatialIndexerConst.symIndexType, indexType);
+        if ( SpatialIndexerLib.usesLookup(dataset.getContext()) ) {
+            SpatialIndexerLib.buildLookup(dataset, LOG);
+            SpatialLookupPF.register();
+        }
+        server = FusekiServer.create()
+                .port(0)
+                .add("/ds", dataset)
+                .build()
+                .start();
+        serviceURL = "http://localhost:"+server.getHttpPort()+"/ds";
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if ( server != null )
+            server.stop();
+    }
+
+    private int query(String queryString) {
+        try ( QueryExecution qExec = QueryExecution.service(serviceURL).query(queryString).build() ) {
+            return ResultSetFormatter.consume(qExec.execSelect());
+        }
+    }
+
+    @Benchmark
+    public int withinBox() {
+        return query(qWithinBox);
+    }
+
+    @Benchmark
+    public int nearby() {
+        return query(qNearby);
+    }
+
+    @Benchmark
+    public int filterIntersects() {
+        return query(qFilter);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql.bench;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the spatial benchmarks, writing the results as JSON.
+ * <p>
+ * Usage: {@code java -jar target/benchmarks.jar [JMH options]}.
+ * Without a {@code -rff} option, results go to
+ * {@code results/spatial-<timestamp>.json}. JMH options such as
+ * {@code -p size=1000} or a benchmark name pattern can be given.
+ */
+public class RunBenchmarks {
+    public static void main(String... args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if ( cmdOptions.getIncludes().isEmpty() )
+            builder.include(RunBenchmarks.class.getPackageName()+".Bench.*");
+        if ( cmdOptions.getResult().hasValue() ) {
+            builder.resultFormat(cmdOptions.getResultFormat().orElse(ResultFormatType.JSON));
+        } else {
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            File results = new File("results", "spatial-"+timestamp+".json");
+            results.getParentFile().mkdirs();
+            builder.resultFormat(ResultFormatType.JSON).result(results.getPath());
+        }
+        Options options = builder.parent(cmdOptions).build();
+        new Runner(options).run();
+    }
+}
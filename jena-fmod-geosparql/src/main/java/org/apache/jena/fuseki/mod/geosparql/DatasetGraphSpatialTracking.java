@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * A {@link DatasetGraph} that records which graphs have geometry-affecting changes
+ * in a {@link SpatialDirtyGraphs}.
+ * <p>
+ * Graphs are returned as views of this dataset so that changes made through the
+ * graph API (e.g. by the Graph Store Protocol) are seen as well.
+ * <p>
+ * Use {@link #track} to set up tracking: TDB2 datasets are not wrapped.
+ */
+public class DatasetGraphSpatialTracking extends DatasetGraphWrapper {
+
+    /**
+     * Track the changes of a dataset in {@code dirtyGraphs}; return the dataset to use.
+     * This is the dataset itself for TDB2, whose transactions are tracked by
+     * {@link TDB2SpatialTracking}, and a {@code DatasetGraphSpatialTracking} otherwise.
+     */
+    public static DatasetGraph track(DatasetGraph dsg, SpatialDirtyGraphs dirtyGraphs) {
+        if ( TDBInternal.isTDB2(dsg) ) {
+            TDB2SpatialTracking.track(dsg, dirtyGraphs);
+            return dsg;
+        }
+        return new DatasetGraphSpatialTracking(dsg, dirtyGraphs);
+    }
+
+    private final SpatialDirtyGraphs dirtyGraphs;
+
+    public DatasetGraphSpatialTracking(DatasetGraph dsg, SpatialDirtyGraphs dirtyGraphs) {
+        super(dsg);
+        this.dirtyGraphs = dirtyGraphs;
+    }
+
+    public SpatialDirtyGraphs getDirtyGraphs() {
+        return dirtyGraphs;
+    }
+
+    @Override
+    public Graph getDefaultGraph() {
+        return GraphView.createDefaultGraph(this);
+    }
+
+    @Override
+    public Graph getGraph(Node graphNode) {
+        return GraphView.createNamedGraph(this, graphNode);
+    }
+
+    @Override
+    public void add(Quad quad) {
+        dirtyGraphs.change(quad.getGraph(), quad.getPredicate());
+        super.add(quad);
+    }
+
+    @Override
+    public void delete(Quad quad) {
+        dirtyGraphs.change(quad.getGraph(), quad.getPredicate());
+        super.delete(quad);
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        dirtyGraphs.change(g, p);
+        super.add(g, s, p, o);
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        dirtyGraphs.change(g, p);
+        super.delete(g, s, p, o);
+    }
+
+    @Override
+    public void deleteAny(Node g, Node s, Node p, Node o) {
+        dirtyGraphs.change(g, p);
+        super.deleteAny(g, s, p, o);
+    }
+
+    @Override
+    public void addGraph(Node graphName, Graph graph) {
+        dirtyGraphs.changeGraph(graphName);
+        super.addGraph(graphName, graph);
+    }
+
+    @Override
+    public void removeGraph(Node graphName) {
+        dirtyGraphs.changeGraph(graphName);
+        super.removeGraph(graphName);
+    }
+
+    @Override
+    public void clear() {
+        dirtyGraphs.changeGraph(Node.ANY);
+        super.clear();
+    }
+
+    @Override
+    public void commit() {
+        // Dirty before the changes are visible, so that no reader sees the
+        // changes with the index taken to be up-to-date.
+        dirtyGraphs.commit();
+        super.commit();
+    }
+
+    @Override
+    public void abort() {
+        dirtyGraphs.abort();
+        super.abort();
+    }
+
+    @Override
+    public void end() {
+        // No-op after commit; discards changes of an unfinished write transaction.
+        dirtyGraphs.abort();
+        super.end();
+    }
+}
@@ -18,10 +18,18 @@
 package org.apache.jena.fuseki.mod.geosparql;
 
 import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.FusekiConfigException;
 import org.apache.jena.fuseki.main.FusekiServer;
 import org.apache.jena.fuseki.main.sys.FusekiModule;
 import org.apache.jena.fuseki.server.*;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.algebra.optimize.RewriteFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.util.Context;
 
 import java.util.List;
 import java.util.Set;
@@ -31,6 +39,11 @@ public class FMod_SpatialIndexer implements FusekiModule {
 
     private Operation spatialOperation = null;
 
+    private final SpatialIndexAutoRefresh autoRefresh = new SpatialIndexAutoRefresh();
+
+    private boolean usesLookup = false;
+    private boolean usesFilterRewrite = false;
+
     @Override
     public String name() {
         return "Spatial Indexer";
@@ -61,8 +74,41 @@ public class FMod_SpatialIndexer implements FusekiModule {
                     .endpointName("spatial")
                     .build();
             // create new DataService based on existing one with the endpoint attached
-            DataService dSrv = DataService.newBuilder(dap.getDataService()).addEndpoint(endpoint).build();
-            return new DataAccessPoint(dap.getName(), dSrv);
+            DataService.Builder dSrvBuilder = DataService.newBuilder(dap.getDataService()).addEndpoint(endpoint);
+            DatasetGraph dsg = dap.getDataService().getDataset();
+            // The filter rewrite needs to know whether the index is up-to-date.
+            boolean filterRewrite = dsg.getContext().isTrue(SpatialIndexerConst.symFilterRewrite);
+            if ( filterRewrite || dsg.getContext().isTrue(SpatialIndexerConst.symDirtyTracking) ) {
+                SpatialDirtyGraphs dirtyGraphs = new SpatialDirtyGraphs();
+                dsg.getContext().set(SpatialIndexerConst.symDirtyGraphs, dirtyGraphs);
+                DatasetGraph dsgTracking = DatasetGraphSpatialTracking.track(dsg, dirtyGraphs);
+                dSrvBuilder.dataset(dsgTracking);
+                long seconds = autoRefreshSeconds(dsg.getContext());
+                if ( seconds > 0 )
+                    autoRefresh.add(dap.getName(), dsgTracking, dirtyGraphs, seconds);
+            }
+            if ( SpatialIndexerLib.usesLookup(dsg.getContext()) ) {
+                usesLookup = true;
+                try {
+                    SpatialIndexerLib.buildLookup(DatasetFactory.wrap(dsg), Fuseki.configLog);
+                } catch (SpatialIndexException ex) {
+                    throw new FusekiConfigException("Failed to build spatial index for "+dap.getName()+": "+ex.getMessage(), ex);
+                }
+            } else if ( dsg.getContext().get(SpatialIndex.SPATIAL_INDEX_SYMBOL) != null ) {
+                // Nearest neighbour search over the GeoSPARQL spatial index needs its own tree.
+                SpatialIndex index = dsg.getContext().get(SpatialIndex.SPATIAL_INDEX_SYMBOL);
+                try {
+                    SpatialIndexLookup.build(DatasetFactory.wrap(dsg), index, Fuseki.configLog);
+                } catch (SpatialIndexException ex) {
+                    Fuseki.configLog.warn("No nearest neighbour search for "+dap.getName()+": "+ex.getMessage());
+                }
+            }
+            if ( filterRewrite || dsg.getContext().isTrue(SpatialIndexerConst.symSpatialJoin) ) {
+                usesFilterRewrite |= filterRewrite;
+                RewriteFactory other = dsg.getContext().get(ARQConstants.sysOptimizerFactory);
+                dsg.getContext().set(ARQConstants.sysOptimizerFactory, new SpatialRewriteFactory(other));
+            }
+            return new DataAccessPoint(dap.getName(), dSrvBuilder.build());
         }).collect(Collectors.toList());
 
         // "replace" each DataAccessPoint
@@ -72,13 +118,43 @@ public class FMod_SpatialIndexer implements FusekiModule {
         });
     }
 
+    private static long autoRefreshSeconds(Context cxt) {
+        String x = cxt.getAsString(SpatialIndexerConst.symAutoRefresh);
+        if ( x == null )
+            return 0;
+        try {
+            return Long.parseLong(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+SpatialIndexerConst.symAutoRefresh.getSymbol()+": '"+x+"'");
+            return 0;
+        }
+    }
+
     @Override
     public void configDataAccessPoint(DataAccessPoint dap, Model configModel) {
         FusekiModule.super.configDataAccessPoint(dap, configModel);
     }
 
+    @Override
+    public void serverBeforeStarting(FusekiServer server) {
+        NearestPF.register();
+        if ( usesLookup ) {
+            Fuseki.configLog.info("Spatial property functions use the module spatial index where configured");
+            SpatialLookupPF.register();
+        }
+        if ( usesFilterRewrite ) {
+            Fuseki.configLog.info("Spatial filters rewritten to use the spatial index where configured");
+            SpatialCandidatesPF.register();
+        }
+    }
+
     @Override
     public void serverAfterStarting(FusekiServer server) {
         Fuseki.configLog.info("Customized server start on port " + server.getHttpPort());
     }
+
+    @Override
+    public void serverStopped(FusekiServer server) {
+        autoRefresh.shutdown();
+    }
 }
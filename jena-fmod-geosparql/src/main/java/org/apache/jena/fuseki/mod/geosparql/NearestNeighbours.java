@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+import org.apache.jena.graph.Node;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.AbstractNode;
+import org.locationtech.jts.index.strtree.Boundable;
+import org.locationtech.jts.index.strtree.ItemBoundable;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Nearest neighbour search: iterators of items in increasing distance from a point.
+ * The iterators are lazy; only as much of an index is examined as is needed for the
+ * items taken.
+ */
+public class NearestNeighbours {
+
+    /** An item and its distance from the search point. */
+    public static final class Neighbour {
+        public final Node node;
+        public final double distance;
+
+        public Neighbour(Node node, double distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return node+"@"+distance;
+        }
+    }
+
+    /**
+     * Best-first search of an {@link STRtree}.
+     * Tree nodes and items are taken from a priority queue ordered by the distance
+     * to their envelope; the distance to a tree node is not more than the distance
+     * to anything in it, so items come out in distance order.
+     */
+    public static Iterator<Neighbour> bestFirst(STRtree tree, double x, double y, SpatialDistance distance, Function<Object, Node> itemToNode) {
+        return new BestFirstIterator(tree, x, y, distance, itemToNode);
+    }
+
+    private static class BestFirstIterator implements Iterator<Neighbour> {
+        private static final class Entry {
+            final Boundable boundable;
+            final double distance;
+            Entry(Boundable boundable, double distance) {
+                this.boundable = boundable;
+                this.distance = distance;
+            }
+        }
+
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingDouble((Entry e) -> e.distance));
+        private final double x;
+        private final double y;
+        private final SpatialDistance distance;
+        private final Function<Object, Node> itemToNode;
+        private Neighbour slot = null;
+
+        BestFirstIterator(STRtree tree, double x, double y, SpatialDistance distance, Function<Object, Node> itemToNode) {
+            this.x = x;
+            this.y = y;
+            this.distance = distance;
+            this.itemToNode = itemToNode;
+            if ( ! tree.isEmpty() ) {
+                AbstractNode root = tree.getRoot();
+                if ( root.getBounds() != null )
+                    add(root);
+            }
+        }
+
+        private void add(Boundable b) {
+            Envelope env = (Envelope)b.getBounds();
+            queue.add(new Entry(b, distance.distance(x, y, env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY())));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( slot != null )
+                return true;
+            while ( ! queue.isEmpty() ) {
+                Entry e = queue.poll();
+                if ( e.boundable instanceof ItemBoundable ) {
+                    slot = new Neighbour(itemToNode.apply(((ItemBoundable)e.boundable).getItem()), e.distance);
+                    return true;
+                }
+                for ( Object child : ((AbstractNode)e.boundable).getChildBoundables() )
+                    add((Boundable)child);
+            }
+            return false;
+        }
+
+        @Override
+        public Neighbour next() {
+            if ( ! hasNext() )
+                throw new NoSuchElementException();
+            Neighbour n = slot;
+            slot = null;
+            return n;
+        }
+    }
+
+    /** Merge iterators, each in distance order, into one in distance order. */
+    public static Iterator<Neighbour> merge(List<Iterator<Neighbour>> iterators) {
+        if ( iterators.size() == 1 )
+            return iterators.get(0);
+        return new MergeIterator(iterators);
+    }
+
+    private static class MergeIterator implements Iterator<Neighbour> {
+        private static final class Head {
+            final Neighbour neighbour;
+            final Iterator<Neighbour> rest;
+            Head(Neighbour neighbour, Iterator<Neighbour> rest) {
+                this.neighbour = neighbour;
+                this.rest = rest;
+            }
+        }
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparingDouble((Head h) -> h.neighbour.distance));
+
+        MergeIterator(List<Iterator<Neighbour>> iterators) {
+            iterators.forEach(this::advance);
+        }
+
+        private void advance(Iterator<Neighbour> iter) {
+            if ( iter.hasNext() )
+                heads.add(new Head(iter.next(), iter));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ! heads.isEmpty();
+        }
+
+        @Override
+        public Neighbour next() {
+            Head head = heads.poll();
+            if ( head == null )
+                throw new NoSuchElementException();
+            advance(head.rest);
+            return head.neighbour;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.fuseki.mod.geosparql.NearestNeighbours.Neighbour;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.pfunction.PropFuncArg;
+import org.apache.jena.sparql.pfunction.PropertyFunctionBase;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * k-nearest-neighbour property function:
+ * <pre>
+ *   ?feature spatialmod:nearest(lat lon [k])
+ *   (?feature ?distance) spatialmod:nearest(lat lon [k])
+ * </pre>
+ * Features are returned in increasing distance (in metres) from the point, at most
+ * {@code k} of them if given; {@code k} must not be negative. The search is best-first over the spatial index and
+ * lazy, so with a query {@code LIMIT} only the part of the index needed is examined.
+ * <p>
+ * The distance is to the indexed envelope of a feature's geometry, which is exact
+ * for points.
+ */
+public class NearestPF extends PropertyFunctionBase {
+
+    public static void register() {
+        PropertyFunctionRegistry.get().put(SpatialIndexerConst.nearestPF, NearestPF.class);
+    }
+
+    public NearestPF() {}
+
+    @Override
+    public void build(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt) {
+        if ( argObject.isNode() || argObject.getArgListSize() < 2 || argObject.getArgListSize() > 3 )
+            throw new QueryExecException("Expected (lat lon [k]): "+argObject);
+        if ( argSubject.isList() && ( argSubject.getArgListSize() < 1 || argSubject.getArgListSize() > 2 ) )
+            throw new QueryExecException("Expected ?feature or (?feature ?distance): "+argSubject);
+    }
+
+    @Override
+    public QueryIterator exec(Binding binding, PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt) {
+        double lat = number(Substitute.substitute(argObject.getArg(0), binding));
+        double lon = number(Substitute.substitute(argObject.getArg(1), binding));
+        long k = Long.MAX_VALUE;
+        if ( argObject.getArgListSize() > 2 ) {
+            double x = number(Substitute.substitute(argObject.getArg(2), binding));
+            if ( Double.isNaN(x) || x < 0 )
+                throw new QueryExecException("Bad value for k: "+argObject.getArg(2));
+            k = (long)x;
+        }
+        if ( Double.isNaN(lat) || Double.isNaN(lon) )
+            throw new QueryExecException("Bad lat/lon: "+argObject);
+
+        SpatialLookup lookup = SpatialLookup.forQuery(execCxt.getContext());
+        if ( lookup == null )
+            throw new QueryExecException("No spatial index");
+        lookup = lookup.forGraph(execCxt.getActiveGraph());
+
+        List<Iterator<Neighbour>> iterators = new ArrayList<>();
+        for ( SpatialLookup part : lookup.partitions() ) {
+            Envelope point = SpatialLookupPF.searchEnvelope(part.getSrsInfo(), lon, lat, lon, lat);
+            Iterator<Neighbour> iter = part.nearest(point.getMinX(), point.getMinY(), SpatialDistance.forSRS(part.getSrsInfo()));
+            if ( iter == null )
+                throw new QueryExecException("The spatial index does not support nearest neighbour search (recompute the index with the spatial indexer)");
+            iterators.add(iter);
+        }
+
+        // A feature with several geometries is reported once, at its nearest.
+        Set<Node> seen = new HashSet<>();
+        Stream<Neighbour> neighbours = Iter.asStream(NearestNeighbours.merge(iterators))
+                .filter(n -> seen.add(n.node))
+                .limit(k);
+
+        Node featureArg = Substitute.substitute(argSubject.isNode() ? argSubject.getArg() : argSubject.getArg(0), binding);
+        Node distanceArg = ( argSubject.isList() && argSubject.getArgListSize() > 1 )
+                ? Substitute.substitute(argSubject.getArg(1), binding) : null;
+
+        if ( ! Var.isVar(featureArg) )
+            neighbours = neighbours.filter(n -> n.node.equals(featureArg)).limit(1);
+
+        Stream<Binding> bindings = neighbours.map(n -> {
+            BindingBuilder builder = Binding.builder(binding);
+            if ( Var.isVar(featureArg) )
+                builder.add(Var.alloc(featureArg), n.node);
+            if ( distanceArg != null ) {
+                Node d = NodeValue.makeDouble(n.distance).asNode();
+                if ( Var.isVar(distanceArg) )
+                    builder.add(Var.alloc(distanceArg), d);
+                else if ( ! sameValue(distanceArg, n.distance) )
+                    return null;
+            }
+            return builder.build();
+        }).filter(b -> b != null);
+        return QueryIterPlainWrapper.create(bindings.iterator(), execCxt);
+    }
+
+    private static boolean sameValue(Node node, double distance) {
+        return number(node) == distance;
+    }
+
+    private static double number(Node node) {
+        if ( node.isLiteral() && node.getLiteralValue() instanceof Number )
+            return ((Number)node.getLiteralValue()).doubleValue();
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.geosparql.implementation.GeometryWrapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpExt;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIter1;
+import org.apache.jena.sparql.engine.iterator.QueryIterNullIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.NodeIsomorphismMap;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Spatial join: the filter over the join of two independent patterns, where the
+ * filter includes a spatial relation between a geometry literal variable of each
+ * side (e.g. {@code geof:sfIntersects(?wktA, ?wktB)}).
+ * <p>
+ * The two sides are read in step until one of them ends; that side, the smaller, is
+ * built into a temporary STR-tree on its geometry envelopes. The rows already read
+ * of the other side, then the rest of it, streamed, are probed against the tree, so
+ * at most about twice the smaller side is held in memory.
+ * Pairs with intersecting envelopes are merged and the whole filter evaluated, so the
+ * results are the same as the filter over the join. Evaluation is in the query's
+ * thread: expressions and the execution context are not safe to share between threads.
+ */
+public class OpSpatialJoin extends OpExt {
+
+    private final ExprList exprs;
+    private final Op left;
+    private final Op right;
+    private final Var varLeft;
+    private final Var varRight;
+
+    public OpSpatialJoin(ExprList exprs, Op left, Op right, Var varLeft, Var varRight) {
+        super("spatialjoin");
+        this.exprs = exprs;
+        this.left = left;
+        this.right = right;
+        this.varLeft = varLeft;
+        this.varRight = varRight;
+    }
+
+    @Override
+    public Op effectiveOp() {
+        return OpFilter.filterDirect(exprs, OpJoin.create(left, right));
+    }
+
+    @Override
+    public QueryIterator eval(QueryIterator input, ExecutionContext execCxt) {
+        return new QueryIterRepeatApply(input, execCxt) {
+            @Override
+            protected QueryIterator nextStage(Binding binding) {
+                return join(binding, execCxt);
+            }
+        };
+    }
+
+    private static final class Row {
+        final Binding binding;
+        final Envelope envelope;
+        Row(Binding binding, Envelope envelope) {
+            this.binding = binding;
+            this.envelope = envelope;
+        }
+    }
+
+    private QueryIterator join(Binding binding, ExecutionContext execCxt) {
+        QueryIterator qIterLeft = QC.execute(left, QueryIterSingleton.create(binding, execCxt), execCxt);
+        QueryIterator qIterRight = QC.execute(right, QueryIterSingleton.create(binding, execCxt), execCxt);
+        // Read in step until one side ends: that side is built into the tree.
+        List<Binding> rowsLeft = new ArrayList<>();
+        List<Binding> rowsRight = new ArrayList<>();
+        while ( qIterLeft.hasNext() && qIterRight.hasNext() ) {
+            rowsLeft.add(qIterLeft.next());
+            rowsRight.add(qIterRight.next());
+        }
+        boolean buildLeft = ! qIterLeft.hasNext();
+        QueryIterator qIterBuild = buildLeft ? qIterLeft : qIterRight;
+        QueryIterator qIterProbe = buildLeft ? qIterRight : qIterLeft;
+        List<Binding> rowsBuild = buildLeft ? rowsLeft : rowsRight;
+        List<Binding> rowsProbe = buildLeft ? rowsRight : rowsLeft;
+        Var varBuild = buildLeft ? varLeft : varRight;
+        Var varProbe = buildLeft ? varRight : varLeft;
+        qIterBuild.close();
+
+        // Geometries are compared in the SRS of the first geometry seen.
+        String[] srsURI = { null };
+        STRtree tree = new STRtree();
+        for ( Binding b : rowsBuild ) {
+            Row row = row(b, varBuild, srsURI);
+            if ( row != null )
+                tree.insert(row.envelope, row);
+        }
+        if ( tree.isEmpty() ) {
+            qIterProbe.close();
+            return QueryIterNullIterator.create(execCxt);
+        }
+        tree.build();
+        return new QueryIterProbe(rowsProbe.iterator(), qIterProbe, varProbe, tree, srsURI[0], execCxt);
+    }
+
+    /** Probe the tree with each row already read of the other side, then each row of the input. */
+    private class QueryIterProbe extends QueryIter1 {
+        private Iterator<Binding> rowsRead;
+        private final Var var;
+        private final STRtree tree;
+        private final String[] srsURI;
+        private final Deque<Binding> pending = new ArrayDeque<>();
+
+        QueryIterProbe(Iterator<Binding> rowsRead, QueryIterator input, Var var, STRtree tree, String srsURI, ExecutionContext execCxt) {
+            super(input, execCxt);
+            this.rowsRead = rowsRead;
+            this.var = var;
+            this.tree = tree;
+            this.srsURI = new String[] { srsURI };
+        }
+
+        private Binding nextRow() {
+            if ( rowsRead != null ) {
+                if ( rowsRead.hasNext() )
+                    return rowsRead.next();
+                rowsRead = null;
+            }
+            return getInput().hasNext() ? getInput().next() : null;
+        }
+
+        @Override
+        protected boolean hasNextBinding() {
+            while ( pending.isEmpty() ) {
+                Binding next = nextRow();
+                if ( next == null )
+                    return false;
+                Row p = row(next, var, srsURI);
+                if ( p == null )
+                    continue;
+                tree.query(p.envelope, obj -> {
+                    Row b = (Row)obj;
+                    if ( ! b.envelope.intersects(p.envelope) )
+                        return;
+                    Binding merged = Algebra.merge(b.binding, p.binding);
+                    if ( merged != null && satisfied(merged, getExecContext()) )
+                        pending.add(merged);
+                });
+            }
+            return true;
+        }
+
+        @Override
+        protected Binding moveToNextBinding() {
+            return pending.removeFirst();
+        }
+
+        @Override
+        protected void requestSubCancel() {}
+
+        @Override
+        protected void closeSubIterator() {
+            rowsRead = null;
+            pending.clear();
+        }
+    }
+
+    private boolean satisfied(Binding binding, ExecutionContext execCxt) {
+        for ( Expr expr : exprs ) {
+            if ( ! expr.isSatisfied(binding, execCxt) )
+                return false;
+        }
+        return true;
+    }
+
+    /** The row for a binding; null if the variable is not a geometry literal, as it can't match. */
+    private static Row row(Binding b, Var var, String[] srsURI) {
+        Node node = b.get(var);
+        if ( node == null || ! node.isLiteral() )
+            return null;
+        GeometryWrapper geometry;
+        try {
+            geometry = GeometryWrapper.extract(node);
+            if ( srsURI[0] == null )
+                srsURI[0] = geometry.getSrsURI();
+            else
+                geometry = geometry.convertSRS(srsURI[0]);
+        } catch (Exception ex) {
+            return null;
+        }
+        return new Row(b, geometry.getEnvelope());
+    }
+
+    @Override
+    public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
+        out.print(varLeft.toString());
+        out.print(" ");
+        out.print(varRight.toString());
+        out.print(" ");
+        out.print(exprs.toString());
+        out.println();
+        left.output(out, sCxt);
+        out.println();
+        right.output(out, sCxt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(exprs, left, right, varLeft, varRight);
+    }
+
+    @Override
+    public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
+        if ( ! ( other instanceof OpSpatialJoin ) )
+            return false;
+        OpSpatialJoin op = (OpSpatialJoin)other;
+        return exprs.equals(op.exprs) && varLeft.equals(op.varLeft) && varRight.equals(op.varRight)
+               && left.equalTo(op.left, labelMap) && right.equalTo(op.right, labelMap);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.*;
+
+import org.apache.jena.fuseki.mod.geosparql.NearestNeighbours.Neighbour;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.spatial.SpatialIndexItem;
+import org.apache.jena.graph.Node;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * A spatial index for point data.
+ * <p>
+ * The extent of the points is divided into a regular grid of cells. Points are
+ * held sorted by cell number (row-major) in primitive arrays so a box query is a
+ * binary search and a scan for each row of cells the box covers.
+ * <p>
+ * Items that are not points are kept in a small overflow list that is scanned on
+ * each query so the index gives the same results as an STR-tree for mixed data.
+ * The index is immutable once built.
+ */
+public class PointGridIndex implements SpatialLookup {
+
+    /** Target average number of points in a cell. */
+    private static final int POINTS_PER_CELL = 4;
+    /** Maximum number of cells along one axis; keeps the cell number below 2^30. */
+    private static final int MAX_CELLS_AXIS = 1<<15;
+
+    private final SRSInfo srsInfo;
+
+    // Grid.
+    private final double minX, minY, maxX, maxY;
+    private final int cols, rows;
+    private final double cellWidth, cellHeight;
+
+    // Points, sorted by cell number.
+    private final long[] cells;
+    private final double[] coords;  // x0, y0, x1, y1, ...
+    private final Node[] nodes;
+
+    // Not points.
+    private final Envelope[] overflowEnvelopes;
+    private final Node[] overflowNodes;
+
+    /** Build a grid index from spatial index items (envelopes in the given SRS). */
+    public static PointGridIndex build(Collection<SpatialIndexItem> items, SRSInfo srsInfo) {
+        int n = items.size();
+        double[] px = new double[n];
+        double[] py = new double[n];
+        Node[] pn = new Node[n];
+        int count = 0;
+        List<SpatialIndexItem> others = new ArrayList<>();
+        for ( SpatialIndexItem item : items ) {
+            Envelope env = item.getEnvelope();
+            if ( env.getWidth() == 0 && env.getHeight() == 0 ) {
+                px[count] = env.getMinX();
+                py[count] = env.getMinY();
+                pn[count] = item.getItem().asNode();
+                count++;
+            } else {
+                others.add(item);
+            }
+        }
+        Envelope[] oEnv = new Envelope[others.size()];
+        Node[] oNodes = new Node[others.size()];
+        for ( int i = 0 ; i < others.size() ; i++ ) {
+            oEnv[i] = others.get(i).getEnvelope();
+            oNodes[i] = others.get(i).getItem().asNode();
+        }
+        return new PointGridIndex(srsInfo, count, px, py, pn, oEnv, oNodes);
+    }
+
+    /** Build from arrays of point coordinates and nodes. The first {@code count} entries are used. */
+    public static PointGridIndex build(SRSInfo srsInfo, int count, double[] x, double[] y, Node[] nodes) {
+        return new PointGridIndex(srsInfo, count, x, y, nodes, new Envelope[0], new Node[0]);
+    }
+
+    private PointGridIndex(SRSInfo srsInfo, int n, double[] px, double[] py, Node[] pn, Envelope[] overflowEnvelopes, Node[] overflowNodes) {
+        this.srsInfo = srsInfo;
+        this.overflowEnvelopes = overflowEnvelopes;
+        this.overflowNodes = overflowNodes;
+
+        double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+        for ( int i = 0 ; i < n ; i++ ) {
+            x1 = Math.min(x1, px[i]); x2 = Math.max(x2, px[i]);
+            y1 = Math.min(y1, py[i]); y2 = Math.max(y2, py[i]);
+        }
+        if ( n == 0 ) {
+            x1 = y1 = x2 = y2 = 0;
+        }
+        this.minX = x1; this.minY = y1; this.maxX = x2; this.maxY = y2;
+
+        long cellsTarget = Math.max(1, n / POINTS_PER_CELL);
+        int side = (int)Math.min(MAX_CELLS_AXIS, Math.max(1, Math.ceil(Math.sqrt(cellsTarget))));
+        this.cols = side;
+        this.rows = side;
+        this.cellWidth = (maxX > minX) ? (maxX - minX) / cols : 1;
+        this.cellHeight = (maxY > minY) ? (maxY - minY) / rows : 1;
+
+        // Sort by (cell, index) packed into a long: cell number in the high 32 bits.
+        long[] keys = new long[n];
+        for ( int i = 0 ; i < n ; i++ ) {
+            long cell = cellOf(px[i], py[i]);
+            keys[i] = (cell << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        this.cells = new long[n];
+        this.coords = new double[2*n];
+        this.nodes = new Node[n];
+        for ( int j = 0 ; j < n ; j++ ) {
+            int idx = (int)(keys[j] & 0xFFFFFFFFL);
+            cells[j] = keys[j] >>> 32;
+            coords[2*j] = px[idx];
+            coords[2*j+1] = py[idx];
+            nodes[j] = pn[idx];
+        }
+    }
+
+    private int col(double x) {
+        int c = (int)((x - minX) / cellWidth);
+        return Math.min(cols-1, Math.max(0, c));
+    }
+
+    private int row(double y) {
+        int r = (int)((y - minY) / cellHeight);
+        return Math.min(rows-1, Math.max(0, r));
+    }
+
+    private long cellOf(double x, double y) {
+        return (long)row(y) * cols + col(x);
+    }
+
+    /** First index with cells[i] >= cell. */
+    private int lowerBound(long cell) {
+        int lo = 0;
+        int hi = cells.length;
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( cells[mid] < cell )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public SRSInfo getSrsInfo() {
+        return srsInfo;
+    }
+
+    @Override
+    public void query(Envelope search, ItemVisitor visitor) {
+        if ( cells.length > 0 && search.intersects(minX, maxX, minY, maxY) ) {
+            int c0 = col(search.getMinX());
+            int c1 = col(search.getMaxX());
+            int r0 = row(search.getMinY());
+            int r1 = row(search.getMaxY());
+            for ( int r = r0 ; r <= r1 ; r++ ) {
+                long lo = (long)r * cols + c0;
+                long hi = (long)r * cols + c1;
+                for ( int j = lowerBound(lo) ; j < cells.length && cells[j] <= hi ; j++ ) {
+                    double x = coords[2*j];
+                    double y = coords[2*j+1];
+                    if ( search.intersects(x, y) )
+                        visitor.visit(nodes[j], x, y, x, y);
+                }
+            }
+        }
+        for ( int i = 0 ; i < overflowEnvelopes.length ; i++ ) {
+            Envelope env = overflowEnvelopes[i];
+            if ( search.intersects(env) )
+                visitor.visit(overflowNodes[i], env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
+        }
+    }
+
+    /**
+     * Nearest neighbours by expanding rings of cells around the cell of the search point.
+     * Points found are held until no cell not yet scanned can have a nearer point.
+     */
+    @Override
+    public Iterator<Neighbour> nearest(double x, double y, SpatialDistance distance) {
+        return new RingIterator(x, y, distance);
+    }
+
+    private class RingIterator implements Iterator<Neighbour> {
+        private final double x, y;
+        private final SpatialDistance distance;
+        private final PriorityQueue<Neighbour> candidates = new PriorityQueue<>(Comparator.comparingDouble((Neighbour n) -> n.distance));
+        private final int qc, qr;
+        private int ring = -1;
+        private boolean allScanned;
+
+        RingIterator(double x, double y, SpatialDistance distance) {
+            this.x = x;
+            this.y = y;
+            this.distance = distance;
+            this.qc = col(x);
+            this.qr = row(y);
+            this.allScanned = ( cells.length == 0 );
+            for ( int i = 0 ; i < overflowEnvelopes.length ; i++ ) {
+                Envelope env = overflowEnvelopes[i];
+                double d = distance.distance(x, y, env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
+                candidates.add(new Neighbour(overflowNodes[i], d));
+            }
+        }
+
+        /** Lower bound on the distance to any point in a cell not yet scanned. */
+        private double bound() {
+            if ( allScanned )
+                return Double.POSITIVE_INFINITY;
+            if ( ring < 0 )
+                return 0;
+            int c0 = Math.max(0, qc-ring), c1 = Math.min(cols-1, qc+ring);
+            int r0 = Math.max(0, qr-ring), r1 = Math.min(rows-1, qr+ring);
+            double b = Double.POSITIVE_INFINITY;
+            // Distance to each strip of the grid outside the scanned block.
+            if ( c0 > 0 )
+                b = Math.min(b, distance.distance(x, y, minX, minY, minX + c0*cellWidth, maxY));
+            if ( c1 < cols-1 )
+                b = Math.min(b, distance.distance(x, y, minX + (c1+1)*cellWidth, minY, maxX, maxY));
+            if ( r0 > 0 )
+                b = Math.min(b, distance.distance(x, y, minX, minY, maxX, minY + r0*cellHeight));
+            if ( r1 < rows-1 )
+                b = Math.min(b, distance.distance(x, y, minX, minY + (r1+1)*cellHeight, maxX, maxY));
+            return b;
+        }
+
+        private void expand() {
+            ring++;
+            int r = ring;
+            for ( int rr = qr-r ; rr <= qr+r ; rr++ ) {
+                if ( rr < 0 || rr >= rows )
+                    continue;
+                if ( rr == qr-r || rr == qr+r ) {
+                    scan(rr, Math.max(0, qc-r), Math.min(cols-1, qc+r));
+                } else {
+                    if ( qc-r >= 0 )
+                        scan(rr, qc-r, qc-r);
+                    if ( qc+r < cols )
+                        scan(rr, qc+r, qc+r);
+                }
+            }
+            if ( qc-r <= 0 && qc+r >= cols-1 && qr-r <= 0 && qr+r >= rows-1 )
+                allScanned = true;
+        }
+
+        private void scan(int row, int c0, int c1) {
+            if ( c0 > c1 )
+                return;
+            long lo = (long)row * cols + c0;
+            long hi = (long)row * cols + c1;
+            for ( int j = lowerBound(lo) ; j < cells.length && cells[j] <= hi ; j++ ) {
+                double px = coords[2*j];
+                double py = coords[2*j+1];
+                candidates.add(new Neighbour(nodes[j], distance.distance(x, y, px, py, px, py)));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ( ! allScanned && ( candidates.isEmpty() || candidates.peek().distance > bound() ) )
+                expand();
+            return ! candidates.isEmpty();
+        }
+
+        @Override
+        public Neighbour next() {
+            if ( ! hasNext() )
+                throw new NoSuchElementException();
+            return candidates.poll();
+        }
+    }
+
+    @Override
+    public long size() {
+        return cells.length + overflowNodes.length;
+    }
+
+    /** Number of items that are not points. */
+    public long overflowSize() {
+        return overflowNodes.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PointGridIndex[points=%d, others=%d, grid=%dx%d]", cells.length, overflowNodes.length, cols, rows);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+
+/**
+ * Spatial index with one partition for each SRS of the indexed geometries.
+ * <p>
+ * Geometries are indexed in their own SRS, with no transformation at build time.
+ * A query transforms the query geometry to the SRS of each partition instead.
+ * <p>
+ * The items indexed are those found by {@link SpatialItemScanner}.
+ */
+public class SRSPartitionedIndex implements SpatialLookup {
+
+    private static final SRSInfo querySrsInfo = new SRSInfo(SRS_URI.DEFAULT_WKT_CRS84);
+
+    private final Map<String, STRtreeLookup> partitions;
+    private final List<SpatialLookup> partitionList;
+    private final long skipped;
+
+    private SRSPartitionedIndex(Map<String, STRtreeLookup> partitions, long skipped) {
+        this.partitions = partitions;
+        this.partitionList = List.copyOf(partitions.values());
+        this.skipped = skipped;
+    }
+
+    /** Build the index from all the graphs of a dataset. The caller is responsible for the transaction. */
+    public static SRSPartitionedIndex build(DatasetGraph dsg, Logger log) throws SpatialIndexException {
+        Map<String, STRtreeLookup> partitions = new LinkedHashMap<>();
+        long skipped = SpatialItemScanner.scan(dsg, log, (graph, item, literal, geometry) ->
+            partition(partitions, geometry.getSrsURI()).add(item, geometry.getEnvelope()));
+        partitions.values().forEach(STRtreeLookup::build);
+        SRSPartitionedIndex index = new SRSPartitionedIndex(partitions, skipped);
+        if ( log != null )
+            partitions.values().forEach(p -> log.info("spatial index partition: {}", p));
+        return index;
+    }
+
+    private static STRtreeLookup partition(Map<String, STRtreeLookup> partitions, String srsURI) {
+        return partitions.computeIfAbsent(srsURI, uri -> new STRtreeLookup(new SRSInfo(uri)));
+    }
+
+    /** The SRS of search envelopes passed to {@link #query(Envelope, ItemVisitor)}: CRS84. */
+    @Override
+    public SRSInfo getSrsInfo() {
+        return querySrsInfo;
+    }
+
+    /**
+     * Query with a CRS84 envelope.
+     * The envelopes passed to the visitor are in the SRS of the partition of the item;
+     * use {@link #partitions()} to work with item coordinates.
+     */
+    @Override
+    public void query(Envelope searchEnvelope, ItemVisitor visitor) {
+        if ( partitions.isEmpty() )
+            return;
+        for ( STRtreeLookup part : partitions.values() ) {
+            Envelope env = SpatialLookupPF.searchEnvelope(part.getSrsInfo(), searchEnvelope.getMinX(), searchEnvelope.getMinY(),
+                                                          searchEnvelope.getMaxX(), searchEnvelope.getMaxY());
+            part.query(env, visitor);
+        }
+    }
+
+    @Override
+    public List<SpatialLookup> partitions() {
+        return partitionList;
+    }
+
+    /** The SRS URIs of the partitions. */
+    public List<String> srsURIs() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    @Override
+    public boolean indexesDefaultGeometry() {
+        return true;
+    }
+
+    /** Number of malformed geometry literals skipped when the index was built. */
+    public long skipped() {
+        return skipped;
+    }
+
+    @Override
+    public long size() {
+        long n = 0;
+        for ( STRtreeLookup part : partitions.values() )
+            n += part.size();
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SRSPartitionedIndex[partitions=%s, size=%d, skipped=%d]", partitions.keySet(), size(), skipped);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+import org.apache.jena.fuseki.mod.geosparql.NearestNeighbours.Neighbour;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.graph.Node;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * A {@link SpatialLookup} for items in one SRS, held in a JTS {@link STRtree}.
+ * Items are added, then the index is built by {@link #build()}; it is immutable after that.
+ */
+public class STRtreeLookup implements SpatialLookup {
+
+    /** An indexed item. Entries can be shared between trees. */
+    static final class Entry {
+        final Node node;
+        final Envelope envelope;
+        Entry(Node node, Envelope envelope) {
+            this.node = node;
+            this.envelope = envelope;
+        }
+    }
+
+    private final SRSInfo srsInfo;
+    private final STRtree tree = new STRtree();
+
+    public STRtreeLookup(SRSInfo srsInfo) {
+        this.srsInfo = srsInfo;
+    }
+
+    /** Add an item; the envelope is in the SRS of this index. */
+    public void add(Node node, Envelope envelope) {
+        tree.insert(envelope, new Entry(node, envelope));
+    }
+
+    /** Add an entry, which may also be in other trees. */
+    void add(Entry entry) {
+        tree.insert(entry.envelope, entry);
+    }
+
+    /** Visit each entry whose envelope intersects {@code searchEnvelope}. */
+    void queryEntries(Envelope searchEnvelope, Consumer<Entry> action) {
+        tree.query(searchEnvelope, obj -> {
+            Entry e = (Entry)obj;
+            if ( searchEnvelope.intersects(e.envelope) )
+                action.accept(e);
+        });
+    }
+
+    public STRtreeLookup build() {
+        tree.build();
+        return this;
+    }
+
+    @Override
+    public SRSInfo getSrsInfo() {
+        return srsInfo;
+    }
+
+    @Override
+    public void query(Envelope searchEnvelope, ItemVisitor visitor) {
+        // The tree visits items in nodes whose envelope intersects; queryEntries checks the item.
+        queryEntries(searchEnvelope, e ->
+            visitor.visit(e.node, e.envelope.getMinX(), e.envelope.getMinY(), e.envelope.getMaxX(), e.envelope.getMaxY()));
+    }
+
+    @Override
+    public Iterator<Neighbour> nearest(double x, double y, SpatialDistance distance) {
+        return NearestNeighbours.bestFirst(tree, x, y, distance, obj -> ((Entry)obj).node);
+    }
+
+    @Override
+    public long size() {
+        return tree.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("STRtreeLookup[%s, size=%d]", srsInfo.getSrsURI(), tree.size());
+    }
+}
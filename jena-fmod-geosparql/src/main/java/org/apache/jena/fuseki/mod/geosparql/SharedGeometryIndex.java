@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.*;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.mod.geosparql.NearestNeighbours.Neighbour;
+import org.apache.jena.fuseki.mod.geosparql.STRtreeLookup.Entry;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+
+/**
+ * Spatial index with a tree for each graph and a union view, sharing one store of
+ * items and envelopes.
+ * <p>
+ * Entries are identified by the item and its geometry literal. Each distinct entry is
+ * stored once, whichever and however many graphs it occurs in; the per-graph trees
+ * refer to the shared entries. Each distinct geometry literal is converted to the
+ * SRS of the index once and its envelope is shared by all the entries with that
+ * literal. The union of the graphs is a view that queries each graph tree and
+ * reports each entry once, so no union tree is built.
+ * <p>
+ * Queries on a named graph (inside {@code GRAPH}) use the tree of that graph.
+ * <p>
+ * All envelopes are in one SRS.
+ */
+public class SharedGeometryIndex implements SpatialLookup {
+
+    // Estimated heap size, in bytes, of an entry (header and two references) and of an
+    // envelope (header and four doubles), with compressed references.
+    private static final long ENTRY_BYTES = 24;
+    private static final long ENVELOPE_BYTES = 48;
+
+    private final SRSInfo srsInfo;
+    private final Map<Node, STRtreeLookup> graphs;
+    private final STRtreeLookup empty;
+    private final int entryCount;
+    private final long references;
+    private final int envelopeCount;
+    private final long skipped;
+
+    private SharedGeometryIndex(SRSInfo srsInfo, Map<Node, STRtreeLookup> graphs, int entryCount, long references, int envelopeCount,
+                                long skipped) {
+        this.srsInfo = srsInfo;
+        this.graphs = graphs;
+        this.empty = new STRtreeLookup(srsInfo).build();
+        this.entryCount = entryCount;
+        this.references = references;
+        this.envelopeCount = envelopeCount;
+        this.skipped = skipped;
+    }
+
+    private static final class Key {
+        final Node item;
+        final Node literal;
+        Key(Node item, Node literal) {
+            this.item = item;
+            this.literal = literal;
+        }
+        @Override public int hashCode() { return 31 * item.hashCode() + literal.hashCode(); }
+        @Override public boolean equals(Object other) {
+            if ( ! ( other instanceof Key ) )
+                return false;
+            Key k = (Key)other;
+            return item.equals(k.item) && literal.equals(k.literal);
+        }
+    }
+
+    /** Build the index from all the graphs of a dataset. The caller is responsible for the transaction. */
+    public static SharedGeometryIndex build(DatasetGraph dsg, String srsURI, Logger log) throws SpatialIndexException {
+        SRSInfo srsInfo = new SRSInfo(srsURI);
+        Map<Node, Envelope> envelopes = new HashMap<>();
+        Map<Key, Entry> store = new HashMap<>();
+        Map<Node, STRtreeLookup> graphs = new LinkedHashMap<>();
+        long[] references = { 0 };
+        long[] skipped = { 0 };
+        Logger logger = ( log != null ) ? log : Fuseki.serverLog;
+        long malformed = SpatialItemScanner.scan(dsg, log, (graph, item, literal, geometry) -> {
+            Entry entry = store.get(new Key(item, literal));
+            if ( entry == null ) {
+                Envelope envelope = envelopes.get(literal);
+                if ( envelope == null ) {
+                    try {
+                        envelope = geometry.convertSRS(srsURI).getEnvelope();
+                    } catch (Exception ex) {
+                        logger.warn("spatial index: skipped geometry literal of {} that can't be converted to {}: {}: {}",
+                                    item, srsURI, literal, ex.getMessage());
+                        skipped[0]++;
+                        return;
+                    }
+                    envelopes.put(literal, envelope);
+                }
+                entry = new Entry(item, envelope);
+                store.put(new Key(item, literal), entry);
+            }
+            graphs.computeIfAbsent(graph, g -> new STRtreeLookup(srsInfo)).add(entry);
+            references[0]++;
+        });
+        graphs.values().forEach(STRtreeLookup::build);
+        SharedGeometryIndex index = new SharedGeometryIndex(srsInfo, graphs, store.size(), references[0], envelopes.size(),
+                                                            malformed + skipped[0]);
+        if ( log != null )
+            log.info("spatial index: {} graphs, {} shared entries for {} graph entries, {} envelopes, about {} bytes saved",
+                     graphs.size(), store.size(), references[0], envelopes.size(), index.savedBytes());
+        return index;
+    }
+
+    /** The index for one graph, or null if the graph has no indexed items. */
+    public SpatialLookup graph(Node graphName) {
+        return graphs.get(graphName);
+    }
+
+    /**
+     * The tree of a named graph of the dataset; this index for the default graph, the
+     * union graph, or a graph not of the dataset.
+     */
+    @Override
+    public SpatialLookup forGraph(Graph graph) {
+        if ( ! ( graph instanceof GraphView ) )
+            return this;
+        Node graphName = ((GraphView)graph).getGraphName();
+        if ( graphName == null || Quad.isDefaultGraph(graphName) || Quad.isUnionGraph(graphName) )
+            return this;
+        STRtreeLookup tree = graphs.get(graphName);
+        return ( tree != null ) ? tree : empty;
+    }
+
+    /** Number of entries in the graph trees, counting an entry once for each graph it is in. */
+    public long graphEntries() {
+        return references;
+    }
+
+    /**
+     * Estimated heap, in bytes, saved by sharing entries between graphs and envelopes
+     * between entries, compared to an entry and an envelope for each graph entry.
+     */
+    public long savedBytes() {
+        return ( references - entryCount ) * ENTRY_BYTES + ( references - envelopeCount ) * ENVELOPE_BYTES;
+    }
+
+    /** The names of the graphs with indexed items. */
+    public Set<Node> graphNames() {
+        return Collections.unmodifiableSet(graphs.keySet());
+    }
+
+    @Override
+    public SRSInfo getSrsInfo() {
+        return srsInfo;
+    }
+
+    /** Query the union of the graphs. */
+    @Override
+    public void query(Envelope searchEnvelope, ItemVisitor visitor) {
+        Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for ( STRtreeLookup tree : graphs.values() ) {
+            tree.queryEntries(searchEnvelope, e -> {
+                if ( seen.add(e) )
+                    visitor.visit(e.node, e.envelope.getMinX(), e.envelope.getMinY(), e.envelope.getMaxX(), e.envelope.getMaxY());
+            });
+        }
+    }
+
+    /** Nearest neighbours in the union of the graphs; an item in several graphs may be returned more than once. */
+    @Override
+    public Iterator<Neighbour> nearest(double x, double y, SpatialDistance distance) {
+        List<Iterator<Neighbour>> iterators = new ArrayList<>();
+        for ( STRtreeLookup tree : graphs.values() )
+            iterators.add(tree.nearest(x, y, distance));
+        return NearestNeighbours.merge(iterators);
+    }
+
+    @Override
+    public boolean indexesDefaultGeometry() {
+        return true;
+    }
+
+    /** Number of malformed geometry literals, or ones that can't be converted to the SRS of the index, skipped. */
+    public long skipped() {
+        return skipped;
+    }
+
+    /** Number of distinct entries. */
+    @Override
+    public long size() {
+        return entryCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SharedGeometryIndex[%s, graphs=%d, entries=%d, graph entries=%d, envelopes=%d, skipped=%d]",
+                             srsInfo.getSrsURI(), graphs.size(), entryCount, references, envelopeCount, skipped);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.jena.geosparql.implementation.GeometryWrapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterNullIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.pfunction.PropFuncArg;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.apache.jena.sparql.pfunction.library.PFuncSimpleAndList;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Property function {@code ?feature spatialmod:candidates(geometryLiteral)} binding
+ * the features whose indexed envelope intersects the envelope of the geometry.
+ * <p>
+ * The results are candidates only; this is the index step of a spatial filter, and
+ * the filter is still evaluated. It is generated by {@link SpatialFilterRewrite}.
+ */
+public class SpatialCandidatesPF extends PFuncSimpleAndList {
+
+    public static void register() {
+        PropertyFunctionRegistry.get().put(SpatialIndexerConst.candidatesPF, SpatialCandidatesPF.class);
+    }
+
+    public SpatialCandidatesPF() {}
+
+    @Override
+    public QueryIterator execEvaluated(Binding binding, Node subject, Node predicate, PropFuncArg object, ExecutionContext execCxt) {
+        if ( object.getArgListSize() != 1 )
+            throw new QueryExecException("Expected one geometry literal: "+object);
+        SpatialLookup lookup = SpatialLookup.forQuery(execCxt.getContext());
+        if ( lookup == null )
+            throw new QueryExecException("No spatial index");
+
+        Set<Node> candidates = new HashSet<>();
+        try {
+            GeometryWrapper geometry = GeometryWrapper.extract(object.getArg(0));
+            // Only the query geometry is transformed, once for each SRS of the index.
+            for ( SpatialLookup part : lookup.partitions() ) {
+                Envelope envelope = geometry.convertSRS(part.getSrsInfo().getSrsURI()).getEnvelope();
+                part.query(envelope, (item, x1, y1, x2, y2) -> candidates.add(item));
+            }
+        } catch (Exception ex) {
+            throw new QueryExecException("Bad geometry: "+object.getArg(0)+": "+ex.getMessage(), ex);
+        }
+
+        if ( ! Var.isVar(subject) ) {
+            if ( candidates.contains(subject) )
+                return QueryIterSingleton.create(binding, execCxt);
+            return QueryIterNullIterator.create(execCxt);
+        }
+        Var var = Var.alloc(subject);
+        Iterator<Binding> iter = candidates.stream().map(n -> BindingFactory.binding(binding, var, n)).iterator();
+        return QueryIterPlainWrapper.create(iter, execCxt);
+    }
+}
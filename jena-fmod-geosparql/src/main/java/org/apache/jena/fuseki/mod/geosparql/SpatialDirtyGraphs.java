@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.geosparql.implementation.vocabulary.Geo;
+import org.apache.jena.geosparql.spatial.SpatialExtension;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * The set of graphs that have had geometry-affecting changes since the spatial
+ * index was last (re)built.
+ * <p>
+ * Changes are collected per transaction and only become "dirty" when the
+ * transaction commits. A change that can not be attributed to a single graph
+ * (e.g. a delete with a wildcard graph) marks the whole dataset as dirty.
+ * <p>
+ * Changes are reported by {@link DatasetGraphSpatialTracking}, or, for TDB2, whole
+ * commits by {@link TDB2SpatialTracking}.
+ */
+public class SpatialDirtyGraphs {
+
+    private static final Set<Node> geoPredicates = Set.of(
+        Geo.HAS_GEOMETRY_PROP.asNode(),
+        Geo.HAS_DEFAULT_GEOMETRY_PROP.asNode(),
+        Geo.HAS_SERIALIZATION_PROP.asNode(),
+        Geo.AS_WKT_PROP.asNode(),
+        Geo.AS_GML_PROP.asNode(),
+        SpatialExtension.GEO_LAT_PROP.asNode(),
+        SpatialExtension.GEO_LON_PROP.asNode());
+
+    /** Get the dirty graph tracker for a dataset, or null if tracking is not enabled. */
+    public static SpatialDirtyGraphs get(DatasetGraph dsg) {
+        return dsg.getContext().get(SpatialIndexerConst.symDirtyGraphs);
+    }
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean allDirty = false;
+    // Recomputations started by drain() and not yet finished.
+    private final AtomicInteger inProgress = new AtomicInteger(0);
+
+    // Called before the state is read; see setTracker.
+    private volatile Runnable tracker = null;
+
+    // Changes of the transaction on this thread.
+    private final ThreadLocal<Pending> pending = ThreadLocal.withInitial(Pending::new);
+
+    private static class Pending {
+        final Set<String> graphs = new HashSet<>();
+        boolean all = false;
+        void reset() { graphs.clear(); all = false; }
+    }
+
+    public SpatialDirtyGraphs() {}
+
+    /** Does a change to a triple with this predicate affect the spatial index? */
+    public static boolean isGeoPredicate(Node predicate) {
+        if ( predicate == null || ! predicate.isConcrete() )
+            return true;
+        return geoPredicates.contains(predicate);
+    }
+
+    /** Note a change to a quad (or quad pattern) in the current transaction. */
+    public void change(Node graph, Node predicate) {
+        if ( ! isGeoPredicate(predicate) )
+            return;
+        Pending p = pending.get();
+        if ( graph == null || ! graph.isURI() || Quad.isUnionGraph(graph) ) {
+            p.all = true;
+            return;
+        }
+        p.graphs.add(graphName(graph));
+    }
+
+    /** Note a change to a graph as a whole (e.g. the graph is dropped or replaced). */
+    public void changeGraph(Node graph) {
+        change(graph, null);
+    }
+
+    /** The current transaction committed. */
+    public void commit() {
+        Pending p = pending.get();
+        if ( p.all )
+            allDirty = true;
+        dirty.addAll(p.graphs);
+        p.reset();
+    }
+
+    /** The current transaction aborted or ended without commit. */
+    public void abort() {
+        pending.get().reset();
+    }
+
+    /** A change to unknown graphs has been committed. */
+    public void markAllDirty() {
+        allDirty = true;
+    }
+
+    /**
+     * Set an action to run before the state is read, so that the source of changes
+     * can catch up (see {@link TDB2SpatialTracking}).
+     */
+    public void setTracker(Runnable tracker) {
+        this.tracker = tracker;
+    }
+
+    private void track() {
+        Runnable r = tracker;
+        if ( r != null )
+            r.run();
+    }
+
+    public boolean isDirty() {
+        track();
+        return allDirty || ! dirty.isEmpty();
+    }
+
+    /**
+     * Whether the index may not match the data: there are dirty graphs, or a
+     * recomputation for drained graphs has not finished.
+     */
+    public boolean isStale() {
+        return isDirty() || inProgress.get() > 0;
+    }
+
+    /** Whether a change has been made that was not limited to a known set of graphs. */
+    public boolean isAllDirty() {
+        return allDirty;
+    }
+
+    /**
+     * Return the dirty graphs and reset to "clean". If the whole dataset is dirty,
+     * the list is empty and {@link Drained#all} is true. If the recomputation fails,
+     * use {@link #restore} to put the graphs back. Call {@link #finished} when the
+     * recomputation ends, whether it succeeded or not.
+     */
+    public synchronized Drained drain() {
+        track();
+        inProgress.incrementAndGet();
+        boolean all = allDirty;
+        allDirty = false;
+        List<String> graphs = new ArrayList<>();
+        for ( Iterator<String> iter = dirty.iterator() ; iter.hasNext() ; ) {
+            graphs.add(iter.next());
+            iter.remove();
+        }
+        return new Drained(all, graphs);
+    }
+
+    /** Return graphs taken by {@link #drain()} after a failed recomputation. */
+    public synchronized void restore(Drained drained) {
+        if ( drained.all )
+            allDirty = true;
+        dirty.addAll(drained.graphs);
+    }
+
+    /** A recomputation started by {@link #drain()} has ended. */
+    public void finished() {
+        inProgress.decrementAndGet();
+    }
+
+    public static class Drained {
+        public final boolean all;
+        public final List<String> graphs;
+        Drained(boolean all, List<String> graphs) {
+            this.all = all;
+            this.graphs = Collections.unmodifiableList(graphs);
+        }
+        public boolean isEmpty() { return ! all && graphs.isEmpty(); }
+    }
+
+    private static String graphName(Node graph) {
+        if ( Quad.isDefaultGraph(graph) )
+            return SpatialIndexerConst.defaultGraphName;
+        return graph.getURI();
+    }
+
+    @Override
+    public String toString() {
+        return allDirty ? "SpatialDirtyGraphs[all]" : "SpatialDirtyGraphs"+dirty;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import org.apache.jena.geosparql.implementation.SRSInfo;
+
+/**
+ * Distance, in metres, from a point to an envelope, in the coordinates of an SRS.
+ * <p>
+ * For a geographic SRS, this is the great circle distance to the nearest point of
+ * the envelope as a latitude/longitude box, which may cross the antimeridian
+ * ({@link #toLatLonBox}); for a projected SRS, the Euclidean distance
+ * with the SRS units taken to be metres. For a point item it is the distance to the
+ * point; for other items it is the distance to the envelope, which is not more than
+ * the distance to the geometry.
+ */
+@FunctionalInterface
+public interface SpatialDistance {
+
+    public static final double EARTH_RADIUS_METRES = 6_371_008.8;
+
+    /** Distance from (x,y) to the envelope; 0 if the point is in the envelope. */
+    public double distance(double x, double y, double minX, double minY, double maxX, double maxY);
+
+    /** The distance function for coordinates in the given SRS. */
+    public static SpatialDistance forSRS(SRSInfo srsInfo) {
+        if ( ! srsInfo.isGeographic() )
+            return SpatialDistance::euclidean;
+        // Envelopes are from the X/Y geometry of a GeometryWrapper: x = longitude, y = latitude.
+        return (x, y, x1, y1, x2, y2) -> toLatLonBox(y, x, y1, x1, y2, x2);
+    }
+
+    /**
+     * Great circle distance in metres from a point to the nearest point of a
+     * latitude/longitude box. The point's longitude may be outside the range of the box
+     * by any amount, for example across the antimeridian.
+     */
+    public static double toLatLonBox(double lat, double lon, double lat1, double lon1, double lat2, double lon2) {
+        double width = lon2 - lon1;
+        if ( width >= 360 || normalize360(lon - lon1) <= width ) {
+            // Within the longitudes of the box: the nearest point is on the same meridian.
+            if ( lat < lat1 )
+                return EARTH_RADIUS_METRES * Math.toRadians(lat1 - lat);
+            if ( lat > lat2 )
+                return EARTH_RADIUS_METRES * Math.toRadians(lat - lat2);
+            return 0;
+        }
+        // Otherwise the nearest point is on one of the meridian edges.
+        return Math.min(toMeridian(lat, lon, lon1, lat1, lat2), toMeridian(lat, lon, lon2, lat1, lat2));
+    }
+
+    /** Great circle distance in metres from a point to the meridian {@code lonE} between {@code lat1} and {@code lat2}. */
+    private static double toMeridian(double lat, double lon, double lonE, double lat1, double lat2) {
+        double d = Math.min(haversine(lat, lon, lat1, lonE), haversine(lat, lon, lat2, lonE));
+        double cosDLon = Math.cos(Math.toRadians(lon - lonE));
+        if ( cosDLon > 0 ) {
+            // The foot of the perpendicular from the point to the great circle of the meridian.
+            double latFoot = Math.toDegrees(Math.atan(Math.tan(Math.toRadians(lat)) / cosDLon));
+            if ( latFoot > lat1 && latFoot < lat2 )
+                d = Math.min(d, haversine(lat, lon, latFoot, lonE));
+        }
+        return d;
+    }
+
+    /** An angle in degrees as 0 to 360. */
+    private static double normalize360(double degrees) {
+        double x = degrees % 360;
+        return ( x < 0 ) ? x + 360 : x;
+    }
+
+    public static double euclidean(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x - clamp(x, x1, x2);
+        double dy = y - clamp(y, y1, y2);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    public static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    /** Great circle distance in metres. */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat/2) * Math.sin(dLat/2)
+                 + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon/2) * Math.sin(dLon/2);
+        return 2 * EARTH_RADIUS_METRES * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
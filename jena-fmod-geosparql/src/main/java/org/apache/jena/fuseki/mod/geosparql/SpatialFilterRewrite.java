@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.geosparql.implementation.GeometryWrapper;
+import org.apache.jena.geosparql.implementation.vocabulary.Geo;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.OpWalker;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.*;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.pfunction.PropFuncArg;
+
+/**
+ * Algebra rewrite that uses the spatial index for spatial filter functions with a
+ * constant geometry.
+ * <pre>
+ *   (filter (geof:sfWithin ?wkt "POLYGON(...)"^^geo:wktLiteral)
+ *     (bgp (?f geo:hasGeometry ?g) (?g geo:asWKT ?wkt) ...))
+ * </pre>
+ * becomes
+ * <pre>
+ *   (filter (geof:sfWithin ?wkt "POLYGON(...)"^^geo:wktLiteral)
+ *     (sequence
+ *       (propfunc spatialmod:candidates ?f ("POLYGON(...)"^^geo:wktLiteral) (table unit))
+ *       (bgp (?f geo:hasGeometry ?g) (?g geo:asWKT ?wkt) ...)))
+ * </pre>
+ * so the index lookup comes first and binds the features for the rest of the pattern.
+ * The filter is kept; the index gives candidates by envelope only.
+ * <p>
+ * Only functions that can be true only if the envelopes intersect are rewritten
+ * (not the "disjoint" functions). The index must be up-to-date with the data for the
+ * results to be the same as without the rewrite; {@link SpatialRewriteFactory} only
+ * applies it when the dirty graph tracking of the dataset says it is.
+ * <p>
+ * Patterns inside {@code GRAPH} are not rewritten: the index is for the whole
+ * dataset, and with an index per graph, would not have the items of the graph.
+ * {@code geo:hasDefaultGeometry} patterns are only rewritten if the index has those
+ * features (see {@link SpatialLookup#indexesDefaultGeometry()}).
+ */
+public class SpatialFilterRewrite extends TransformCopy {
+
+    private static final String GEOF = "http://www.opengis.net/def/function/geosparql/";
+
+    /** Relations where a match implies the envelopes intersect. */
+    private static final Set<String> envelopeFunctions = Set.of(
+        GEOF+"sfEquals", GEOF+"sfIntersects", GEOF+"sfTouches", GEOF+"sfCrosses",
+        GEOF+"sfWithin", GEOF+"sfContains", GEOF+"sfOverlaps",
+        GEOF+"ehEquals", GEOF+"ehMeet", GEOF+"ehOverlap", GEOF+"ehCovers",
+        GEOF+"ehCoveredBy", GEOF+"ehInside", GEOF+"ehContains",
+        GEOF+"rcc8eq", GEOF+"rcc8ec", GEOF+"rcc8po", GEOF+"rcc8tppi",
+        GEOF+"rcc8tpp", GEOF+"rcc8ntpp", GEOF+"rcc8ntppi");
+
+    /** Whether the function is a spatial relation that can be true only if the envelopes of the geometries intersect. */
+    public static boolean impliesEnvelopeIntersects(String functionIRI) {
+        return functionIRI != null && envelopeFunctions.contains(functionIRI);
+    }
+
+    private static final Node candidatesPF = NodeFactory.createURI(SpatialIndexerConst.candidatesPF);
+
+    /** Rewrite the spatial filters of an algebra expression that are not inside {@code GRAPH}. */
+    public static Op rewrite(Op op, SpatialLookup lookup) {
+        // Basic patterns inside GRAPH. They are leaves, so are unchanged objects when the filter above is transformed.
+        Set<Op> inGraph = Collections.newSetFromMap(new IdentityHashMap<>());
+        OpWalker.walk(op, new OpVisitorBase() {
+            @Override
+            public void visit(OpGraph opGraph) {
+                OpWalker.walk(opGraph.getSubOp(), new OpVisitorBase() {
+                    @Override public void visit(OpBGP opBGP) { inGraph.add(opBGP); }
+                });
+            }
+        });
+        return Transformer.transform(new SpatialFilterRewrite(lookup.indexesDefaultGeometry(), inGraph), op);
+    }
+
+    private final boolean defaultGeometry;
+    private final Set<Op> excluded;
+
+    private SpatialFilterRewrite(boolean defaultGeometry, Set<Op> excluded) {
+        this.defaultGeometry = defaultGeometry;
+        this.excluded = excluded;
+    }
+
+    @Override
+    public Op transform(OpFilter opFilter, Op subOp) {
+        if ( ! ( subOp instanceof OpBGP ) || excluded.contains(subOp) )
+            return super.transform(opFilter, subOp);
+        OpBGP opBGP = (OpBGP)subOp;
+        ExprList exprs = opFilter.getExprs();
+        for ( Expr expr : exprs ) {
+            Op op = rewrite(expr, opBGP);
+            if ( op != null )
+                return OpFilter.filterDirect(exprs, op);
+        }
+        return super.transform(opFilter, subOp);
+    }
+
+    private Op rewrite(Expr expr, OpBGP opBGP) {
+        if ( ! expr.isFunction() )
+            return null;
+        ExprFunction func = expr.getFunction();
+        if ( ! impliesEnvelopeIntersects(func.getFunctionIRI()) )
+            return null;
+        if ( func.numArgs() != 2 )
+            return null;
+        Expr arg1 = func.getArg(1);
+        Expr arg2 = func.getArg(2);
+        Var var;
+        Node geometry;
+        if ( arg1.isVariable() && arg2.isConstant() ) {
+            var = arg1.asVar();
+            geometry = arg2.getConstant().asNode();
+        } else if ( arg2.isVariable() && arg1.isConstant() ) {
+            var = arg2.asVar();
+            geometry = arg1.getConstant().asNode();
+        } else {
+            return null;
+        }
+        if ( ! isGeometryLiteral(geometry) )
+            return null;
+
+        Node feature = featureVar(opBGP.getPattern().getList(), var);
+        if ( feature == null )
+            return null;
+        Op lookup = new OpPropFunc(candidatesPF, new PropFuncArg(feature), new PropFuncArg(List.of(geometry)), OpTable.unit());
+        return OpSequence.create(lookup, opBGP);
+    }
+
+    /**
+     * Find {@code ?f geo:hasGeometry ?g . ?g geo:asWKT ?var} and return {@code ?f},
+     * or null if there isn't such a pattern with {@code ?f} a variable.
+     * {@code geo:hasDefaultGeometry} is accepted if the index has those features.
+     */
+    private Node featureVar(List<Triple> triples, Var var) {
+        for ( Triple t1 : triples ) {
+            if ( ! t1.getObject().equals(var) )
+                continue;
+            Node p1 = t1.getPredicate();
+            if ( ! p1.equals(Geo.AS_WKT_NODE) && ! p1.equals(Geo.AS_GML_NODE) )
+                continue;
+            Node geom = t1.getSubject();
+            for ( Triple t2 : triples ) {
+                Node p2 = t2.getPredicate();
+                if ( ! t2.getObject().equals(geom) )
+                    continue;
+                boolean hasGeometry = p2.equals(Geo.HAS_GEOMETRY_NODE)
+                                      || ( defaultGeometry && p2.equals(Geo.HAS_DEFAULT_GEOMETRY_NODE) );
+                if ( ! hasGeometry )
+                    continue;
+                if ( Var.isVar(t2.getSubject()) )
+                    return t2.getSubject();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isGeometryLiteral(Node node) {
+        if ( ! node.isLiteral() )
+            return false;
+        try {
+            GeometryWrapper.extract(node);
+            return true;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.geosparql.implementation.GeometryWrapper;
+import org.apache.jena.geosparql.implementation.datatype.WKTDatatype;
+import org.apache.jena.geosparql.implementation.vocabulary.Geo;
+import org.apache.jena.geosparql.spatial.property_functions.SpatialExtension;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * The geometries of an indexed item in a graph, for the exact test after a lookup
+ * on envelopes. As for the GeoSPARQL property functions, these are the geometries
+ * of {@code geo:hasDefaultGeometry}, else of {@code geo:hasGeometry}, else the
+ * serializations of the item itself, else its {@code geo:lat}/{@code geo:long}
+ * point. Bad literals are skipped.
+ */
+class SpatialGeometries {
+
+    /** The geometries of an item; empty if the item has none in the graph. */
+    static List<GeometryWrapper> find(Graph graph, Node item) {
+        List<GeometryWrapper> geometries = new ArrayList<>();
+        viaProperty(graph, item, Geo.HAS_DEFAULT_GEOMETRY_NODE, geometries);
+        if ( geometries.isEmpty() )
+            viaProperty(graph, item, Geo.HAS_GEOMETRY_NODE, geometries);
+        if ( geometries.isEmpty() )
+            serializations(graph, item, geometries);
+        if ( geometries.isEmpty() )
+            latLong(graph, item, geometries);
+        return geometries;
+    }
+
+    private static void viaProperty(Graph graph, Node item, Node property, List<GeometryWrapper> geometries) {
+        ExtendedIterator<Triple> iter = graph.find(item, property, Node.ANY);
+        try {
+            while ( iter.hasNext() )
+                serializations(graph, iter.next().getObject(), geometries);
+        } finally {
+            iter.close();
+        }
+    }
+
+    private static void serializations(Graph graph, Node geometry, List<GeometryWrapper> geometries) {
+        literals(graph, geometry, Geo.AS_WKT_NODE, geometries);
+        literals(graph, geometry, Geo.AS_GML_NODE, geometries);
+    }
+
+    private static void literals(Graph graph, Node geometry, Node property, List<GeometryWrapper> geometries) {
+        ExtendedIterator<Triple> iter = graph.find(geometry, property, Node.ANY);
+        try {
+            while ( iter.hasNext() ) {
+                Node literal = iter.next().getObject();
+                try {
+                    geometries.add(GeometryWrapper.extract(literal));
+                } catch (RuntimeException ex) { /* Not a geometry literal */ }
+            }
+        } finally {
+            iter.close();
+        }
+    }
+
+    private static void latLong(Graph graph, Node item, List<GeometryWrapper> geometries) {
+        Node lat = object(graph, item, SpatialExtension.GEO_LAT_PROP.asNode());
+        Node lon = object(graph, item, SpatialExtension.GEO_LON_PROP.asNode());
+        if ( lat == null || lon == null )
+            return;
+        if ( ! ( lat.getLiteralValue() instanceof Number ) || ! ( lon.getLiteralValue() instanceof Number ) )
+            return;
+        double y = ((Number)lat.getLiteralValue()).doubleValue();
+        double x = ((Number)lon.getLiteralValue()).doubleValue();
+        geometries.add((GeometryWrapper)WKTDatatype.INSTANCE.parse("POINT("+x+" "+y+")"));
+    }
+
+    private static Node object(Graph graph, Node subject, Node property) {
+        ExtendedIterator<Triple> iter = graph.find(subject, property, Node.ANY);
+        try {
+            if ( ! iter.hasNext() )
+                return null;
+            Node o = iter.next().getObject();
+            return o.isLiteral() ? o : null;
+        } finally {
+            iter.close();
+        }
+    }
+}
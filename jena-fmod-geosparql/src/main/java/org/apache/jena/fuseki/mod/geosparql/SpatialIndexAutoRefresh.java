@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.slf4j.Logger;
+
+/**
+ * Periodically recompute the spatial index of datasets for the graphs that have
+ * changed since the last build.
+ */
+public class SpatialIndexAutoRefresh {
+    private static Logger LOG = Fuseki.serverLog;
+
+    private ScheduledExecutorService executor = null;
+
+    public SpatialIndexAutoRefresh() {}
+
+    /** Add a dataset to be checked every {@code seconds}. */
+    public synchronized void add(String name, DatasetGraph dsg, SpatialDirtyGraphs dirtyGraphs, long seconds) {
+        if ( executor == null ) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "SpatialIndexAutoRefresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        LOG.info("Spatial index auto refresh for {} every {}s", name, seconds);
+        executor.scheduleWithFixedDelay(()->refresh(name, dsg, dirtyGraphs), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private static void refresh(String name, DatasetGraph dsg, SpatialDirtyGraphs dirtyGraphs) {
+        if ( ! dirtyGraphs.isDirty() )
+            return;
+        try {
+            Dataset ds = DatasetFactory.wrap(dsg);
+            if ( SpatialIndexerLib.usesLookup(ds.getContext()) ) {
+                LOG.info("Spatial index auto refresh: {}", name);
+                SpatialIndexerLib.rebuildLookupDirty(ds, dirtyGraphs, LOG);
+                return;
+            }
+            SpatialIndex index = ds.getContext().get(SpatialIndex.SPATIAL_INDEX_SYMBOL);
+            if ( index == null )
+                return;
+            LOG.info("Spatial index auto refresh: {}", name);
+            SpatialIndexerLib.recomputeDirty(ds, index, dirtyGraphs, LOG);
+        } catch (Throwable th) {
+            // Keep the schedule running; the graphs are still dirty.
+            LOG.warn("Spatial index auto refresh failed: "+name, th);
+        }
+    }
+
+    public synchronized void shutdown() {
+        if ( executor != null ) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -65,27 +65,52 @@ public class SpatialIndexComputeService extends BaseActionREST { //ActionREST {
     @Override
     protected void doPost(HttpAction action) {
 
-        String spatialIndexFilePathStr = action.getRequestParameter("spatial-index-file");
+        String spatialIndexFilePathStr = action.getRequestParameter(SpatialIndexerConst.paramIndexFile);
 
-        String commit = action.getRequestParameter("commit");
+        String commit = action.getRequestParameter(SpatialIndexerConst.paramCommit);
+
+        String mode = action.getRequestParameter(SpatialIndexerConst.paramMode);
+        if ( mode == null )
+            mode = SpatialIndexerConst.modeGraphs;
+        boolean dirtyMode = mode.equals(SpatialIndexerConst.modeDirty);
+        if ( ! dirtyMode && ! mode.equals(SpatialIndexerConst.modeGraphs) )
+            ServletOps.errorBadRequest("Unknown mode: '"+mode+"'");
 
         DatasetGraph dsg = action.getDataset();
 
-        action.beginRead();
+        SpatialDirtyGraphs dirtyGraphs = null;
+        List<String> graphs = null;
+        if ( dirtyMode ) {
+            dirtyGraphs = SpatialDirtyGraphs.get(dsg);
+            if ( dirtyGraphs == null )
+                ServletOps.errorBadRequest("Dirty graph tracking is not enabled for this dataset");
+        } else {
+            action.beginRead();
 //        GraphTarget graphTarget = determineTarget(dsg, action);
-        List<String> graphs = getGraphs(dsg, action);
+            graphs = getGraphs(dsg, action);
 //        if (!graphTarget.exists())
 //            ServletOps.errorNotFound("No data graph: " + graphTarget.label());
-        action.end();
+            action.end();
+        }
 
         Dataset ds = DatasetFactory.wrap(dsg);
         try {
             SpatialIndex index = ds.getContext().get(SpatialIndex.SPATIAL_INDEX_SYMBOL);
 
-            if (index == null) { // no spatial index has been configured
+            if ( SpatialIndexerLib.usesLookup(ds.getContext()) ) {
+                // Module index: always built in full, and held in memory only.
+                action.log.info(format("[%d] spatial index: computation started (type=%s)", action.id,
+                                       SpatialIndexerLib.indexType(ds.getContext())));
+                if ( dirtyMode )
+                    SpatialIndexerLib.rebuildLookupDirty(ds, dirtyGraphs, action.log);
+                else
+                    SpatialIndexerLib.buildLookup(ds, action.log);
+                if ( commit != null )
+                    action.log.warn(format("[%d] spatial index: index type is not persisted - ignoring commit", action.id));
+            } else if (index == null) { // no spatial index has been configured
                 action.log.error(format("[%d] no spatial index has been configured for the dataset", action.id));
             } else {
-                action.log.info(format("[%d] spatial index: computation started", action.id));
+                action.log.info(format("[%d] spatial index: computation started (mode=%s)", action.id, mode));
 
                 File targetFile = null;
                 if (spatialIndexFilePathStr != null) {
@@ -94,23 +119,10 @@ public class SpatialIndexComputeService extends BaseActionREST { //ActionREST {
                     targetFile = index.getLocation();
                 }
 
-                // check if graph based index has been configured on the dataset
-                boolean spatialIndexPerGraph = ds.getContext().get(SpatialIndex.symSpatialIndexPerGraph, false);
-
-                // no graph based index
-                if (!spatialIndexPerGraph) {
-                    action.log.info(format("[%d] (re)computing full spatial index as single index tree", action.id));
-                    index = SpatialIndex.buildSpatialIndex(ds, index.getSrsInfo().getSrsURI(), false);
-                } else {
-                    boolean isUnionGraph = graphs.contains(HttpNames.graphTargetUnion);
-                    if (isUnionGraph) { // union graph means we compute the whole index
-                        action.log.info(format("[%d] (re)computing full spatial index as separate index trees", action.id));
-                        index = SpatialIndex.buildSpatialIndex(ds, index.getSrsInfo().getSrsURI(), true);
-                    } else {
-                        action.log.info(format("[%d] (re)computing spatial index for graphs {}", action.id), graphs);
-                        index = SpatialIndex.recomputeIndexForGraphs(index, ds, graphs);
-                    }
-                }
+                if ( dirtyMode )
+                    index = SpatialIndexerLib.recomputeDirty(ds, index, dirtyGraphs, action.log);
+                else
+                    index = SpatialIndexerLib.recompute(ds, index, graphs, action.log);
 
                 index.setLocation(targetFile);
 
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.jena.fuseki.mod.geosparql.NearestNeighbours.Neighbour;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.geosparql.spatial.SpatialIndexItem;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.util.Context;
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+
+/**
+ * {@link SpatialLookup} view of a GeoSPARQL {@link SpatialIndex}.
+ * <p>
+ * The STR-tree only returns the items so the envelope passed to an
+ * {@link SpatialLookup.ItemVisitor} is all {@code NaN}.
+ * <p>
+ * {@link SpatialIndex} does not provide nearest neighbour search, or access to its
+ * tree, so for nearest neighbour search a tree of the same items is built from the
+ * dataset by {@link #build}, when the spatial index is (re)computed by the module,
+ * and kept in the dataset context. Queries never build the tree.
+ */
+public class SpatialIndexLookup implements SpatialLookup {
+
+    private final SpatialIndex index;
+    private final STRtreeLookup nearestTree;
+
+    /** A lookup without nearest neighbour search. */
+    public SpatialIndexLookup(SpatialIndex index) {
+        this(index, null);
+    }
+
+    private SpatialIndexLookup(SpatialIndex index, STRtreeLookup nearestTree) {
+        this.index = index;
+        this.nearestTree = nearestTree;
+    }
+
+    /**
+     * Build the lookup, with the tree for nearest neighbour search, for a spatial index
+     * of the dataset, and set it in the dataset context.
+     */
+    public static SpatialIndexLookup build(Dataset ds, SpatialIndex index, Logger log) throws SpatialIndexException {
+        STRtreeLookup tree = new STRtreeLookup(index.getSrsInfo());
+        boolean txn = ! ds.isInTransaction();
+        if ( txn )
+            ds.begin(ReadWrite.READ);
+        try {
+            for ( SpatialIndexItem item : SpatialIndex.getSpatialIndexItems(ds, index.getSrsInfo().getSrsURI()) )
+                tree.add(item.getItem().asNode(), item.getEnvelope());
+        } finally {
+            if ( txn )
+                ds.end();
+        }
+        tree.build();
+        SpatialIndexLookup lookup = new SpatialIndexLookup(index, tree);
+        ds.getContext().set(SpatialIndexerConst.symIndexLookup, lookup);
+        log.info("spatial index: built nearest neighbour tree {}", tree);
+        return lookup;
+    }
+
+    /**
+     * The lookup for a spatial index: the one built by {@link #build} for this index if
+     * it is in the context, else one without nearest neighbour search.
+     */
+    static SpatialIndexLookup get(Context cxt, SpatialIndex index) {
+        SpatialIndexLookup lookup = cxt.get(SpatialIndexerConst.symIndexLookup);
+        if ( lookup != null && lookup.index == index )
+            return lookup;
+        return new SpatialIndexLookup(index);
+    }
+
+    /**
+     * Nearest neighbour search over the tree built with the lookup.
+     * Returns null if there is no tree.
+     */
+    @Override
+    public Iterator<Neighbour> nearest(double x, double y, SpatialDistance distance) {
+        if ( nearestTree == null )
+            return null;
+        return nearestTree.nearest(x, y, distance);
+    }
+
+    @Override
+    public SRSInfo getSrsInfo() {
+        return index.getSrsInfo();
+    }
+
+    @Override
+    public void query(Envelope searchEnvelope, ItemVisitor visitor) {
+        for ( Resource r : index.query(searchEnvelope) )
+            visitor.visit(r.asNode(), Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    @Override
+    public Set<Node> query(Envelope searchEnvelope) {
+        Set<Node> results = new HashSet<>();
+        for ( Resource r : index.query(searchEnvelope) )
+            results.add(r.asNode());
+        return results;
+    }
+
+    @Override
+    public long size() {
+        return index.getSize();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.util.Symbol;
+
+/**
+ * Context symbols, request parameters and other constants of the spatial indexer module.
+ * <p>
+ * Context settings are given in the dataset configuration, for example:
+ * <pre>
+ *   ja:context [ ja:cxtName "http://jena.apache.org/fuseki/mod/spatial#dirtyTracking" ; ja:cxtValue true ] ;
+ * </pre>
+ */
+public class SpatialIndexerConst {
+    public static final String NS = "http://jena.apache.org/fuseki/mod/spatial#";
+
+    /**
+     * Enable tracking of graphs with geometry-affecting changes (boolean).
+     * For TDB2, any write commit marks the whole dataset as changed.
+     */
+    public static final Symbol symDirtyTracking     = Symbol.create(NS+"dirtyTracking");
+
+    /** Interval, in seconds, for recomputing the index for dirty graphs in the background. 0 or unset means off. */
+    public static final Symbol symAutoRefresh       = Symbol.create(NS+"autoRefresh");
+
+    /** Context entry holding the {@link SpatialDirtyGraphs} of a dataset (set by the module). */
+    public static final Symbol symDirtyGraphs       = Symbol.create(NS+"dirtyGraphs");
+
+    /**
+     * The spatial index implementation used by the spatial query functions: {@link #indexTypeSTRtree}
+     * (the default, the GeoSPARQL spatial index), {@link #indexTypeGrid}, {@link #indexTypeSRS}
+     * or {@link #indexTypeShared}.
+     */
+    public static final Symbol symIndexType         = Symbol.create(NS+"indexType");
+
+    /** Context entry holding the {@link SpatialLookup} of a dataset (set by the module). */
+    public static final Symbol symSpatialLookup     = Symbol.create(NS+"spatialLookup");
+
+    /**
+     * Context entry holding the {@link SpatialIndexLookup}, with its nearest neighbour
+     * tree, of the GeoSPARQL spatial index of a dataset (set by the module).
+     */
+    public static final Symbol symIndexLookup       = Symbol.create(NS+"indexLookup");
+
+    /**
+     * Rewrite spatial filter functions with a constant geometry to use the spatial index (boolean).
+     * Implies {@link #symDirtyTracking}: the rewrite is not used while graphs have
+     * changed since the index was built.
+     */
+    public static final Symbol symFilterRewrite     = Symbol.create(NS+"filterRewrite");
+
+    /**
+     * Evaluate a spatial filter joining two independent patterns, such as
+     * {@code FILTER(geof:sfIntersects(?wkt1, ?wkt2))}, as a spatial join (boolean).
+     * See {@link OpSpatialJoin}.
+     */
+    public static final Symbol symSpatialJoin       = Symbol.create(NS+"spatialJoin");
+
+    /** Property function giving index candidates for a geometry; see {@link SpatialCandidatesPF}. */
+    public static final String candidatesPF         = NS+"candidates";
+
+    /** Property function for the nearest features to a point; see {@link NearestPF}. */
+    public static final String nearestPF            = NS+"nearest";
+
+    /** Index type: the GeoSPARQL STR-tree. */
+    public static final String indexTypeSTRtree     = "strtree";
+    /** Index type: {@link PointGridIndex}. */
+    public static final String indexTypeGrid        = "grid";
+    /** Index type: {@link SRSPartitionedIndex}. */
+    public static final String indexTypeSRS         = "srs";
+    /** Index type: {@link SharedGeometryIndex}. */
+    public static final String indexTypeShared      = "shared";
+
+    // Request parameters of the "spatial" endpoint.
+    public static final String paramMode            = "mode";
+    public static final String paramCommit          = "commit";
+    public static final String paramIndexFile       = "spatial-index-file";
+
+    /** Recompute the graphs given by "graph=" parameters (the default). */
+    public static final String modeGraphs           = "graphs";
+    /** Recompute the graphs that have changed since the last build. */
+    public static final String modeDirty            = "dirty";
+
+    /** Name used for the default graph in the list of graphs to recompute. */
+    public static final String defaultGraphName     = Quad.defaultGraphIRI.getURI();
+}
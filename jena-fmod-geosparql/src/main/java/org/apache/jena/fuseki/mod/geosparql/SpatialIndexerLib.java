@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.geosparql.spatial.SpatialIndexException;
+import org.apache.jena.geosparql.spatial.SpatialIndexItem;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.util.Context;
+import org.slf4j.Logger;
+
+/**
+ * Operations to (re)compute the spatial index of a dataset.
+ */
+public class SpatialIndexerLib {
+
+    /**
+     * (Re)compute the spatial index for the given graphs.
+     * If the index is not per-graph, or the graphs include the union graph, the whole index is rebuilt.
+     * The new index keeps the file location of the old index.
+     * The tree for nearest neighbour search is rebuilt (see {@link SpatialIndexLookup#build}).
+     */
+    public static SpatialIndex recompute(Dataset ds, SpatialIndex index, List<String> graphs, Logger log) throws SpatialIndexException {
+        String srsURI = index.getSrsInfo().getSrsURI();
+        File location = index.getLocation();
+
+        // check if graph based index has been configured on the dataset
+        boolean spatialIndexPerGraph = ds.getContext().get(SpatialIndex.symSpatialIndexPerGraph, false);
+
+        if ( !spatialIndexPerGraph ) {
+            log.info("(re)computing full spatial index as single index tree");
+            index = SpatialIndex.buildSpatialIndex(ds, srsURI, false);
+        } else if ( graphs.contains(HttpNames.graphTargetUnion) ) {
+            // union graph means we compute the whole index
+            log.info("(re)computing full spatial index as separate index trees");
+            index = SpatialIndex.buildSpatialIndex(ds, srsURI, true);
+        } else {
+            log.info("(re)computing spatial index for graphs {}", graphs);
+            index = SpatialIndex.recomputeIndexForGraphs(index, ds, graphs);
+        }
+        index.setLocation(location);
+        SpatialIndexLookup.build(ds, index, log);
+        return index;
+    }
+
+    /**
+     * Recompute the spatial index for the graphs that have changed since the last build.
+     * Returns the index unchanged if nothing has changed.
+     * On failure, the dirty graphs are kept for the next attempt.
+     */
+    public static SpatialIndex recomputeDirty(Dataset ds, SpatialIndex index, SpatialDirtyGraphs dirtyGraphs, Logger log) throws SpatialIndexException {
+        // One recomputation at a time for a dataset.
+        synchronized(dirtyGraphs) {
+            SpatialDirtyGraphs.Drained drained = dirtyGraphs.drain();
+            if ( drained.isEmpty() ) {
+                dirtyGraphs.finished();
+                log.info("spatial index: no changed graphs");
+                return index;
+            }
+            List<String> graphs = drained.all ? List.of(HttpNames.graphTargetUnion) : drained.graphs;
+            boolean succeeded = false;
+            try {
+                SpatialIndex index2 = recompute(ds, index, graphs, log);
+                succeeded = true;
+                return index2;
+            } finally {
+                if ( ! succeeded )
+                    dirtyGraphs.restore(drained);
+                dirtyGraphs.finished();
+            }
+        }
+    }
+
+    /** The configured index type of a dataset; {@link SpatialIndexerConst#indexTypeSTRtree} if not set. */
+    public static String indexType(Context cxt) {
+        String x = cxt.getAsString(SpatialIndexerConst.symIndexType);
+        if ( x == null )
+            return SpatialIndexerConst.indexTypeSTRtree;
+        return x.trim().toLowerCase();
+    }
+
+    /** Whether the dataset uses a module index ({@link SpatialLookup}) rather than the GeoSPARQL spatial index. */
+    public static boolean usesLookup(Context cxt) {
+        return ! SpatialIndexerConst.indexTypeSTRtree.equals(indexType(cxt));
+    }
+
+    /**
+     * Build the module spatial index for the dataset and set it in the dataset context.
+     * For the grid and shared indexes, the SRS is that of the GeoSPARQL spatial index if there is one, else CRS84.
+     */
+    public static SpatialLookup buildLookup(Dataset ds, Logger log) throws SpatialIndexException {
+        Context cxt = ds.getContext();
+        String indexType = indexType(cxt);
+        boolean txn = ! ds.isInTransaction();
+        if ( txn )
+            ds.begin(ReadWrite.READ);
+        SpatialLookup lookup;
+        try {
+            switch (indexType) {
+                case SpatialIndexerConst.indexTypeGrid : {
+                    String srsURI = indexSrsURI(cxt);
+                    Collection<SpatialIndexItem> items = SpatialIndex.getSpatialIndexItems(ds, srsURI);
+                    lookup = PointGridIndex.build(items, new SRSInfo(srsURI));
+                    break;
+                }
+                case SpatialIndexerConst.indexTypeShared :
+                    lookup = SharedGeometryIndex.build(ds.asDatasetGraph(), indexSrsURI(cxt), log);
+                    break;
+                case SpatialIndexerConst.indexTypeSRS :
+                    lookup = SRSPartitionedIndex.build(ds.asDatasetGraph(), log);
+                    break;
+                default:
+                    throw new SpatialIndexException("Unknown spatial index type: '"+indexType+"'");
+            }
+        } finally {
+            if ( txn )
+                ds.end();
+        }
+        log.info("spatial index: built {}", lookup);
+        cxt.set(SpatialIndexerConst.symSpatialLookup, lookup);
+        return lookup;
+    }
+
+    private static String indexSrsURI(Context cxt) {
+        SpatialIndex index = cxt.get(SpatialIndex.SPATIAL_INDEX_SYMBOL);
+        return ( index != null ) ? index.getSrsInfo().getSrsURI() : SRS_URI.DEFAULT_WKT_CRS84;
+    }
+
+    /**
+     * Rebuild the module spatial index if any graph has changed since the last build.
+     * The module index is always rebuilt in full.
+     */
+    public static SpatialLookup rebuildLookupDirty(Dataset ds, SpatialDirtyGraphs dirtyGraphs, Logger log) throws SpatialIndexException {
+        synchronized(dirtyGraphs) {
+            SpatialDirtyGraphs.Drained drained = dirtyGraphs.drain();
+            if ( drained.isEmpty() ) {
+                dirtyGraphs.finished();
+                log.info("spatial index: no changed graphs");
+                return SpatialLookup.get(ds.getContext());
+            }
+            boolean succeeded = false;
+            try {
+                SpatialLookup lookup = buildLookup(ds, log);
+                succeeded = true;
+                return lookup;
+            } finally {
+                if ( ! succeeded )
+                    dirtyGraphs.restore(drained);
+                dirtyGraphs.finished();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.Iterator;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.geosparql.implementation.GeometryWrapper;
+import org.apache.jena.geosparql.implementation.datatype.WKTDatatype;
+import org.apache.jena.geosparql.implementation.vocabulary.Geo;
+import org.apache.jena.geosparql.spatial.property_functions.SpatialExtension;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+
+/**
+ * Find the items to index in a dataset, with their geometry and graph.
+ * <p>
+ * Indexed items are features with {@code geo:hasGeometry} or
+ * {@code geo:hasDefaultGeometry} to a geometry with a {@code geo:asWKT} or
+ * {@code geo:asGML} literal, as for the GeoSPARQL spatial index, and resources with
+ * {@code geo:lat}/{@code geo:long} (in CRS84).
+ * <p>
+ * A malformed geometry literal is logged, counted and skipped, so that one bad
+ * literal does not stop the index being built.
+ */
+public class SpatialItemScanner {
+
+    @FunctionalInterface
+    public interface ItemHandler {
+        /**
+         * An item with its geometry and the literal of the geometry; the graph is
+         * {@link Quad#defaultGraphIRI} for the default graph.
+         */
+        public void item(Node graph, Node item, Node literal, GeometryWrapper geometry);
+    }
+
+    /**
+     * Scan all the graphs of the dataset. The caller is responsible for the transaction.
+     * A geometry that is both {@code geo:hasGeometry} and {@code geo:hasDefaultGeometry}
+     * of a feature in a graph is reported once.
+     * <p>
+     * Returns the number of malformed geometry literals skipped; each is logged to
+     * {@code log}, or the server log if null.
+     */
+    public static long scan(DatasetGraph dsg, Logger log, ItemHandler handler) {
+        long[] skipped = { 0 };
+        ItemHandler checked = (graph, item, literal, geometry) -> {
+            if ( geometry != null )
+                handler.item(graph, item, literal, geometry);
+            else
+                skipped[0]++;
+        };
+        Logger logger = ( log != null ) ? log : Fuseki.serverLog;
+        scanGeometries(dsg, Geo.HAS_DEFAULT_GEOMETRY_NODE, null, logger, checked);
+        scanGeometries(dsg, Geo.HAS_GEOMETRY_NODE, Geo.HAS_DEFAULT_GEOMETRY_NODE, logger, checked);
+        scanLatLong(dsg, handler);
+        if ( skipped[0] > 0 )
+            logger.warn("spatial index: skipped {} malformed geometry literal(s)", skipped[0]);
+        return skipped[0];
+    }
+
+    /** Scan features with {@code hasGeometry}, skipping geometries also related by {@code skipIf} (which have been scanned). */
+    private static void scanGeometries(DatasetGraph dsg, Node hasGeometry, Node skipIf, Logger log, ItemHandler handler) {
+        Iterator<Quad> iter = dsg.find(Node.ANY, Node.ANY, hasGeometry, Node.ANY);
+        while ( iter.hasNext() ) {
+            Quad quad = iter.next();
+            Node feature = quad.getSubject();
+            Node geometry = quad.getObject();
+            if ( skipIf != null && dsg.contains(quad.getGraph(), feature, skipIf, geometry) )
+                continue;
+            scanSerializations(dsg, quad.getGraph(), feature, geometry, Geo.AS_WKT_NODE, log, handler);
+            scanSerializations(dsg, quad.getGraph(), feature, geometry, Geo.AS_GML_NODE, log, handler);
+        }
+    }
+
+    /** Report each serialization of the geometry; a malformed literal is logged and reported with a null geometry. */
+    private static void scanSerializations(DatasetGraph dsg, Node graph, Node feature, Node geometry, Node property,
+                                           Logger log, ItemHandler handler) {
+        Iterator<Quad> iter = dsg.find(graph, geometry, property, Node.ANY);
+        while ( iter.hasNext() ) {
+            Node literal = iter.next().getObject();
+            GeometryWrapper geom;
+            try {
+                geom = GeometryWrapper.extract(literal);
+            } catch (RuntimeException ex) {
+                log.warn("spatial index: skipped malformed geometry literal of {}: {}: {}", feature, literal, ex.getMessage());
+                geom = null;
+            }
+            handler.item(graphName(graph), feature, literal, geom);
+        }
+    }
+
+    private static void scanLatLong(DatasetGraph dsg, ItemHandler handler) {
+        Node latProp = SpatialExtension.GEO_LAT_PROP.asNode();
+        Node lonProp = SpatialExtension.GEO_LON_PROP.asNode();
+        Iterator<Quad> iter = dsg.find(Node.ANY, Node.ANY, latProp, Node.ANY);
+        while ( iter.hasNext() ) {
+            Quad quad = iter.next();
+            Iterator<Quad> iterLon = dsg.find(quad.getGraph(), quad.getSubject(), lonProp, Node.ANY);
+            if ( ! iterLon.hasNext() )
+                continue;
+            double lat = number(quad.getObject());
+            double lon = number(iterLon.next().getObject());
+            if ( Double.isNaN(lat) || Double.isNaN(lon) )
+                continue;
+            Node literal = NodeFactory.createLiteral("POINT("+lon+" "+lat+")", WKTDatatype.INSTANCE);
+            GeometryWrapper point = (GeometryWrapper)WKTDatatype.INSTANCE.parse(literal.getLiteralLexicalForm());
+            handler.item(graphName(quad.getGraph()), quad.getSubject(), literal, point);
+        }
+    }
+
+    private static Node graphName(Node graph) {
+        return Quad.isDefaultGraph(graph) ? Quad.defaultGraphIRI : graph;
+    }
+
+    private static double number(Node node) {
+        if ( node.isLiteral() && node.getLiteralValue() instanceof Number )
+            return ((Number)node.getLiteralValue()).doubleValue();
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.*;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.optimize.Rewrite;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction;
+
+/**
+ * Find filters with a spatial relation between variables of two independent
+ * patterns and replace the filter with an {@link OpSpatialJoin}.
+ * <pre>
+ *   (filter (geof:sfIntersects ?wktA ?wktB)
+ *     (bgp (?a geo:hasGeometry ?ga) (?ga geo:asWKT ?wktA)
+ *          (?b geo:hasGeometry ?gb) (?gb geo:asWKT ?wktB)))
+ * </pre>
+ * The basic graph pattern is split into its connected components; there must be
+ * exactly two, one for each variable. A join of two patterns with no shared
+ * variables is handled the same way.
+ */
+public class SpatialJoinTransform extends TransformCopy {
+
+    private final Rewrite subRewrite;
+
+    /** {@code subRewrite} is applied to the two sides of the join. */
+    public SpatialJoinTransform(Rewrite subRewrite) {
+        this.subRewrite = subRewrite;
+    }
+
+    @Override
+    public Op transform(OpFilter opFilter, Op subOp) {
+        Op op = spatialJoin(opFilter, subOp);
+        if ( op != null )
+            return op;
+        return super.transform(opFilter, subOp);
+    }
+
+    private Op spatialJoin(OpFilter opFilter, Op subOp) {
+        for ( Expr expr : opFilter.getExprs() ) {
+            if ( ! expr.isFunction() )
+                continue;
+            ExprFunction func = expr.getFunction();
+            if ( ! SpatialFilterRewrite.impliesEnvelopeIntersects(func.getFunctionIRI()) || func.numArgs() != 2 )
+                continue;
+            if ( ! func.getArg(1).isVariable() || ! func.getArg(2).isVariable() )
+                continue;
+            Var varA = func.getArg(1).asVar();
+            Var varB = func.getArg(2).asVar();
+            Op[] sides = split(subOp, varA, varB);
+            if ( sides == null )
+                continue;
+            return new OpSpatialJoin(opFilter.getExprs(), subRewrite.rewrite(sides[0]), subRewrite.rewrite(sides[1]), varA, varB);
+        }
+        return null;
+    }
+
+    /** Split into a side with varA and a side with varB, with no variables in common; null if not possible. */
+    private static Op[] split(Op op, Var varA, Var varB) {
+        if ( op instanceof OpJoin ) {
+            OpJoin opJoin = (OpJoin)op;
+            return sides(opJoin.getLeft(), opJoin.getRight(), varA, varB);
+        }
+        if ( op instanceof OpBGP ) {
+            List<BasicPattern> components = components(((OpBGP)op).getPattern());
+            if ( components.size() != 2 )
+                return null;
+            return sides(new OpBGP(components.get(0)), new OpBGP(components.get(1)), varA, varB);
+        }
+        return null;
+    }
+
+    private static Op[] sides(Op left, Op right, Var varA, Var varB) {
+        Set<Var> leftVars = OpVars.visibleVars(left);
+        Set<Var> rightVars = OpVars.visibleVars(right);
+        if ( ! Collections.disjoint(leftVars, rightVars) )
+            return null;
+        if ( leftVars.contains(varA) && rightVars.contains(varB) )
+            return new Op[] {left, right};
+        if ( leftVars.contains(varB) && rightVars.contains(varA) )
+            return new Op[] {right, left};
+        return null;
+    }
+
+    /** Connected components of a basic graph pattern, connected by shared variables. */
+    private static List<BasicPattern> components(BasicPattern pattern) {
+        List<Triple> triples = pattern.getList();
+        int n = triples.size();
+        int[] parent = new int[n];
+        for ( int i = 0 ; i < n ; i++ )
+            parent[i] = i;
+        Map<Var, Integer> firstUse = new HashMap<>();
+        for ( int i = 0 ; i < n ; i++ ) {
+            Triple t = triples.get(i);
+            for ( Node node : new Node[] {t.getSubject(), t.getPredicate(), t.getObject()} ) {
+                if ( ! Var.isVar(node) )
+                    continue;
+                Integer j = firstUse.putIfAbsent(Var.alloc(node), i);
+                if ( j != null )
+                    union(parent, i, j);
+            }
+        }
+        Map<Integer, BasicPattern> components = new LinkedHashMap<>();
+        for ( int i = 0 ; i < n ; i++ )
+            components.computeIfAbsent(find(parent, i), k -> new BasicPattern()).add(triples.get(i));
+        return new ArrayList<>(components.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while ( parent[i] != i ) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int i, int j) {
+        parent[find(parent, i)] = find(parent, j);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.util.Context;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * A spatial index provided by this module, as an alternative to the STR-tree of
+ * {@link org.apache.jena.geosparql.spatial.SpatialIndex}.
+ * <p>
+ * Indexed items are the nodes of the features and geometries, as for the GeoSPARQL spatial index.
+ * Coordinates are in the SRS of the lookup.
+ */
+public interface SpatialLookup {
+
+    /** Receive an indexed item and its envelope. */
+    @FunctionalInterface
+    public interface ItemVisitor {
+        public void visit(Node item, double minX, double minY, double maxX, double maxY);
+    }
+
+    /** The SRS of the coordinates in this index. */
+    public SRSInfo getSrsInfo();
+
+    /** Visit each item whose envelope intersects {@code searchEnvelope}. */
+    public void query(Envelope searchEnvelope, ItemVisitor visitor);
+
+    /** Return the items whose envelope intersects {@code searchEnvelope}. */
+    public default Set<Node> query(Envelope searchEnvelope) {
+        Set<Node> results = new HashSet<>();
+        query(searchEnvelope, (item, x1, y1, x2, y2)->results.add(item));
+        return results;
+    }
+
+    /** Number of items. */
+    public long size();
+
+    /**
+     * Whether features related to their geometry only by {@code geo:hasDefaultGeometry}
+     * are indexed. The GeoSPARQL spatial index only has {@code geo:hasGeometry} features.
+     */
+    public default boolean indexesDefaultGeometry() {
+        return false;
+    }
+
+    /**
+     * Items in increasing distance from the point (x,y), in the SRS of the lookup.
+     * The iterator is lazy. Returns null if the index does not support nearest neighbour search.
+     */
+    public default Iterator<NearestNeighbours.Neighbour> nearest(double x, double y, SpatialDistance distance) {
+        return null;
+    }
+
+    /**
+     * The index to use for queries on a graph of the dataset, such as the active graph
+     * inside {@code GRAPH}. Items of other graphs may be included, so callers still
+     * check the graph. By default, this index.
+     */
+    public default SpatialLookup forGraph(Graph graph) {
+        return this;
+    }
+
+    /**
+     * The parts of the index that each have a single SRS.
+     * Queries that use coordinates of items should query each part with a
+     * search envelope in the SRS of the part.
+     */
+    public default List<SpatialLookup> partitions() {
+        return List.of(this);
+    }
+
+    /** Get the module spatial index of a dataset (or query execution) context, or null if there isn't one. */
+    public static SpatialLookup get(Context cxt) {
+        if ( cxt == null )
+            return null;
+        return cxt.get(SpatialIndexerConst.symSpatialLookup);
+    }
+
+    /**
+     * Get the spatial index to use for a query: the module index if there is one,
+     * else the GeoSPARQL spatial index, else null.
+     */
+    public static SpatialLookup forQuery(Context cxt) {
+        SpatialLookup lookup = get(cxt);
+        if ( lookup != null )
+            return lookup;
+        if ( cxt == null )
+            return null;
+        SpatialIndex index = cxt.get(SpatialIndex.SPATIAL_INDEX_SYMBOL);
+        return ( index == null ) ? null : SpatialIndexLookup.get(cxt, index);
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import org.apache.jena.geosparql.implementation.GeometryWrapper;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.implementation.datatype.WKTDatatype;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.geosparql.spatial.property_functions.SpatialExtension;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterNullIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.pfunction.PropFuncArg;
+import org.apache.jena.sparql.pfunction.PropertyFunction;
+import org.apache.jena.sparql.pfunction.PropertyFunctionFactory;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.operation.distance.DistanceOp;
+
+/**
+ * Spatial property functions ({@code spatial:withinBox}, {@code spatial:intersectBox},
+ * {@code spatial:nearby}) answered from the module {@link SpatialLookup} of the
+ * dataset.
+ * <p>
+ * Candidates come from the envelopes in the index; each is then tested with its
+ * geometries in the active graph (see {@link SpatialGeometries}), as the GeoSPARQL
+ * property functions do. Search boxes that cross the antimeridian are split.
+ * The distance for {@code spatial:nearby} is the great circle distance to the
+ * nearest point of the geometry, whatever the SRS of the index.
+ * <p>
+ * If the dataset does not have a module index, or the arguments are not ones this
+ * implementation understands, the original GeoSPARQL property function is used.
+ */
+public class SpatialLookupPF implements PropertyFunction {
+
+    enum Kind { WITHIN_BOX, INTERSECT_BOX, NEARBY }
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private static final Map<String, Double> unitsToMetres = Map.of(
+        "metre", 1.0, "meter", 1.0, "m", 1.0,
+        "kilometre", 1000.0, "kilometer", 1000.0, "km", 1000.0,
+        "mile", 1609.344, "statutemile", 1609.344, "mi", 1609.344);
+
+    /**
+     * Replace the GeoSPARQL spatial property functions in the global registry with
+     * ones that use the module index when the dataset has one.
+     */
+    public static void register() {
+        register(SpatialExtension.WITHIN_BOX_PROP, Kind.WITHIN_BOX);
+        register(SpatialExtension.INTERSECT_BOX_PROP, Kind.INTERSECT_BOX);
+        register(SpatialExtension.NEARBY_PROP, Kind.NEARBY);
+    }
+
+    private static void register(String uri, Kind kind) {
+        PropertyFunctionRegistry registry = PropertyFunctionRegistry.get();
+        PropertyFunctionFactory original = registry.get(uri);
+        if ( original instanceof Factory )
+            return;
+        registry.put(uri, new Factory(kind, original));
+    }
+
+    static class Factory implements PropertyFunctionFactory {
+        private final Kind kind;
+        private final PropertyFunctionFactory original;
+
+        Factory(Kind kind, PropertyFunctionFactory original) {
+            this.kind = kind;
+            this.original = original;
+        }
+
+        @Override
+        public PropertyFunction create(String uri) {
+            PropertyFunction pf = ( original == null ) ? null : original.create(uri);
+            return new SpatialLookupPF(kind, pf);
+        }
+    }
+
+    private final Kind kind;
+    private final PropertyFunction original;
+
+    private SpatialLookupPF(Kind kind, PropertyFunction original) {
+        this.kind = kind;
+        this.original = original;
+    }
+
+    @Override
+    public void build(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt) {
+        if ( original != null )
+            original.build(argSubject, predicate, argObject, execCxt);
+        if ( argObject.isNode() )
+            throw new QueryExecException("Spatial property function: object must be a list: "+argObject);
+    }
+
+    @Override
+    public QueryIterator exec(QueryIterator input, PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt) {
+        SpatialLookup lookup = SpatialLookup.get(execCxt.getContext());
+        if ( lookup == null ) {
+            if ( original == null )
+                throw new QueryExecException("No spatial index for "+predicate);
+            return original.exec(input, argSubject, predicate, argObject, execCxt);
+        }
+        return new QueryIterRepeatApply(input, execCxt) {
+            @Override
+            protected QueryIterator nextStage(Binding binding) {
+                return execOne(lookup, binding, argSubject, predicate, argObject, execCxt);
+            }
+        };
+    }
+
+    private QueryIterator execOne(SpatialLookup lookup, Binding binding, PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt) {
+        List<Node> args = new ArrayList<>();
+        for ( Node n : argObject.getArgList() )
+            args.add(Substitute.substitute(n, binding));
+        Graph graph = execCxt.getActiveGraph();
+        SpatialLookup graphLookup = lookup.forGraph(graph);
+        List<Node> matches = ( kind == Kind.NEARBY ) ? nearby(graphLookup, graph, args) : box(graphLookup, graph, args);
+        if ( matches == null ) {
+            // Not handled here.
+            if ( original == null )
+                throw new QueryExecException("Spatial property function: bad arguments: "+argObject);
+            return original.exec(QueryIterSingleton.create(binding, execCxt), argSubject, predicate, argObject, execCxt);
+        }
+
+        Node subject = Substitute.substitute(argSubject.getArg(), binding);
+        if ( ! Var.isVar(subject) ) {
+            if ( matches.contains(subject) )
+                return QueryIterSingleton.create(binding, execCxt);
+            return QueryIterNullIterator.create(execCxt);
+        }
+        Var var = Var.alloc(subject);
+        Iterator<Binding> iter = matches.stream().map(n -> BindingFactory.binding(binding, var, n)).iterator();
+        return QueryIterPlainWrapper.create(iter, execCxt);
+    }
+
+    /**
+     * withinBox and intersectBox: (latMin lonMin latMax lonMax [limit]).
+     * A box with lonMin greater than lonMax crosses the antimeridian.
+     */
+    private List<Node> box(SpatialLookup lookup, Graph graph, List<Node> args) {
+        if ( args.size() < 4 || args.size() > 5 )
+            return null;
+        double latMin = number(args.get(0));
+        double lonMin = number(args.get(1));
+        double latMax = number(args.get(2));
+        double lonMax = number(args.get(3));
+        double limit = args.size() > 4 ? number(args.get(4)) : -1;
+        if ( Double.isNaN(latMin) || Double.isNaN(lonMin) || Double.isNaN(latMax) || Double.isNaN(lonMax) || Double.isNaN(limit) )
+            return null;
+
+        boolean within = ( kind == Kind.WITHIN_BOX );
+        List<double[]> lonRanges = ( lonMin > lonMax ) ? lonRanges(lonMin, lonMax + 360) : lonRanges(lonMin, lonMax);
+        GeometryWrapper box = boxGeometry(lonRanges, latMin, latMax);
+        Set<Node> candidates = new LinkedHashSet<>();
+        for ( SpatialLookup part : lookup.partitions() ) {
+            for ( double[] range : lonRanges ) {
+                Envelope search = searchEnvelope(part.getSrsInfo(), range[0], latMin, range[1], latMax);
+                part.query(search, (item, x1, y1, x2, y2) -> {
+                    // An item within a single box has its envelope within the search envelope.
+                    if ( within && lonRanges.size() == 1 && ! ( search.contains(x1, y1) && search.contains(x2, y2) ) )
+                        return;
+                    candidates.add(item);
+                });
+            }
+        }
+        return matches(graph, candidates, limit, geometry -> within ? geometry.within(box) : geometry.intersects(box));
+    }
+
+    /** nearby: (lat lon radius [units [limit]]) with the radius in kilometres by default. */
+    private List<Node> nearby(SpatialLookup lookup, Graph graph, List<Node> args) {
+        if ( args.size() < 3 || args.size() > 5 )
+            return null;
+        double lat = number(args.get(0));
+        double lon = number(args.get(1));
+        double radius = number(args.get(2));
+        if ( Double.isNaN(lat) || Double.isNaN(lon) || Double.isNaN(radius) )
+            return null;
+        double factor = 1000.0;
+        if ( args.size() > 3 ) {
+            Double f = unitsToMetres(args.get(3));
+            if ( f == null )
+                return null;
+            factor = f;
+        }
+        double limit = args.size() > 4 ? number(args.get(4)) : -1;
+        if ( Double.isNaN(limit) )
+            return null;
+        double metres = radius * factor;
+
+        // The lat/lon box of the circle, for candidates in any SRS.
+        double r = metres / SpatialDistance.EARTH_RADIUS_METRES;
+        double dLat = Math.toDegrees(r);
+        double latMin = Math.max(-90, lat - dLat);
+        double latMax = Math.min(90, lat + dLat);
+        List<double[]> lonRanges;
+        double s = Math.sin(Math.min(r, Math.PI/2)) / Math.cos(Math.toRadians(lat));
+        if ( latMin <= -90 || latMax >= 90 || r >= Math.PI/2 || s >= 1 )
+            // Includes a pole: all longitudes.
+            lonRanges = lonRanges(-180, 180);
+        else {
+            // Widest point of the circle in longitude.
+            double dLon = Math.toDegrees(Math.asin(s));
+            lonRanges = lonRanges(lon - dLon, lon + dLon);
+        }
+
+        Set<Node> candidates = new LinkedHashSet<>();
+        for ( SpatialLookup part : lookup.partitions() ) {
+            for ( double[] range : lonRanges ) {
+                Envelope search = searchEnvelope(part.getSrsInfo(), range[0], latMin, range[1], latMax);
+                part.query(search, (item, x1, y1, x2, y2) -> candidates.add(item));
+            }
+        }
+        return matches(graph, candidates, limit, geometry -> greatCircleDistance(lat, lon, geometry) <= metres);
+    }
+
+    @FunctionalInterface
+    private interface GeometryTest {
+        public boolean test(GeometryWrapper geometry) throws Exception;
+    }
+
+    /**
+     * The candidates with a geometry in the graph that passes the test, up to the limit.
+     * The index only has envelopes; this is the test on the geometry.
+     */
+    private static List<Node> matches(Graph graph, Set<Node> candidates, double limit, GeometryTest test) {
+        List<Node> results = new ArrayList<>();
+        for ( Node item : candidates ) {
+            if ( limit >= 0 && results.size() >= limit )
+                break;
+            for ( GeometryWrapper geometry : SpatialGeometries.find(graph, item) ) {
+                boolean match;
+                try {
+                    match = test.test(geometry);
+                } catch (Exception ex) {
+                    // Can't be converted to the SRS of the test.
+                    match = false;
+                }
+                if ( match ) {
+                    results.add(item);
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Great circle distance, in metres, from a lat/lon point to the nearest point of
+     * a geometry, with the nearest point found in lat/lon coordinates.
+     */
+    static double greatCircleDistance(double lat, double lon, GeometryWrapper geometry) throws Exception {
+        Geometry g = geometry.convertSRS(SRS_URI.DEFAULT_WKT_CRS84).getXYGeometry();
+        Point point = geometryFactory.createPoint(new Coordinate(lon, lat));
+        Coordinate nearest = DistanceOp.nearestPoints(g, point)[0];
+        return SpatialDistance.haversine(lat, lon, nearest.y, nearest.x);
+    }
+
+    /**
+     * Longitude ranges, within -180 to 180, covering lonMin to lonMax, which
+     * may be outside -180 to 180: a range across the antimeridian is split in two.
+     */
+    static List<double[]> lonRanges(double lonMin, double lonMax) {
+        if ( lonMax - lonMin >= 360 )
+            return List.of(new double[] {-180, 180});
+        if ( lonMin < -180 )
+            return List.of(new double[] {lonMin + 360, 180}, new double[] {-180, lonMax});
+        if ( lonMax > 180 )
+            return List.of(new double[] {lonMin, 180}, new double[] {-180, lonMax - 360});
+        return List.of(new double[] {lonMin, lonMax});
+    }
+
+    /** The box, in CRS84, as a polygon or, if split at the antimeridian, a multipolygon. */
+    private static GeometryWrapper boxGeometry(List<double[]> lonRanges, double latMin, double latMax) {
+        StringJoiner polygons = new StringJoiner(", ");
+        for ( double[] range : lonRanges )
+            polygons.add("(("+ring(range[0], latMin, range[1], latMax, 1)+"))");
+        String wkt = ( lonRanges.size() == 1 ) ? "POLYGON"+polygons : "MULTIPOLYGON("+polygons+")";
+        return (GeometryWrapper)WKTDatatype.INSTANCE.parse(wkt);
+    }
+
+    /** The ring of a lon/lat box, with each edge in {@code n} segments. */
+    private static String ring(double lonMin, double latMin, double lonMax, double latMax, int n) {
+        StringJoiner ring = new StringJoiner(", ");
+        for ( int i = 0 ; i < n ; i++ )
+            ring.add((lonMin + (lonMax-lonMin)*i/n)+" "+latMin);
+        for ( int i = 0 ; i < n ; i++ )
+            ring.add(lonMax+" "+(latMin + (latMax-latMin)*i/n));
+        for ( int i = 0 ; i < n ; i++ )
+            ring.add((lonMax - (lonMax-lonMin)*i/n)+" "+latMax);
+        for ( int i = 0 ; i < n ; i++ )
+            ring.add(lonMin+" "+(latMax - (latMax-latMin)*i/n));
+        ring.add(lonMin+" "+latMin);
+        return ring.toString();
+    }
+
+    /**
+     * The envelope, in the SRS of the index, of a lon/lat box. The edges are
+     * densified so that the envelope covers the box in a projected SRS, where they
+     * may be curves.
+     */
+    static Envelope searchEnvelope(SRSInfo srsInfo, double lonMin, double latMin, double lonMax, double latMax) {
+        String wkt = "POLYGON(("+ring(lonMin, latMin, lonMax, latMax, 16)+"))";
+        try {
+            GeometryWrapper box = (GeometryWrapper)WKTDatatype.INSTANCE.parse(wkt);
+            return box.convertSRS(srsInfo.getSrsURI()).getEnvelope();
+        } catch (Exception ex) {
+            throw new QueryExecException("Spatial property function: can't convert to "+srsInfo.getSrsURI()+": "+ex.getMessage(), ex);
+        }
+    }
+
+    private static double number(Node node) {
+        if ( node.isLiteral() && node.getLiteralValue() instanceof Number )
+            return ((Number)node.getLiteralValue()).doubleValue();
+        return Double.NaN;
+    }
+
+    private static Double unitsToMetres(Node node) {
+        String x;
+        if ( node.isURI() )
+            x = node.getURI();
+        else if ( node.isLiteral() )
+            x = node.getLiteralLexicalForm();
+        else
+            return null;
+        int idx = Math.max(x.lastIndexOf('/'), x.lastIndexOf('#'));
+        return unitsToMetres.get(x.substring(idx+1).toLowerCase());
+    }
+}
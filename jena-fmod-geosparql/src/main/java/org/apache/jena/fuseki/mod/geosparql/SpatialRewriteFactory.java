@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.geosparql;
+
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.OpWalker;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.OpGraph;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.algebra.optimize.Optimize;
+import org.apache.jena.sparql.algebra.optimize.Rewrite;
+import org.apache.jena.sparql.algebra.optimize.RewriteFactory;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * The query optimizer for datasets with spatial rewrites enabled: the spatial
+ * rewrites set in the context, then the optimizer that would otherwise be used.
+ * <ul>
+ * <li>{@link SpatialIndexerConst#symSpatialJoin}: {@link SpatialJoinTransform}
+ * <li>{@link SpatialIndexerConst#symFilterRewrite}: {@link SpatialFilterRewrite}, if there is a spatial index
+ *     and the dirty graph tracking of the dataset says it is up-to-date.
+ * </ul>
+ */
+public class SpatialRewriteFactory implements RewriteFactory {
+
+    private final RewriteFactory other;
+
+    /** Wrap another optimizer; null means the system default. */
+    public SpatialRewriteFactory(RewriteFactory other) {
+        this.other = other;
+    }
+
+    @Override
+    public Rewrite create(Context cxt) {
+        Rewrite rewrite = ( other != null ? other : Optimize.getFactory() ).create(cxt);
+        boolean spatialJoin = cxt.isTrue(SpatialIndexerConst.symSpatialJoin);
+        SpatialLookup lookup = SpatialLookup.forQuery(cxt);
+        boolean filterRewrite = cxt.isTrue(SpatialIndexerConst.symFilterRewrite) && lookup != null && isCurrent(cxt);
+        if ( ! spatialJoin && ! filterRewrite )
+            return rewrite;
+        return op -> {
+            // The join operator evaluates its sides against the active graph so it is not used inside GRAPH.
+            if ( spatialJoin && ! containsGraph(op) )
+                op = Transformer.transform(new SpatialJoinTransform(rewrite), op);
+            if ( filterRewrite )
+                op = SpatialFilterRewrite.rewrite(op, lookup);
+            return rewrite.rewrite(op);
+        };
+    }
+
+    /**
+     * Whether the index is known to match the data: no graph has changed since it was
+     * built. Without dirty graph tracking, this can't be known.
+     */
+    private static boolean isCurrent(Context cxt) {
+        SpatialDirtyGraphs dirtyGraphs = cxt.get(SpatialIndexerConst.symDirtyGraphs);
+        return dirtyGraphs != null && ! dirtyGraphs.isStale();
+    }
+
+    private static boolean containsGraph(Op op) {
+        boolean[] result = { false };
+        OpWalker.walk(op, new OpVisitorBase() {
+            @Override public void visit(OpGraph opGraph)             { result[0] = true; }
+            @Override public void visit(OpQuadPattern quadPattern)   { result[0] = true; }
+        });
+        return result[0];
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * Dirty tracking for a TDB2 dataset, by a listener on its transaction coordinator.
+ * <p>
+ * A TDB2 dataset is not wrapped by {@link DatasetGraphSpatialTracking}: the wrapper
+ * would hide it from the TDB2 query engine, compaction and the deletion of its files.
+ * The listener does not see the individual changes, so each write commit marks the
+ * whole dataset as dirty, before the changes are visible.
+ * <p>
+ * Compaction replaces the storage, and its coordinator. The listener is moved to
+ * the current coordinator whenever the dirty graphs are read; as changes committed
+ * in between may have been missed, the dataset is then marked as dirty.
+ */
+public class TDB2SpatialTracking implements TransactionListener {
+
+    private final DatasetGraph dsg;
+    private final SpatialDirtyGraphs dirtyGraphs;
+    private volatile TransactionCoordinator coordinator = null;
+
+    /** Track changes to a TDB2 dataset (see {@link TDBInternal#isTDB2}). */
+    public static void track(DatasetGraph dsg, SpatialDirtyGraphs dirtyGraphs) {
+        TDB2SpatialTracking tracking = new TDB2SpatialTracking(dsg, dirtyGraphs);
+        tracking.attach();
+        dirtyGraphs.setTracker(tracking::attach);
+    }
+
+    private TDB2SpatialTracking(DatasetGraph dsg, SpatialDirtyGraphs dirtyGraphs) {
+        this.dsg = dsg;
+        this.dirtyGraphs = dirtyGraphs;
+    }
+
+    private void attach() {
+        TransactionCoordinator txnMgr = TDBInternal.getDatasetGraphTDB(dsg).getTxnSystem().getTxnMgr();
+        if ( txnMgr == coordinator )
+            return;
+        synchronized(this) {
+            if ( txnMgr == coordinator )
+                return;
+            if ( coordinator != null ) {
+                coordinator.removeListener(this);
+                dirtyGraphs.markAllDirty();
+            }
+            txnMgr.addListener(this);
+            coordinator = txnMgr;
+        }
+    }
+
+    @Override
+    public void notifyCommitStart(Transaction transaction) {
+        if ( transaction.isWriteTxn() )
+            dirtyGraphs.markAllDirty();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.geosparql.configuration.GeoSPARQLConfig;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.*;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.util.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Datasets and queries for the spatial tests. */
+class SpatialTestLib {
+
+    static final Logger LOG = LoggerFactory.getLogger(SpatialTestLib.class);
+
+    static final String PREFIXES = String.join("\n",
+        "PREFIX geo:     <http://www.opengis.net/ont/geosparql#>",
+        "PREFIX geof:    <http://www.opengis.net/def/function/geosparql/>",
+        "PREFIX spatial: <http://jena.apache.org/spatial#>",
+        "PREFIX :        <http://example/>",
+        "");
+
+    /** Module index types tested. */
+    static final String[] indexTypes = {
+        SpatialIndexerConst.indexTypeGrid, SpatialIndexerConst.indexTypeSRS, SpatialIndexerConst.indexTypeShared
+    };
+
+    static void init() {
+        GeoSPARQLConfig.setupNoIndex();
+        SpatialLookupPF.register();
+    }
+
+    /** An in-memory dataset of TriG data (with {@link #PREFIXES}). */
+    static Dataset dataset(String trig) {
+        Dataset ds = DatasetFactory.createTxnMem();
+        RDFParser.fromString(PREFIXES+trig).lang(Lang.TRIG).parse(ds.asDatasetGraph());
+        return ds;
+    }
+
+    /** A dataset with a module spatial index of the given type. */
+    static Dataset datasetWithLookup(String trig, String indexType) {
+        Dataset ds = dataset(trig);
+        ds.getContext().set(SpatialIndexerConst.symIndexType, indexType);
+        try {
+            SpatialIndexerLib.buildLookup(ds, LOG);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        return ds;
+    }
+
+    /**
+     * A dataset with a module spatial index of the given type, spatial filter rewrite
+     * and dirty graph tracking, set up as the module does.
+     */
+    static Dataset datasetWithRewrite(String trig, String indexType) {
+        DatasetGraph dsg = dataset(trig).asDatasetGraph();
+        Context cxt = dsg.getContext();
+        cxt.set(SpatialIndexerConst.symIndexType, indexType);
+        cxt.set(SpatialIndexerConst.symFilterRewrite, true);
+        SpatialDirtyGraphs dirtyGraphs = new SpatialDirtyGraphs();
+        cxt.set(SpatialIndexerConst.symDirtyGraphs, dirtyGraphs);
+        Dataset ds = DatasetFactory.wrap(DatasetGraphSpatialTracking.track(dsg, dirtyGraphs));
+        try {
+            SpatialIndexerLib.buildLookup(ds, LOG);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        cxt.set(ARQConstants.sysOptimizerFactory, new SpatialRewriteFactory(null));
+        SpatialCandidatesPF.register();
+        return ds;
+    }
+
+    /** The optimized algebra of a query (with {@link #PREFIXES}) for a dataset. */
+    static Op optimize(Dataset ds, String queryString) {
+        Op op = Algebra.compile(QueryFactory.create(PREFIXES+queryString));
+        return Algebra.optimize(op, ds.getContext());
+    }
+
+    /** The values of the first variable of a SELECT query (with {@link #PREFIXES}). */
+    static Set<Node> select(Dataset ds, String queryString) {
+        Set<Node> results = new HashSet<>();
+        Query query = QueryFactory.create(PREFIXES+queryString);
+        String var = query.getProjectVars().get(0).getVarName();
+        ds.begin(ReadWrite.READ);
+        try ( QueryExecution qExec = QueryExecutionFactory.create(query, ds) ) {
+            ResultSet rs = qExec.execSelect();
+            while ( rs.hasNext() ) {
+                QuerySolution row = rs.next();
+                if ( row.contains(var) )
+                    results.add(row.get(var).asNode());
+            }
+        } finally {
+            ds.end();
+        }
+        return results;
+    }
+
+    static Node node(String localName) {
+        return NodeFactory.createURI("http://example/"+localName);
+    }
+
+    static Set<Node> nodes(String... localNames) {
+        Set<Node> nodes = new HashSet<>();
+        for ( String n : localNames )
+            nodes.add(node(n));
+        return nodes;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.jena.fuseki.mod.geosparql.NearestNeighbours.Neighbour;
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+
+/** Nearest neighbours in CRS84 compared to a scan of all the points. */
+public class TestNearestNeighbours {
+
+    private static final SRSInfo srsInfo = new SRSInfo(SRS_URI.DEFAULT_WKT_CRS84);
+    private static final int N = 2000;
+    private static final int K = 10;
+
+    private final double[] x = new double[N];
+    private final double[] y = new double[N];
+    private final Node[] nodes = new Node[N];
+
+    public TestNearestNeighbours() {
+        Random random = new Random(1234);
+        for ( int i = 0 ; i < N ; i++ ) {
+            x[i] = random.nextDouble() * 360 - 180;
+            y[i] = random.nextDouble() * 178 - 89;
+            nodes[i] = NodeFactory.createURI("http://example/p"+i);
+        }
+    }
+
+    @Test public void nearest_grid() {
+        test(PointGridIndex.build(srsInfo, N, x, y, nodes));
+    }
+
+    @Test public void nearest_strtree() {
+        STRtreeLookup lookup = new STRtreeLookup(srsInfo);
+        for ( int i = 0 ; i < N ; i++ )
+            lookup.add(nodes[i], new Envelope(x[i], x[i], y[i], y[i]));
+        test(lookup.build());
+    }
+
+    private void test(SpatialLookup lookup) {
+        SpatialDistance distance = SpatialDistance.forSRS(srsInfo);
+        double[][] queries = { {0, 0}, {179.99, 0}, {-179.99, 10}, {0, 80}, {120, -85}, {45, 60} };
+        for ( double[] q : queries ) {
+            double[] expected = new double[N];
+            for ( int i = 0 ; i < N ; i++ )
+                expected[i] = SpatialDistance.haversine(q[1], q[0], y[i], x[i]);
+            Arrays.sort(expected);
+            Iterator<Neighbour> iter = lookup.nearest(q[0], q[1], distance);
+            for ( int k = 0 ; k < K ; k++ )
+                assertEquals(q[0]+" "+q[1]+" : "+k, expected[k], iter.next().distance, 1e-6);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.geosparql.spatial.SpatialIndex;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** {@code spatialmod:nearest} in SPARQL, over each module index type and the GeoSPARQL spatial index. */
+public class TestNearestPF {
+
+    private static final String DATA = String.join("\n",
+        ":a geo:hasGeometry :aGeom . :aGeom geo:asWKT \"POINT(0 0)\"^^geo:wktLiteral .",
+        ":b geo:hasGeometry :bGeom . :bGeom geo:asWKT \"POINT(1 0)\"^^geo:wktLiteral .",
+        ":c geo:hasGeometry :cGeom . :cGeom geo:asWKT \"POINT(2 0)\"^^geo:wktLiteral .",
+        ":d geo:hasGeometry :dGeom . :dGeom geo:asWKT \"POINT(10 0)\"^^geo:wktLiteral .",
+        "");
+
+    private static final String PREFIX = "PREFIX spatialmod: <"+SpatialIndexerConst.NS+">\n";
+
+    @BeforeClass public static void beforeClass() {
+        init();
+        NearestPF.register();
+    }
+
+    /** A dataset with the GeoSPARQL spatial index, built as the module does. */
+    private static Dataset datasetWithSpatialIndex() {
+        Dataset ds = dataset(DATA);
+        try {
+            SpatialIndex index = SpatialIndex.buildSpatialIndex(ds, SRS_URI.DEFAULT_WKT_CRS84, false);
+            SpatialIndexLookup.build(ds, index, LOG);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        return ds;
+    }
+
+    private static void test(String query, String... expected) {
+        for ( String indexType : indexTypes )
+            assertEquals(indexType, nodes(expected), select(datasetWithLookup(DATA, indexType), PREFIX+query));
+        assertEquals("GeoSPARQL", nodes(expected), select(datasetWithSpatialIndex(), PREFIX+query));
+    }
+
+    @Test public void nearest_k() {
+        test("SELECT ?f { ?f spatialmod:nearest(0 0.1 2) }", "a", "b");
+        test("SELECT ?f { ?f spatialmod:nearest(0 1.9 1) }", "c");
+    }
+
+    @Test public void nearest_all() {
+        test("SELECT ?f { ?f spatialmod:nearest(0 0) }", "a", "b", "c", "d");
+    }
+
+    @Test public void nearest_limit() {
+        test("SELECT ?f { ?f spatialmod:nearest(0 9) } LIMIT 1", "d");
+    }
+
+    @Test public void nearest_distance() {
+        // About 111km from a.
+        test("SELECT ?f { (?f ?dist) spatialmod:nearest(0 0 2) FILTER(?dist > 100000 && ?dist < 120000) }", "b");
+    }
+
+    @Test public void nearest_zero() {
+        test("SELECT ?f { ?f spatialmod:nearest(0 0 0) }");
+    }
+
+    @Test public void nearest_negative() {
+        for ( String indexType : indexTypes ) {
+            Dataset ds = datasetWithLookup(DATA, indexType);
+            assertThrows(QueryExecException.class, () -> select(ds, PREFIX+"SELECT ?f { ?f spatialmod:nearest(0 0 -1) }"));
+        }
+    }
+
+    // Without the tree built with the index, the GeoSPARQL spatial index has no nearest neighbour search.
+    @Test public void nearest_no_tree() throws Exception {
+        Dataset ds = dataset(DATA);
+        SpatialIndex.buildSpatialIndex(ds, SRS_URI.DEFAULT_WKT_CRS84, false);
+        assertThrows(QueryExecException.class, () -> select(ds, PREFIX+"SELECT ?f { ?f spatialmod:nearest(0 0 1) }"));
+    }
+}
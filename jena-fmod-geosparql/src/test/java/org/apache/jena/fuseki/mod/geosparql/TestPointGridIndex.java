@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jena.geosparql.implementation.SRSInfo;
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+
+public class TestPointGridIndex {
+
+    private static final SRSInfo srsInfo = new SRSInfo(SRS_URI.DEFAULT_WKT_CRS84);
+
+    @Test public void grid_empty() {
+        PointGridIndex index = PointGridIndex.build(srsInfo, 0, new double[0], new double[0], new Node[0]);
+        assertEquals(0, index.size());
+        assertEquals(0, index.query(new Envelope(-180, 180, -90, 90)).size());
+    }
+
+    @Test public void grid_one() {
+        Node n = NodeFactory.createURI("http://example/p");
+        PointGridIndex index = PointGridIndex.build(srsInfo, 1, new double[] {10}, new double[] {20}, new Node[] {n});
+        assertEquals(Set.of(n), index.query(new Envelope(10, 10, 20, 20)));
+        assertEquals(Set.of(), index.query(new Envelope(11, 12, 20, 21)));
+    }
+
+    @Test public void grid_random() {
+        int N = 10_000;
+        Random random = new Random(1234);
+        double[] x = new double[N];
+        double[] y = new double[N];
+        Node[] nodes = new Node[N];
+        for ( int i = 0 ; i < N ; i++ ) {
+            x[i] = random.nextDouble() * 360 - 180;
+            y[i] = random.nextDouble() * 180 - 90;
+            nodes[i] = NodeFactory.createURI("http://example/p"+i);
+        }
+        PointGridIndex index = PointGridIndex.build(srsInfo, N, x, y, nodes);
+        assertEquals(N, index.size());
+
+        for ( int q = 0 ; q < 100 ; q++ ) {
+            double x1 = random.nextDouble() * 400 - 200;
+            double y1 = random.nextDouble() * 200 - 100;
+            Envelope search = new Envelope(x1, x1 + random.nextDouble() * 50, y1, y1 + random.nextDouble() * 30);
+            Set<Node> expected = new HashSet<>();
+            for ( int i = 0 ; i < N ; i++ ) {
+                if ( search.intersects(x[i], y[i]) )
+                    expected.add(nodes[i]);
+            }
+            assertEquals(expected, index.query(search));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Geometries in more than one SRS: each is indexed in the partition of its own SRS,
+ * and a query in either SRS finds all of them.
+ * <p>
+ * The second SRS is UTM zone 30N (EPSG:32630), which is available without the EPSG
+ * database. {@code :utm} is about 90m from {@code :london}.
+ */
+public class TestSRSPartitionedIndex {
+
+    private static final String UTM30N = "http://www.opengis.net/def/crs/EPSG/0/32630";
+
+    private static final String DATA = String.join("\n",
+        ":london geo:hasGeometry :londonGeom . :londonGeom geo:asWKT \"POINT(-0.1276 51.5072)\"^^geo:wktLiteral .",
+        ":utm geo:hasGeometry :utmGeom . :utmGeom geo:asWKT \"<"+UTM30N+"> POINT(699400 5710200)\"^^geo:wktLiteral .",
+        ":paris geo:hasGeometry :parisGeom . :parisGeom geo:asWKT \"POINT(2.3522 48.8566)\"^^geo:wktLiteral .",
+        "");
+
+    // Around London, in each SRS.
+    private static final String FILTER_CRS84 =
+        "FILTER(geof:sfWithin(?wkt, \"POLYGON((-0.3 51.4, 0.1 51.4, 0.1 51.6, -0.3 51.6, -0.3 51.4))\"^^geo:wktLiteral))";
+    private static final String FILTER_UTM =
+        "FILTER(geof:sfWithin(?wkt, \"<"+UTM30N+"> POLYGON((690000 5700000, 710000 5700000, 710000 5720000, 690000 5720000, 690000 5700000))\"^^geo:wktLiteral))";
+
+    @BeforeClass public static void beforeClass() {
+        init();
+    }
+
+    private static SRSPartitionedIndex index() {
+        Dataset ds = dataset(DATA);
+        ds.begin(ReadWrite.READ);
+        try {
+            return SRSPartitionedIndex.build(ds.asDatasetGraph(), null);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            ds.end();
+        }
+    }
+
+    @Test public void partitions() {
+        SRSPartitionedIndex index = index();
+        assertEquals(Set.of(SRS_URI.DEFAULT_WKT_CRS84, UTM30N), Set.copyOf(index.srsURIs()));
+        Envelope all = new Envelope(-1e9, 1e9, -1e9, 1e9);
+        for ( SpatialLookup part : index.partitions() ) {
+            Set<Node> items = part.query(all);
+            if ( part.getSrsInfo().getSrsURI().equals(UTM30N) ) {
+                assertEquals(nodes("utm"), items);
+                // In its own coordinates.
+                assertEquals(nodes("utm"), part.query(new Envelope(699000, 700000, 5710000, 5711000)));
+            } else {
+                assertEquals(nodes("london", "paris"), items);
+            }
+        }
+    }
+
+    @Test public void badLiteral() {
+        String data = DATA + ":bad geo:hasGeometry :badGeom . :badGeom geo:asWKT \"POINT(1\"^^geo:wktLiteral .\n";
+        Dataset ds = dataset(data);
+        ds.begin(ReadWrite.READ);
+        try {
+            SRSPartitionedIndex index = SRSPartitionedIndex.build(ds.asDatasetGraph(), null);
+            assertEquals(1, index.skipped());
+            assertEquals(3, index.size());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            ds.end();
+        }
+        Dataset dsLookup = datasetWithLookup(data, SpatialIndexerConst.indexTypeSRS);
+        assertEquals(nodes("london", "utm"), select(dsLookup, "SELECT ?f { ?f spatial:withinBox(51.4 -0.3 51.6 0.1) }"));
+    }
+
+    @Test public void query_crs84_pf() {
+        Dataset ds = datasetWithLookup(DATA, SpatialIndexerConst.indexTypeSRS);
+        assertEquals(nodes("london", "utm"), select(ds, "SELECT ?f { ?f spatial:nearby(51.5072 -0.1276 5) }"));
+        assertEquals(nodes("london", "utm"), select(ds, "SELECT ?f { ?f spatial:withinBox(51.4 -0.3 51.6 0.1) }"));
+    }
+
+    @Test public void query_crs84_filter() {
+        testFilter(FILTER_CRS84);
+    }
+
+    @Test public void query_utm_filter() {
+        testFilter(FILTER_UTM);
+    }
+
+    private static void testFilter(String filter) {
+        String query = "SELECT ?f { ?f geo:hasGeometry ?g . ?g geo:asWKT ?wkt "+filter+" }";
+        Dataset ds = datasetWithRewrite(DATA, SpatialIndexerConst.indexTypeSRS);
+        assertTrue(optimize(ds, query).toString().contains(SpatialIndexerConst.candidatesPF));
+        assertEquals(nodes("london", "utm"), select(ds, query));
+        assertEquals(select(dataset(DATA), query), select(ds, query));
+    }
+}
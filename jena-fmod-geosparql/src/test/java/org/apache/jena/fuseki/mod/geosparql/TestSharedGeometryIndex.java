@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.geosparql.implementation.vocabulary.SRS_URI;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Sharing of entries between graphs, and queries on one graph. */
+public class TestSharedGeometryIndex {
+
+    // :a is in three graphs; :b has its geometry by both properties; :c and :d share a literal.
+    private static final String DATA = String.join("\n",
+        ":a geo:hasGeometry :aGeom . :aGeom geo:asWKT \"POINT(1 1)\"^^geo:wktLiteral .",
+        "GRAPH :g1 { :a geo:hasGeometry :aGeom . :aGeom geo:asWKT \"POINT(1 1)\"^^geo:wktLiteral . }",
+        "GRAPH :g2 { :a geo:hasGeometry :aGeom . :aGeom geo:asWKT \"POINT(1 1)\"^^geo:wktLiteral . }",
+        "GRAPH :g1 { :b geo:hasGeometry :bGeom ; geo:hasDefaultGeometry :bGeom . :bGeom geo:asWKT \"POINT(2 2)\"^^geo:wktLiteral . }",
+        "GRAPH :g2 { :c geo:hasGeometry :cGeom . :cGeom geo:asWKT \"POINT(3 3)\"^^geo:wktLiteral . }",
+        "GRAPH :g2 { :d geo:hasGeometry :dGeom . :dGeom geo:asWKT \"POINT(3 3)\"^^geo:wktLiteral . }",
+        "");
+
+    @BeforeClass public static void beforeClass() {
+        init();
+    }
+
+    private static SharedGeometryIndex build(Dataset ds) throws Exception {
+        ds.begin(ReadWrite.READ);
+        try {
+            return SharedGeometryIndex.build(ds.asDatasetGraph(), SRS_URI.DEFAULT_WKT_CRS84, null);
+        } finally {
+            ds.end();
+        }
+    }
+
+    @Test public void shared_entries() throws Exception {
+        SharedGeometryIndex index = build(dataset(DATA));
+        // a, b, c, d
+        assertEquals(4, index.size());
+        // a three times, b once, c and d.
+        assertEquals(6, index.graphEntries());
+        // Two entries and three envelopes not allocated.
+        assertEquals(2 * 24 + 3 * 48, index.savedBytes());
+    }
+
+    @Test public void shared_badLiteral() throws Exception {
+        String data = DATA + ":e geo:hasGeometry :eGeom . :eGeom geo:asWKT \"POINT(1\"^^geo:wktLiteral .\n";
+        SharedGeometryIndex index = build(dataset(data));
+        assertEquals(1, index.skipped());
+        assertEquals(4, index.size());
+        Dataset ds = datasetWithLookup(data, SpatialIndexerConst.indexTypeShared);
+        assertEquals(nodes("a"), select(ds, "SELECT ?f { ?f spatial:withinBox(0 0 10 10) }"));
+    }
+
+    @Test public void shared_noDuplicates() throws Exception {
+        SharedGeometryIndex index = build(dataset(DATA));
+        assertEquals(2, index.graph(node("g1")).size());
+        assertEquals(3, index.graph(node("g2")).size());
+    }
+
+    @Test public void shared_forGraph() throws Exception {
+        Dataset ds = dataset(DATA);
+        SharedGeometryIndex index = build(ds);
+        DatasetGraph dsg = ds.asDatasetGraph();
+        assertSame(index.graph(node("g1")), index.forGraph(dsg.getGraph(node("g1"))));
+        assertSame(index, index.forGraph(dsg.getDefaultGraph()));
+        assertEquals(0, index.forGraph(dsg.getGraph(node("g3"))).size());
+    }
+
+    @Test public void shared_query_graph() {
+        Dataset ds = datasetWithLookup(DATA, SpatialIndexerConst.indexTypeShared);
+        String box = "spatial:withinBox(0 0 10 10)";
+        assertEquals(nodes("a", "b"), select(ds, "SELECT ?f { GRAPH :g1 { ?f "+box+" } }"));
+        assertEquals(nodes("a", "c", "d"), select(ds, "SELECT ?f { GRAPH :g2 { ?f "+box+" } }"));
+        assertEquals(nodes("a"), select(ds, "SELECT ?f { ?f "+box+" }"));
+        assertTrue(select(ds, "SELECT ?f { GRAPH :g3 { ?f "+box+" } }").isEmpty());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.*;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.apache.jena.update.UpdateAction;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Dirty graph tracking, for in-memory (wrapped) and TDB2 (not wrapped) datasets. */
+public class TestSpatialDirtyTracking {
+
+    private static final String DATA =
+        ":a geo:hasGeometry :aGeom . :aGeom geo:asWKT \"POINT(0 0)\"^^geo:wktLiteral .";
+    private static final String INSERT_B =
+        "INSERT DATA { :b geo:hasGeometry :bGeom . :bGeom geo:asWKT \"POINT(0.01 0.01)\"^^geo:wktLiteral . }";
+    private static final String INSERT_LABEL =
+        "INSERT DATA { :a :label \"A\" }";
+    private static final String NEARBY =
+        "SELECT ?f { ?f spatial:nearby(0 0 10) }";
+
+    @BeforeClass public static void beforeClass() {
+        init();
+    }
+
+    /** A dataset with tracking and a module index, set up as the module does. */
+    private static Dataset tracked(DatasetGraph dsg) {
+        Txn.executeWrite(dsg, () -> RDFParser.fromString(PREFIXES+DATA).lang(Lang.TTL).parse(dsg.getDefaultGraph()));
+        dsg.getContext().set(SpatialIndexerConst.symIndexType, SpatialIndexerConst.indexTypeSRS);
+        SpatialDirtyGraphs dirtyGraphs = new SpatialDirtyGraphs();
+        dsg.getContext().set(SpatialIndexerConst.symDirtyGraphs, dirtyGraphs);
+        Dataset ds = DatasetFactory.wrap(DatasetGraphSpatialTracking.track(dsg, dirtyGraphs));
+        try {
+            SpatialIndexerLib.buildLookup(ds, LOG);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        return ds;
+    }
+
+    private static Dataset mem() {
+        return tracked(DatasetGraphFactory.createTxnMem());
+    }
+
+    private static Dataset tdb2() {
+        return tracked(DatabaseMgr.createDatasetGraph());
+    }
+
+    private static SpatialDirtyGraphs dirtyGraphs(Dataset ds) {
+        return SpatialDirtyGraphs.get(ds.asDatasetGraph());
+    }
+
+    private static void update(Dataset ds, String update) {
+        Txn.executeWrite(ds, () -> UpdateAction.parseExecute(PREFIXES+update, ds));
+    }
+
+    private static void updateAbort(Dataset ds, String update) {
+        ds.begin(ReadWrite.WRITE);
+        try {
+            UpdateAction.parseExecute(PREFIXES+update, ds);
+            ds.abort();
+        } finally {
+            ds.end();
+        }
+    }
+
+    @Test public void tdb2_not_wrapped() {
+        Dataset ds = tdb2();
+        assertTrue(TDBInternal.isTDB2(ds.asDatasetGraph()));
+    }
+
+    @Test public void mem_commit_dirty() {
+        commit_dirty(mem());
+    }
+
+    @Test public void tdb2_commit_dirty() {
+        commit_dirty(tdb2());
+    }
+
+    private static void commit_dirty(Dataset ds) {
+        assertFalse(dirtyGraphs(ds).isDirty());
+        update(ds, INSERT_B);
+        assertTrue(dirtyGraphs(ds).isDirty());
+    }
+
+    @Test public void mem_abort_not_dirty() {
+        abort_not_dirty(mem());
+    }
+
+    @Test public void tdb2_abort_not_dirty() {
+        abort_not_dirty(tdb2());
+    }
+
+    private static void abort_not_dirty(Dataset ds) {
+        updateAbort(ds, INSERT_B);
+        assertFalse(dirtyGraphs(ds).isDirty());
+        Txn.executeRead(ds, () -> {});
+        assertFalse(dirtyGraphs(ds).isDirty());
+    }
+
+    // Only the in-memory dataset sees the individual changes.
+    @Test public void mem_not_geo_not_dirty() {
+        Dataset ds = mem();
+        update(ds, INSERT_LABEL);
+        assertFalse(dirtyGraphs(ds).isDirty());
+    }
+
+    @Test public void mem_rebuild_dirty() {
+        rebuild_dirty(mem());
+    }
+
+    @Test public void tdb2_rebuild_dirty() {
+        rebuild_dirty(tdb2());
+    }
+
+    /** mode=dirty: rebuild only when there are changes. */
+    private static void rebuild_dirty(Dataset ds) {
+        SpatialDirtyGraphs dirtyGraphs = dirtyGraphs(ds);
+        SpatialLookup lookup1 = SpatialLookup.get(ds.getContext());
+        try {
+            SpatialLookup lookup2 = SpatialIndexerLib.rebuildLookupDirty(ds, dirtyGraphs, LOG);
+            assertSame(lookup1, lookup2);
+
+            update(ds, INSERT_B);
+            assertEquals(nodes("a"), select(ds, NEARBY));
+            SpatialLookup lookup3 = SpatialIndexerLib.rebuildLookupDirty(ds, dirtyGraphs, LOG);
+            assertNotSame(lookup1, lookup3);
+            assertFalse(dirtyGraphs.isStale());
+            assertEquals(nodes("a", "b"), select(ds, NEARBY));
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Test public void mem_auto_refresh() throws InterruptedException {
+        auto_refresh(mem());
+    }
+
+    @Test public void tdb2_auto_refresh() throws InterruptedException {
+        auto_refresh(tdb2());
+    }
+
+    private static void auto_refresh(Dataset ds) throws InterruptedException {
+        SpatialDirtyGraphs dirtyGraphs = dirtyGraphs(ds);
+        SpatialIndexAutoRefresh autoRefresh = new SpatialIndexAutoRefresh();
+        try {
+            autoRefresh.add("test", ds.asDatasetGraph(), dirtyGraphs, 1);
+            update(ds, INSERT_B);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ( dirtyGraphs.isStale() && System.currentTimeMillis() < deadline )
+                Thread.sleep(50);
+            assertFalse(dirtyGraphs.isStale());
+            // Only in the index if it has been rebuilt since the commit.
+            assertEquals(nodes("a", "b"), select(ds, NEARBY));
+        } finally {
+            autoRefresh.shutdown();
+        }
+    }
+}
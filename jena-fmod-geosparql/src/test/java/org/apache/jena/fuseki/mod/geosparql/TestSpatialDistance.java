@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestSpatialDistance {
+
+    private static final double metresPerDegree = SpatialDistance.EARTH_RADIUS_METRES * Math.PI / 180;
+
+    @Test public void box_inside() {
+        assertEquals(0, SpatialDistance.toLatLonBox(5, 5, 0, 0, 10, 10), 0);
+    }
+
+    @Test public void box_same_longitude() {
+        assertEquals(5 * metresPerDegree, SpatialDistance.toLatLonBox(15, 5, 0, 0, 10, 10), 1e-6);
+    }
+
+    // The nearest point of the meridian edge is north of the point's latitude.
+    @Test public void box_converging_meridians() {
+        double d = SpatialDistance.toLatLonBox(60, 0, 55, 10, 70, 20);
+        assertTrue(d < SpatialDistance.haversine(60, 0, 60, 10));
+    }
+
+    @Test public void box_antimeridian() {
+        assertEquals(0.1 * metresPerDegree, SpatialDistance.toLatLonBox(0, 179.9, -1, -180, 1, -179), 1);
+        assertEquals(0.1 * metresPerDegree, SpatialDistance.toLatLonBox(0, -179.9, -1, 179, 1, 180), 1);
+    }
+
+    // The distance to the box is a lower bound on, and close to, the distance to points in it.
+    @Test public void box_random() {
+        Random random = new Random(1234);
+        int steps = 100;
+        for ( int i = 0 ; i < 200 ; i++ ) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            double lat1 = random.nextDouble() * 170 - 85;
+            double lat2 = Math.min(90, lat1 + random.nextDouble() * 40);
+            double lon1 = random.nextDouble() * 360 - 180;
+            double lon2 = Math.min(180, lon1 + random.nextDouble() * 120);
+            double min = Double.POSITIVE_INFINITY;
+            for ( int a = 0 ; a <= steps ; a++ ) {
+                for ( int b = 0 ; b <= steps ; b++ ) {
+                    double y = lat1 + (lat2 - lat1) * a / steps;
+                    double x = lon1 + (lon2 - lon1) * b / steps;
+                    min = Math.min(min, SpatialDistance.haversine(lat, lon, y, x));
+                }
+            }
+            double d = SpatialDistance.toLatLonBox(lat, lon, lat1, lon1, lat2, lon2);
+            double step = Math.max(lat2 - lat1, lon2 - lon1) / steps * metresPerDegree;
+            assertTrue("Not a lower bound: "+i, d <= min + 1e-3);
+            assertTrue("Not close: "+i, min - d <= step);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The spatial filter rewrite gives the same results as the filter without it. */
+public class TestSpatialFilterRewrite {
+
+    private static final String DATA = String.join("\n",
+        ":a geo:hasGeometry :aGeom . :aGeom geo:asWKT \"POINT(1 1)\"^^geo:wktLiteral .",
+        ":b geo:hasDefaultGeometry :bGeom . :bGeom geo:asWKT \"POINT(2 2)\"^^geo:wktLiteral .",
+        ":c geo:hasGeometry :cGeom . :cGeom geo:asWKT \"POINT(50 50)\"^^geo:wktLiteral .",
+        "GRAPH :g { :d geo:hasGeometry :dGeom . :dGeom geo:asWKT \"POINT(3 3)\"^^geo:wktLiteral . }",
+        "");
+
+    private static final String FILTER =
+        "FILTER(geof:sfWithin(?wkt, \"POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))\"^^geo:wktLiteral))";
+
+    private static final String queryHasGeometry =
+        "SELECT ?f { ?f geo:hasGeometry ?g . ?g geo:asWKT ?wkt "+FILTER+" }";
+    private static final String queryHasDefaultGeometry =
+        "SELECT ?f { ?f geo:hasDefaultGeometry ?g . ?g geo:asWKT ?wkt "+FILTER+" }";
+    private static final String queryGraph =
+        "SELECT ?f { GRAPH :g { ?f geo:hasGeometry ?g . ?g geo:asWKT ?wkt "+FILTER+" } }";
+
+    @BeforeClass public static void beforeClass() {
+        init();
+    }
+
+    private static void test(Dataset ds, String indexType, String query, boolean rewritten, String... expected) {
+        assertEquals(indexType+": rewrite", rewritten, isRewritten(ds, query));
+        assertEquals(indexType, nodes(expected), select(ds, query));
+        assertEquals(indexType+": no rewrite", select(dataset(DATA), query), select(ds, query));
+    }
+
+    private static boolean isRewritten(Dataset ds, String query) {
+        return optimize(ds, query).toString().contains(SpatialIndexerConst.candidatesPF);
+    }
+
+    @Test public void rewrite_hasGeometry() {
+        for ( String indexType : indexTypes )
+            test(datasetWithRewrite(DATA, indexType), indexType, queryHasGeometry, true, "a");
+    }
+
+    // Only rewritten if the index has hasDefaultGeometry features.
+    @Test public void rewrite_hasDefaultGeometry() {
+        for ( String indexType : indexTypes ) {
+            Dataset ds = datasetWithRewrite(DATA, indexType);
+            boolean rewritten = SpatialLookup.get(ds.getContext()).indexesDefaultGeometry();
+            test(ds, indexType, queryHasDefaultGeometry, rewritten, "b");
+        }
+    }
+
+    @Test public void rewrite_graph() {
+        for ( String indexType : indexTypes )
+            test(datasetWithRewrite(DATA, indexType), indexType, queryGraph, false, "d");
+    }
+
+    // After a change, the index is stale and the rewrite is not used until it is rebuilt.
+    @Test public void rewrite_stale() throws Exception {
+        for ( String indexType : indexTypes ) {
+            Dataset ds = datasetWithRewrite(DATA, indexType);
+            ds.begin(ReadWrite.WRITE);
+            RDFParser.fromString(PREFIXES+":e geo:hasGeometry :eGeom . :eGeom geo:asWKT \"POINT(4 4)\"^^geo:wktLiteral .")
+                .lang(Lang.TRIG).parse(ds.asDatasetGraph());
+            ds.commit();
+            ds.end();
+            assertEquals(indexType, false, isRewritten(ds, queryHasGeometry));
+            assertEquals(indexType, nodes("a", "e"), select(ds, queryHasGeometry));
+
+            SpatialIndexerLib.rebuildLookupDirty(ds, SpatialDirtyGraphs.get(ds.asDatasetGraph()), LOG);
+            assertEquals(indexType, true, isRewritten(ds, queryHasGeometry));
+            assertEquals(indexType, nodes("a", "e"), select(ds, queryHasGeometry));
+        }
+    }
+}
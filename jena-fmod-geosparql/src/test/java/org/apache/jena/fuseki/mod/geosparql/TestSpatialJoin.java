@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.ARQConstants;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The spatial join gives the same results as the filter over the plain join. */
+public class TestSpatialJoin {
+
+    private static final String queryIntersects = String.join("\n",
+        "SELECT ?a ?b {",
+        "  ?a geo:hasGeometry ?ga . ?ga geo:asWKT ?wktA .",
+        "  ?b a :Region ; geo:hasGeometry ?gb . ?gb geo:asWKT ?wktB .",
+        "  FILTER(geof:sfIntersects(?wktA, ?wktB))",
+        "}");
+
+    // The smaller side (the regions) on the left.
+    private static final String queryIntersectsSwapped = String.join("\n",
+        "SELECT ?a ?b {",
+        "  ?b a :Region ; geo:hasGeometry ?gb . ?gb geo:asWKT ?wktB .",
+        "  ?a geo:hasGeometry ?ga . ?ga geo:asWKT ?wktA .",
+        "  FILTER(geof:sfIntersects(?wktA, ?wktB))",
+        "}");
+
+    private static final String queryTwoFilters = String.join("\n",
+        "SELECT ?a ?b {",
+        "  ?a geo:hasGeometry ?ga . ?ga geo:asWKT ?wktA .",
+        "  ?b a :Region ; geo:hasGeometry ?gb . ?gb geo:asWKT ?wktB .",
+        "  FILTER(geof:sfWithin(?wktA, ?wktB)) FILTER(?a != :p0_0)",
+        "}");
+
+    // The join is evaluated once for each row of the VALUES.
+    private static final String queryRepeated = String.join("\n",
+        "SELECT ?a ?b ?x {",
+        "  VALUES ?x { 1 2 }",
+        "  { ?a geo:hasGeometry ?ga . ?ga geo:asWKT ?wktA .",
+        "    ?b a :Region ; geo:hasGeometry ?gb . ?gb geo:asWKT ?wktB .",
+        "    FILTER(geof:sfIntersects(?wktA, ?wktB)) }",
+        "}");
+
+    @BeforeClass public static void beforeClass() {
+        init();
+    }
+
+    /** Points on a grid, some regions (one not overlapping the points) and a bad literal. */
+    private static String data() {
+        StringBuilder sb = new StringBuilder();
+        for ( int x = 0 ; x < 20 ; x++ ) {
+            for ( int y = 0 ; y < 20 ; y++ ) {
+                String p = ":p"+x+"_"+y;
+                sb.append(p+" geo:hasGeometry "+p+"Geom . "+p+"Geom geo:asWKT \"POINT("+x+" "+y+")\"^^geo:wktLiteral .\n");
+            }
+        }
+        region(sb, "r1", "POLYGON((0 0, 5 0, 5 5, 0 5, 0 0))");
+        region(sb, "r2", "POLYGON((3 3, 12 3, 3 12, 3 3))");
+        region(sb, "r3", "LINESTRING(0 19, 19 0)");
+        region(sb, "r4", "POLYGON((100 100, 101 100, 101 101, 100 101, 100 100))");
+        sb.append(":bad geo:hasGeometry :badGeom . :badGeom geo:asWKT \"not a literal\" .\n");
+        return sb.toString();
+    }
+
+    private static void region(StringBuilder sb, String name, String wkt) {
+        sb.append(":"+name+" a :Region ; geo:hasGeometry :"+name+"Geom . :"+name+"Geom geo:asWKT \""+wkt+"\"^^geo:wktLiteral .\n");
+    }
+
+    private static Dataset datasetWithJoin(String trig) {
+        Dataset ds = dataset(trig);
+        ds.getContext().set(SpatialIndexerConst.symSpatialJoin, true);
+        ds.getContext().set(ARQConstants.sysOptimizerFactory, new SpatialRewriteFactory(null));
+        return ds;
+    }
+
+    private static void test(String query) {
+        String data = data();
+        Dataset ds = datasetWithJoin(data);
+        assertTrue(optimize(ds, query).toString().contains("spatialjoin"));
+        List<String> expected = rows(dataset(data), query);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows(ds, query));
+    }
+
+    @Test public void spatialJoin_intersects() {
+        test(queryIntersects);
+    }
+
+    // The tree is built on the smaller side, whichever side it is.
+    @Test public void spatialJoin_smallerLeft() {
+        test(queryIntersectsSwapped);
+    }
+
+    @Test public void spatialJoin_moreFilters() {
+        test(queryTwoFilters);
+    }
+
+    @Test public void spatialJoin_repeated() {
+        test(queryRepeated);
+    }
+
+    @Test public void spatialJoin_emptySide() {
+        Dataset ds = datasetWithJoin(data());
+        assertTrue(rows(ds, queryIntersects.replace(":Region", ":NoSuchClass")).isEmpty());
+        assertTrue(rows(ds, queryIntersectsSwapped.replace(":Region", ":NoSuchClass")).isEmpty());
+    }
+
+    /** All the rows, as strings, sorted; the join does not keep the order of the plain join. */
+    private static List<String> rows(Dataset ds, String queryString) {
+        List<String> rows = new ArrayList<>();
+        Query query = QueryFactory.create(PREFIXES+queryString);
+        ds.begin(ReadWrite.READ);
+        try ( QueryExecution qExec = QueryExecutionFactory.create(query, ds) ) {
+            qExec.execSelect().forEachRemaining(row -> rows.add(row.toString()));
+        } finally {
+            ds.end();
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.geosparql;
+
+import static org.apache.jena.fuseki.mod.geosparql.SpatialTestLib.*;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jena.query.Dataset;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The spatial property functions over each module index type. */
+public class TestSpatialLookupPF {
+
+    private static final String DATA = String.join("\n",
+        ":line geo:hasGeometry :lineGeom . :lineGeom geo:asWKT \"LINESTRING(0 0, 10 10)\"^^geo:wktLiteral .",
+        ":east geo:hasGeometry :eastGeom . :eastGeom geo:asWKT \"POINT(179.5 0)\"^^geo:wktLiteral .",
+        ":west geo:hasGeometry :westGeom . :westGeom geo:asWKT \"POINT(-179.5 0)\"^^geo:wktLiteral .",
+        ":square geo:hasGeometry :squareGeom . :squareGeom geo:asWKT \"POLYGON((20 20, 30 20, 30 30, 20 30, 20 20))\"^^geo:wktLiteral .",
+        "");
+
+    @BeforeClass public static void beforeClass() {
+        init();
+    }
+
+    private static void test(String pattern, String... expected) {
+        for ( String indexType : indexTypes ) {
+            Dataset ds = datasetWithLookup(DATA, indexType);
+            assertEquals(indexType+": "+pattern, nodes(expected), select(ds, "SELECT ?f { "+pattern+" }"));
+        }
+    }
+
+    // The envelope of the line intersects the box; the line does not.
+    @Test public void intersectBox_envelope_only() {
+        test("?f spatial:intersectBox(0 8 2 10)");
+    }
+
+    @Test public void intersectBox_line() {
+        test("?f spatial:intersectBox(8 8 9 9)", "line");
+    }
+
+    @Test public void withinBox_polygon() {
+        test("?f spatial:withinBox(19 19 31 31)", "square");
+        test("?f spatial:withinBox(19 19 25 31)");
+    }
+
+    @Test public void withinBox_antimeridian() {
+        test("?f spatial:withinBox(-1 178 1 -178)", "east", "west");
+        test("?f spatial:withinBox(-1 -178 1 178)");
+    }
+
+    @Test public void nearby_antimeridian() {
+        // east is about 44km away, west about 67km.
+        test("?f spatial:nearby(0 179.9 50)", "east");
+        test("?f spatial:nearby(0 179.9 70)", "east", "west");
+    }
+
+    // The point is in the envelope of the line but about 390km from the line.
+    @Test public void nearby_envelope_only() {
+        test("?f spatial:nearby(5 0 100)");
+        test("?f spatial:nearby(5 5 10)", "line");
+    }
+
+    // Inside a polygon is distance 0.
+    @Test public void nearby_inside() {
+        test("?f spatial:nearby(25 25 1)", "square");
+    }
+
+    @Test public void bound_subject() {
+        test("BIND(:line AS ?f) ?f spatial:intersectBox(8 8 9 9)", "line");
+        test("BIND(:line AS ?f) ?f spatial:intersectBox(0 8 2 10)");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.apache.jena.fuseki.ctl.ActionMetrics;
+import org.apache.jena.fuseki.metrics.MetricsProviderRegistry;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.riot.WebContent;
+
+/**
+ * Metrics endpoint for the Prometheus registry.
+ * <p>
+ * A scrape only reads the meters: dataset meters are kept up-to-date in the
+ * background (see {@link FMod_Prometheus#envSyncSeconds}).
+ * <p>
+ * The exposition text is written directly to the response, not built as a string
+ * first. If a cache time is set, the output of a scrape is kept and served to
+ * further scrapes for that time; concurrent scrapes when the cached copy is out
+ * of date wait for a single scrape of the meters.
+ */
+public class ActionPrometheusMetrics extends ActionMetrics {
+
+    private static final int bufferSize = 64*1024;
+
+    private volatile long cacheNanos = 0;
+
+    private final Object snapshotLock = new Object();
+    private volatile Snapshot snapshot = null;
+
+    private static class Snapshot {
+        final byte[] bytes;
+        final long timestamp;
+        Snapshot(byte[] bytes, long timestamp) {
+            this.bytes = bytes;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public ActionPrometheusMetrics() { super(); }
+
+    /** Time, in milliseconds, to serve the output of a scrape for. 0 means no caching. */
+    void setCacheMillis(long millis) {
+        this.cacheNanos = Math.max(0, millis) * 1_000_000L;
+        this.snapshot = null;
+    }
+
+    @Override
+    public void execute(HttpAction action) {
+        MeterRegistry meterRegistry = MetricsProviderRegistry.get().getMeterRegistry();
+        if ( ! ( meterRegistry instanceof PrometheusMeterRegistry ) ) {
+            super.execute(action);
+            return;
+        }
+        PrometheusMeterRegistry registry = (PrometheusMeterRegistry)meterRegistry;
+        try {
+            byte[] bytes = ( cacheNanos > 0 ) ? snapshot(registry) : null;
+            ServletOps.setNoCache(action);
+            action.setResponseContentType(WebContent.contentTypeTextPlain);
+            action.setResponseCharacterEncoding(WebContent.charsetUTF8);
+            OutputStream out = action.getResponseOutputStream();
+            if ( bytes != null ) {
+                out.write(bytes);
+            } else {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), bufferSize);
+                registry.scrape(writer);
+                writer.flush();
+            }
+            out.flush();
+            ServletOps.success(action);
+        } catch (IOException ex) {
+            ServletOps.errorOccurred(ex);
+        }
+    }
+
+    /** The cached scrape output, refreshed if it is older than the cache time. */
+    private byte[] snapshot(PrometheusMeterRegistry registry) throws IOException {
+        Snapshot s = snapshot;
+        if ( isFresh(s) )
+            return s.bytes;
+        synchronized(snapshotLock) {
+            // Another scrape may have refreshed it while waiting.
+            s = snapshot;
+            if ( isFresh(s) )
+                return s.bytes;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(s == null ? bufferSize : s.bytes.length+bufferSize);
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            registry.scrape(writer);
+            writer.flush();
+            s = new Snapshot(out.toByteArray(), System.nanoTime());
+            snapshot = s;
+            return s.bytes;
+        }
+    }
+
+    private boolean isFresh(Snapshot s) {
+        return s != null && System.nanoTime() - s.timestamp < cacheNanos;
+    }
+}
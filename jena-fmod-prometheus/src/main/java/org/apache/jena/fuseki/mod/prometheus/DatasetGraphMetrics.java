@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * A {@link DatasetGraph} that records {@link TxnMetrics transaction metrics},
+ * including the time a writer waits in {@code begin} for the write lock.
+ * <p>
+ * If given a {@link QuadCounts}, changes are checked and recorded so that quad
+ * counts can be maintained from committed transactions.
+ * <p>
+ * If there is a heap limit and the heap estimate of the quad counts is over it,
+ * write transactions are refused with a {@link HeapLimitException}.
+ * <p>
+ * The wrapper hides the class of the dataset it wraps, so it is not used for TDB2,
+ * which is recognized by class (query engine, compaction, deleting the database
+ * files); TDB2 transactions are recorded by {@link TDB2TxnMetrics}. See
+ * {@link FMod_Prometheus#withMetrics} for when a dataset is wrapped.
+ */
+public class DatasetGraphMetrics extends DatasetGraphWrapper {
+
+    private final TxnMetrics txnMetrics = new TxnMetrics(true);
+    private final ThreadLocal<TxnMetrics.Txn> current = new ThreadLocal<>();
+
+    private final QuadCounts quadCounts;
+    private final long heapLimit;
+
+    public DatasetGraphMetrics(DatasetGraph dsg) {
+        this(dsg, null, 0);
+    }
+
+    public DatasetGraphMetrics(DatasetGraph dsg, QuadCounts quadCounts) {
+        this(dsg, quadCounts, 0);
+    }
+
+    /**
+     * @param heapLimit Limit, in bytes, on the heap estimate of {@code quadCounts} above which
+     *                  writes are refused; 0 for no limit.
+     */
+    public DatasetGraphMetrics(DatasetGraph dsg, QuadCounts quadCounts, long heapLimit) {
+        super(dsg);
+        this.quadCounts = quadCounts;
+        this.heapLimit = ( quadCounts != null && quadCounts.hasHeapEstimate() ) ? heapLimit : 0;
+    }
+
+    public TxnMetrics getTxnMetrics() {
+        return txnMetrics;
+    }
+
+    public QuadCounts getQuadCounts() {
+        return quadCounts;
+    }
+
+    /** The heap limit, in bytes; 0 if none. */
+    public long getHeapLimit() {
+        return heapLimit;
+    }
+
+    /** Whether the heap estimate is over the limit, so writes are refused. */
+    public boolean isOverHeapLimit() {
+        return heapLimit > 0 && quadCounts.heapBytes() >= heapLimit;
+    }
+
+    private void checkHeapLimit() {
+        if ( isOverHeapLimit() )
+            throw new HeapLimitException(String.format("Estimated heap use of the dataset (%,d bytes) is over the limit (%,d bytes): writes refused",
+                                                       quadCounts.heapBytes(), heapLimit));
+    }
+
+    /**
+     * Register the meters of this dataset, other than the size gauges
+     * (see {@link DatasetSizeMetrics}).
+     */
+    public void bindTo(MeterRegistry meterRegistry, Tags tags) {
+        txnMetrics.bindTo(meterRegistry, tags);
+        if ( quadCounts != null && quadCounts.hasHeapEstimate() ) {
+            Gauge.builder("fuseki_dataset_heap_estimate", quadCounts, qc -> qc.heapBytes() < 0 ? Double.NaN : qc.heapBytes())
+                .description("Estimated heap used by the quads of an in-memory dataset")
+                .baseUnit("bytes").tags(tags).register(meterRegistry);
+            if ( heapLimit > 0 )
+                Gauge.builder("fuseki_dataset_heap_limit", () -> heapLimit)
+                    .description("Heap estimate above which writes are refused")
+                    .baseUnit("bytes").tags(tags).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void begin(TxnType type) {
+        boolean write = ( type == TxnType.WRITE );
+        if ( write )
+            checkHeapLimit();
+        long start = System.nanoTime();
+        super.begin(type);
+        current.set(txnMetrics.started(write, System.nanoTime() - start));
+    }
+
+    @Override
+    public void begin(ReadWrite mode) {
+        boolean write = ( mode == ReadWrite.WRITE );
+        if ( write )
+            checkHeapLimit();
+        long start = System.nanoTime();
+        super.begin(mode);
+        current.set(txnMetrics.started(write, System.nanoTime() - start));
+    }
+
+    @Override
+    public boolean promote(Promote mode) {
+        checkHeapLimit();
+        long start = System.nanoTime();
+        boolean b = super.promote(mode);
+        if ( b )
+            txnMetrics.promoted(current.get(), System.nanoTime() - start);
+        return b;
+    }
+
+    @Override
+    public void commit() {
+        if ( quadCounts != null )
+            quadCounts.commit(() -> super.commit());
+        else
+            super.commit();
+        txnMetrics.committed(current.get());
+        finished();
+    }
+
+    @Override
+    public void abort() {
+        try {
+            super.abort();
+        } finally {
+            if ( quadCounts != null )
+                quadCounts.discard();
+            txnMetrics.aborted();
+            finished();
+        }
+    }
+
+    @Override
+    public void end() {
+        TxnMetrics.Txn txn = current.get();
+        try {
+            super.end();
+        } finally {
+            if ( quadCounts != null )
+                quadCounts.discard();
+            if ( txn != null ) {
+                // A write transaction ended without commit or abort is aborted.
+                if ( txn.isWrite() )
+                    txnMetrics.aborted();
+                finished();
+            }
+        }
+    }
+
+    private void finished() {
+        TxnMetrics.Txn txn = current.get();
+        if ( txn == null )
+            return;
+        current.remove();
+        txnMetrics.finished(txn);
+    }
+
+    // Quad counting: record whether each change alters the dataset.
+
+    @Override
+    public Graph getDefaultGraph() {
+        if ( quadCounts == null )
+            return super.getDefaultGraph();
+        // Changes through the graph come back to this dataset.
+        return GraphView.createDefaultGraph(this);
+    }
+
+    @Override
+    public Graph getGraph(Node graphNode) {
+        if ( quadCounts == null )
+            return super.getGraph(graphNode);
+        return GraphView.createNamedGraph(this, graphNode);
+    }
+
+    @Override
+    public void add(Quad quad) {
+        add(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    @Override
+    public void delete(Quad quad) {
+        delete(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        if ( quadCounts != null && ! get().contains(g, s, p, o) )
+            quadCounts.change(g, s, p, o, 1);
+        super.add(g, s, p, o);
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        if ( quadCounts != null && get().contains(g, s, p, o) )
+            quadCounts.change(g, s, p, o, -1);
+        super.delete(g, s, p, o);
+    }
+
+    @Override
+    public void deleteAny(Node g, Node s, Node p, Node o) {
+        if ( quadCounts != null )
+            removing(g, s, p, o);
+        super.deleteAny(g, s, p, o);
+    }
+
+    @Override
+    public void addGraph(Node graphName, Graph graph) {
+        if ( quadCounts != null ) {
+            removing(graphName, Node.ANY, Node.ANY, Node.ANY);
+            if ( quadCounts.hasHeapEstimate() )
+                graph.find().forEachRemaining(t -> quadCounts.change(graphName, t.getSubject(), t.getPredicate(), t.getObject(), 1));
+            else
+                quadCounts.change(graphName, graph.size());
+        }
+        super.addGraph(graphName, graph);
+    }
+
+    @Override
+    public void removeGraph(Node graphName) {
+        if ( quadCounts != null )
+            removing(graphName, Node.ANY, Node.ANY, Node.ANY);
+        super.removeGraph(graphName);
+    }
+
+    @Override
+    public void clear() {
+        if ( quadCounts != null )
+            removing(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+        super.clear();
+    }
+
+    /** Record the removal of the quads matching a pattern. */
+    private void removing(Node g, Node s, Node p, Node o) {
+        if ( quadCounts.hasHeapEstimate() ) {
+            get().find(g, s, p, o).forEachRemaining(q ->
+                quadCounts.change(q.getGraph(), q.getSubject(), q.getPredicate(), q.getObject(), -1));
+            return;
+        }
+        Map<Node, Long> byGraph = new HashMap<>();
+        get().find(g, s, p, o).forEachRemaining(q -> byGraph.merge(q.getGraph(), 1L, Long::sum));
+        byGraph.forEach((gn, c) -> quadCounts.change(gn, -c));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.time.Duration;
+import java.util.*;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.metrics.FusekiRequestsMetrics;
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * Keep the meters of datasets in step with the {@link DataAccessPointRegistry}.
+ * <p>
+ * Each call of {@link #sync()} compares the data access points in the registry with
+ * those already bound, by object identity: new ones (e.g. datasets added by the
+ * admin API) have their request counters and endpoint timers bound; meters of ones
+ * no longer in the registry (deleted or replaced datasets) are removed from the
+ * meter registry. Unchanged datasets are not touched, so the cost of a sync when
+ * nothing has changed does not depend on the number of meters.
+ * <p>
+ * A dataset added while the server is running is treated as the configured
+ * datasets are when the server is built (see {@link FMod_Prometheus#withMetrics}):
+ * only if it uses a feature of {@link DatasetGraphMetrics} is it wrapped, with the
+ * heap limit check on its endpoints, and its data access point replaced in the
+ * registry. Other datasets, including all TDB2 datasets, are bound as they are, so
+ * the dataset the server uses is the one that was added.
+ * <p>
+ * The transactions of a TDB2 dataset are recorded by a {@link TDB2TxnMetrics}
+ * listener, which is moved to the new storage after a compaction by
+ * {@link #refreshSizes()}. Its cache sizes are reported by {@link TDB2CacheMetrics}.
+ * <p>
+ * The meters of each binding are recorded as they are added to the meter registry,
+ * by a listener that collects meters added by the binding thread while it binds.
+ */
+public class DatasetMetricsBinder {
+
+    private final DataAccessPointRegistry registry;
+    private final MeterRegistry meterRegistry;
+    private final Duration[] buckets;
+    // Identity: a replaced dataset with the same name is a different DataAccessPoint.
+    private final Map<DataAccessPoint, Binding> bound = new IdentityHashMap<>();
+
+    /** The meters of a data access point, and the objects that maintain them. */
+    private static class Binding {
+        final List<Meter> meters = new ArrayList<>();
+        DatasetSizeMetrics sizeMetrics = null;
+        TDB2TxnMetrics tdb2TxnMetrics = null;
+
+        void refresh() {
+            if ( tdb2TxnMetrics != null )
+                tdb2TxnMetrics.refresh();
+            if ( sizeMetrics != null )
+                sizeMetrics.refresh();
+        }
+
+        void unbind() {
+            if ( tdb2TxnMetrics != null )
+                tdb2TxnMetrics.unbind();
+            if ( sizeMetrics != null )
+                sizeMetrics.close();
+        }
+    }
+
+    // The meters added by the current thread during a binding; null when not binding.
+    private final ThreadLocal<List<Meter>> adding = new ThreadLocal<>();
+
+    public DatasetMetricsBinder(DataAccessPointRegistry registry, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+        this.buckets = EndpointTimers.buckets();
+        meterRegistry.config().onMeterAdded(meter -> {
+            List<Meter> meters = adding.get();
+            if ( meters != null )
+                meters.add(meter);
+        });
+    }
+
+    /** Bring the meters up-to-date with the registry. */
+    public synchronized void sync() {
+        Set<DataAccessPoint> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(registry.accessPoints());
+
+        // Remove first: a replacement dataset may have the same name and tags.
+        Iterator<Map.Entry<DataAccessPoint, Binding>> iter = bound.entrySet().iterator();
+        while ( iter.hasNext() ) {
+            Map.Entry<DataAccessPoint, Binding> e = iter.next();
+            if ( current.contains(e.getKey()) )
+                continue;
+            e.getValue().meters.forEach(meterRegistry::remove);
+            e.getValue().unbind();
+            iter.remove();
+            Fuseki.serverLog.info("Metrics: removed {}", e.getKey().getName());
+        }
+
+        for ( DataAccessPoint dap : current ) {
+            if ( ! bound.containsKey(dap) && ! ( dap.getDataService().getDataset() instanceof DatasetGraphMetrics ) ) {
+                dap = withMetricsIfNeeded(dap);
+                if ( dap == null )
+                    continue;
+            }
+            if ( bound.containsKey(dap) ) {
+                // Endpoints may have been added to the dataset.
+                // Only look for new meters if there are, so a sync is cheap when nothing has changed.
+                if ( EndpointTimers.hasUntimed(dap) )
+                    bound.get(dap).meters.addAll(newMeters(() -> EndpointTimers.bind(dap, meterRegistry, buckets)));
+                continue;
+            }
+            Binding binding = bind(dap);
+            bound.put(dap, binding);
+            if ( ! binding.meters.isEmpty() )
+                Fuseki.serverLog.debug("Metrics: bound {} ({} meters)", dap.getName(), binding.meters.size());
+        }
+    }
+
+    private Binding bind(DataAccessPoint dap) {
+        Binding binding = new Binding();
+        DatasetGraph dsg = dap.getDataService().getDataset();
+        Tags tags = Tags.of("dataset", dap.getName());
+        binding.meters.addAll(newMeters(() -> {
+            new FusekiRequestsMetrics(dap).bindTo(meterRegistry);
+            QuadCounts quadCounts = null;
+            if ( dsg instanceof DatasetGraphMetrics ) {
+                DatasetGraphMetrics dsgMetrics = (DatasetGraphMetrics)dsg;
+                dsgMetrics.bindTo(meterRegistry, tags);
+                quadCounts = dsgMetrics.getQuadCounts();
+            } else if ( TDBInternal.isTDB2(dsg) ) {
+                binding.tdb2TxnMetrics = new TDB2TxnMetrics(dsg);
+                binding.tdb2TxnMetrics.bindTo(meterRegistry, tags);
+                TDB2CacheMetrics.bindTo(dsg, meterRegistry, tags);
+            }
+            binding.sizeMetrics = new DatasetSizeMetrics(dsg, quadCounts, meterRegistry, tags);
+            EndpointTimers.bind(dap, meterRegistry, buckets);
+        }));
+        return binding;
+    }
+
+    /**
+     * Recompute the size gauges of the bound datasets (quad counts by graph, TDB2 disk
+     * sizes), and follow TDB2 compactions. This may walk database directories, so it is
+     * called by the background sync, not on a scrape; the gauges report the values of
+     * the last refresh.
+     */
+    public void refreshSizes() {
+        List<Binding> bindings;
+        synchronized(this) {
+            bindings = new ArrayList<>(bound.values());
+        }
+        bindings.forEach(Binding::refresh);
+    }
+
+    /**
+     * For a data access point added while the server is running, wrap the dataset
+     * and replace it in the registry if it uses a feature of {@link DatasetGraphMetrics}.
+     * Returns the data access point to bind: the new one, the same one if the dataset
+     * is not wrapped, or null if the dataset has been removed or replaced meanwhile.
+     */
+    private DataAccessPoint withMetricsIfNeeded(DataAccessPoint dap) {
+        if ( registry.get(dap.getName()) != dap )
+            return null;
+        DataAccessPoint dap2 = FMod_Prometheus.withMetrics(dap);
+        if ( dap2 == null )
+            // Not wrapped: the registry is unchanged.
+            return dap;
+        dap2.getDataService().goActive();
+        HeapLimitProcessor.bind(dap2);
+        if ( registry.get(dap.getName()) != dap )
+            return null;
+        registry.remove(dap.getName());
+        registry.register(dap2);
+        Fuseki.serverLog.info("Metrics: added {}", dap.getName());
+        return dap2;
+    }
+
+    /** Run the binding action, and return the meters it added to the meter registry. */
+    private List<Meter> newMeters(Runnable action) {
+        List<Meter> added = new ArrayList<>();
+        adding.set(added);
+        try {
+            action.run();
+        } finally {
+            adding.remove();
+        }
+        return added;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.tdb2.store.DatasetGraphSwitchable;
+
+/**
+ * Dataset size gauges: quad counts (if maintained, see {@link QuadCounts}) for the
+ * dataset and its largest graphs, and the on-disk size of each TDB2 generation
+ * ("Data-NNNN" directory).
+ * <p>
+ * Per-graph and on-disk values are recomputed by {@link #refresh()}, which is
+ * called by the background metrics sync (see
+ * {@link DatasetMetricsBinder#refreshSizes()}), not by the gauges or a scrape;
+ * directory sizes are recomputed at most every 10 seconds. The number of graphs
+ * exported is limited by {@code FUSEKI_METRICS_MAX_GRAPHS} (default 100).
+ */
+public class DatasetSizeMetrics {
+
+    public static final String envMaxGraphs = "FUSEKI_METRICS_MAX_GRAPHS";
+    private static final int defaultMaxGraphs = 100;
+
+    private final QuadCounts quadCounts;
+    private final Path container;
+    private final int maxGraphs;
+    private final MultiGauge graphQuads;
+    private final MultiGauge diskSize;
+    // Directory sizes are recomputed at most this often.
+    private static final long diskRefreshMillis = 10_000;
+    private volatile long lastDiskRefresh = 0;
+
+    DatasetSizeMetrics(DatasetGraph dsg, QuadCounts quadCounts, MeterRegistry meterRegistry, Tags tags) {
+        this.quadCounts = quadCounts;
+        this.container = tdb2Container(dsg);
+        this.maxGraphs = maxGraphs();
+        if ( quadCounts != null ) {
+            Gauge.builder("fuseki_dataset_quads", quadCounts, qc -> qc.isReady() ? qc.total() : Double.NaN)
+                .description("Quads in the dataset").tags(tags).register(meterRegistry);
+            graphQuads = MultiGauge.builder("fuseki_graph_quads")
+                .description("Quads in the graph").tags(tags).register(meterRegistry);
+        } else {
+            graphQuads = null;
+        }
+        if ( container != null )
+            diskSize = MultiGauge.builder("fuseki_tdb2_disk_size")
+                .description("Size on disk of a TDB2 generation").baseUnit("bytes").tags(tags).register(meterRegistry);
+        else
+            diskSize = null;
+    }
+
+    /** Recompute the per-graph and on-disk values. */
+    public void refresh() {
+        if ( graphQuads != null && quadCounts.isReady() ) {
+            List<MultiGauge.Row<?>> rows = quadCounts.byGraph().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(maxGraphs)
+                .map(e -> MultiGauge.Row.of(Tags.of("graph", e.getKey()), e.getValue()))
+                .collect(Collectors.toList());
+            graphQuads.register(rows, true);
+        }
+        long now = System.currentTimeMillis();
+        if ( diskSize != null && now - lastDiskRefresh >= diskRefreshMillis ) {
+            lastDiskRefresh = now;
+            List<MultiGauge.Row<?>> rows = new ArrayList<>();
+            generations(container).forEach((gen, size) -> rows.add(MultiGauge.Row.of(Tags.of("generation", gen), size)));
+            diskSize.register(rows, true);
+        }
+    }
+
+    /** Remove the rows of the multi-gauges. */
+    public void close() {
+        if ( graphQuads != null )
+            graphQuads.register(List.of(), true);
+        if ( diskSize != null )
+            diskSize.register(List.of(), true);
+    }
+
+    /** The container directory of a TDB2 database, or null. */
+    private static Path tdb2Container(DatasetGraph dsg) {
+        while ( dsg instanceof DatasetGraphWrapper )
+            dsg = ((DatasetGraphWrapper)dsg).getWrapped();
+        if ( ! ( dsg instanceof DatasetGraphSwitchable ) )
+            return null;
+        Path path = ((DatasetGraphSwitchable)dsg).getContainerPath();
+        if ( path == null || ! Files.isDirectory(path) )
+            return null;
+        return path;
+    }
+
+    /** Size of each "Data-NNNN" directory. */
+    private static Map<String, Long> generations(Path container) {
+        Map<String, Long> sizes = new TreeMap<>();
+        try ( Stream<Path> dirs = Files.list(container) ) {
+            dirs.filter(p -> Files.isDirectory(p) && p.getFileName().toString().matches("Data-\\d+"))
+                .forEach(p -> sizes.put(p.getFileName().toString(), directorySize(p)));
+        } catch (IOException ex) {
+            Fuseki.serverLog.debug("Disk size: {}: {}", container, ex.getMessage());
+        }
+        return sizes;
+    }
+
+    private static long directorySize(Path dir) {
+        try ( Stream<Path> files = Files.walk(dir) ) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> {
+                try { return Files.size(p); }
+                catch (IOException ex) { return 0; }
+            }).sum();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static int maxGraphs() {
+        String x = Lib.getenv(envMaxGraphs);
+        if ( x == null )
+            return defaultMaxGraphs;
+        try {
+            return Integer.parseInt(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+envMaxGraphs+": '"+x+"'");
+            return defaultMaxGraphs;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.Endpoint;
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.fuseki.servlets.ActionProcessor;
+import org.apache.jena.fuseki.servlets.HttpAction;
+
+/**
+ * Request latency histograms for each dataset, endpoint and operation.
+ * <p>
+ * The processor of each endpoint is wrapped to record the time taken in a
+ * micrometer {@link Timer} with fixed histogram buckets, exported by the Prometheus
+ * registry as {@code fuseki_request_duration_seconds}. Recording is lock-free.
+ * <p>
+ * Each endpoint also has histograms of response size ({@code fuseki_response_size_bytes},
+ * recorded by {@link ResponseSizeFilter}) and, for query endpoints, result size
+ * ({@code fuseki_result_size}, counted by {@link ResultSizeCounter} as results are streamed).
+ * The processor puts the {@link EndpointMeters} in the request attribute
+ * {@link #attrEndpointMeters} for these to use.
+ * <p>
+ * Bucket boundaries are given in milliseconds by {@code FUSEKI_METRICS_LATENCY_BUCKETS}
+ * (system property or environment variable), e.g. "10,50,100,500,1000".
+ */
+public class EndpointTimers {
+
+    public static final String envBuckets = "FUSEKI_METRICS_LATENCY_BUCKETS";
+    public static final String meterName = "fuseki_request_duration";
+    public static final String attrEndpointMeters = "org.apache.jena.fuseki.mod.prometheus.EndpointMeters";
+
+    private static final double[] bytesBuckets = { 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10 };
+    private static final double[] rowsBuckets = { 0, 1, 10, 100, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8 };
+
+    private static final long[] defaultBucketsMillis = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+    /** Add timers to all endpoints of all datasets. Endpoints already timed are left unchanged. */
+    public static void bind(DataAccessPointRegistry registry, MeterRegistry meterRegistry) {
+        Duration[] buckets = buckets();
+        registry.forEach((name, dap) -> bind(dap, meterRegistry, buckets));
+    }
+
+    /** Add timers to the endpoints of a dataset. */
+    public static void bind(DataAccessPoint dap, MeterRegistry meterRegistry, Duration[] buckets) {
+        dap.getDataService().forEachEndpoint(endpoint -> {
+            ActionProcessor processor = endpoint.getProcessor();
+            if ( processor == null || processor instanceof TimedProcessor )
+                return;
+            EndpointMeters meters = meters(meterRegistry, dap, endpoint, buckets);
+            boolean query = Operation.Query.equals(endpoint.getOperation());
+            endpoint.setProcessor(new TimedProcessor(processor, meters, query));
+        });
+    }
+
+    /** Whether any endpoint of the dataset does not have a timer. */
+    public static boolean hasUntimed(DataAccessPoint dap) {
+        AtomicBoolean untimed = new AtomicBoolean(false);
+        dap.getDataService().forEachEndpoint(endpoint -> {
+            ActionProcessor processor = endpoint.getProcessor();
+            if ( processor != null && ! ( processor instanceof TimedProcessor ) )
+                untimed.set(true);
+        });
+        return untimed.get();
+    }
+
+    private static EndpointMeters meters(MeterRegistry meterRegistry, DataAccessPoint dap, Endpoint endpoint, Duration[] buckets) {
+        Tags tags = Tags.of("dataset", dap.getName())
+                .and("endpoint", endpoint.getName())
+                .and("operation", endpoint.getOperation().getName());
+        Timer timer = Timer.builder(meterName)
+                .description("Request duration")
+                .tags(tags)
+                .serviceLevelObjectives(buckets)
+                .register(meterRegistry);
+        DistributionSummary responseSize = DistributionSummary.builder("fuseki_response_size")
+                .description("Response body size, before any compression")
+                .baseUnit("bytes")
+                .tags(tags)
+                .serviceLevelObjectives(bytesBuckets)
+                .register(meterRegistry);
+        DistributionSummary resultSize = DistributionSummary.builder("fuseki_result_size")
+                .description("Query solutions: rows for SELECT, template solutions for CONSTRUCT")
+                .tags(tags)
+                .serviceLevelObjectives(rowsBuckets)
+                .register(meterRegistry);
+        return new EndpointMeters(timer, responseSize, resultSize);
+    }
+
+    /** The meters of an endpoint. */
+    public static class EndpointMeters {
+        public final Timer timer;
+        public final DistributionSummary responseSize;
+        public final DistributionSummary resultSize;
+
+        EndpointMeters(Timer timer, DistributionSummary responseSize, DistributionSummary resultSize) {
+            this.timer = timer;
+            this.responseSize = responseSize;
+            this.resultSize = resultSize;
+        }
+    }
+
+    /** The histogram buckets: from {@link #envBuckets} if set, else the default. */
+    public static Duration[] buckets() {
+        String x = Lib.getenv(envBuckets);
+        if ( x == null || x.isBlank() )
+            return toDurations(defaultBucketsMillis);
+        List<Duration> buckets = new ArrayList<>();
+        for ( String s : x.split(",") ) {
+            s = s.trim();
+            if ( s.isEmpty() )
+                continue;
+            try {
+                buckets.add(Duration.ofMillis(Long.parseLong(s)));
+            } catch (NumberFormatException ex) {
+                Fuseki.configLog.warn("Bad value in "+envBuckets+": '"+s+"' - using the default buckets");
+                return toDurations(defaultBucketsMillis);
+            }
+        }
+        return buckets.toArray(new Duration[0]);
+    }
+
+    private static Duration[] toDurations(long[] millis) {
+        Duration[] durations = new Duration[millis.length];
+        for ( int i = 0 ; i < millis.length ; i++ )
+            durations[i] = Duration.ofMillis(millis[i]);
+        return durations;
+    }
+
+    /** Time each request of a processor. */
+    static class TimedProcessor implements ActionProcessor {
+        private final ActionProcessor processor;
+        private final EndpointMeters meters;
+        private final boolean query;
+
+        TimedProcessor(ActionProcessor processor, EndpointMeters meters, boolean query) {
+            this.processor = processor;
+            this.meters = meters;
+            this.query = query;
+        }
+
+        ActionProcessor getWrapped() {
+            return processor;
+        }
+
+        @Override
+        public void process(HttpAction action) {
+            long start = System.nanoTime();
+            action.getRequest().setAttribute(attrEndpointMeters, meters);
+            if ( query )
+                ResultSizeCounter.begin(meters);
+            try {
+                processor.process(action);
+            } finally {
+                if ( query )
+                    ResultSizeCounter.end();
+                meters.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -18,19 +18,46 @@
 
 package org.apache.jena.fuseki.mod.prometheus;
 
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import org.apache.jena.atlas.lib.Lib;
 import org.apache.jena.fuseki.Fuseki;
-import org.apache.jena.fuseki.ctl.ActionMetrics;
 import org.apache.jena.fuseki.main.FusekiServer;
 import org.apache.jena.fuseki.main.sys.FusekiModule;
 import org.apache.jena.fuseki.metrics.MetricsProviderRegistry;
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.DataService;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.mem.DatasetGraphInMemory;
+import org.apache.jena.tdb2.sys.TDBInternal;
 
 /**
  * Prometheus Metrics
  */
 public class FMod_Prometheus implements FusekiModule {
+    /**
+     * Interval, in seconds, for checking for added and removed datasets and for recomputing
+     * dataset sizes. This is done in the background, never during a scrape.
+     */
+    public static final String envSyncSeconds = "FUSEKI_METRICS_SYNC_SECONDS";
+    private static final long defaultSyncSeconds = 30;
+    /** Time, in milliseconds, that the output of a scrape is served to further scrapes. 0 (the default) means no caching. */
+    public static final String envCacheMillis = "FUSEKI_METRICS_CACHE_MS";
+    private static final long defaultCacheMillis = 0;
+
+    private final ActionPrometheusMetrics metricsAction = new ActionPrometheusMetrics();
+    private ScheduledExecutorService executor = null;
+    private final JvmSampler jvmSampler = new JvmSampler();
+
     @Override
     public String name() { return "Prometheus Metrics"; }
 
@@ -39,10 +66,139 @@ public class FMod_Prometheus implements FusekiModule {
     }
 
     @Override public void prepare(FusekiServer.Builder serverBuilder, Set<String> datasetNames, Model configModel) {
-        serverBuilder.addServlet("/$/metrics", new ActionMetrics());
+        metricsAction.setCacheMillis(envLong(envCacheMillis, defaultCacheMillis));
+        serverBuilder.addServlet("/$/metrics", metricsAction);
+        serverBuilder.addFilter("/*", new ResponseSizeFilter());
+    }
+
+    /** Wrap the datasets that use a feature of {@link DatasetGraphMetrics}. */
+    @Override public void configured(FusekiServer.Builder serverBuilder, DataAccessPointRegistry dapRegistry, Model configModel) {
+        List<DataAccessPoint> daps = dapRegistry.accessPoints().stream()
+                .filter(dap -> ! ( dap.getDataService().getDataset() instanceof DatasetGraphMetrics ))
+                .map(FMod_Prometheus::withMetrics)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        daps.forEach(dap -> {
+            dapRegistry.remove(dap.getName());
+            dapRegistry.register(dap);
+        });
+    }
+
+    /**
+     * A data access point for the same dataset wrapped by {@link DatasetGraphMetrics},
+     * with quad counts and a heap limit if configured, or null if the dataset does not
+     * need the wrapper.
+     * <p>
+     * The wrapper hides the class of the dataset, so it is used only for the features
+     * that need it: quad counts, the heap estimate and limit, and transaction metrics
+     * of datasets other than TDB2 ({@link MetricsConst#symTxnMetrics}). A TDB2 dataset
+     * is never wrapped; its transactions are recorded by {@link TDB2TxnMetrics}.
+     * Also used for datasets added while the server is running (see {@link DatasetMetricsBinder}).
+     */
+    static DataAccessPoint withMetrics(DataAccessPoint dap) {
+        DatasetGraph dsg = dap.getDataService().getDataset();
+        if ( TDBInternal.isTDB2(dsg) ) {
+            if ( dsg.getContext().isTrue(MetricsConst.symQuadCounts) || dsg.getContext().isTrue(MetricsConst.symHeapEstimate) )
+                Fuseki.configLog.warn("Quad counts not supported for TDB2 dataset "+dap.getName());
+            return null;
+        }
+        QuadCounts quadCounts = null;
+        boolean heapEstimate = isInMemory(dsg) && dsg.getContext().isTrue(MetricsConst.symHeapEstimate);
+        if ( heapEstimate || dsg.getContext().isTrue(MetricsConst.symQuadCounts) ) {
+            // The initial count needs a read transaction that does not wait for a writer.
+            if ( dsg.supportsTransactionAbort() ) {
+                quadCounts = new QuadCounts(heapEstimate);
+                quadCounts.start(dap.getName(), dsg);
+            } else
+                Fuseki.configLog.warn("Quad counts not supported for "+dap.getName());
+        }
+        long heapLimit = heapLimit(dap.getName(), dsg);
+        if ( heapLimit > 0 && ( quadCounts == null || ! heapEstimate ) )
+            Fuseki.configLog.warn("Heap limit only applies to in-memory datasets with a heap estimate: "+dap.getName());
+        if ( quadCounts == null && ! dsg.getContext().isTrue(MetricsConst.symTxnMetrics) )
+            return null;
+        DatasetGraph dsgMetrics = new DatasetGraphMetrics(dsg, quadCounts, heapLimit);
+        DataService dSrv = DataService.newBuilder(dap.getDataService()).dataset(dsgMetrics).build();
+        return new DataAccessPoint(dap.getName(), dSrv);
     }
 
     @Override public void server(FusekiServer server) {
-        MetricsProviderRegistry.bindPrometheus(server.getDataAccessPointRegistry());
+        // Before the endpoint timers, which then time refused requests.
+        server.getDataAccessPointRegistry().forEach((name, dap) -> HeapLimitProcessor.bind(dap));
+        DatasetMetricsBinder binder = new DatasetMetricsBinder(server.getDataAccessPointRegistry(),
+                                                               MetricsProviderRegistry.get().getMeterRegistry());
+        binder.sync();
+        binder.refreshSizes();
+        jvmSampler.start(MetricsProviderRegistry.get().getMeterRegistry());
+        long seconds = envLong(envSyncSeconds, defaultSyncSeconds);
+        if ( seconds <= 0 )
+            seconds = defaultSyncSeconds;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsSync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(()->{
+            try {
+                binder.sync();
+                binder.refreshSizes();
+            }
+            catch (Throwable th) { Fuseki.serverLog.warn("Metrics sync", th); }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    @Override public void serverBeforeStarting(FusekiServer server) {
+        JettyMetrics.bind(server.getJettyServer(), MetricsProviderRegistry.get().getMeterRegistry());
+        ResultSizeCounter.register();
+    }
+
+    @Override public void serverStopped(FusekiServer server) {
+        ResultSizeCounter.unregister();
+        jvmSampler.stop();
+        if ( executor != null ) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /** Whether the dataset is in-memory (TIM), possibly wrapped. */
+    private static boolean isInMemory(DatasetGraph dsg) {
+        while ( dsg instanceof DatasetGraphWrapper )
+            dsg = ((DatasetGraphWrapper)dsg).getWrapped();
+        return dsg instanceof DatasetGraphInMemory;
+    }
+
+    /** The heap limit of a dataset, in bytes; 0 if none. */
+    private static long heapLimit(String name, DatasetGraph dsg) {
+        String x = dsg.getContext().getAsString(MetricsConst.symHeapLimit);
+        if ( x == null || x.isBlank() )
+            return 0;
+        x = x.trim().toLowerCase();
+        long multiplier = 1;
+        switch (x.charAt(x.length()-1)) {
+            case 'k' : multiplier = 1L<<10; break;
+            case 'm' : multiplier = 1L<<20; break;
+            case 'g' : multiplier = 1L<<30; break;
+        }
+        if ( multiplier != 1 )
+            x = x.substring(0, x.length()-1).trim();
+        try {
+            return Long.parseLong(x) * multiplier;
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+MetricsConst.symHeapLimit.getSymbol()+" ("+name+"): '"+x+"'");
+            return 0;
+        }
+    }
+
+    private static long envLong(String name, long dftValue) {
+        String x = Lib.getenv(name);
+        if ( x == null )
+            return dftValue;
+        try {
+            return Long.parseLong(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+name+": '"+x+"'");
+            return dftValue;
+        }
     }
 }
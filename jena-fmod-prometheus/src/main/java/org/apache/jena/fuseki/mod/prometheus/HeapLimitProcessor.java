@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.Endpoint;
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.fuseki.servlets.ActionProcessor;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+
+/**
+ * Refuse requests that may change a dataset, with 507 (Insufficient Storage), while
+ * its heap estimate is over the limit. Requests that only read (GET, HEAD,
+ * OPTIONS, and queries) are not affected.
+ * <p>
+ * This gives a clear HTTP error before the request starts; the dataset itself
+ * also refuses write transactions (see {@link DatasetGraphMetrics}).
+ */
+class HeapLimitProcessor implements ActionProcessor {
+
+    private static final int insufficientStorage = 507;
+
+    private final ActionProcessor processor;
+    private final DatasetGraphMetrics dsg;
+
+    private HeapLimitProcessor(ActionProcessor processor, DatasetGraphMetrics dsg) {
+        this.processor = processor;
+        this.dsg = dsg;
+    }
+
+    /** Add the check to the endpoints of a dataset that has a heap limit. */
+    static void bind(DataAccessPoint dap) {
+        if ( ! ( dap.getDataService().getDataset() instanceof DatasetGraphMetrics ) )
+            return;
+        DatasetGraphMetrics dsg = (DatasetGraphMetrics)dap.getDataService().getDataset();
+        if ( dsg.getHeapLimit() <= 0 )
+            return;
+        dap.getDataService().forEachEndpoint(endpoint -> {
+            ActionProcessor processor = endpoint.getProcessor();
+            if ( processor == null || processor instanceof HeapLimitProcessor || isReadOnly(endpoint) )
+                return;
+            endpoint.setProcessor(new HeapLimitProcessor(processor, dsg));
+        });
+    }
+
+    private static boolean isReadOnly(Endpoint endpoint) {
+        Operation op = endpoint.getOperation();
+        return op == Operation.Query || op == Operation.GSP_R;
+    }
+
+    @Override
+    public void process(HttpAction action) {
+        if ( dsg.isOverHeapLimit() && ! isRead(action.getRequestMethod()) )
+            ServletOps.error(insufficientStorage, String.format("Dataset %s: estimated heap use (%,d bytes) is over the limit (%,d bytes): changes refused",
+                                                                action.getDatasetName(), dsg.getQuadCounts().heapBytes(), dsg.getHeapLimit()));
+        processor.process(action);
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+}
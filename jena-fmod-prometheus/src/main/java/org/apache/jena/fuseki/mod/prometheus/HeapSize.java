@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Estimates of the heap used by quads in an in-memory (TIM) dataset.
+ * <p>
+ * A quad in the default graph is held in three triple indexes, a quad in a named
+ * graph in six quad indexes; each index entry is a few small objects of a
+ * persistent map. Nodes are held once and shared between quads (the parsers
+ * share equal nodes through their cache), so node sizes are counted once for each
+ * distinct node: an object of this class keeps the number of uses of each node.
+ * Sizes assume a 64 bit JVM with compressed references and compact strings.
+ * <p>
+ * Not thread safe; the caller synchronizes.
+ */
+public class HeapSize {
+
+    /** Bytes for one entry in one index. */
+    private static final long indexEntryBytes = 64;
+    private static final long defaultGraphIndexes = 3;
+    private static final long namedGraphIndexes = 6;
+
+    private static final long nodeBytes = 16;
+    private static final long literalLabelBytes = 48;
+    private static final long blankNodeBytes = 16 + 16 + string(36);
+
+    // Uses of each distinct node. A count can be negative for a while when
+    // changes are applied before the starting counts (see QuadCounts).
+    private final Map<Node, Long> nodes = new HashMap<>();
+    private long distinctNodeBytes = 0;
+    private long indexBytes = 0;
+
+    /** Estimated heap bytes, for the quads and their distinct nodes. */
+    public long bytes() {
+        return indexBytes + distinctNodeBytes;
+    }
+
+    /** Record the addition (+1) or removal (-1) of a quad. */
+    public void quad(Node g, Node s, Node p, Node o, long delta) {
+        boolean dftGraph = isDefaultGraph(g);
+        indexBytes += delta * indexBytes(g);
+        if ( ! dftGraph )
+            node(g, delta);
+        node(s, delta);
+        node(p, delta);
+        node(o, delta);
+    }
+
+    public void clear() {
+        nodes.clear();
+        distinctNodeBytes = 0;
+        indexBytes = 0;
+    }
+
+    /** Add the counts of another estimate to this one. */
+    public void add(HeapSize other) {
+        indexBytes += other.indexBytes;
+        other.nodes.forEach(this::node);
+    }
+
+    private void node(Node node, long delta) {
+        if ( node == null )
+            return;
+        long before = nodes.getOrDefault(node, 0L);
+        long after = before + delta;
+        if ( after == 0 )
+            nodes.remove(node);
+        else
+            nodes.put(node, after);
+        if ( before <= 0 && after > 0 )
+            distinctNodeBytes += node(node);
+        else if ( before > 0 && after <= 0 )
+            distinctNodeBytes -= node(node);
+    }
+
+    /** Estimated heap bytes for the index entries of a quad. */
+    public static long indexBytes(Node g) {
+        return indexEntryBytes * ( isDefaultGraph(g) ? defaultGraphIndexes : namedGraphIndexes );
+    }
+
+    private static boolean isDefaultGraph(Node g) {
+        return g == null || Quad.isDefaultGraph(g);
+    }
+
+    /** Estimated heap bytes for a node. */
+    public static long node(Node node) {
+        if ( node == null )
+            return 0;
+        if ( node.isURI() )
+            return nodeBytes + string(node.getURI().length());
+        if ( node.isLiteral() ) {
+            long bytes = nodeBytes + literalLabelBytes + string(node.getLiteralLexicalForm().length());
+            String lang = node.getLiteralLanguage();
+            if ( lang != null && ! lang.isEmpty() )
+                bytes += string(lang.length());
+            return bytes;
+        }
+        if ( node.isBlank() )
+            return blankNodeBytes;
+        // Triple terms and others.
+        return nodeBytes;
+    }
+
+    /** String object, its array, and 1 byte per character (Latin-1), rounded up to 8 bytes. */
+    private static long string(int length) {
+        return 24 + ( ( 16 + length + 7 ) & ~7L );
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Jetty thread pool and connector metrics.
+ * <p>
+ * Thread pool gauges read the {@link QueuedThreadPool} directly (these are cheap
+ * field reads). Each connector gets a {@link Connection.Listener} that counts open
+ * connections and, when a connection closes, records its duration and bytes in
+ * and out.
+ * <p>
+ * Jobs rejected by the thread pool are not counted: {@link QueuedThreadPool} has no
+ * counter or listener for them, and the server's pool is built by Fuseki before
+ * modules run, so it can't be replaced by one that counts them. A full queue shows
+ * in {@code fuseki_jetty_queue_size}.
+ */
+public class JettyMetrics {
+
+    private static final Duration[] connectionBuckets = {
+        Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(5),
+        Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(30)
+    };
+
+    /** Bind the metrics for a Jetty server. Call before the server starts so all connections are seen. */
+    public static void bind(Server server, MeterRegistry meterRegistry) {
+        bindThreadPool(server.getThreadPool(), meterRegistry);
+        for ( Connector connector : server.getConnectors() )
+            bindConnector(connector, meterRegistry);
+    }
+
+    private static void bindThreadPool(ThreadPool threadPool, MeterRegistry meterRegistry) {
+        Gauge.builder("fuseki_jetty_threads", threadPool, ThreadPool::getThreads)
+            .description("Threads in the pool").register(meterRegistry);
+        Gauge.builder("fuseki_jetty_threads_idle", threadPool, ThreadPool::getIdleThreads)
+            .description("Idle threads in the pool").register(meterRegistry);
+        Gauge.builder("fuseki_jetty_threads_low", threadPool, tp -> tp.isLowOnThreads() ? 1 : 0)
+            .description("1 if the pool is low on threads").register(meterRegistry);
+        if ( ! ( threadPool instanceof QueuedThreadPool ) )
+            return;
+        QueuedThreadPool qtp = (QueuedThreadPool)threadPool;
+        Gauge.builder("fuseki_jetty_threads_busy", qtp, QueuedThreadPool::getBusyThreads)
+            .description("Threads running jobs").register(meterRegistry);
+        Gauge.builder("fuseki_jetty_threads_max", qtp, QueuedThreadPool::getMaxThreads)
+            .description("Maximum threads in the pool").register(meterRegistry);
+        Gauge.builder("fuseki_jetty_threads_utilization", qtp, QueuedThreadPool::getUtilizationRate)
+            .description("Fraction of the maximum threads that are busy").register(meterRegistry);
+        Gauge.builder("fuseki_jetty_queue_size", qtp, QueuedThreadPool::getQueueSize)
+            .description("Jobs waiting for a thread").register(meterRegistry);
+    }
+
+    private static void bindConnector(Connector connector, MeterRegistry meterRegistry) {
+        String name = connector.getName();
+        if ( name == null )
+            name = connector.getClass().getSimpleName()+"@"+Integer.toHexString(connector.hashCode());
+        Tags tags = Tags.of("connector", name);
+        connector.addBean(new ConnectionMetrics(tags, meterRegistry));
+    }
+
+    /** Connection listener recording to micrometer meters. */
+    static class ConnectionMetrics implements Connection.Listener {
+        private final AtomicLong open = new AtomicLong();
+        private final Counter opened;
+        private final Counter bytesIn;
+        private final Counter bytesOut;
+        private final Timer duration;
+
+        ConnectionMetrics(Tags tags, MeterRegistry meterRegistry) {
+            Gauge.builder("fuseki_jetty_connections_open", open, AtomicLong::get)
+                .description("Open connections").tags(tags).register(meterRegistry);
+            opened = Counter.builder("fuseki_jetty_connections")
+                .description("Connections opened").tags(tags).register(meterRegistry);
+            bytesIn = Counter.builder("fuseki_jetty_bytes_received")
+                .description("Bytes received (counted when the connection closes)")
+                .baseUnit("bytes").tags(tags).register(meterRegistry);
+            bytesOut = Counter.builder("fuseki_jetty_bytes_sent")
+                .description("Bytes sent (counted when the connection closes)")
+                .baseUnit("bytes").tags(tags).register(meterRegistry);
+            duration = Timer.builder("fuseki_jetty_connection_duration")
+                .description("Connection duration").tags(tags)
+                .serviceLevelObjectives(connectionBuckets)
+                .register(meterRegistry);
+            FunctionCounter.builder("fuseki_jetty_connections_closed", duration, Timer::count)
+                .description("Connections closed").tags(tags).register(meterRegistry);
+        }
+
+        @Override
+        public void onOpened(Connection connection) {
+            open.incrementAndGet();
+            opened.increment();
+        }
+
+        @Override
+        public void onClosed(Connection connection) {
+            open.decrementAndGet();
+            long bytes = connection.getBytesIn();
+            if ( bytes > 0 )
+                bytesIn.increment(bytes);
+            bytes = connection.getBytesOut();
+            if ( bytes > 0 )
+                bytesOut.increment(bytes);
+            long millis = System.currentTimeMillis() - connection.getCreatedTimeStamp();
+            duration.record(Math.max(0, millis), TimeUnit.MILLISECONDS);
+        }
+    }
+}
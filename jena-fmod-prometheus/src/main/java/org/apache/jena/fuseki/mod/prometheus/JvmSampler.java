@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.lang.management.*;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.UnixOperatingSystemMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+
+/**
+ * JVM memory, garbage collection, buffer pool, thread, safepoint and file
+ * descriptor metrics.
+ * <p>
+ * Values are read from the platform MXBeans by a background thread every
+ * {@code FUSEKI_METRICS_JVM_SAMPLE_SECONDS} seconds (default 10) and the gauges
+ * report the last sample, so a scrape does not call into the JVM management API.
+ * GC pauses, concurrent phases and allocation are recorded from GC notifications
+ * as they happen.
+ * <p>
+ * Meter names start "fuseki_jvm_" so they do not clash with any JVM meters bound
+ * by the metrics provider.
+ */
+public class JvmSampler {
+
+    public static final String envSampleSeconds = "FUSEKI_METRICS_JVM_SAMPLE_SECONDS";
+    private static final long defaultSampleSeconds = 10;
+
+    private static final Duration[] gcPauseBuckets = {
+        Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25),
+        Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+        Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(10)
+    };
+
+    /** A value updated by the sampler. */
+    private static class Sample {
+        volatile double value = Double.NaN;
+    }
+
+    private interface Sampling { void sample(); }
+
+    private final List<Sampling> samplings = new ArrayList<>();
+    private final List<Runnable> cleanup = new ArrayList<>();
+    private ScheduledExecutorService executor = null;
+
+    // GC
+    private Counter allocated;
+    private Counter promoted;
+    private long youngAfterLastGC = 0;
+
+    public JvmSampler() {}
+
+    /** Register the meters and start sampling. */
+    public synchronized void start(MeterRegistry meterRegistry) {
+        if ( executor != null )
+            return;
+        bindMemoryPools(meterRegistry);
+        bindBufferPools(meterRegistry);
+        bindThreads(meterRegistry);
+        bindFileDescriptors(meterRegistry);
+        bindSafepoints(meterRegistry);
+        bindGC(meterRegistry);
+
+        sampleAll();
+        long seconds = sampleSeconds();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsJvmSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sampleAll, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /** Stop sampling and remove GC listeners. */
+    public synchronized void stop() {
+        if ( executor != null ) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        cleanup.forEach(Runnable::run);
+        cleanup.clear();
+    }
+
+    private void sampleAll() {
+        for ( Sampling s : samplings ) {
+            try { s.sample(); }
+            catch (Throwable th) { Fuseki.serverLog.debug("JVM metrics sample", th); }
+        }
+    }
+
+    private Sample gauge(MeterRegistry meterRegistry, String name, String description, String baseUnit, Tags tags) {
+        Sample sample = new Sample();
+        Gauge.builder(name, sample, s -> s.value)
+            .description(description)
+            .baseUnit(baseUnit)
+            .tags(tags)
+            .register(meterRegistry);
+        return sample;
+    }
+
+    private <X> void sampled(MeterRegistry meterRegistry, String name, String description, String baseUnit, Tags tags,
+                             X source, ToDoubleFunction<X> function) {
+        Sample sample = gauge(meterRegistry, name, description, baseUnit, tags);
+        samplings.add(() -> sample.value = function.applyAsDouble(source));
+    }
+
+    private void bindMemoryPools(MeterRegistry meterRegistry) {
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+            Tags tags = Tags.of("pool", pool.getName(),
+                                "area", pool.getType() == MemoryType.HEAP ? "heap" : "nonheap");
+            Sample used = gauge(meterRegistry, "fuseki_jvm_memory_used", "Memory pool used", "bytes", tags);
+            Sample committed = gauge(meterRegistry, "fuseki_jvm_memory_committed", "Memory pool committed", "bytes", tags);
+            Sample max = gauge(meterRegistry, "fuseki_jvm_memory_max", "Memory pool maximum (-1 if undefined)", "bytes", tags);
+            samplings.add(() -> {
+                MemoryUsage usage = pool.getUsage();
+                if ( usage == null )
+                    return;
+                used.value = usage.getUsed();
+                committed.value = usage.getCommitted();
+                max.value = usage.getMax();
+            });
+        }
+    }
+
+    /** "direct" and "mapped" (TDB2 files) buffer pools. */
+    private void bindBufferPools(MeterRegistry meterRegistry) {
+        for ( BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class) ) {
+            Tags tags = Tags.of("pool", pool.getName());
+            sampled(meterRegistry, "fuseki_jvm_buffer_count", "Number of buffers in the pool", "buffers", tags,
+                    pool, BufferPoolMXBean::getCount);
+            sampled(meterRegistry, "fuseki_jvm_buffer_used", "Memory used by the buffer pool", "bytes", tags,
+                    pool, BufferPoolMXBean::getMemoryUsed);
+            sampled(meterRegistry, "fuseki_jvm_buffer_capacity", "Total capacity of the buffers in the pool", "bytes", tags,
+                    pool, BufferPoolMXBean::getTotalCapacity);
+        }
+    }
+
+    private void bindThreads(MeterRegistry meterRegistry) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        sampled(meterRegistry, "fuseki_jvm_threads_live", "Live threads", "threads", Tags.empty(),
+                threads, ThreadMXBean::getThreadCount);
+        sampled(meterRegistry, "fuseki_jvm_threads_daemon", "Live daemon threads", "threads", Tags.empty(),
+                threads, ThreadMXBean::getDaemonThreadCount);
+        sampled(meterRegistry, "fuseki_jvm_threads_peak", "Peak live threads", "threads", Tags.empty(),
+                threads, ThreadMXBean::getPeakThreadCount);
+        Thread.State[] states = Thread.State.values();
+        Sample[] byState = new Sample[states.length];
+        for ( int i = 0 ; i < states.length ; i++ )
+            byState[i] = gauge(meterRegistry, "fuseki_jvm_threads_state", "Threads by state", "threads",
+                               Tags.of("state", states[i].name().toLowerCase()));
+        samplings.add(() -> {
+            long[] counts = new long[states.length];
+            // No stack traces: this is cheap enough at the sample rate.
+            for ( ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), 0) ) {
+                if ( info != null )
+                    counts[info.getThreadState().ordinal()]++;
+            }
+            for ( int i = 0 ; i < states.length ; i++ )
+                byState[i].value = counts[i];
+        });
+    }
+
+    private void bindFileDescriptors(MeterRegistry meterRegistry) {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if ( ! ( os instanceof UnixOperatingSystemMXBean ) )
+            return;
+        UnixOperatingSystemMXBean unix = (UnixOperatingSystemMXBean)os;
+        sampled(meterRegistry, "fuseki_process_files_open", "Open file descriptors", "files", Tags.empty(),
+                unix, UnixOperatingSystemMXBean::getOpenFileDescriptorCount);
+        sampled(meterRegistry, "fuseki_process_files_max", "Maximum file descriptors", "files", Tags.empty(),
+                unix, UnixOperatingSystemMXBean::getMaxFileDescriptorCount);
+    }
+
+    /**
+     * Safepoint count and time from the HotSpot internal runtime MBean.
+     * This is only accessible if the JVM is run with
+     * {@code --add-exports java.management/sun.management=ALL-UNNAMED}; otherwise
+     * these meters are not registered.
+     */
+    private void bindSafepoints(MeterRegistry meterRegistry) {
+        Object runtime;
+        Method count;
+        Method time;
+        try {
+            Class<?> helper = Class.forName("sun.management.ManagementFactoryHelper");
+            runtime = helper.getMethod("getHotspotRuntimeMBean").invoke(null);
+            Class<?> mbean = Class.forName("sun.management.HotspotRuntimeMBean");
+            count = mbean.getMethod("getSafepointCount");
+            time = mbean.getMethod("getTotalSafepointTime");
+            count.invoke(runtime);
+        } catch (Throwable th) {
+            Fuseki.serverLog.debug("Safepoint metrics not available: {}", th.getMessage());
+            return;
+        }
+        sampled(meterRegistry, "fuseki_jvm_safepoints", "Number of safepoints", "safepoints", Tags.empty(),
+                runtime, r -> invokeLong(count, r));
+        sampled(meterRegistry, "fuseki_jvm_safepoint_time", "Total time at safepoints", "seconds", Tags.empty(),
+                runtime, r -> invokeLong(time, r) / 1000.0);
+    }
+
+    private static double invokeLong(Method method, Object obj) {
+        try {
+            return ((Number)method.invoke(obj)).doubleValue();
+        } catch (Exception ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * GC pauses, concurrent phases, allocation and promotion from GC notifications.
+     * As for micrometer's {@code JvmGcMetrics}, notifications of concurrent phases
+     * (G1 concurrent cycles, ZGC and Shenandoah cycles) are not recorded as pauses.
+     * Memory is counted from one kind of notification for each collector so that a
+     * collection is counted once.
+     */
+    private void bindGC(MeterRegistry meterRegistry) {
+        allocated = Counter.builder("fuseki_jvm_gc_memory_allocated")
+            .description("Bytes allocated in the young generation between GCs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        promoted = Counter.builder("fuseki_jvm_gc_memory_promoted")
+            .description("Bytes promoted to the old generation")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+
+        NotificationListener listener = (notification, handback) -> {
+            if ( ! GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()) )
+                return;
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+            String gcName = info.getGcName();
+            boolean concurrentPhase = isConcurrentPhase(info.getGcCause(), gcName);
+            Timer.builder(concurrentPhase ? "fuseki_jvm_gc_concurrent_phase" : "fuseki_jvm_gc_pause")
+                .description(concurrentPhase ? "GC concurrent phase" : "GC pause")
+                .tags("gc", gcName, "action", info.getGcAction(), "cause", info.getGcCause())
+                .serviceLevelObjectives(gcPauseBuckets)
+                .register(meterRegistry)
+                .record(info.getGcInfo().getDuration(), TimeUnit.MILLISECONDS);
+            // Concurrent collectors report memory with their cycles; others with their pauses.
+            if ( concurrentPhase == isConcurrentCollector(gcName) )
+                gcMemory(info.getGcInfo().getMemoryUsageBeforeGc(), info.getGcInfo().getMemoryUsageAfterGc());
+        };
+        for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            if ( ! ( gc instanceof NotificationEmitter ) )
+                continue;
+            NotificationEmitter emitter = (NotificationEmitter)gc;
+            emitter.addNotificationListener(listener, null, null);
+            cleanup.add(() -> {
+                try { emitter.removeNotificationListener(listener); } catch (Exception ex) {}
+            });
+        }
+    }
+
+    private synchronized void gcMemory(Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+        long youngBefore = 0;
+        long youngAfter = 0;
+        long oldBefore = 0;
+        long oldAfter = 0;
+        for ( Map.Entry<String, MemoryUsage> e : before.entrySet() ) {
+            String pool = e.getKey();
+            MemoryUsage usageAfter = after.get(pool);
+            if ( usageAfter == null )
+                continue;
+            if ( isYoung(pool) ) {
+                youngBefore += e.getValue().getUsed();
+                youngAfter += usageAfter.getUsed();
+            } else if ( isOld(pool) ) {
+                oldBefore += e.getValue().getUsed();
+                oldAfter += usageAfter.getUsed();
+            }
+        }
+        long delta = youngBefore - youngAfterLastGC;
+        if ( delta > 0 )
+            allocated.increment(delta);
+        youngAfterLastGC = youngAfter;
+        if ( oldAfter > oldBefore )
+            promoted.increment(oldAfter - oldBefore);
+    }
+
+    /** As micrometer's {@code JvmGcMetrics.isConcurrentPhase}. */
+    private static boolean isConcurrentPhase(String cause, String name) {
+        return "No GC".equals(cause)
+               || "Shenandoah Cycles".equals(name)
+               || ( name.startsWith("ZGC") && name.endsWith("Cycles") )
+               || ( name.startsWith("GPGC") && ! name.endsWith("Pauses") );
+    }
+
+    /** Collectors whose collections are reported as concurrent cycles, with separate notifications of their pauses. */
+    private static boolean isConcurrentCollector(String name) {
+        return name.startsWith("Shenandoah") || name.startsWith("ZGC") || name.startsWith("GPGC");
+    }
+
+    private static boolean isYoung(String pool) {
+        return pool.endsWith("Eden Space") || pool.endsWith("Survivor Space") || "ZHeap".equals(pool) || "Shenandoah".equals(pool);
+    }
+
+    private static boolean isOld(String pool) {
+        return pool.endsWith("Old Gen") || pool.endsWith("Tenured Gen");
+    }
+
+    private static long sampleSeconds() {
+        String x = Lib.getenv(envSampleSeconds);
+        if ( x == null )
+            return defaultSampleSeconds;
+        try {
+            long seconds = Long.parseLong(x.trim());
+            if ( seconds > 0 )
+                return seconds;
+        } catch (NumberFormatException ex) {}
+        Fuseki.configLog.warn("Bad value for "+envSampleSeconds+": '"+x+"'");
+        return defaultSampleSeconds;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import org.apache.jena.sparql.util.Symbol;
+
+/** Dataset context settings for the metrics module. */
+public class MetricsConst {
+
+    public static final String NS = "http://jena.apache.org/fuseki/mod/metrics#";
+
+    /**
+     * Maintain quad counts for the dataset and each graph from committed changes.
+     * Off by default: each change checks whether the quad is already present.
+     */
+    public static final Symbol symQuadCounts = Symbol.create(NS+"quadCounts");
+
+    /**
+     * Estimate the heap used by an in-memory (TIM) dataset, from committed changes.
+     * Off by default: the estimate keeps a count of uses for each distinct node,
+     * which itself takes heap. Implies quad counts; needed for {@link #symHeapLimit}.
+     */
+    public static final Symbol symHeapEstimate = Symbol.create(NS+"heapEstimate");
+
+    /**
+     * Limit on the heap estimate of an in-memory dataset above which changes are
+     * refused, in bytes, with an optional suffix "k", "m" or "g", e.g. "2g".
+     */
+    public static final Symbol symHeapLimit = Symbol.create(NS+"heapLimit");
+
+    /**
+     * Record transaction metrics for a dataset other than TDB2, by wrapping it.
+     * Off by default: the wrapper hides the class of the dataset. TDB2 transactions
+     * are always recorded, without a wrapper.
+     */
+    public static final Symbol symTxnMetrics = Symbol.create(NS+"transactions");
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Quad counts of a dataset, per graph, maintained from the changes of committed
+ * transactions.
+ * <p>
+ * The starting counts come from one scan of the dataset, run in the background.
+ * Changes committed while the scan runs are added to the scan result, so the
+ * counts are exact once {@link #isReady()}.
+ * <p>
+ * Optionally, an estimate of the heap used by the quads (see {@link HeapSize}) is
+ * maintained in the same way, for in-memory datasets.
+ */
+public class QuadCounts {
+
+    /** Graph key for the default graph. */
+    public static final String defaultGraph = "default";
+
+    // Committed counts. Updated under "this".
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    // Changes of the current write transaction of a thread.
+    private final ThreadLocal<Map<String, Long>> pending = new ThreadLocal<>();
+
+    private final boolean heapEstimate;
+    // Committed estimate. Updated under "this".
+    private final HeapSize heapSize;
+    private volatile long heapBytes = 0;
+    private final ThreadLocal<HeapSize> pendingHeap = new ThreadLocal<>();
+
+    public QuadCounts() { this(false); }
+
+    /** Quad counts and, if {@code heapEstimate}, an estimate of the heap used. */
+    public QuadCounts(boolean heapEstimate) {
+        this.heapEstimate = heapEstimate;
+        this.heapSize = heapEstimate ? new HeapSize() : null;
+    }
+
+    public boolean hasHeapEstimate() {
+        return heapEstimate;
+    }
+
+    /** Estimated heap used by the quads, in bytes, or -1 if not yet known or not estimated. */
+    public long heapBytes() {
+        return ( heapEstimate && ready ) ? heapBytes : -1;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Total number of quads, or -1 if not yet known. */
+    public long total() {
+        if ( ! ready )
+            return -1;
+        long x = 0;
+        for ( long c : counts.values() )
+            x += c;
+        return x;
+    }
+
+    /** Counts by graph (empty if not yet known). */
+    public Map<String, Long> byGraph() {
+        return ready ? Map.copyOf(counts) : Map.of();
+    }
+
+    public static String graphKey(Node g) {
+        if ( g == null || Quad.isDefaultGraph(g) )
+            return defaultGraph;
+        return g.isURI() ? g.getURI() : g.toString();
+    }
+
+    /** Record the addition (+1) or removal (-1) of a quad in the current transaction. */
+    public void change(Node g, Node s, Node p, Node o, int delta) {
+        change(g, delta);
+        if ( heapEstimate ) {
+            HeapSize h = pendingHeap.get();
+            if ( h == null ) {
+                h = new HeapSize();
+                pendingHeap.set(h);
+            }
+            h.quad(g, s, p, o, delta);
+        }
+    }
+
+    /** Record a change to the number of quads in a graph in the current transaction. */
+    public void change(Node g, long delta) {
+        Map<String, Long> map = pending.get();
+        if ( map == null ) {
+            map = new HashMap<>();
+            pending.set(map);
+        }
+        map.merge(graphKey(g), delta, Long::sum);
+    }
+
+    /**
+     * Commit the dataset and apply the changes of the transaction.
+     * Both are done under the lock the initial scan takes to start its read transaction.
+     */
+    public synchronized void commit(Runnable commitAction) {
+        commitAction.run();
+        HeapSize h = pendingHeap.get();
+        pendingHeap.remove();
+        if ( h != null ) {
+            heapSize.add(h);
+            heapBytes = heapSize.bytes();
+        }
+        Map<String, Long> map = pending.get();
+        pending.remove();
+        if ( map == null )
+            return;
+        map.forEach((g, delta) -> {
+            long c = counts.merge(g, delta, Long::sum);
+            if ( c == 0 )
+                counts.remove(g);
+        });
+    }
+
+    /** Discard the changes of the current transaction. */
+    public void discard() {
+        pending.remove();
+        pendingHeap.remove();
+    }
+
+    /** Count the dataset in a background thread. */
+    public void start(String name, DatasetGraph dsg) {
+        Thread thread = new Thread(() -> initialCount(name, dsg), "QuadCount-"+name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void initialCount(String name, DatasetGraph dsg) {
+        long start = System.currentTimeMillis();
+        Map<String, Long> snapshot = new HashMap<>();
+        HeapSize snapshotHeap = new HeapSize();
+        synchronized(this) {
+            // Committed changes from here on are in "counts" but not in the snapshot.
+            dsg.begin(TxnType.READ);
+            counts.clear();
+            if ( heapEstimate )
+                heapSize.clear();
+            heapBytes = 0;
+        }
+        try {
+            if ( heapEstimate ) {
+                // Every quad is looked at for its nodes.
+                dsg.find().forEachRemaining(q -> {
+                    snapshot.merge(graphKey(q.getGraph()), 1L, Long::sum);
+                    snapshotHeap.quad(q.getGraph(), q.getSubject(), q.getPredicate(), q.getObject(), 1);
+                });
+            } else {
+                snapshot.put(defaultGraph, dsg.getDefaultGraph().size()+0L);
+                Iterator<Node> iter = dsg.listGraphNodes();
+                while ( iter.hasNext() ) {
+                    Node gn = iter.next();
+                    snapshot.put(graphKey(gn), dsg.getGraph(gn).size()+0L);
+                }
+            }
+        } catch (Throwable th) {
+            Fuseki.serverLog.warn("Quad count failed: "+name, th);
+            return;
+        } finally {
+            dsg.end();
+        }
+        synchronized(this) {
+            snapshot.forEach((g, c) -> counts.merge(g, c, Long::sum));
+            counts.values().removeIf(c -> c == 0);
+            if ( heapEstimate ) {
+                heapSize.add(snapshotHeap);
+                heapBytes = heapSize.bytes();
+            }
+            ready = true;
+        }
+        Fuseki.serverLog.info("Quad count: {}: {} quads in {} graphs ({}ms)",
+                              name, total(), counts.size(), System.currentTimeMillis()-start);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.jena.fuseki.mod.prometheus.EndpointTimers.EndpointMeters;
+
+/**
+ * Servlet filter that counts the bytes of the response body and records them in
+ * the response size histogram of the endpoint, if the request was for a dataset
+ * endpoint. The count is of the bytes written by Fuseki, before any compression.
+ */
+public class ResponseSizeFilter implements Filter {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if ( ! ( response instanceof HttpServletResponse ) ) {
+            chain.doFilter(request, response);
+            return;
+        }
+        CountingResponse counting = new CountingResponse((HttpServletResponse)response);
+        try {
+            chain.doFilter(request, counting);
+        } finally {
+            Object x = request.getAttribute(EndpointTimers.attrEndpointMeters);
+            if ( x instanceof EndpointMeters )
+                ((EndpointMeters)x).responseSize.record(counting.bytes());
+        }
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private CountingOutputStream output = null;
+        private PrintWriter writer = null;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        long bytes() {
+            if ( writer != null )
+                writer.flush();
+            return output == null ? 0 : output.count;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if ( output == null )
+                output = new CountingOutputStream(super.getOutputStream());
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if ( writer == null ) {
+                String charset = getCharacterEncoding();
+                try {
+                    writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset));
+                } catch (UnsupportedEncodingException ex) {
+                    return super.getWriter();
+                }
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if ( writer != null )
+                writer.flush();
+            super.flushBuffer();
+        }
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream out;
+        long count = 0;
+
+        CountingOutputStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
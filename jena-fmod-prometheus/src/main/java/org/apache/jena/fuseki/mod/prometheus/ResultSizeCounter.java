@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.fuseki.mod.prometheus.EndpointTimers.EndpointMeters;
+import org.apache.jena.query.Query;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.Plan;
+import org.apache.jena.sparql.engine.QueryEngineFactory;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Record query result sizes in the result size histogram of the endpoint.
+ * <p>
+ * While a query endpoint processes a request, its {@link EndpointMeters} are set
+ * for the thread. This query engine factory takes them when the plan for the query
+ * is created, delegates to the query engine that would otherwise have been used, and
+ * counts the solutions as the results are streamed. The count is recorded when the
+ * query iterator is closed, so results are never counted a second time.
+ * <p>
+ * Only the first query of a request is counted; queries made while evaluating it
+ * (for example by property functions) are not.
+ */
+class ResultSizeCounter implements QueryEngineFactory {
+
+    private static final ThreadLocal<EndpointMeters> current = new ThreadLocal<>();
+    private static final ResultSizeCounter factory = new ResultSizeCounter();
+    private static boolean registered = false;
+
+    static synchronized void register() {
+        if ( registered )
+            return;
+        QueryEngineRegistry.addFactory(factory);
+        registered = true;
+    }
+
+    static synchronized void unregister() {
+        if ( registered )
+            QueryEngineRegistry.removeFactory(factory);
+        registered = false;
+    }
+
+    /** Set the meters for the query request being processed by this thread. */
+    static void begin(EndpointMeters meters) {
+        current.set(meters);
+    }
+
+    /** End the query request being processed by this thread. */
+    static void end() {
+        current.remove();
+    }
+
+    private ResultSizeCounter() {}
+
+    @Override
+    public boolean accept(Query query, DatasetGraph dataset, Context context) {
+        return current.get() != null && delegate(query, dataset, context) != null;
+    }
+
+    @Override
+    public Plan create(Query query, DatasetGraph dataset, Binding inputBinding, Context context) {
+        EndpointMeters meters = current.get();
+        current.remove();
+        Plan plan = delegate(query, dataset, context).create(query, dataset, inputBinding, context);
+        if ( meters == null )
+            return plan;
+        return new CountingPlan(plan, meters);
+    }
+
+    // Algebra is executed directly, not through a request; it is not counted.
+    @Override
+    public boolean accept(Op op, DatasetGraph dataset, Context context) {
+        return false;
+    }
+
+    @Override
+    public Plan create(Op op, DatasetGraph dataset, Binding inputBinding, Context context) {
+        throw new UnsupportedOperationException("ResultSizeCounter.create(Op)");
+    }
+
+    /** The factory that would be used without this one. */
+    private static QueryEngineFactory delegate(Query query, DatasetGraph dataset, Context context) {
+        for ( QueryEngineFactory f : QueryEngineRegistry.get().factories() ) {
+            if ( f != factory && f.accept(query, dataset, context) )
+                return f;
+        }
+        return null;
+    }
+
+    /** A plan whose iterator counts the solutions. */
+    private static class CountingPlan implements Plan {
+        private final Plan plan;
+        private final EndpointMeters meters;
+        private QueryIterator iterator = null;
+
+        CountingPlan(Plan plan, EndpointMeters meters) {
+            this.plan = plan;
+            this.meters = meters;
+        }
+
+        @Override
+        public Op getOp() {
+            return plan.getOp();
+        }
+
+        @Override
+        public QueryIterator iterator() {
+            if ( iterator == null )
+                iterator = new QueryIterCounting(plan.iterator(), meters);
+            return iterator;
+        }
+
+        @Override
+        public void close() {
+            if ( iterator != null )
+                iterator.close();
+            plan.close();
+        }
+
+        @Override
+        public void output(IndentedWriter out, SerializationContext sCxt) {
+            plan.output(out, sCxt);
+        }
+
+        @Override
+        public String toString(PrefixMapping pmap) {
+            return plan.toString(pmap);
+        }
+
+        @Override
+        public void output(IndentedWriter out) {
+            plan.output(out);
+        }
+    }
+
+    private static class QueryIterCounting extends QueryIteratorWrapper {
+        private final EndpointMeters meters;
+        private long count = 0;
+
+        QueryIterCounting(QueryIterator qIter, EndpointMeters meters) {
+            super(qIter);
+            this.meters = meters;
+        }
+
+        @Override
+        protected Binding moveToNextBinding() {
+            Binding binding = super.moveToNextBinding();
+            count++;
+            return binding;
+        }
+
+        @Override
+        protected void closeIterator() {
+            try {
+                super.closeIterator();
+            } finally {
+                meters.resultSize.record(count);
+            }
+        }
+    }
+}
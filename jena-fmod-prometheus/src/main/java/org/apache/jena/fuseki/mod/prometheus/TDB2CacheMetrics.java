@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.util.function.ToIntFunction;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.setup.StoreParams;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * The cache sizes a TDB2 dataset is configured with: the node table caches
+ * (NodeId lookup, Node lookup, and not-found nodes) and the B+tree block caches.
+ * <p>
+ * These are the settings of the store parameters of the current storage, which
+ * may change on compaction. TDB2 does not count cache hits, misses or block
+ * accesses, and has no hook to add counting to its caches, so these are not
+ * reported.
+ */
+public class TDB2CacheMetrics {
+
+    /** Register the cache size gauges of a TDB2 dataset (see {@link TDBInternal#isTDB2}). */
+    public static void bindTo(DatasetGraph dsg, MeterRegistry meterRegistry, Tags tags) {
+        gauge(dsg, "node2id", StoreParams::getNode2NodeIdCacheSize, meterRegistry, tags);
+        gauge(dsg, "id2node", StoreParams::getNodeId2NodeCacheSize, meterRegistry, tags);
+        gauge(dsg, "nodeMiss", StoreParams::getNodeMissCacheSize, meterRegistry, tags);
+        gauge(dsg, "blockRead", StoreParams::getBlockReadCacheSize, meterRegistry, tags);
+        gauge(dsg, "blockWrite", StoreParams::getBlockWriteCacheSize, meterRegistry, tags);
+    }
+
+    private static void gauge(DatasetGraph dsg, String cache, ToIntFunction<StoreParams> size,
+                              MeterRegistry meterRegistry, Tags tags) {
+        Gauge.builder("fuseki_tdb2_cache_size", dsg, d -> cacheSize(d, size))
+            .description("Configured size, in entries, of a TDB2 cache")
+            .tags(tags).tag("cache", cache).register(meterRegistry);
+    }
+
+    private static double cacheSize(DatasetGraph dsg, ToIntFunction<StoreParams> size) {
+        try {
+            return size.applyAsInt(TDBInternal.getDatasetGraphTDB(dsg).getStoreParams());
+        } catch (RuntimeException ex) {
+            // Closed or being switched by a compaction.
+            return Double.NaN;
+        }
+    }
+}
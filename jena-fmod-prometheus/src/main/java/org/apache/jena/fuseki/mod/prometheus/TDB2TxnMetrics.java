@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * {@link TxnMetrics Transaction metrics} of a TDB2 dataset, recorded by a listener on
+ * the transaction coordinator so that the dataset is not wrapped.
+ * <p>
+ * The coordinator does not report when a writer starts waiting for the write lock,
+ * so the write wait timer is not available. Compaction replaces the storage, and its
+ * coordinator, so {@link #refresh()} moves the listener to the current one; it is
+ * called by the background metrics sync.
+ */
+public class TDB2TxnMetrics implements TransactionListener {
+
+    private final DatasetGraph dsg;
+    private final TxnMetrics txnMetrics = new TxnMetrics(false);
+    private final Map<Transaction, TxnMetrics.Txn> txns = new ConcurrentHashMap<>();
+    private TransactionCoordinator coordinator = null;
+
+    /** The dataset must be TDB2 (see {@link TDBInternal#isTDB2}). */
+    public TDB2TxnMetrics(DatasetGraph dsg) {
+        this.dsg = dsg;
+    }
+
+    public TxnMetrics getTxnMetrics() {
+        return txnMetrics;
+    }
+
+    /** Listen to the transactions of the dataset and register the meters. */
+    public void bindTo(MeterRegistry meterRegistry, Tags tags) {
+        refresh();
+        txnMetrics.bindTo(meterRegistry, tags);
+    }
+
+    /** Listen to the current transaction coordinator of the dataset, which changes on compaction. */
+    public synchronized void refresh() {
+        TransactionCoordinator txnMgr = TDBInternal.getDatasetGraphTDB(dsg).getTxnSystem().getTxnMgr();
+        if ( txnMgr == coordinator )
+            return;
+        if ( coordinator != null ) {
+            coordinator.removeListener(this);
+            // Transactions of the old storage are not reported further.
+            txns.values().forEach(txnMetrics::forget);
+            txns.clear();
+        }
+        coordinator = txnMgr;
+        coordinator.addListener(this);
+    }
+
+    /** Stop listening. */
+    public synchronized void unbind() {
+        if ( coordinator != null )
+            coordinator.removeListener(this);
+        coordinator = null;
+        txns.values().forEach(txnMetrics::forget);
+        txns.clear();
+    }
+
+    @Override
+    public void notifyTxnStart(Transaction transaction) {
+        txns.put(transaction, txnMetrics.started(transaction.isWriteTxn(), -1));
+    }
+
+    @Override
+    public void notifyPromoteFinish(Transaction transaction) {
+        if ( transaction.isWriteTxn() )
+            txnMetrics.promoted(txns.get(transaction), -1);
+    }
+
+    @Override
+    public void notifyCommitFinish(Transaction transaction) {
+        txnMetrics.committed(txns.get(transaction));
+    }
+
+    @Override
+    public void notifyAbortFinish(Transaction transaction) {
+        // A write transaction ended without commit is aborted by the coordinator.
+        txnMetrics.aborted();
+    }
+
+    @Override
+    public void notifyEndFinish(Transaction transaction) {
+        txnMetrics.finished(txns.remove(transaction));
+    }
+}
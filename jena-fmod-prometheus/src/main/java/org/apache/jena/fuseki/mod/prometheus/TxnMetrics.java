@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.prometheus;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Transaction metrics of a dataset: active read and write transactions, the time a
+ * writer waits for the write lock, transaction durations, write commits and aborts,
+ * and the age of the oldest open read transaction.
+ * <p>
+ * The caller reports the steps of each transaction; this is done by
+ * {@link DatasetGraphMetrics}, which wraps the dataset, and, for TDB2, by
+ * {@link TDB2TxnMetrics}, which listens to the transaction coordinator. Counting is
+ * always on; the meters are registered by {@link #bindTo}.
+ */
+public class TxnMetrics {
+
+    private static final Duration[] txnBuckets = {
+        Duration.ofMillis(1), Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofMillis(500),
+        Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(5)
+    };
+
+    /** A transaction, from {@link #started} to {@link #finished}. */
+    public static class Txn {
+        final long start = System.nanoTime();
+        volatile boolean write;
+        Txn(boolean write) { this.write = write; }
+        public boolean isWrite() { return write; }
+    }
+
+    private final Set<Txn> openReads = ConcurrentHashMap.newKeySet();
+    private final AtomicLong activeWrites = new AtomicLong();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    private final boolean measuresWriteWait;
+
+    // Set when bound to a meter registry.
+    private volatile Timer writeWait = null;
+    private volatile Timer readDuration = null;
+    private volatile Timer writeDuration = null;
+
+    /**
+     * @param measuresWriteWait Whether the caller reports the time waiting for the
+     *                          write lock; if not, the timer is not registered.
+     */
+    public TxnMetrics(boolean measuresWriteWait) {
+        this.measuresWriteWait = measuresWriteWait;
+    }
+
+    /** Register the meters. */
+    public void bindTo(MeterRegistry meterRegistry, Tags tags) {
+        Gauge.builder("fuseki_txn_active", openReads, Set::size)
+            .description("Active transactions").tags(tags.and("mode", "read")).register(meterRegistry);
+        Gauge.builder("fuseki_txn_active", activeWrites, AtomicLong::get)
+            .description("Active transactions").tags(tags.and("mode", "write")).register(meterRegistry);
+        Gauge.builder("fuseki_txn_oldest_read_age", this, TxnMetrics::oldestReadSeconds)
+            .description("Age of the oldest open read transaction (0 if none)")
+            .baseUnit("seconds").tags(tags).register(meterRegistry);
+        FunctionCounter.builder("fuseki_txn_commits", commits, LongAdder::sum)
+            .description("Commits of write transactions").tags(tags).register(meterRegistry);
+        FunctionCounter.builder("fuseki_txn_aborts", aborts, LongAdder::sum)
+            .description("Aborts, including write transactions ended without commit").tags(tags).register(meterRegistry);
+        if ( measuresWriteWait )
+            writeWait = Timer.builder("fuseki_txn_write_wait")
+                .description("Time waiting for the write lock")
+                .tags(tags).serviceLevelObjectives(txnBuckets).register(meterRegistry);
+        readDuration = Timer.builder("fuseki_txn_duration")
+            .description("Transaction duration")
+            .tags(tags.and("mode", "read")).serviceLevelObjectives(txnBuckets).register(meterRegistry);
+        writeDuration = Timer.builder("fuseki_txn_duration")
+            .description("Transaction duration")
+            .tags(tags.and("mode", "write")).serviceLevelObjectives(txnBuckets).register(meterRegistry);
+    }
+
+    private double oldestReadSeconds() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for ( Txn txn : openReads )
+            oldest = Math.max(oldest, now - txn.start);
+        return oldest / 1e9;
+    }
+
+    /** A transaction has started; {@code waitNanos} is the time waiting to start, or -1 if not known. */
+    public Txn started(boolean write, long waitNanos) {
+        Txn txn = new Txn(write);
+        if ( write ) {
+            activeWrites.incrementAndGet();
+            recordWait(waitNanos);
+        } else {
+            openReads.add(txn);
+        }
+        return txn;
+    }
+
+    /** A read transaction has been promoted; {@code waitNanos} is the time waiting, or -1 if not known. */
+    public void promoted(Txn txn, long waitNanos) {
+        if ( txn == null || txn.write )
+            return;
+        openReads.remove(txn);
+        txn.write = true;
+        activeWrites.incrementAndGet();
+        recordWait(waitNanos);
+    }
+
+    private void recordWait(long waitNanos) {
+        Timer t = writeWait;
+        if ( t != null && waitNanos >= 0 )
+            t.record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** A transaction has committed. Read transactions also commit; only commits of write transactions are counted. */
+    public void committed(Txn txn) {
+        if ( txn != null && txn.write )
+            commits.increment();
+    }
+
+    /** A transaction has aborted. */
+    public void aborted() {
+        aborts.increment();
+    }
+
+    /** A transaction has finished; record its duration. */
+    public void finished(Txn txn) {
+        if ( txn == null )
+            return;
+        long duration = System.nanoTime() - txn.start;
+        if ( txn.write ) {
+            activeWrites.decrementAndGet();
+            Timer t = writeDuration;
+            if ( t != null )
+                t.record(duration, TimeUnit.NANOSECONDS);
+        } else {
+            openReads.remove(txn);
+            Timer t = readDuration;
+            if ( t != null )
+                t.record(duration, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Stop tracking a transaction that will not be reported as finished; its duration is not recorded. */
+    public void forget(Txn txn) {
+        if ( txn == null )
+            return;
+        if ( txn.write )
+            activeWrites.decrementAndGet();
+        else
+            openReads.remove(txn);
+    }
+
+    public long activeReads() { return openReads.size(); }
+    public long activeWrites() { return activeWrites.get(); }
+    public long commits() { return commits.sum(); }
+    public long aborts() { return aborts.sum(); }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional.Promote;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.Test;
+
+/** Transaction counting by {@link DatasetGraphMetrics}. */
+public class TestDatasetGraphMetrics {
+
+    private static final Quad quad = SSE.parseQuad("(_ :s :p :o)");
+
+    private final DatasetGraphMetrics dsg = new DatasetGraphMetrics(DatasetGraphFactory.createTxnMem());
+    private final TxnMetrics metrics = dsg.getTxnMetrics();
+
+    @Test public void txn_commit() {
+        dsg.begin(ReadWrite.WRITE);
+        assertEquals(1, metrics.activeWrites());
+        dsg.add(quad);
+        dsg.commit();
+        dsg.end();
+        assertEquals(1, metrics.commits());
+        assertEquals(0, metrics.aborts());
+        assertEquals(0, metrics.activeWrites());
+    }
+
+    @Test public void txn_read() {
+        dsg.begin(ReadWrite.READ);
+        assertEquals(1, metrics.activeReads());
+        dsg.commit();
+        dsg.end();
+        // Only commits of write transactions count.
+        assertEquals(0, metrics.commits());
+        assertEquals(0, metrics.aborts());
+        assertEquals(0, metrics.activeReads());
+    }
+
+    @Test public void txn_abort() {
+        dsg.begin(ReadWrite.WRITE);
+        dsg.add(quad);
+        dsg.abort();
+        dsg.end();
+        assertEquals(0, metrics.commits());
+        assertEquals(1, metrics.aborts());
+        assertEquals(0, metrics.activeWrites());
+    }
+
+    @Test public void txn_end_no_commit() {
+        dsg.begin(ReadWrite.WRITE);
+        dsg.add(quad);
+        try { dsg.end(); } catch (RuntimeException ex) { /* Ending an uncommitted write may warn or throw. */ }
+        assertEquals(0, metrics.commits());
+        assertEquals(1, metrics.aborts());
+        assertEquals(0, metrics.activeWrites());
+    }
+
+    @Test public void txn_promote() {
+        dsg.begin(TxnType.READ_PROMOTE);
+        assertEquals(1, metrics.activeReads());
+        assertEquals(0, metrics.activeWrites());
+        dsg.promote(Promote.ISOLATED);
+        assertEquals(0, metrics.activeReads());
+        assertEquals(1, metrics.activeWrites());
+        dsg.add(quad);
+        dsg.commit();
+        dsg.end();
+        assertEquals(1, metrics.commits());
+        assertEquals(0, metrics.activeWrites());
+    }
+
+    @Test public void txn_promote_commit_read() {
+        dsg.begin(TxnType.READ_PROMOTE);
+        dsg.commit();
+        dsg.end();
+        // Not promoted: a read transaction.
+        assertEquals(0, metrics.commits());
+        assertEquals(0, metrics.activeReads());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.DataService;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Datasets added while the server is running. */
+public class TestDatasetMetricsBinder {
+
+    private Path dir;
+    private final DataAccessPointRegistry registry = new DataAccessPointRegistry();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DatasetMetricsBinder binder = new DatasetMetricsBinder(registry, meterRegistry);
+
+    @Before public void before() throws IOException {
+        dir = Files.createTempDirectory("metrics-binder");
+    }
+
+    @After public void after() throws IOException {
+        FileOps.clearAll(dir.toFile());
+        Files.deleteIfExists(dir);
+    }
+
+    private DataAccessPoint add(String name, DatasetGraph dsg) {
+        DataAccessPoint dap = new DataAccessPoint(name, DataService.newBuilder(dsg).build());
+        registry.register(dap);
+        return dap;
+    }
+
+    @Test public void added_tdb2() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        DataAccessPoint dap = add("/tdb2", dsg);
+        binder.sync();
+        // Not replaced.
+        assertSame(dap, registry.get("/tdb2"));
+        assertTrue(TDBInternal.isTDB2(registry.get("/tdb2").getDataService().getDataset()));
+        // Transactions recorded by the listener.
+        dsg.executeWrite(() -> {});
+        assertEquals(1.0, meterRegistry.get("fuseki_txn_commits").tag("dataset", "/tdb2").functionCounter().count(), 0);
+    }
+
+    @Test public void added_tdb2_cacheSizes() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        add("/tdb2", dsg);
+        binder.sync();
+        int expected = TDBInternal.getDatasetGraphTDB(dsg).getStoreParams().getNode2NodeIdCacheSize();
+        double value = meterRegistry.get("fuseki_tdb2_cache_size").tag("dataset", "/tdb2").tag("cache", "node2id").gauge().value();
+        assertEquals(expected, value, 0);
+        assertEquals(5, meterRegistry.find("fuseki_tdb2_cache_size").tag("dataset", "/tdb2").gauges().size());
+    }
+
+    @Test public void added_mem() {
+        DataAccessPoint dap = add("/mem", DatasetGraphFactory.createTxnMem());
+        binder.sync();
+        assertSame(dap, registry.get("/mem"));
+        assertNull(meterRegistry.find("fuseki_txn_commits").tag("dataset", "/mem").functionCounter());
+    }
+
+    @Test public void added_quad_counts() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        dsg.getContext().set(MetricsConst.symQuadCounts, true);
+        add("/counted", dsg);
+        binder.sync();
+        DatasetGraph dsgServed = registry.get("/counted").getDataService().getDataset();
+        assertTrue(dsgServed instanceof DatasetGraphMetrics);
+        assertNotNull(((DatasetGraphMetrics)dsgServed).getQuadCounts());
+        // The replacement is bound by the same sync.
+        assertNotNull(meterRegistry.find("fuseki_txn_commits").tag("dataset", "/counted").functionCounter());
+    }
+
+    @Test public void removed() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        add("/tdb2", dsg);
+        binder.sync();
+        registry.remove("/tdb2");
+        binder.sync();
+        assertNull(meterRegistry.find("fuseki_txn_commits").tag("dataset", "/tdb2").functionCounter());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.Test;
+
+/** Heap estimates of {@link HeapSize}: node sizes are counted once for each distinct node. */
+public class TestHeapSize {
+
+    private static final Node dft = Quad.defaultGraphIRI;
+    private static final Node g = SSE.parseNode("<http://example/g>");
+    private static final Node s = SSE.parseNode("<http://example/s>");
+    private static final Node p = SSE.parseNode("<http://example/p>");
+    private static final Node o1 = SSE.parseNode("'one'");
+    private static final Node o2 = SSE.parseNode("'two'");
+
+    @Test public void heapSize_empty() {
+        assertEquals(0, new HeapSize().bytes());
+    }
+
+    @Test public void heapSize_oneQuad() {
+        HeapSize h = new HeapSize();
+        h.quad(dft, s, p, o1, 1);
+        // The default graph is not a node of the quad.
+        assertEquals(HeapSize.indexBytes(dft) + HeapSize.node(s) + HeapSize.node(p) + HeapSize.node(o1), h.bytes());
+    }
+
+    @Test public void heapSize_sharedNodes() {
+        HeapSize h = new HeapSize();
+        h.quad(dft, s, p, o1, 1);
+        h.quad(dft, s, p, o2, 1);
+        // s and p are counted once.
+        long expected = 2 * HeapSize.indexBytes(dft) + HeapSize.node(s) + HeapSize.node(p) + HeapSize.node(o1) + HeapSize.node(o2);
+        assertEquals(expected, h.bytes());
+    }
+
+    @Test public void heapSize_namedGraph() {
+        HeapSize h = new HeapSize();
+        h.quad(g, s, p, o1, 1);
+        h.quad(g, s, p, o2, 1);
+        long expected = 2 * HeapSize.indexBytes(g) + HeapSize.node(g) + HeapSize.node(s) + HeapSize.node(p)
+                        + HeapSize.node(o1) + HeapSize.node(o2);
+        assertEquals(expected, h.bytes());
+        // Named graph quads are in more indexes.
+        assertEquals(2 * HeapSize.indexBytes(dft), HeapSize.indexBytes(g));
+    }
+
+    @Test public void heapSize_remove() {
+        HeapSize h = new HeapSize();
+        h.quad(dft, s, p, o1, 1);
+        h.quad(dft, s, p, o2, 1);
+        h.quad(dft, s, p, o2, -1);
+        // o2 is no longer used; s and p still are.
+        assertEquals(HeapSize.indexBytes(dft) + HeapSize.node(s) + HeapSize.node(p) + HeapSize.node(o1), h.bytes());
+        h.quad(dft, s, p, o1, -1);
+        assertEquals(0, h.bytes());
+    }
+
+    @Test public void heapSize_add() {
+        HeapSize h1 = new HeapSize();
+        h1.quad(dft, s, p, o1, 1);
+        HeapSize h2 = new HeapSize();
+        h2.quad(dft, s, p, o2, 1);
+        h1.add(h2);
+        long expected = 2 * HeapSize.indexBytes(dft) + HeapSize.node(s) + HeapSize.node(p) + HeapSize.node(o1) + HeapSize.node(o2);
+        assertEquals(expected, h1.bytes());
+    }
+
+    @Test public void heapSize_removeBeforeAdd() {
+        // A removal applied before the counts of the quad (see QuadCounts) is balanced when they are added.
+        HeapSize pending = new HeapSize();
+        pending.quad(dft, s, p, o1, -1);
+        HeapSize h = new HeapSize();
+        h.add(pending);
+        HeapSize snapshot = new HeapSize();
+        snapshot.quad(dft, s, p, o1, 1);
+        snapshot.quad(dft, s, p, o2, 1);
+        h.add(snapshot);
+        assertEquals(HeapSize.indexBytes(dft) + HeapSize.node(s) + HeapSize.node(p) + HeapSize.node(o2), h.bytes());
+    }
+
+    @Test public void heapSize_clear() {
+        HeapSize h = new HeapSize();
+        h.quad(g, s, p, o1, 1);
+        h.clear();
+        assertEquals(0, h.bytes());
+    }
+}
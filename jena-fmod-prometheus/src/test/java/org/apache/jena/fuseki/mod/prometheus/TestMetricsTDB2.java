@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.fuseki.server.DataAccessPoint;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.DataService;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.QueryEngineFactory;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.solver.QueryEngineTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TDB2 datasets are not wrapped, so they keep the TDB2 query engine and can be
+ * compacted and deleted with their files; transactions are recorded by
+ * {@link TDB2TxnMetrics}.
+ */
+public class TestMetricsTDB2 {
+
+    private static final Quad quad = SSE.parseQuad("(_ :s :p :o)");
+
+    private Path dir;
+
+    @Before public void before() throws IOException {
+        dir = Files.createTempDirectory("metrics-tdb2");
+    }
+
+    @After public void after() throws IOException {
+        FileOps.clearAll(dir.toFile());
+        Files.deleteIfExists(dir);
+    }
+
+    /** The registry after the module has configured it. */
+    private static DataAccessPointRegistry configured(DatasetGraph dsg) {
+        DataAccessPointRegistry registry = new DataAccessPointRegistry();
+        registry.register(new DataAccessPoint("/ds", DataService.newBuilder(dsg).build()));
+        new FMod_Prometheus().configured(null, registry, null);
+        return registry;
+    }
+
+    @Test public void tdb2_not_wrapped() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        DataAccessPoint dap = configured(dsg).get("/ds");
+        DatasetGraph dsgServed = dap.getDataService().getDataset();
+        assertSame(dsg, dsgServed);
+        assertTrue(TDBInternal.isTDB2(dsgServed));
+        assertTrue(DatabaseMgr.isTDB2(dsgServed));
+    }
+
+    @Test public void tdb2_quad_counts_not_wrapped() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        dsg.getContext().set(MetricsConst.symQuadCounts, true);
+        DatasetGraph dsgServed = configured(dsg).get("/ds").getDataService().getDataset();
+        assertTrue(TDBInternal.isTDB2(dsgServed));
+    }
+
+    @Test public void tdb2_query_engine() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        DatasetGraph dsgServed = configured(dsg).get("/ds").getDataService().getDataset();
+        Query query = QueryFactory.create("SELECT * { ?s ?p ?o }");
+        QueryEngineFactory factory = QueryEngineRegistry.findFactory(query, dsgServed, dsgServed.getContext());
+        assertNotNull(factory);
+        assertTrue(factory.getClass().getName(), factory.getClass().getName().startsWith(QueryEngineTDB.class.getName()));
+    }
+
+    @Test public void tdb2_delete_with_files() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        dsg.executeWrite(() -> dsg.add(quad));
+        DataAccessPoint dap = configured(dsg).get("/ds");
+        DatasetGraph dsgServed = dap.getDataService().getDataset();
+        // As the admin delete operation does: only TDB databases have their files removed.
+        assertTrue(TDBInternal.isTDB2(dsgServed));
+        dap.getDataService().shutdown();
+        TDBInternal.expel(dsgServed);
+        FileOps.clearAll(dir.toFile());
+        File[] remaining = dir.toFile().listFiles();
+        assertEquals(0, remaining.length);
+    }
+
+    @Test public void mem_wrapped_only_if_needed() {
+        DatasetGraph dsg1 = DatasetGraphFactory.createTxnMem();
+        assertSame(dsg1, configured(dsg1).get("/ds").getDataService().getDataset());
+
+        DatasetGraph dsg2 = DatasetGraphFactory.createTxnMem();
+        dsg2.getContext().set(MetricsConst.symTxnMetrics, true);
+        assertTrue(configured(dsg2).get("/ds").getDataService().getDataset() instanceof DatasetGraphMetrics);
+    }
+
+    @Test public void tdb2_txn_metrics() {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(Location.create(dir));
+        TDB2TxnMetrics tdb2Metrics = new TDB2TxnMetrics(dsg);
+        tdb2Metrics.refresh();
+        TxnMetrics metrics = tdb2Metrics.getTxnMetrics();
+
+        dsg.begin(ReadWrite.WRITE);
+        assertEquals(1, metrics.activeWrites());
+        dsg.add(quad);
+        dsg.commit();
+        dsg.end();
+
+        dsg.begin(ReadWrite.READ);
+        assertEquals(1, metrics.activeReads());
+        dsg.end();
+
+        dsg.begin(ReadWrite.WRITE);
+        dsg.delete(quad);
+        dsg.abort();
+        dsg.end();
+
+        assertEquals(1, metrics.commits());
+        assertEquals(1, metrics.aborts());
+        assertEquals(0, metrics.activeWrites());
+        assertEquals(0, metrics.activeReads());
+
+        // Compaction replaces the storage and its transaction coordinator.
+        DatabaseMgr.compact(dsg, true);
+        tdb2Metrics.refresh();
+        dsg.executeWrite(() -> dsg.add(quad));
+        assertEquals(2, metrics.commits());
+        tdb2Metrics.unbind();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.Test;
+
+/** Quad counts maintained by {@link DatasetGraphMetrics} from committed transactions. */
+public class TestQuadCounts {
+
+    private static final String G1 = "http://example/g1";
+    private static final Node g1 = NodeFactory.createURI(G1);
+
+    private static final Quad quad1 = SSE.parseQuad("(_ :s :p 1)");
+    private static final Quad quad2 = SSE.parseQuad("(_ :s :p 2)");
+    private static final Quad quadG1 = SSE.parseQuad("(<"+G1+"> :s :p 1)");
+
+    /** A dataset, with the given quads, wrapped to maintain quad counts once the initial count has finished. */
+    private static DatasetGraphMetrics dataset(Quad... quads) {
+        DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        base.executeWrite(() -> { for ( Quad q : quads ) base.add(q); });
+        QuadCounts quadCounts = new QuadCounts();
+        quadCounts.start("test", base);
+        awaitReady(quadCounts);
+        return new DatasetGraphMetrics(base, quadCounts);
+    }
+
+    private static void awaitReady(QuadCounts quadCounts) {
+        long finish = System.currentTimeMillis() + 5_000;
+        while ( ! quadCounts.isReady() ) {
+            if ( System.currentTimeMillis() > finish )
+                fail("Initial quad count did not finish");
+            try { Thread.sleep(10); } catch (InterruptedException ex) { fail("Interrupted"); }
+        }
+    }
+
+    @Test public void quadCounts_initial() {
+        QuadCounts quadCounts = dataset(quad1, quad2, quadG1).getQuadCounts();
+        assertEquals(3, quadCounts.total());
+        assertEquals(Map.of(QuadCounts.defaultGraph, 2L, G1, 1L), quadCounts.byGraph());
+    }
+
+    @Test public void quadCounts_notReady() {
+        QuadCounts quadCounts = new QuadCounts();
+        assertEquals(-1, quadCounts.total());
+        assertTrue(quadCounts.byGraph().isEmpty());
+    }
+
+    @Test public void quadCounts_commit() {
+        DatasetGraphMetrics dsg = dataset(quad1);
+        dsg.executeWrite(() -> {
+            dsg.add(quad2);
+            // Already present: not counted.
+            dsg.add(quad1);
+            dsg.add(quadG1);
+        });
+        assertEquals(Map.of(QuadCounts.defaultGraph, 2L, G1, 1L), dsg.getQuadCounts().byGraph());
+        dsg.executeWrite(() -> {
+            dsg.delete(quad1);
+            // Not present: not counted.
+            dsg.delete(SSE.parseQuad("(_ :s :p 3)"));
+        });
+        assertEquals(Map.of(QuadCounts.defaultGraph, 1L, G1, 1L), dsg.getQuadCounts().byGraph());
+    }
+
+    @Test public void quadCounts_abort() {
+        DatasetGraphMetrics dsg = dataset(quad1);
+        dsg.begin(ReadWrite.WRITE);
+        dsg.add(quad2);
+        dsg.delete(quad1);
+        dsg.abort();
+        dsg.end();
+        assertEquals(1, dsg.getQuadCounts().total());
+    }
+
+    @Test public void quadCounts_endNoCommit() {
+        DatasetGraphMetrics dsg = dataset(quad1);
+        dsg.begin(ReadWrite.WRITE);
+        dsg.add(quad2);
+        dsg.end();
+        assertEquals(1, dsg.getQuadCounts().total());
+        // The discarded change is not applied by the next commit.
+        dsg.executeWrite(() -> dsg.add(quadG1));
+        assertEquals(Map.of(QuadCounts.defaultGraph, 1L, G1, 1L), dsg.getQuadCounts().byGraph());
+    }
+
+    @Test public void quadCounts_graphView() {
+        DatasetGraphMetrics dsg = dataset();
+        dsg.executeWrite(() -> dsg.getGraph(g1).add(quadG1.asTriple()));
+        assertEquals(Map.of(G1, 1L), dsg.getQuadCounts().byGraph());
+    }
+
+    @Test public void quadCounts_removeGraph() {
+        DatasetGraphMetrics dsg = dataset(quad1, quadG1);
+        dsg.executeWrite(() -> dsg.removeGraph(g1));
+        // A graph with no quads is not listed.
+        assertEquals(Map.of(QuadCounts.defaultGraph, 1L), dsg.getQuadCounts().byGraph());
+    }
+
+    @Test public void quadCounts_deleteAny() {
+        DatasetGraphMetrics dsg = dataset(quad1, quad2, quadG1);
+        dsg.executeWrite(() -> dsg.deleteAny(Node.ANY, Node.ANY, Node.ANY, SSE.parseNode("1")));
+        assertEquals(Map.of(QuadCounts.defaultGraph, 1L), dsg.getQuadCounts().byGraph());
+    }
+
+    @Test public void quadCounts_clear() {
+        DatasetGraphMetrics dsg = dataset(quad1, quad2, quadG1);
+        dsg.executeWrite(() -> dsg.clear());
+        assertEquals(0, dsg.getQuadCounts().total());
+        assertTrue(dsg.getQuadCounts().byGraph().isEmpty());
+    }
+}
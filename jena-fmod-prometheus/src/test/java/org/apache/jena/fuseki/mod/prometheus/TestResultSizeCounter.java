@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.prometheus;
+
+import static org.junit.Assert.assertEquals;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.jena.fuseki.mod.prometheus.EndpointTimers.EndpointMeters;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Result sizes recorded by {@link ResultSizeCounter}. */
+public class TestResultSizeCounter {
+
+    private static final String QUERY = "SELECT * { ?s ?p ?o }";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EndpointMeters meters = new EndpointMeters(Timer.builder("test_timer").register(meterRegistry),
+                                                             DistributionSummary.builder("test_response_size").register(meterRegistry),
+                                                             DistributionSummary.builder("test_result_size").register(meterRegistry));
+    private Dataset dataset;
+
+    @Before public void before() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        dsg.add(SSE.parseQuad("(_ :s :p 1)"));
+        dsg.add(SSE.parseQuad("(_ :s :p 2)"));
+        dsg.add(SSE.parseQuad("(_ :s :p 3)"));
+        dataset = DatasetFactory.wrap(dsg);
+        ResultSizeCounter.register();
+    }
+
+    @After public void after() {
+        ResultSizeCounter.end();
+        ResultSizeCounter.unregister();
+    }
+
+    private long consume(String queryString) {
+        try ( QueryExecution qExec = QueryExecutionFactory.create(queryString, dataset) ) {
+            return ResultSetFormatter.consume(qExec.execSelect());
+        }
+    }
+
+    @Test public void resultSize_query() {
+        ResultSizeCounter.begin(meters);
+        assertEquals(3, consume(QUERY));
+        assertEquals(1, meters.resultSize.count());
+        assertEquals(3, meters.resultSize.totalAmount(), 0);
+    }
+
+    @Test public void resultSize_noRequest() {
+        assertEquals(3, consume(QUERY));
+        assertEquals(0, meters.resultSize.count());
+    }
+
+    @Test public void resultSize_outerQueryOnly() {
+        ResultSizeCounter.begin(meters);
+        long inner = 0;
+        long outer = 0;
+        try ( QueryExecution qExec = QueryExecutionFactory.create(QUERY, dataset) ) {
+            ResultSet rs = qExec.execSelect();
+            while ( rs.hasNext() ) {
+                rs.next();
+                outer++;
+                // A query made while the request's query is being evaluated.
+                inner += consume("SELECT * { ?s ?p ?o FILTER(?o < 3) }");
+            }
+        }
+        assertEquals(3, outer);
+        assertEquals(6, inner);
+        assertEquals(1, meters.resultSize.count());
+        assertEquals(3, meters.resultSize.totalAmount(), 0);
+    }
+
+    @Test public void resultSize_oncePerRequest() {
+        ResultSizeCounter.begin(meters);
+        consume(QUERY);
+        // A second query on the same request is not counted.
+        consume(QUERY);
+        assertEquals(1, meters.resultSize.count());
+    }
+}
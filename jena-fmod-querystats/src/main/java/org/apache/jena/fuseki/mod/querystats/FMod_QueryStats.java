@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.querystats;
+
+import java.util.Set;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.fuseki.main.sys.FusekiModule;
+import org.apache.jena.fuseki.metrics.MetricsProviderRegistry;
+import org.apache.jena.fuseki.mod.querystats.QueryFingerprint.Fingerprint;
+import org.apache.jena.fuseki.mod.slowquery.QueryListener;
+import org.apache.jena.fuseki.mod.slowquery.QueryListeners;
+import org.apache.jena.fuseki.mod.slowquery.QueryTimings;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Query statistics by query shape ("fingerprint"), for each dataset: calls,
+ * total, mean and 99th percentile time, result rows and errors.
+ * <p>
+ * Queries are seen through the query listeners of the slow query module, which
+ * must also be present. The statistics are served as JSON at {@code /$/query-stats}
+ * and as metrics on {@code /$/metrics}. The number of fingerprints kept is
+ * {@code FUSEKI_QUERY_STATS_MAX} (default 500).
+ */
+public class FMod_QueryStats implements FusekiModule {
+
+    public static final String envMaxEntries = "FUSEKI_QUERY_STATS_MAX";
+    private static final int defaultMaxEntries = 500;
+
+    private QueryStatsTable table = null;
+    private QueryListener listener = null;
+
+    @Override
+    public String name() { return "Query Statistics"; }
+
+    @Override public void prepare(FusekiServer.Builder serverBuilder, Set<String> datasetNames, Model configModel) {
+        MeterRegistry meterRegistry = ( MetricsProviderRegistry.get() == null ) ? null : MetricsProviderRegistry.get().getMeterRegistry();
+        table = new QueryStatsTable(maxEntries(), meterRegistry);
+        serverBuilder.addServlet("/$/query-stats", new ActionQueryStats(table));
+    }
+
+    @Override public void serverBeforeStarting(FusekiServer server) {
+        listener = this::queryFinished;
+        QueryListeners.register(listener);
+    }
+
+    @Override public void serverStopped(FusekiServer server) {
+        if ( listener != null )
+            QueryListeners.unregister(listener);
+        listener = null;
+    }
+
+    private void queryFinished(HttpAction action, QueryTimings timings, Throwable error) {
+        if ( timings.getQuery() == null )
+            // Did not parse.
+            return;
+        Fingerprint fingerprint = QueryFingerprint.fingerprint(timings.getQueryString(), timings.getQuery());
+        table.record(action.getDatasetName(), timings.getQueryString(), fingerprint,
+                     timings.totalNanos(), timings.resultSize(), error != null);
+    }
+
+    private static int maxEntries() {
+        String x = Lib.getenv(envMaxEntries);
+        if ( x == null )
+            return defaultMaxEntries;
+        try {
+            return Integer.parseInt(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+envMaxEntries+": '"+x+"'");
+            return defaultMaxEntries;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.querystats;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.OpSlice;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.graph.NodeTransform;
+import org.apache.jena.sparql.graph.NodeTransformLib;
+
+/**
+ * The shape of a query: its algebra with constants removed.
+ * <p>
+ * Literals become "?", variables are renamed in order of appearance, LIMIT and
+ * OFFSET values are dropped (their presence is kept) and VALUES blocks keep their
+ * variables but not their rows. IRIs are kept: they are the predicates and classes
+ * that give the query its shape.
+ * <p>
+ * Fingerprints of recent query strings are cached, keyed by a 128 bit hash of the
+ * string so that the cache does not hold the query strings. The cache is bounded by
+ * the number of entries and by the total length of the normalized forms it holds;
+ * the least recently used entries are evicted, one at a time, to stay within both.
+ */
+public class QueryFingerprint {
+
+    /** The fingerprint id and the normalized algebra. */
+    public static class Fingerprint {
+        public final String id;
+        public final String normalized;
+        Fingerprint(String id, String normalized) {
+            this.id = id;
+            this.normalized = normalized;
+        }
+    }
+
+    private static final Node placeholder = NodeFactory.createLiteral("?");
+    private static final int cacheSize = 10_000;
+    // Total length of the normalized forms in the cache.
+    private static final long cacheChars = 10_000_000;
+    // Normalized forms longer than this are not cached.
+    private static final int maxCachedChars = 100_000;
+    // Hash of the query string to fingerprint, least recently used first. Guarded by "cache".
+    private static final LinkedHashMap<String, Fingerprint> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private static long cachedChars = 0;
+
+    /** The fingerprint of a parsed query. */
+    public static Fingerprint fingerprint(String queryString, Query query) {
+        String key = ( queryString == null ) ? null : hash(queryString, 16);
+        if ( key != null ) {
+            synchronized(cache) {
+                Fingerprint fp = cache.get(key);
+                if ( fp != null )
+                    return fp;
+            }
+        }
+        Fingerprint fp = calc(query);
+        if ( key != null && fp.normalized.length() <= maxCachedChars )
+            cache(key, fp);
+        return fp;
+    }
+
+    private static void cache(String key, Fingerprint fp) {
+        synchronized(cache) {
+            Fingerprint old = cache.put(key, fp);
+            if ( old != null )
+                cachedChars -= old.normalized.length();
+            cachedChars += fp.normalized.length();
+            Iterator<Fingerprint> iter = cache.values().iterator();
+            while ( iter.hasNext() && ( cache.size() > cacheSize || cachedChars > cacheChars ) ) {
+                cachedChars -= iter.next().normalized.length();
+                iter.remove();
+            }
+        }
+    }
+
+    /** Number of cached fingerprints. */
+    static int cacheEntries() {
+        synchronized(cache) {
+            return cache.size();
+        }
+    }
+
+    private static Fingerprint calc(Query query) {
+        Op op = Algebra.compile(query);
+        op = Transformer.transform(new TransformNormalize(), op);
+        Map<Var, Var> vars = new HashMap<>();
+        NodeTransform nodeTransform = n -> {
+            if ( Var.isVar(n) )
+                return vars.computeIfAbsent(Var.alloc(n), v -> Var.alloc("v"+(vars.size()+1)));
+            if ( n.isLiteral() )
+                return placeholder;
+            return n;
+        };
+        op = NodeTransformLib.transform(nodeTransform, op);
+        String normalized = op.toString();
+        return new Fingerprint(hash(normalized, 8), normalized);
+    }
+
+    private static class TransformNormalize extends TransformCopy {
+        @Override
+        public Op transform(OpSlice opSlice, Op subOp) {
+            long start = ( opSlice.getStart() == Query.NOLIMIT ) ? Query.NOLIMIT : 0;
+            long length = ( opSlice.getLength() == Query.NOLIMIT ) ? Query.NOLIMIT : 0;
+            return new OpSlice(subOp, start, length);
+        }
+
+        @Override
+        public Op transform(OpTable opTable) {
+            if ( opTable.isJoinIdentity() )
+                return opTable;
+            Table table = TableFactory.create(opTable.getTable().getVars());
+            return OpTable.create(table);
+        }
+    }
+
+    /** First {@code length} bytes of the SHA-256 of the string, as hex. */
+    private static String hash(String string, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(string.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(2*length);
+            for ( int i = 0 ; i < length ; i++ )
+                sb.append(String.format("%02x", bytes[i]));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            return Long.toHexString(string.hashCode() & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.querystats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.atlas.json.JsonBuilder;
+
+/**
+ * Aggregate statistics for one query fingerprint of one dataset.
+ * Updates are lock-free.
+ */
+public class QueryStatsEntry {
+
+    /** Latency histogram bucket upper bounds, in milliseconds. The last bucket is unbounded. */
+    private static final long[] bucketsMillis = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, 300000 };
+
+    public final String dataset;
+    public final String fingerprint;
+    public final String normalized;
+    /** The query string of the first query with this fingerprint. */
+    public final String example;
+    /**
+     * Calls inherited from the entry this one replaced in a full table: the most by which
+     * {@link #estimate()} overestimates the calls of this fingerprint since the table started.
+     */
+    public final long overestimate;
+
+    final LongAdder calls = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder rows = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(bucketsMillis.length+1);
+
+    QueryStatsEntry(String dataset, String fingerprint, String normalized, String example, long overestimate) {
+        this.dataset = dataset;
+        this.fingerprint = fingerprint;
+        this.normalized = normalized;
+        this.example = example;
+        this.overestimate = overestimate;
+    }
+
+    void record(long nanos, long resultSize, boolean error) {
+        calls.increment();
+        totalNanos.add(nanos);
+        if ( error )
+            errors.increment();
+        if ( resultSize > 0 )
+            rows.add(resultSize);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        histogram.incrementAndGet(bucket(nanos));
+    }
+
+    private static int bucket(long nanos) {
+        long millis = nanos / 1_000_000;
+        for ( int i = 0 ; i < bucketsMillis.length ; i++ ) {
+            if ( millis < bucketsMillis[i] )
+                return i;
+        }
+        return bucketsMillis.length;
+    }
+
+    public long calls()         { return calls.sum(); }
+    /** Calls, including those inherited when this entry replaced another; used to rank entries for eviction. */
+    public long estimate()      { return overestimate + calls(); }
+    public long errors()        { return errors.sum(); }
+    public long rows()          { return rows.sum(); }
+    public double totalMillis() { return totalNanos.sum() / 1e6; }
+    public double maxMillis()   { return maxNanos.get() / 1e6; }
+
+    public double meanMillis() {
+        long n = calls();
+        return n == 0 ? 0 : totalMillis() / n;
+    }
+
+    /** The 99th percentile latency: the upper bound of the histogram bucket it falls in, capped at the maximum. */
+    public double p99Millis() {
+        long[] counts = new long[histogram.length()];
+        long n = 0;
+        for ( int i = 0 ; i < counts.length ; i++ ) {
+            counts[i] = histogram.get(i);
+            n += counts[i];
+        }
+        if ( n == 0 )
+            return 0;
+        long target = (long)Math.ceil(n * 0.99);
+        long cumulative = 0;
+        for ( int i = 0 ; i < bucketsMillis.length ; i++ ) {
+            cumulative += counts[i];
+            if ( cumulative >= target )
+                return Math.min(bucketsMillis[i], maxMillis());
+        }
+        return maxMillis();
+    }
+
+    void asJson(JsonBuilder builder) {
+        builder.startObject()
+            .pair("dataset", dataset)
+            .pair("fingerprint", fingerprint)
+            .pair("calls", calls())
+            .pair("overestimate", overestimate)
+            .pair("errors", errors())
+            .pair("rows", rows())
+            .pair("totalMs", round(totalMillis()))
+            .pair("meanMs", round(meanMillis()))
+            .pair("p99Ms", round(p99Millis()))
+            .pair("maxMs", round(maxMillis()))
+            .pair("normalized", normalized)
+            .pair("example", example)
+            .finishObject();
+    }
+
+    private static double round(double x) {
+        return Math.round(x * 1000) / 1000.0;
+    }
+}
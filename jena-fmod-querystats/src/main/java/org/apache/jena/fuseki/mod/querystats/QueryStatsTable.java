@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.querystats;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.jena.fuseki.mod.querystats.QueryFingerprint.Fingerprint;
+
+/**
+ * Query statistics by dataset and query fingerprint.
+ * <p>
+ * The table holds at most {@code maxEntries}, using the Space-Saving algorithm as
+ * {@code UsageSketch} of the usage module does: when full, a new fingerprint replaces
+ * the entry with the lowest estimated calls and inherits that count as its
+ * {@link QueryStatsEntry#overestimate}, so a new entry is not the next one evicted
+ * and any fingerprint with more than N/maxEntries of N queries is always held.
+ * Entries to evict are taken in batches of the lowest estimates from one scan of
+ * the table, so there is one scan per batch, not one per eviction. Recording a
+ * query for an existing entry does not lock.
+ * <p>
+ * If given a meter registry, entries have meters tagged with "dataset" and
+ * "fingerprint" from their second call, removed when the entry is evicted.
+ * One-off queries, which are most of the evictions, do not add and remove meters.
+ */
+public class QueryStatsTable {
+
+    private static class Key {
+        final String dataset;
+        final String fingerprint;
+        Key(String dataset, String fingerprint) {
+            this.dataset = dataset;
+            this.fingerprint = fingerprint;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataset, fingerprint);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if ( this == obj )
+                return true;
+            if ( !(obj instanceof Key) )
+                return false;
+            Key other = (Key)obj;
+            return Objects.equals(dataset, other.dataset) && Objects.equals(fingerprint, other.fingerprint);
+        }
+    }
+
+    /** An eviction candidate and its estimate when the batch was chosen. */
+    private static class Candidate {
+        final QueryStatsEntry entry;
+        final long estimate;
+        Candidate(QueryStatsEntry entry, long estimate) {
+            this.entry = entry;
+            this.estimate = estimate;
+        }
+    }
+
+    private final int maxEntries;
+    private final int batchSize;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, QueryStatsEntry> entries = new ConcurrentHashMap<>();
+    private final Map<QueryStatsEntry, List<Meter>> meters = new ConcurrentHashMap<>();
+    // Lowest estimates first; guarded by this.
+    private final Deque<Candidate> candidates = new ArrayDeque<>();
+    private long candidatesMax = 0;
+
+    public QueryStatsTable(int maxEntries, MeterRegistry meterRegistry) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.batchSize = Math.max(1, this.maxEntries / 16);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Record one query. */
+    public void record(String dataset, String queryString, Fingerprint fingerprint, long nanos, long resultSize, boolean error) {
+        Key key = new Key(dataset, fingerprint.id);
+        QueryStatsEntry entry = entries.get(key);
+        if ( entry == null )
+            entry = add(key, fingerprint, queryString);
+        entry.record(nanos, resultSize, error);
+        if ( meterRegistry != null && entry.calls() >= 2 && ! meters.containsKey(entry) )
+            bindMeters(key, entry);
+    }
+
+    private synchronized QueryStatsEntry add(Key key, Fingerprint fingerprint, String queryString) {
+        QueryStatsEntry entry = entries.get(key);
+        if ( entry != null )
+            return entry;
+        long overestimate = ( entries.size() >= maxEntries ) ? evict() : 0;
+        entry = new QueryStatsEntry(key.dataset, key.fingerprint, fingerprint.normalized, queryString, overestimate);
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private synchronized void bindMeters(Key key, QueryStatsEntry entry) {
+        // Not if evicted meanwhile, or already bound.
+        if ( entries.get(key) != entry || meters.containsKey(entry) )
+            return;
+        meters.put(entry, bind(entry));
+    }
+
+    /**
+     * Remove the entry with the lowest estimated calls, from the current batch of
+     * candidates, and return its estimate. Candidates that have been removed, or
+     * whose estimate has grown past the batch, are skipped; if that empties the
+     * batch, the first of a new batch is removed.
+     */
+    private long evict() {
+        for ( int attempt = 0 ; attempt < 2 ; attempt++ ) {
+            if ( candidates.isEmpty() )
+                chooseCandidates();
+            while ( ! candidates.isEmpty() ) {
+                QueryStatsEntry e = candidates.poll().entry;
+                Key key = new Key(e.dataset, e.fingerprint);
+                if ( entries.get(key) != e )
+                    continue;
+                long estimate = e.estimate();
+                if ( attempt == 0 && estimate > candidatesMax )
+                    continue;
+                remove(key);
+                return estimate;
+            }
+        }
+        return 0;
+    }
+
+    /** Choose the batch of entries with the lowest estimates, in one scan of the table. */
+    private void chooseCandidates() {
+        // Max-heap of the lowest estimates seen.
+        PriorityQueue<Candidate> lowest = new PriorityQueue<>(batchSize+1, (c1, c2) -> Long.compare(c2.estimate, c1.estimate));
+        for ( QueryStatsEntry e : entries.values() ) {
+            lowest.add(new Candidate(e, e.estimate()));
+            if ( lowest.size() > batchSize )
+                lowest.poll();
+        }
+        List<Candidate> batch = new ArrayList<>(lowest);
+        batch.sort((c1, c2) -> Long.compare(c1.estimate, c2.estimate));
+        candidates.clear();
+        candidates.addAll(batch);
+        candidatesMax = batch.isEmpty() ? 0 : batch.get(batch.size()-1).estimate;
+    }
+
+    private void remove(Key key) {
+        QueryStatsEntry entry = entries.remove(key);
+        if ( entry == null )
+            return;
+        List<Meter> list = meters.remove(entry);
+        if ( list != null )
+            list.forEach(meterRegistry::remove);
+    }
+
+    private List<Meter> bind(QueryStatsEntry entry) {
+        Tags tags = Tags.of("dataset", entry.dataset, "fingerprint", entry.fingerprint);
+        List<Meter> list = new ArrayList<>();
+        list.add(FunctionCounter.builder("fuseki_query_stats_calls", entry, QueryStatsEntry::calls)
+                 .description("Queries with this fingerprint").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_query_stats_errors", entry, QueryStatsEntry::errors)
+                 .description("Failed queries with this fingerprint").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_query_stats_rows", entry, QueryStatsEntry::rows)
+                 .description("Result rows or triples of queries with this fingerprint").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_query_stats_time", entry, e -> e.totalMillis() / 1000)
+                 .description("Total time of queries with this fingerprint").baseUnit("seconds").tags(tags).register(meterRegistry));
+        list.add(Gauge.builder("fuseki_query_stats_p99", entry, e -> e.p99Millis() / 1000)
+                 .description("99th percentile time of queries with this fingerprint").baseUnit("seconds").tags(tags).register(meterRegistry));
+        return list;
+    }
+
+    /** The entries, optionally for one dataset. */
+    public List<QueryStatsEntry> entries(String dataset) {
+        List<QueryStatsEntry> list = new ArrayList<>();
+        for ( QueryStatsEntry e : entries.values() ) {
+            if ( dataset == null || dataset.equals(e.dataset) )
+                list.add(e);
+        }
+        return list;
+    }
+
+    /** Remove all entries. */
+    public synchronized void reset() {
+        new ArrayList<>(entries.keySet()).forEach(this::remove);
+        candidates.clear();
+    }
+}
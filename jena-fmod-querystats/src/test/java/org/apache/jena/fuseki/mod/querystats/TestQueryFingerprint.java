@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.querystats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.fuseki.mod.querystats.QueryFingerprint.Fingerprint;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.junit.Test;
+
+/** Normalization of queries by {@link QueryFingerprint}, and the cache of fingerprints. */
+public class TestQueryFingerprint {
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    private static Fingerprint fingerprint(String queryString) {
+        queryString = PREFIX+queryString;
+        Query query = QueryFactory.create(queryString);
+        return QueryFingerprint.fingerprint(queryString, query);
+    }
+
+    private static void same(String query1, String query2) {
+        assertEquals(fingerprint(query1).id, fingerprint(query2).id);
+    }
+
+    private static void different(String query1, String query2) {
+        assertNotEquals(fingerprint(query1).id, fingerprint(query2).id);
+    }
+
+    @Test public void fingerprint_literals() {
+        same("SELECT * { ?s :p 'abc' }", "SELECT * { ?s :p 123 }");
+        same("SELECT * { ?s :p ?o FILTER(?o > 5) }", "SELECT * { ?s :p ?o FILTER(?o > 10) }");
+    }
+
+    @Test public void fingerprint_variables() {
+        same("SELECT * { ?s :p ?o }", "SELECT * { ?x :p ?y }");
+        // Renamed in order of appearance, so variables are not interchangeable.
+        different("SELECT * { ?s :p ?o . ?o :q ?s }", "SELECT * { ?s :p ?o . ?s :q ?o }");
+    }
+
+    @Test public void fingerprint_iris() {
+        different("SELECT * { ?s :p ?o }", "SELECT * { ?s :q ?o }");
+        different("SELECT * { ?s a :Person }", "SELECT * { ?s a :Place }");
+    }
+
+    @Test public void fingerprint_slice() {
+        same("SELECT * { ?s :p ?o } LIMIT 10", "SELECT * { ?s :p ?o } LIMIT 100");
+        same("SELECT * { ?s :p ?o } LIMIT 10 OFFSET 5", "SELECT * { ?s :p ?o } LIMIT 20 OFFSET 50");
+        different("SELECT * { ?s :p ?o }", "SELECT * { ?s :p ?o } LIMIT 10");
+        different("SELECT * { ?s :p ?o } LIMIT 10", "SELECT * { ?s :p ?o } LIMIT 10 OFFSET 5");
+    }
+
+    @Test public void fingerprint_values() {
+        same("SELECT * { VALUES ?s { :a } ?s :p ?o }", "SELECT * { VALUES ?s { :b :c :d } ?s :p ?o }");
+        different("SELECT * { VALUES ?s { :a } ?s :p ?o }", "SELECT * { VALUES ?o { :a } ?s :p ?o }");
+    }
+
+    @Test public void fingerprint_normalized() {
+        Fingerprint fp = fingerprint("SELECT * { ?s :p 'abc' } LIMIT 10");
+        assertTrue(fp.normalized.contains("<http://example/p>"));
+        assertTrue(fp.normalized.contains("?v1"));
+        assertTrue( ! fp.normalized.contains("abc"));
+        assertEquals(16, fp.id.length());
+    }
+
+    @Test public void fingerprint_cached() {
+        String queryString = PREFIX+"SELECT * { ?s :cached ?o }";
+        Fingerprint fp1 = QueryFingerprint.fingerprint(queryString, QueryFactory.create(queryString));
+        Fingerprint fp2 = QueryFingerprint.fingerprint(queryString, QueryFactory.create(queryString));
+        assertSame(fp1, fp2);
+        assertTrue(QueryFingerprint.cacheEntries() > 0);
+    }
+
+    @Test public void fingerprint_cacheBounded() {
+        for ( int i = 0 ; i < 10_100 ; i++ )
+            fingerprint("SELECT * { ?s :p"+i+" ?o }");
+        assertTrue(QueryFingerprint.cacheEntries() <= 10_000);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.querystats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.jena.fuseki.mod.querystats.QueryFingerprint.Fingerprint;
+import org.junit.Test;
+
+/** Space-Saving eviction and meters of {@link QueryStatsTable}. */
+public class TestQueryStatsTable {
+
+    private static Fingerprint fp(String id) {
+        return new Fingerprint(id, "(normalized "+id+")");
+    }
+
+    private static void record(QueryStatsTable table, String id) {
+        table.record("ds", "query "+id, fp(id), 1_000_000, 1, false);
+    }
+
+    private static QueryStatsEntry entry(QueryStatsTable table, String id) {
+        for ( QueryStatsEntry e : table.entries(null) ) {
+            if ( e.fingerprint.equals(id) )
+                return e;
+        }
+        return null;
+    }
+
+    @Test public void table_record() {
+        QueryStatsTable table = new QueryStatsTable(10, null);
+        record(table, "a");
+        record(table, "a");
+        table.record("ds2", "query a", fp("a"), 1_000_000, 5, true);
+        assertEquals(2, table.entries(null).size());
+        QueryStatsEntry e = table.entries("ds").get(0);
+        assertEquals(2, e.calls());
+        assertEquals(0, e.errors());
+        QueryStatsEntry e2 = table.entries("ds2").get(0);
+        assertEquals(1, e2.errors());
+        assertEquals(5, e2.rows());
+    }
+
+    @Test public void table_bounded() {
+        QueryStatsTable table = new QueryStatsTable(8, null);
+        for ( int i = 0 ; i < 100 ; i++ )
+            record(table, "q"+i);
+        assertEquals(8, table.entries(null).size());
+    }
+
+    @Test public void table_evictLowest() {
+        QueryStatsTable table = new QueryStatsTable(4, null);
+        for ( String id : new String[] {"a", "b", "c"} ) {
+            for ( int i = 0 ; i < 3 ; i++ )
+                record(table, id);
+        }
+        record(table, "d");
+        // Full: "e" replaces "d", the entry with the lowest estimate, and inherits its count.
+        record(table, "e");
+        assertNull(entry(table, "d"));
+        QueryStatsEntry e = entry(table, "e");
+        assertNotNull(e);
+        assertEquals(1, e.overestimate);
+        assertEquals(2, e.estimate());
+    }
+
+    @Test public void table_frequentKept() {
+        QueryStatsTable table = new QueryStatsTable(16, null);
+        // "hot" is more than 1/16 of the queries, so it is always held.
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            record(table, "once"+i);
+            if ( i % 4 == 0 )
+                record(table, "hot");
+        }
+        QueryStatsEntry hot = entry(table, "hot");
+        assertNotNull(hot);
+        assertTrue(hot.estimate() >= 250);
+        assertEquals(16, table.entries(null).size());
+    }
+
+    @Test public void table_meters() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        QueryStatsTable table = new QueryStatsTable(2, meterRegistry);
+        record(table, "a");
+        // No meters for a query seen once.
+        assertNull(meterRegistry.find("fuseki_query_stats_calls").tag("fingerprint", "a").functionCounter());
+        record(table, "a");
+        assertEquals(2, meterRegistry.find("fuseki_query_stats_calls").tag("fingerprint", "a").functionCounter().count(), 0);
+        record(table, "b");
+        record(table, "b");
+        record(table, "b");
+        // "a" is evicted, with its meters.
+        record(table, "c");
+        assertNull(entry(table, "a"));
+        assertNull(meterRegistry.find("fuseki_query_stats_calls").tag("fingerprint", "a").functionCounter());
+        assertNotNull(meterRegistry.find("fuseki_query_stats_calls").tag("fingerprint", "b").functionCounter());
+    }
+
+    @Test public void table_reset() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        QueryStatsTable table = new QueryStatsTable(4, meterRegistry);
+        record(table, "a");
+        record(table, "a");
+        table.reset();
+        assertTrue(table.entries(null).isEmpty());
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}
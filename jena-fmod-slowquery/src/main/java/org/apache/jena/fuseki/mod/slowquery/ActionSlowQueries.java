@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import static java.lang.String.format;
+import static org.apache.jena.riot.WebContent.charsetUTF8;
+import static org.apache.jena.riot.WebContent.contentTypeJSON;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonBuilder;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.fuseki.ctl.ActionCtl;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+
+/**
+ * List the recorded slow queries, most recent first.
+ * Optional parameters: "dataset" to select one dataset, "limit" for the maximum number returned.
+ */
+public class ActionSlowQueries extends ActionCtl {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public ActionSlowQueries(SlowQueryLog slowQueryLog) {
+        super();
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public void validate(HttpAction action) {}
+
+    @Override
+    public void execGet(HttpAction action) {
+        executeLifecycle(action);
+    }
+
+    @Override
+    public void execute(HttpAction action) {
+        String dataset = action.getRequestParameter("dataset");
+        int limit = Integer.MAX_VALUE;
+        String x = action.getRequestParameter("limit");
+        if ( x != null ) {
+            try {
+                limit = Integer.parseInt(x);
+            } catch (NumberFormatException ex) {
+                ServletOps.errorBadRequest("Bad limit: "+x);
+            }
+        }
+        if ( action.verbose )
+            action.log.info(format("[%d] GET slow queries", action.id));
+
+        List<SlowQuery> slowQueries = slowQueryLog.recent();
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject();
+        builder.key("slowQueries").startArray();
+        int count = 0;
+        for ( SlowQuery sq : slowQueries ) {
+            if ( count >= limit )
+                break;
+            if ( dataset != null && ! dataset.equals(sq.dataset) )
+                continue;
+            builder.value(sq.asJson());
+            count++;
+        }
+        builder.finishArray();
+        builder.finishObject();
+
+        try {
+            OutputStream out = action.getResponseOutputStream();
+            action.setResponseContentType(contentTypeJSON);
+            action.setResponseCharacterEncoding(charsetUTF8);
+            JsonValue v = builder.build();
+            JSON.write(out, v);
+            out.write('\n');
+            out.flush();
+            ServletOps.success(action);
+        } catch (IOException ex) {
+            ServletOps.errorOccurred(ex);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.fuseki.main.sys.FusekiModule;
+import org.apache.jena.fuseki.mod.admin.FusekiApp;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.fuseki.server.Operation;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.algebra.optimize.RewriteFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+
+/**
+ * Slow query log.
+ * <p>
+ * Queries taking longer than a threshold are recorded with timings for each phase,
+ * and listed by {@code /$/slow-queries}.
+ * The threshold is {@code slowquery:threshold} (milliseconds) in the dataset
+ * context, else {@code FUSEKI_SLOW_QUERY_MS}, default 1000.
+ */
+public class FMod_SlowQuery implements FusekiModule {
+
+    private SlowQueryLog slowQueryLog = null;
+
+    @Override
+    public String name() { return "Slow Query Log"; }
+
+    @Override public void prepare(FusekiServer.Builder serverBuilder, Set<String> datasetNames, Model configModel) {
+        long threshold = envLong(SlowQueryConst.envThreshold, SlowQueryConst.dftThresholdMillis);
+        int size = (int)envLong(SlowQueryConst.envBufferSize, SlowQueryConst.dftBufferSize);
+        Path logFile = logFile();
+        slowQueryLog = new SlowQueryLog(size, threshold, logFile);
+        Fuseki.configLog.info("Slow query log: threshold {}ms{}", threshold, logFile == null ? "" : ", file "+logFile);
+
+        serverBuilder.registerOperation(Operation.Query, new SPARQL_QueryTimed(slowQueryLog));
+        serverBuilder.addServlet(SlowQueryConst.pathSlowQueries, new ActionSlowQueries(slowQueryLog));
+    }
+
+    @Override public void configured(FusekiServer.Builder serverBuilder, DataAccessPointRegistry dapRegistry, Model configModel) {
+        dapRegistry.forEach((name, dap) -> {
+            DatasetGraph dsg = dap.getDataService().getDataset();
+            String x = dsg.getContext().getAsString(SlowQueryConst.symThreshold);
+            if ( x != null ) {
+                try {
+                    slowQueryLog.setThreshold(name, Long.parseLong(x.trim()));
+                } catch (NumberFormatException ex) {
+                    Fuseki.configLog.warn("Bad value for "+SlowQueryConst.symThreshold.getSymbol()+": '"+x+"'");
+                }
+            }
+            RewriteFactory other = dsg.getContext().get(ARQConstants.sysOptimizerFactory);
+            if ( ! ( other instanceof TimingRewriteFactory ) )
+                dsg.getContext().set(ARQConstants.sysOptimizerFactory, new TimingRewriteFactory(other));
+        });
+    }
+
+    @Override public void serverStopped(FusekiServer server) {
+        if ( slowQueryLog != null )
+            slowQueryLog.shutdown();
+    }
+
+    /** The slow query log, or null before the server is prepared. */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /** The log file: in the logs directory of FUSEKI_BASE if there is one, else the current directory. */
+    private static Path logFile() {
+        String fn = Lib.getenv(SlowQueryConst.envLogFile);
+        if ( fn == null || fn.isBlank() )
+            return null;
+        Path dir = null;
+        try {
+            dir = FusekiApp.dirLogs;
+        } catch (NoClassDefFoundError ex) {
+            // No admin module.
+        }
+        return ( dir != null ) ? dir.resolve(fn) : Path.of(fn);
+    }
+
+    private static long envLong(String name, long dft) {
+        String x = Lib.getenv(name);
+        if ( x == null )
+            return dft;
+        try {
+            return Long.parseLong(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+name+": '"+x+"'");
+            return dft;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import org.apache.jena.fuseki.servlets.HttpAction;
+
+/**
+ * Called after each SPARQL query executed by {@link SPARQL_QueryTimed}, on the
+ * thread that executed it, after the response has been written.
+ * <p>
+ * The timings object is reused for the next query of the thread, so it must not
+ * be kept. Listeners are called for every query and should be quick.
+ */
+@FunctionalInterface
+public interface QueryListener {
+    /**
+     * @param action   The request
+     * @param timings  Timings, query and results
+     * @param error    The exception that ended the query, or null
+     */
+    public void queryFinished(HttpAction action, QueryTimings timings, Throwable error);
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import java.util.Arrays;
+
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.servlets.HttpAction;
+
+/**
+ * Registry of {@link QueryListener QueryListeners}.
+ * The listeners are held in an array that is replaced on change so that calling
+ * them does not lock or allocate.
+ */
+public class QueryListeners {
+
+    private static volatile QueryListener[] listeners = new QueryListener[0];
+
+    public static synchronized void register(QueryListener listener) {
+        QueryListener[] x = Arrays.copyOf(listeners, listeners.length+1);
+        x[x.length-1] = listener;
+        listeners = x;
+    }
+
+    public static synchronized void unregister(QueryListener listener) {
+        listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(QueryListener[]::new);
+    }
+
+    static void finished(HttpAction action, QueryTimings timings, Throwable error) {
+        for ( QueryListener listener : listeners ) {
+            try {
+                listener.queryFinished(action, timings, error);
+            } catch (Throwable th) {
+                Fuseki.serverLog.warn("Query listener", th);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.resultset.SPARQLResult;
+
+/**
+ * Timings of the query being executed by a thread.
+ * <p>
+ * There is one object per thread, reused for each query, so recording a query
+ * does not allocate. Times are {@link System#nanoTime()} values or durations in
+ * nanoseconds; unset times are 0.
+ */
+public class QueryTimings {
+
+    private static final ThreadLocal<QueryTimings> current = ThreadLocal.withInitial(QueryTimings::new);
+
+    /** The timings object for the current thread. */
+    public static QueryTimings get() {
+        return current.get();
+    }
+
+    // Set while a query is being executed by the thread.
+    boolean active;
+
+    long start;
+    long parseEnd;
+    long optimizeNanos;
+    long executeStart;
+    long executeEnd;
+    long serializeStart;
+    long serializeEnd;
+    long end;
+    // The query and results, while the query is active.
+    String queryString;
+    Query query;
+    SPARQLResult result;
+    private long resultSize;
+
+    private QueryTimings() {}
+
+    void begin() {
+        active = true;
+        start = System.nanoTime();
+        parseEnd = 0;
+        optimizeNanos = 0;
+        executeStart = 0;
+        executeEnd = 0;
+        serializeStart = 0;
+        serializeEnd = 0;
+        end = 0;
+        queryString = null;
+        query = null;
+        result = null;
+        resultSize = Long.MIN_VALUE;
+    }
+
+    void finish() {
+        end = System.nanoTime();
+        active = false;
+    }
+
+    /** Drop references to the query and results. */
+    void clear() {
+        queryString = null;
+        query = null;
+        result = null;
+    }
+
+    /** Add time spent in the algebra optimizer. */
+    void addOptimize(long nanos) {
+        if ( active )
+            optimizeNanos += nanos;
+    }
+
+    /** {@link System#nanoTime()} at the start of the query. */
+    public long startTime()          { return start; }
+    /** {@link System#nanoTime()} at the start of execution, 0 if not reached. */
+    public long executeStartTime()   { return executeStart; }
+    /** {@link System#nanoTime()} at the start of serialization, 0 if not reached. */
+    public long serializeStartTime() { return serializeStart; }
+
+    public long totalNanos()      { return end - start; }
+    public long parseNanos()      { return parseEnd == 0 ? 0 : parseEnd - start; }
+    public long optimizeNanos()   { return optimizeNanos; }
+    /** Execution, excluding optimization. For streamed results, evaluation continues while serializing. */
+    public long executeNanos()    { return executeEnd == 0 ? 0 : Math.max(0, executeEnd - executeStart - optimizeNanos); }
+    public long serializeNanos()  { return serializeEnd == 0 ? 0 : serializeEnd - serializeStart; }
+
+    /** The query string of the request. */
+    public String getQueryString()    { return queryString; }
+    /** The parsed query, or null if the query did not parse. */
+    public Query getQuery()           { return query; }
+    /** The results, or null if no results were sent. */
+    public SPARQLResult getResult()   { return result; }
+
+    /**
+     * Size of the results, after they have been sent: rows (SELECT), triples or
+     * quads (CONSTRUCT, DESCRIBE), 1 (ASK); -1 if not known.
+     * Counting CONSTRUCT results is linear in their size, so this is computed when first asked for.
+     */
+    public long resultSize() {
+        if ( resultSize == Long.MIN_VALUE )
+            resultSize = resultSize(result);
+        return resultSize;
+    }
+
+    private static long resultSize(SPARQLResult result) {
+        if ( result == null )
+            return -1;
+        try {
+            if ( result.isResultSet() )
+                return result.getResultSet().getRowNumber();
+            if ( result.isBoolean() )
+                return 1;
+            if ( result.isModel() )
+                return result.getModel().size();
+            if ( result.isDataset() ) {
+                long[] count = { 0 };
+                result.getDataset().asDatasetGraph().find().forEachRemaining(q -> count[0]++);
+                return count[0];
+            }
+        } catch (RuntimeException ex) {}
+        return -1;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.SPARQL_QueryDataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.sparql.core.Prologue;
+import org.apache.jena.sparql.resultset.SPARQLResult;
+
+/**
+ * SPARQL query processor that times the phases of each query and records queries
+ * slower than the threshold of the dataset in the {@link SlowQueryLog}.
+ * <p>
+ * Phases: parse (from the start of the request to the query being parsed),
+ * optimize (time in the algebra optimizer), execute (creating the results,
+ * excluding optimization) and serialize (writing the response). SELECT results
+ * are streamed, so most evaluation of a SELECT query is in "serialize".
+ * <p>
+ * Timings are kept in a per-thread object; for queries under the threshold nothing
+ * is recorded and no locks are taken.
+ */
+public class SPARQL_QueryTimed extends SPARQL_QueryDataset {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public SPARQL_QueryTimed(SlowQueryLog slowQueryLog) {
+        super();
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    protected void execute(String queryString, HttpAction action) {
+        QueryTimings timings = QueryTimings.get();
+        timings.begin();
+        timings.queryString = queryString;
+        Throwable error = null;
+        try {
+            super.execute(queryString, action);
+        } catch (RuntimeException | Error ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            timings.finish();
+            if ( timings.totalNanos() >= slowQueryLog.thresholdNanos(action.getDatasetName()) )
+                record(action, queryString, timings, error);
+            QueryListeners.finished(action, timings, error);
+            timings.clear();
+        }
+    }
+
+    @Override
+    protected void validateQuery(HttpAction action, Query query) {
+        QueryTimings timings = QueryTimings.get();
+        timings.parseEnd = System.nanoTime();
+        timings.query = query;
+        super.validateQuery(action, query);
+    }
+
+    @Override
+    protected SPARQLResult executeQuery(HttpAction action, QueryExecution queryExecution, Query query, String queryStringLog) {
+        QueryTimings timings = QueryTimings.get();
+        timings.executeStart = System.nanoTime();
+        try {
+            return super.executeQuery(action, queryExecution, query, queryStringLog);
+        } finally {
+            timings.executeEnd = System.nanoTime();
+        }
+    }
+
+    @Override
+    protected void sendResults(HttpAction action, SPARQLResult result, Prologue qPrologue) {
+        QueryTimings timings = QueryTimings.get();
+        timings.serializeStart = System.nanoTime();
+        timings.result = result;
+        try {
+            super.sendResults(action, result, qPrologue);
+        } finally {
+            timings.serializeEnd = System.nanoTime();
+        }
+    }
+
+    private void record(HttpAction action, String queryString, QueryTimings timings, Throwable error) {
+        HttpServletRequest request = action.getRequest();
+        String client = request.getRemoteAddr();
+        String user = request.getRemoteUser();
+        String errorMsg = null;
+        if ( error != null )
+            errorMsg = error.getClass().getSimpleName()+": "+error.getMessage();
+        SlowQuery slowQuery = new SlowQuery(slowQueryLog.nextId(), action.getDatasetName(), client, user,
+                                            queryString, timings.resultSize(), errorMsg, timings);
+        slowQueryLog.add(slowQuery);
+        action.log.info(String.format("[%d] Slow query: %.3fs", action.id, timings.totalNanos()/1e9));
+    }
+}
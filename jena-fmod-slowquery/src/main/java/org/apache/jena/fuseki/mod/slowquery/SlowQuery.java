@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import java.time.Instant;
+
+import org.apache.jena.atlas.json.JsonBuilder;
+import org.apache.jena.atlas.json.JsonValue;
+
+/** A recorded slow query. */
+public class SlowQuery {
+    public final long id;
+    public final Instant timestamp;
+    public final String dataset;
+    public final String client;
+    public final String user;
+    public final String queryString;
+    /** Rows (SELECT), triples or quads (CONSTRUCT, DESCRIBE), 1 (ASK); -1 if not known. */
+    public final long resultSize;
+    /** Null if the query succeeded. */
+    public final String error;
+    public final long totalNanos;
+    public final long parseNanos;
+    public final long optimizeNanos;
+    public final long executeNanos;
+    public final long serializeNanos;
+
+    SlowQuery(long id, String dataset, String client, String user, String queryString, long resultSize, String error, QueryTimings timings) {
+        this.id = id;
+        this.timestamp = Instant.now();
+        this.dataset = dataset;
+        this.client = client;
+        this.user = user;
+        this.queryString = queryString;
+        this.resultSize = resultSize;
+        this.error = error;
+        this.totalNanos = timings.totalNanos();
+        this.parseNanos = timings.parseNanos();
+        this.optimizeNanos = timings.optimizeNanos();
+        this.executeNanos = timings.executeNanos();
+        this.serializeNanos = timings.serializeNanos();
+    }
+
+    public JsonValue asJson() {
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject()
+            .pair("id", id)
+            .pair("timestamp", timestamp.toString())
+            .pair("dataset", dataset);
+        if ( client != null )
+            builder.pair("client", client);
+        if ( user != null )
+            builder.pair("user", user);
+        builder.pair("query", queryString);
+        if ( resultSize >= 0 )
+            builder.pair("resultSize", resultSize);
+        if ( error != null )
+            builder.pair("error", error);
+        builder.key("timings").startObject()
+            .pair("totalMs", millis(totalNanos))
+            .pair("parseMs", millis(parseNanos))
+            .pair("optimizeMs", millis(optimizeNanos))
+            .pair("executeMs", millis(executeNanos))
+            .pair("serializeMs", millis(serializeNanos))
+            .finishObject();
+        builder.finishObject();
+        return builder.build();
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+}
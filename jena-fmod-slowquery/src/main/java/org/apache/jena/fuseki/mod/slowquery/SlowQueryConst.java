@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import org.apache.jena.sparql.util.Symbol;
+
+public class SlowQueryConst {
+
+    public static final String NS = "http://jena.apache.org/fuseki/mod/slowquery#";
+
+    /** Dataset context: queries taking longer than this, in milliseconds, are recorded. */
+    public static final Symbol symThreshold = Symbol.create(NS+"threshold");
+
+    /** Default threshold in milliseconds (default 1000). */
+    public static final String envThreshold  = "FUSEKI_SLOW_QUERY_MS";
+    /** Number of slow queries kept in memory (default 100). */
+    public static final String envBufferSize = "FUSEKI_SLOW_QUERY_BUFFER";
+    /** File name, in the logs directory, to also write slow queries to. Not set means no file. */
+    public static final String envLogFile    = "FUSEKI_SLOW_QUERY_FILE";
+
+    public static final long dftThresholdMillis = 1000;
+    public static final int  dftBufferSize      = 100;
+
+    /** Server path for the slow query list. */
+    public static final String pathSlowQueries = "/$/slow-queries";
+}
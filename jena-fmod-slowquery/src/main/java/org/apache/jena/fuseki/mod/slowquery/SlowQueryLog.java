@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.fuseki.Fuseki;
+
+/**
+ * The slow queries of the server: a fixed-size ring buffer of the most recent,
+ * and optionally a log file of one JSON object per line, rotated by size.
+ * <p>
+ * Adding to the buffer is lock-free. File writes are done by a background thread.
+ */
+public class SlowQueryLog {
+
+    private static final long maxFileBytes = 10*1024*1024;
+    private static final int  maxFiles = 5;
+
+    private final AtomicReferenceArray<SlowQuery> buffer;
+    private final AtomicLong counter = new AtomicLong(0);
+    private final long defaultThresholdNanos;
+    private final Map<String, Long> thresholds = new ConcurrentHashMap<>();
+
+    private final Path logFile;
+    private ExecutorService writer = null;
+
+    public SlowQueryLog(int size, long defaultThresholdMillis, Path logFile) {
+        this.buffer = new AtomicReferenceArray<>(Math.max(1, size));
+        this.defaultThresholdNanos = TimeUnit.MILLISECONDS.toNanos(defaultThresholdMillis);
+        this.logFile = logFile;
+        if ( logFile != null ) {
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "SlowQueryLog");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Set the threshold for a dataset. */
+    public void setThreshold(String datasetName, long millis) {
+        thresholds.put(datasetName, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /** The threshold for a dataset, in nanoseconds. */
+    public long thresholdNanos(String datasetName) {
+        Long x = ( datasetName == null ) ? null : thresholds.get(datasetName);
+        return ( x != null ) ? x : defaultThresholdNanos;
+    }
+
+    /** Next id for a slow query. */
+    long nextId() {
+        return counter.incrementAndGet();
+    }
+
+    public void add(SlowQuery slowQuery) {
+        buffer.set((int)(slowQuery.id % buffer.length()), slowQuery);
+        if ( writer != null ) {
+            try {
+                writer.execute(() -> write(slowQuery));
+            } catch (RejectedExecutionException ex) { /* Shutting down */ }
+        }
+    }
+
+    /** The slow queries in the buffer, most recent first. */
+    public List<SlowQuery> recent() {
+        List<SlowQuery> list = new ArrayList<>();
+        long last = counter.get();
+        int n = buffer.length();
+        for ( long i = last ; i > 0 && i > last - n ; i-- ) {
+            SlowQuery sq = buffer.get((int)(i % n));
+            // Slot not yet written, or overwritten by a later query.
+            if ( sq != null && sq.id == i )
+                list.add(sq);
+        }
+        return list;
+    }
+
+    private void write(SlowQuery slowQuery) {
+        try {
+            if ( Files.exists(logFile) && Files.size(logFile) >= maxFileBytes )
+                rotate();
+            try ( BufferedWriter out = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                                                             StandardOpenOption.CREATE, StandardOpenOption.APPEND) ) {
+                out.write(JSON.toStringFlat(slowQuery.asJson()));
+                out.newLine();
+            }
+        } catch (IOException ex) {
+            Fuseki.serverLog.warn("Slow query log: "+logFile+": "+ex.getMessage());
+        }
+    }
+
+    /** file.(n-1) -> file.n, ..., file -> file.1 */
+    private void rotate() throws IOException {
+        for ( int i = maxFiles-1 ; i >= 1 ; i-- ) {
+            Path src = i == 1 ? logFile : rotated(i-1);
+            if ( Files.exists(src) )
+                Files.move(src, rotated(i), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path rotated(int i) {
+        return logFile.resolveSibling(logFile.getFileName().toString()+"."+i);
+    }
+
+    public void shutdown() {
+        if ( writer != null ) {
+            writer.shutdown();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.slowquery;
+
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.optimize.Optimize;
+import org.apache.jena.sparql.algebra.optimize.Rewrite;
+import org.apache.jena.sparql.algebra.optimize.RewriteFactory;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Optimizer factory that records the time taken by the optimizer it wraps in the
+ * {@link QueryTimings} of the thread.
+ */
+public class TimingRewriteFactory implements RewriteFactory {
+
+    private final RewriteFactory other;
+
+    /** Wrap a factory; null means the system default optimizer. */
+    public TimingRewriteFactory(RewriteFactory other) {
+        this.other = other;
+    }
+
+    @Override
+    public Rewrite create(Context context) {
+        RewriteFactory factory = ( other != null ) ? other : Optimize.getFactory();
+        Rewrite rewrite = factory.create(context);
+        return new TimedRewrite(rewrite);
+    }
+
+    private static class TimedRewrite implements Rewrite {
+        private final Rewrite rewrite;
+
+        TimedRewrite(Rewrite rewrite) {
+            this.rewrite = rewrite;
+        }
+
+        @Override
+        public Op rewrite(Op op) {
+            long start = System.nanoTime();
+            try {
+                return rewrite.rewrite(op);
+            } finally {
+                QueryTimings.get().addOptimize(System.nanoTime() - start);
+            }
+        }
+    }
+}
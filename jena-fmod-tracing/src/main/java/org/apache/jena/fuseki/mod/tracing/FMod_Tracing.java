@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.fuseki.main.sys.FusekiModule;
+import org.apache.jena.fuseki.mod.admin.FusekiApp;
+import org.apache.jena.fuseki.server.DataAccessPointRegistry;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Request tracing.
+ * <p>
+ * A sample of requests ({@code FUSEKI_TRACING_SAMPLE_RATE}, default 0.01), and
+ * requests with a sampled W3C "traceparent" header, are traced. Each trace has a
+ * server span for the whole request, a span for the security (Shiro) filter and,
+ * if the slow query module is present, spans for the phases of SPARQL queries.
+ * <p>
+ * Time in storage is not a separate span: results are streamed, so storage access
+ * is interleaved with evaluation and serialization and is part of those spans.
+ * <p>
+ * Traces are written as OTLP JSON to {@code FUSEKI_TRACING_FILE} (default
+ * "traces.jsonl" in the logs directory), or passed to the {@link SpanExporter}
+ * class named by {@code FUSEKI_TRACING_EXPORTER}.
+ */
+public class FMod_Tracing implements FusekiModule {
+
+    private SpanExporter exporter = null;
+    private boolean queryPhases = false;
+
+    @Override
+    public String name() { return "Tracing"; }
+
+    // Before FMod_Shiro (default level) so the tracing filter is outside the Shiro filter
+    // and the trace includes authentication.
+    @Override
+    public int level() { return 100; }
+
+    @Override public void prepare(FusekiServer.Builder serverBuilder, Set<String> datasetNames, Model configModel) {
+        double sampleRate = sampleRate();
+        exporter = exporter();
+        Fuseki.configLog.info("Tracing: sample rate {}, exporter {}", sampleRate, exporter.getClass().getSimpleName());
+        serverBuilder.addFilter("/*", new TracingFilter(sampleRate, exporter));
+    }
+
+    // Filters added by modules in "prepare" come before those added here, so this is after the Shiro filter.
+    @Override public void configured(FusekiServer.Builder serverBuilder, DataAccessPointRegistry dapRegistry, Model configModel) {
+        serverBuilder.addFilter("/*", new TracingFilter.AfterSecurity());
+    }
+
+    @Override public void serverBeforeStarting(FusekiServer server) {
+        try {
+            QueryPhaseListener.register();
+            queryPhases = true;
+        } catch (NoClassDefFoundError ex) {
+            Fuseki.configLog.info("Tracing: no slow query module - query phases not traced");
+        }
+    }
+
+    @Override public void serverStopped(FusekiServer server) {
+        if ( queryPhases )
+            QueryPhaseListener.unregister();
+        queryPhases = false;
+        if ( exporter != null )
+            exporter.shutdown();
+    }
+
+    private static SpanExporter exporter() {
+        String className = Lib.getenv(TracingConst.envExporter);
+        if ( className != null && ! className.isBlank() ) {
+            try {
+                return (SpanExporter)Class.forName(className.trim()).getConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                Fuseki.configLog.warn("Bad value for "+TracingConst.envExporter+": '"+className+"': "+ex.getMessage());
+            }
+        }
+        return new OtlpJsonFileExporter(traceFile());
+    }
+
+    /** The trace file: in the logs directory of FUSEKI_BASE if there is one, else the current directory. */
+    private static Path traceFile() {
+        String fn = Lib.getenv(TracingConst.envFile);
+        if ( fn == null || fn.isBlank() )
+            fn = TracingConst.dftFile;
+        Path dir = null;
+        try {
+            dir = FusekiApp.dirLogs;
+        } catch (NoClassDefFoundError ex) {
+            // No admin module.
+        }
+        return ( dir != null ) ? dir.resolve(fn) : Path.of(fn);
+    }
+
+    private static double sampleRate() {
+        String x = Lib.getenv(TracingConst.envSampleRate);
+        if ( x == null )
+            return TracingConst.dftSampleRate;
+        try {
+            return Double.parseDouble(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+TracingConst.envSampleRate+": '"+x+"'");
+            return TracingConst.dftSampleRate;
+        }
+    }
+}
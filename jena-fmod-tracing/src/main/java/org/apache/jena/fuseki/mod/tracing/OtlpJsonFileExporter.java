@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonBuilder;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.fuseki.Fuseki;
+
+/**
+ * Write traces to a file in the OTLP JSON encoding: each line is an
+ * {@code ExportTraceServiceRequest} with the spans of one request, as written by
+ * the OpenTelemetry collector file exporter. The file is rotated by size.
+ * <p>
+ * Writing is done by a background thread with a bounded queue; traces are dropped
+ * if the queue is full.
+ */
+public class OtlpJsonFileExporter implements SpanExporter {
+
+    private static final long maxFileBytes = 10*1024*1024;
+    private static final int  maxFiles = 5;
+    private static final int  queueSize = 1000;
+
+    private final Path file;
+    private final ThreadPoolExecutor writer;
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    public OtlpJsonFileExporter(Path file) {
+        this.file = file;
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+            r -> {
+                Thread thread = new Thread(r, "TracingExporter");
+                thread.setDaemon(true);
+                return thread;
+            },
+            (r, executor) -> {
+                if ( dropped.incrementAndGet() == 1 )
+                    Fuseki.serverLog.warn("Tracing: queue full - dropping traces");
+            });
+    }
+
+    @Override
+    public void export(List<Span> spans) {
+        writer.execute(() -> write(spans));
+    }
+
+    /** Number of traces dropped because the queue was full. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void write(List<Span> spans) {
+        try {
+            if ( Files.exists(file) && Files.size(file) >= maxFileBytes )
+                rotate();
+            try ( BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                                                             StandardOpenOption.CREATE, StandardOpenOption.APPEND) ) {
+                out.write(JSON.toStringFlat(exportRequest(spans)));
+                out.newLine();
+            }
+        } catch (IOException ex) {
+            Fuseki.serverLog.warn("Tracing: "+file+": "+ex.getMessage());
+        }
+    }
+
+    /** file.(n-1) -> file.n, ..., file -> file.1 */
+    private void rotate() throws IOException {
+        for ( int i = maxFiles-1 ; i >= 1 ; i-- ) {
+            Path src = i == 1 ? file : rotated(i-1);
+            if ( Files.exists(src) )
+                Files.move(src, rotated(i), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path rotated(int i) {
+        return file.resolveSibling(file.getFileName().toString()+"."+i);
+    }
+
+    /** The spans as an OTLP/JSON ExportTraceServiceRequest. */
+    public static JsonObject exportRequest(List<Span> spans) {
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject();
+        builder.key("resourceSpans").startArray();
+        builder.startObject();
+        builder.key("resource").startObject();
+        builder.key("attributes").startArray();
+        attribute(builder, "service.name", TracingConst.serviceName);
+        builder.finishArray();
+        builder.finishObject();
+        builder.key("scopeSpans").startArray();
+        builder.startObject();
+        builder.key("scope").startObject().key("name").value(TracingConst.instrumentationScope).finishObject();
+        builder.key("spans").startArray();
+        for ( Span span : spans )
+            span(builder, span);
+        builder.finishArray();
+        builder.finishObject();
+        builder.finishArray();
+        builder.finishObject();
+        builder.finishArray();
+        builder.finishObject();
+        return builder.build().getAsObject();
+    }
+
+    private static void span(JsonBuilder builder, Span span) {
+        builder.startObject();
+        builder.key("traceId").value(span.traceId);
+        builder.key("spanId").value(span.spanId);
+        if ( span.parentSpanId != null )
+            builder.key("parentSpanId").value(span.parentSpanId);
+        builder.key("name").value(span.name);
+        // OTLP SpanKind: INTERNAL = 1, SERVER = 2.
+        builder.key("kind").value(span.kind == Span.Kind.SERVER ? 2 : 1);
+        // 64 bit integers are strings in OTLP/JSON.
+        builder.key("startTimeUnixNano").value(Long.toString(span.startEpochNanos));
+        builder.key("endTimeUnixNano").value(Long.toString(span.getEndEpochNanos()));
+        builder.key("attributes").startArray();
+        for ( Map.Entry<String, Object> e : span.attributes().entrySet() )
+            attribute(builder, e.getKey(), e.getValue());
+        builder.finishArray();
+        if ( span.isError() ) {
+            // STATUS_CODE_ERROR = 2
+            builder.key("status").startObject();
+            builder.key("code").value(2);
+            if ( span.getErrorMessage() != null )
+                builder.key("message").value(span.getErrorMessage());
+            builder.finishObject();
+        }
+        builder.finishObject();
+    }
+
+    private static void attribute(JsonBuilder builder, String key, Object value) {
+        builder.startObject();
+        builder.key("key").value(key);
+        builder.key("value").startObject();
+        if ( value instanceof Long )
+            builder.key("intValue").value(value.toString());
+        else if ( value instanceof Boolean )
+            builder.key("boolValue").value((Boolean)value);
+        else if ( value instanceof Double )
+            builder.key("doubleValue").value((Double)value);
+        else
+            builder.key("stringValue").value(value.toString());
+        builder.finishObject();
+        builder.finishObject();
+    }
+
+    @Override
+    public void shutdown() {
+        writer.shutdown();
+        if ( dropped.get() > 0 )
+            Fuseki.serverLog.info("Tracing: {} traces dropped", dropped.get());
+    }
+}
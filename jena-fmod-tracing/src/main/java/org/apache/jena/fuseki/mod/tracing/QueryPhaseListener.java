@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import org.apache.jena.fuseki.mod.slowquery.QueryListener;
+import org.apache.jena.fuseki.mod.slowquery.QueryListeners;
+import org.apache.jena.fuseki.mod.slowquery.QueryTimings;
+import org.apache.jena.fuseki.servlets.HttpAction;
+
+/**
+ * Add spans for the phases of a SPARQL query to the trace of the request, using the
+ * timings recorded by the slow query module.
+ * <p>
+ * Spans: "fuseki.dispatch" from passing the security filters to the start of the
+ * query (reading the request and finding the dataset and endpoint),
+ * "sparql.query" with children "sparql.parse", "sparql.optimize", "sparql.execute"
+ * and "sparql.serialize". The optimizer may run more than once, so the optimize
+ * span is the total time in the optimizer, placed at the start of execution.
+ * <p>
+ * Not referenced unless the slow query module is present.
+ */
+class QueryPhaseListener {
+
+    private static final int maxQueryLength = 4096;
+
+    private static final QueryListener listener = QueryPhaseListener::queryFinished;
+
+    static void register() {
+        QueryListeners.register(listener);
+    }
+
+    static void unregister() {
+        QueryListeners.unregister(listener);
+    }
+
+    private static void queryFinished(HttpAction action, QueryTimings timings, Throwable error) {
+        Object x = action.getRequest().getAttribute(TracingConst.attrTrace);
+        if ( ! ( x instanceof Trace ) )
+            return;
+        Trace trace = (Trace)x;
+        Span root = trace.root();
+        long start = timings.startTime();
+        long end = start + timings.totalNanos();
+
+        long dispatchStart = trace.securityEndTime() != 0 ? trace.securityEndTime() : trace.startTime();
+        trace.span("fuseki.dispatch", root, dispatchStart, start);
+        Span query = trace.span("sparql.query", root, start, end)
+                .attribute("fuseki.dataset", action.getDatasetName())
+                .attribute("db.system", "jena")
+                .attribute("db.statement", truncate(timings.getQueryString()));
+        if ( error != null )
+            query.error(error.getClass().getSimpleName()+": "+error.getMessage());
+        else
+            query.attribute("fuseki.result_size", timings.resultSize());
+
+        if ( timings.parseNanos() > 0 )
+            trace.span("sparql.parse", query, start, start + timings.parseNanos());
+        long executeStart = timings.executeStartTime();
+        if ( executeStart != 0 ) {
+            if ( timings.optimizeNanos() > 0 )
+                trace.span("sparql.optimize", query, executeStart, executeStart + timings.optimizeNanos());
+            long executeEnd = executeStart + timings.optimizeNanos() + timings.executeNanos();
+            trace.span("sparql.execute", query, executeStart + timings.optimizeNanos(), executeEnd);
+        }
+        long serializeStart = timings.serializeStartTime();
+        if ( serializeStart != 0 )
+            trace.span("sparql.serialize", query, serializeStart, serializeStart + timings.serializeNanos());
+    }
+
+    private static String truncate(String s) {
+        if ( s == null || s.length() <= maxQueryLength )
+            return s;
+        return s.substring(0, maxQueryLength)+"...";
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A span of a {@link Trace}. Times are nanoseconds since the epoch. */
+public class Span {
+
+    public enum Kind { INTERNAL, SERVER }
+
+    public final String name;
+    public final Kind kind;
+    public final String traceId;
+    public final String spanId;
+    public final String parentSpanId;
+    public final long startEpochNanos;
+    long endEpochNanos;
+    String errorMessage = null;
+    boolean error = false;
+    // Values are String, Long, Double or Boolean.
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+    Span(String name, Kind kind, String traceId, String spanId, String parentSpanId, long startEpochNanos, long endEpochNanos) {
+        this.name = name;
+        this.kind = kind;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.startEpochNanos = startEpochNanos;
+        this.endEpochNanos = endEpochNanos;
+    }
+
+    public Span attribute(String key, String value) {
+        if ( value != null )
+            attributes.put(key, value);
+        return this;
+    }
+
+    public Span attribute(String key, long value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    public Span attribute(String key, boolean value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    /** Mark the span as failed. */
+    public Span error(String message) {
+        this.error = true;
+        this.errorMessage = message;
+        return this;
+    }
+
+    public long getEndEpochNanos()          { return endEpochNanos; }
+    public boolean isError()                { return error; }
+    public String getErrorMessage()         { return errorMessage; }
+    public Map<String, Object> attributes() { return attributes; }
+
+    @Override
+    public String toString() {
+        return String.format("Span[%s %s/%s %.3fms]", name, traceId, spanId, (endEpochNanos-startEpochNanos)/1e6);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.util.List;
+
+/**
+ * Destination for the spans of sampled requests.
+ * <p>
+ * {@link #export} is called on the request thread when the request has finished,
+ * with all the spans of the request, so it should hand the spans off rather than
+ * do I/O. An exporter named by {@code FUSEKI_TRACING_EXPORTER} must have a public
+ * no-argument constructor.
+ */
+public interface SpanExporter {
+
+    public void export(List<Span> spans);
+
+    /** Called when the server stops. */
+    public default void shutdown() {}
+}
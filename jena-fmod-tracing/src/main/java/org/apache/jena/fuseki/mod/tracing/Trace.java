@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The spans of one sampled request. The root span is the server span of the HTTP
+ * request, which is a child of the span of the caller if the request had a
+ * "traceparent" header.
+ * <p>
+ * A trace is used by the thread handling the request. Times passed in are
+ * {@link System#nanoTime()} values, converted to time since the epoch for the
+ * spans.
+ */
+public class Trace {
+
+    private final long epochNanosBase;
+    private final long nanoTimeBase;
+    private final Span root;
+    private final List<Span> spans = new ArrayList<>();
+    private long securityEnd = 0;
+    private long end = 0;
+
+    /** Start a trace, continuing the trace of the caller if {@code parent} is not null. */
+    public Trace(TraceParent parent, String rootName) {
+        this.nanoTimeBase = System.nanoTime();
+        this.epochNanosBase = System.currentTimeMillis() * 1_000_000L;
+        String traceId = ( parent != null ) ? parent.traceId : TraceParent.newTraceId();
+        String parentSpanId = ( parent != null ) ? parent.spanId : null;
+        this.root = new Span(rootName, Span.Kind.SERVER, traceId, TraceParent.newSpanId(), parentSpanId, epochNanosBase, 0);
+        spans.add(root);
+    }
+
+    public Span root() {
+        return root;
+    }
+
+    /** The trace context of the root span. */
+    public TraceParent context() {
+        return new TraceParent(root.traceId, root.spanId, true);
+    }
+
+    /** {@link System#nanoTime()} when the trace started. */
+    public long startTime() {
+        return nanoTimeBase;
+    }
+
+    /** {@link System#nanoTime()} when the trace finished; 0 if it has not. */
+    public long endTime() {
+        return end;
+    }
+
+    /** Record that the request has passed the security filters. */
+    public void securityPassed() {
+        if ( securityEnd == 0 )
+            securityEnd = System.nanoTime();
+    }
+
+    /** {@link System#nanoTime()} when the request passed the security filters; 0 if it did not. */
+    public long securityEndTime() {
+        return securityEnd;
+    }
+
+    /** Add a finished span. */
+    public Span span(String name, Span parent, long startNanoTime, long endNanoTime) {
+        Span span = new Span(name, Span.Kind.INTERNAL, root.traceId, TraceParent.newSpanId(), parent.spanId,
+                             toEpochNanos(startNanoTime), toEpochNanos(endNanoTime));
+        spans.add(span);
+        return span;
+    }
+
+    /** End the root span. */
+    public void finish() {
+        end = System.nanoTime();
+        root.endEpochNanos = toEpochNanos(end);
+    }
+
+    public List<Span> spans() {
+        return spans;
+    }
+
+    private long toEpochNanos(long nanoTime) {
+        return epochNanosBase + (nanoTime - nanoTimeBase);
+    }
+}
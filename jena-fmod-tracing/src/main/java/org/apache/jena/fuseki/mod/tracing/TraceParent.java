@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * W3C trace context: "version-traceid-parentid-flags", e.g.
+ * {@code 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01}.
+ */
+public class TraceParent {
+
+    public final String traceId;
+    public final String spanId;
+    public final boolean sampled;
+
+    public TraceParent(String traceId, String spanId, boolean sampled) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    /** Parse a "traceparent" header. Returns null if the header is null or not valid. */
+    public static TraceParent parse(String header) {
+        if ( header == null )
+            return null;
+        String x = header.trim();
+        // Later versions may add fields after the flags.
+        if ( x.length() < 55 || x.charAt(2) != '-' || x.charAt(35) != '-' || x.charAt(52) != '-' )
+            return null;
+        String version = x.substring(0, 2);
+        String traceId = x.substring(3, 35);
+        String spanId = x.substring(36, 52);
+        String flags = x.substring(53, 55);
+        if ( ! isHex(version) || version.equals("ff") || ( version.equals("00") && x.length() != 55 ) )
+            return null;
+        if ( x.length() > 55 && x.charAt(55) != '-' )
+            return null;
+        if ( ! isHex(traceId) || ! isHex(spanId) || ! isHex(flags) )
+            return null;
+        if ( isZero(traceId) || isZero(spanId) )
+            return null;
+        boolean sampled = ( Integer.parseInt(flags, 16) & 0x01 ) != 0;
+        return new TraceParent(traceId, spanId, sampled);
+    }
+
+    public String format() {
+        return "00-"+traceId+"-"+spanId+( sampled ? "-01" : "-00" );
+    }
+
+    /** A new random trace id: 32 hex characters. */
+    public static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long hi = random.nextLong();
+        long lo = random.nextLong();
+        if ( hi == 0 && lo == 0 )
+            lo = 1;
+        return hex(hi)+hex(lo);
+    }
+
+    /** A new random span id: 16 hex characters. */
+    public static String newSpanId() {
+        long x = ThreadLocalRandom.current().nextLong();
+        return hex(x == 0 ? 1 : x);
+    }
+
+    private static String hex(long x) {
+        String s = Long.toHexString(x);
+        return "0000000000000000".substring(s.length())+s;
+    }
+
+    private static boolean isHex(String s) {
+        for ( int i = 0 ; i < s.length() ; i++ ) {
+            char ch = s.charAt(i);
+            if ( ! ( ( ch >= '0' && ch <= '9' ) || ( ch >= 'a' && ch <= 'f' ) ) )
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isZero(String s) {
+        for ( int i = 0 ; i < s.length() ; i++ ) {
+            if ( s.charAt(i) != '0' )
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
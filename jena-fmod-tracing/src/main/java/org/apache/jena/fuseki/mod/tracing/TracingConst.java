@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+public class TracingConst {
+    /** Fraction of requests without a "traceparent" header to trace, 0 to 1. */
+    public static final String envSampleRate = "FUSEKI_TRACING_SAMPLE_RATE";
+    public static final double dftSampleRate = 0.01;
+
+    /** File for traces (OTLP JSON, one export request per line); relative to the logs directory of FUSEKI_BASE if there is one. */
+    public static final String envFile       = "FUSEKI_TRACING_FILE";
+    public static final String dftFile       = "traces.jsonl";
+
+    /** Class name of a {@link SpanExporter} to use instead of the file. */
+    public static final String envExporter   = "FUSEKI_TRACING_EXPORTER";
+
+    /** Request attribute for the {@link Trace} of a sampled request. */
+    public static final String attrTrace     = "org.apache.jena.fuseki.mod.tracing.Trace";
+
+    /** W3C trace context request header. */
+    public static final String hTraceParent   = "traceparent";
+    /** Response header with the trace context of the server span. */
+    public static final String hTraceResponse = "traceresponse";
+
+    public static final String instrumentationScope = "org.apache.jena.fuseki.mod.tracing";
+    public static final String serviceName          = "fuseki";
+}
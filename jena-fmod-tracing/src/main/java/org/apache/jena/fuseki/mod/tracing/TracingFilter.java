@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.jena.fuseki.Fuseki;
+
+/**
+ * Start a trace for sampled requests.
+ * <p>
+ * The trace has a span "fuseki.security" for the filters between this filter and
+ * {@link AfterSecurity}, which is added after the Shiro filter. If the request is
+ * refused by the Shiro filter, the span lasts until the end of the request and has
+ * the attribute "fuseki.security.refused".
+ * <p>
+ * A request with a "traceparent" header is traced if the caller sampled it;
+ * other requests are sampled at the configured rate. A request that is not traced
+ * costs a header lookup and, if there is no header, a random number. The trace of
+ * a sampled request is in the request attribute {@link TracingConst#attrTrace} for
+ * other parts of the server to add spans to, and its context is returned in the
+ * "traceresponse" header.
+ */
+public class TracingFilter implements Filter {
+
+    private final double sampleRate;
+    private final SpanExporter exporter;
+
+    public TracingFilter(double sampleRate, SpanExporter exporter) {
+        this.sampleRate = sampleRate;
+        this.exporter = exporter;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        if ( ! ( req instanceof HttpServletRequest ) || ! ( resp instanceof HttpServletResponse ) ) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        HttpServletRequest request = (HttpServletRequest)req;
+        HttpServletResponse response = (HttpServletResponse)resp;
+        TraceParent parent = TraceParent.parse(request.getHeader(TracingConst.hTraceParent));
+        if ( ! sample(parent) ) {
+            chain.doFilter(req, resp);
+            return;
+        }
+
+        Trace trace = new Trace(parent, request.getMethod());
+        request.setAttribute(TracingConst.attrTrace, trace);
+        response.setHeader(TracingConst.hTraceResponse, trace.context().format());
+        Throwable error = null;
+        try {
+            chain.doFilter(req, resp);
+        } catch (IOException | ServletException | RuntimeException | Error ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            trace.finish();
+            Span root = trace.root();
+            long securityEnd = trace.securityEndTime();
+            Span security = trace.span("fuseki.security", root, trace.startTime(),
+                                       securityEnd != 0 ? securityEnd : trace.endTime());
+            if ( securityEnd == 0 )
+                security.attribute("fuseki.security.refused", true);
+            root.attribute("http.method", request.getMethod())
+                .attribute("http.target", request.getRequestURI())
+                .attribute("http.status_code", response.getStatus())
+                .attribute("net.peer.ip", request.getRemoteAddr())
+                .attribute("enduser.id", request.getRemoteUser());
+            if ( error != null )
+                root.error(error.getClass().getSimpleName()+": "+error.getMessage());
+            else if ( response.getStatus() >= 500 )
+                root.error(null);
+            try {
+                exporter.export(trace.spans());
+            } catch (RuntimeException ex) {
+                Fuseki.serverLog.warn("Tracing: export", ex);
+            }
+        }
+    }
+
+    /** Marks the point in a traced request where the security filters have been passed. */
+    public static class AfterSecurity implements Filter {
+        @Override
+        public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+            Object x = req.getAttribute(TracingConst.attrTrace);
+            if ( x instanceof Trace )
+                ((Trace)x).securityPassed();
+            chain.doFilter(req, resp);
+        }
+    }
+
+    private boolean sample(TraceParent parent) {
+        if ( parent != null )
+            return parent.sampled;
+        if ( sampleRate <= 0 )
+            return false;
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
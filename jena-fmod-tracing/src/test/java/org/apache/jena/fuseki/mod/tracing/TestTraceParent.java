@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Parsing and formatting of W3C "traceparent" headers. */
+public class TestTraceParent {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String SPAN_ID = "00f067aa0ba902b7";
+
+    @Test public void parse_sampled() {
+        TraceParent tp = TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"-01");
+        assertNotNull(tp);
+        assertEquals(TRACE_ID, tp.traceId);
+        assertEquals(SPAN_ID, tp.spanId);
+        assertTrue(tp.sampled);
+    }
+
+    @Test public void parse_notSampled() {
+        TraceParent tp = TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"-00");
+        assertNotNull(tp);
+        assertFalse(tp.sampled);
+    }
+
+    @Test public void parse_otherFlags() {
+        // Only the sampled bit is used.
+        assertTrue(TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"-03").sampled);
+        assertFalse(TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"-02").sampled);
+    }
+
+    @Test public void parse_whitespace() {
+        assertNotNull(TraceParent.parse("  00-"+TRACE_ID+"-"+SPAN_ID+"-01 "));
+    }
+
+    @Test public void parse_laterVersion() {
+        // Later versions may add fields after the flags.
+        TraceParent tp = TraceParent.parse("01-"+TRACE_ID+"-"+SPAN_ID+"-01-extra");
+        assertNotNull(tp);
+        assertEquals(TRACE_ID, tp.traceId);
+        assertNotNull(TraceParent.parse("01-"+TRACE_ID+"-"+SPAN_ID+"-01"));
+        assertNull(TraceParent.parse("01-"+TRACE_ID+"-"+SPAN_ID+"-01extra"));
+    }
+
+    @Test public void parse_bad() {
+        assertNull(TraceParent.parse(null));
+        assertNull(TraceParent.parse(""));
+        assertNull(TraceParent.parse("junk"));
+        // Version 00 has no further fields.
+        assertNull(TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"-01-extra"));
+        // Invalid version.
+        assertNull(TraceParent.parse("ff-"+TRACE_ID+"-"+SPAN_ID+"-01"));
+        // Uppercase hex is not allowed.
+        assertNull(TraceParent.parse("00-"+TRACE_ID.toUpperCase()+"-"+SPAN_ID+"-01"));
+        // Not hex.
+        assertNull(TraceParent.parse("00-"+TRACE_ID.replace('a', 'x')+"-"+SPAN_ID+"-01"));
+        assertNull(TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"-0g"));
+        // All zeros.
+        assertNull(TraceParent.parse("00-00000000000000000000000000000000-"+SPAN_ID+"-01"));
+        assertNull(TraceParent.parse("00-"+TRACE_ID+"-0000000000000000-01"));
+        // Wrong lengths or separators.
+        assertNull(TraceParent.parse("00-"+TRACE_ID.substring(1)+"-"+SPAN_ID+"-01"));
+        assertNull(TraceParent.parse("00-"+TRACE_ID+"-"+SPAN_ID+"0-1"));
+        assertNull(TraceParent.parse("00_"+TRACE_ID+"_"+SPAN_ID+"_01"));
+    }
+
+    @Test public void format_roundTrip() {
+        String header = "00-"+TRACE_ID+"-"+SPAN_ID+"-01";
+        assertEquals(header, TraceParent.parse(header).format());
+        TraceParent tp = new TraceParent(TRACE_ID, SPAN_ID, false);
+        assertEquals("00-"+TRACE_ID+"-"+SPAN_ID+"-00", tp.format());
+    }
+
+    @Test public void newIds() {
+        String traceId = TraceParent.newTraceId();
+        String spanId = TraceParent.newSpanId();
+        assertEquals(32, traceId.length());
+        assertEquals(16, spanId.length());
+        // Valid in a header.
+        TraceParent tp = TraceParent.parse(new TraceParent(traceId, spanId, true).format());
+        assertNotNull(tp);
+        assertEquals(traceId, tp.traceId);
+        assertNotEquals(traceId, TraceParent.newTraceId());
+    }
+}
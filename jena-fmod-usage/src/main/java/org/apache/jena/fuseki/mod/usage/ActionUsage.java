@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.usage;
+
+import static java.lang.String.format;
+import static org.apache.jena.riot.WebContent.charsetUTF8;
+import static org.apache.jena.riot.WebContent.contentTypeJSON;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonBuilder;
+import org.apache.jena.fuseki.ctl.ActionCtl;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+
+/**
+ * Usage by user or client address.
+ * <p>
+ * GET: the entries, largest first. Parameters: "sort" (one of "requests" (default),
+ * "time", "cpu", "bytesOut", "bytesIn", "errors"), "kind" ("user" or "ip") and "limit".
+ * <br/>
+ * POST: reset.
+ */
+public class ActionUsage extends ActionCtl {
+
+    private static final Map<String, ToDoubleFunction<UsageEntry>> sortKeys = Map.of(
+        "requests", UsageEntry::requests,
+        "time",     UsageEntry::timeSeconds,
+        "cpu",      UsageEntry::cpuSeconds,
+        "bytesOut", UsageEntry::bytesOut,
+        "bytesIn",  UsageEntry::bytesIn,
+        "errors",   UsageEntry::errors);
+
+    private final UsageSketch sketch;
+
+    public ActionUsage(UsageSketch sketch) {
+        super();
+        this.sketch = sketch;
+    }
+
+    @Override
+    public void validate(HttpAction action) {}
+
+    @Override
+    public void execGet(HttpAction action) {
+        executeLifecycle(action);
+    }
+
+    @Override
+    public void execPost(HttpAction action) {
+        executeLifecycle(action);
+    }
+
+    @Override
+    public void execute(HttpAction action) {
+        if ( "POST".equals(action.getRequestMethod()) ) {
+            action.log.info(format("[%d] Reset usage", action.id));
+            sketch.reset();
+            ServletOps.success(action);
+            return;
+        }
+        String sort = action.getRequestParameter("sort");
+        if ( sort == null )
+            sort = "requests";
+        ToDoubleFunction<UsageEntry> sortKey = sortKeys.get(sort);
+        if ( sortKey == null )
+            ServletOps.errorBadRequest("Unknown sort: "+sort);
+        String kind = action.getRequestParameter("kind");
+        int limit = Integer.MAX_VALUE;
+        String x = action.getRequestParameter("limit");
+        if ( x != null ) {
+            try {
+                limit = Integer.parseInt(x);
+            } catch (NumberFormatException ex) {
+                ServletOps.errorBadRequest("Bad limit: "+x);
+            }
+        }
+
+        List<UsageEntry> entries = sketch.entries();
+        entries.sort(Comparator.comparingDouble(sortKey).reversed());
+        JsonBuilder builder = new JsonBuilder();
+        builder.startObject();
+        builder.key("usage").startArray();
+        entries.stream()
+            .filter(e -> kind == null || kind.equals(e.kind))
+            .limit(limit)
+            .forEach(e -> e.asJson(builder));
+        builder.finishArray();
+        builder.finishObject();
+
+        try {
+            OutputStream out = action.getResponseOutputStream();
+            action.setResponseContentType(contentTypeJSON);
+            action.setResponseCharacterEncoding(charsetUTF8);
+            JSON.write(out, builder.build());
+            out.write('\n');
+            out.flush();
+            ServletOps.success(action);
+        } catch (IOException ex) {
+            ServletOps.errorOccurred(ex);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.usage;
+
+import java.util.Set;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.fuseki.Fuseki;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.fuseki.main.sys.FusekiModule;
+import org.apache.jena.fuseki.metrics.MetricsProviderRegistry;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Usage accounting: requests, time, CPU time and bytes by authenticated user, or
+ * by client address for unauthenticated requests.
+ * <p>
+ * Only the top {@code FUSEKI_USAGE_TOP_K} (default 100) users and addresses by
+ * request count are held (see {@link UsageSketch}). Usage is served as JSON at
+ * {@code /$/usage} and as metrics on {@code /$/metrics}.
+ */
+public class FMod_Usage implements FusekiModule {
+
+    public static final String envTopK = "FUSEKI_USAGE_TOP_K";
+    private static final int defaultTopK = 100;
+
+    @Override
+    public String name() { return "Usage"; }
+
+    // After FMod_Shiro (default level) so the usage filter is inside the Shiro filter.
+    @Override
+    public int level() { return 10000; }
+
+    @Override public void prepare(FusekiServer.Builder serverBuilder, Set<String> datasetNames, Model configModel) {
+        MeterRegistry meterRegistry = ( MetricsProviderRegistry.get() == null ) ? null : MetricsProviderRegistry.get().getMeterRegistry();
+        UsageSketch sketch = new UsageSketch(topK(), meterRegistry);
+        serverBuilder.addFilter("/*", new UsageFilter(sketch));
+        serverBuilder.addServlet("/$/usage", new ActionUsage(sketch));
+    }
+
+    private static int topK() {
+        String x = Lib.getenv(envTopK);
+        if ( x == null )
+            return defaultTopK;
+        try {
+            return Integer.parseInt(x.trim());
+        } catch (NumberFormatException ex) {
+            Fuseki.configLog.warn("Bad value for "+envTopK+": '"+x+"'");
+            return defaultTopK;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.usage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.atlas.json.JsonBuilder;
+
+/** Usage counts for one principal or client address. */
+public class UsageEntry {
+    /** "user" or "ip" */
+    public final String kind;
+    public final String name;
+    /**
+     * Maximum overcount of {@link #requests()}: the count of the entry this one
+     * replaced in the sketch. Other totals are only for the time the entry has been held.
+     */
+    public final long overestimate;
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder timeNanos = new LongAdder();
+    final LongAdder cpuNanos = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+
+    UsageEntry(String kind, String name, long overestimate) {
+        this.kind = kind;
+        this.name = name;
+        this.overestimate = overestimate;
+        requests.add(overestimate);
+    }
+
+    void record(long nanos, long cpu, long in, long out, boolean error) {
+        requests.increment();
+        timeNanos.add(nanos);
+        if ( cpu > 0 )
+            cpuNanos.add(cpu);
+        if ( in > 0 )
+            bytesIn.add(in);
+        bytesOut.add(out);
+        if ( error )
+            errors.increment();
+    }
+
+    public long requests()        { return requests.sum(); }
+    public long errors()          { return errors.sum(); }
+    public double timeSeconds()   { return timeNanos.sum() / 1e9; }
+    public double cpuSeconds()    { return cpuNanos.sum() / 1e9; }
+    public long bytesIn()         { return bytesIn.sum(); }
+    public long bytesOut()        { return bytesOut.sum(); }
+
+    void asJson(JsonBuilder builder) {
+        builder.startObject()
+            .pair("kind", kind)
+            .pair("name", name)
+            .pair("requests", requests())
+            .pair("overestimate", overestimate)
+            .pair("errors", errors())
+            .pair("timeSeconds", round(timeSeconds()))
+            .pair("cpuSeconds", round(cpuSeconds()))
+            .pair("bytesIn", bytesIn())
+            .pair("bytesOut", bytesOut())
+            .finishObject();
+    }
+
+    private static double round(double x) {
+        return Math.round(x * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.usage;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Servlet filter that records each request in the {@link UsageSketch}, by the
+ * authenticated user if there is one, else by client address.
+ * <p>
+ * This filter must run after any authentication filter (e.g. Shiro) so that the
+ * user is known. Bytes sent are those written to the response output stream
+ * (Fuseki does not use the response writer); bytes received are the request
+ * content length, when given.
+ */
+public class UsageFilter implements Filter {
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final UsageSketch sketch;
+    private final boolean cpuTime;
+
+    public UsageFilter(UsageSketch sketch) {
+        this.sketch = sketch;
+        this.cpuTime = threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if ( ! ( request instanceof HttpServletRequest ) || ! ( response instanceof HttpServletResponse ) ) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest)request;
+        CountingResponse counting = new CountingResponse((HttpServletResponse)response);
+        long start = System.nanoTime();
+        long cpuStart = cpuTime ? threadMXBean.getCurrentThreadCpuTime() : 0;
+        boolean failed = true;
+        try {
+            chain.doFilter(request, counting);
+            failed = false;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long cpu = cpuTime ? threadMXBean.getCurrentThreadCpuTime() - cpuStart : -1;
+            String user = httpRequest.getRemoteUser();
+            String kind = ( user != null ) ? "user" : "ip";
+            String name = ( user != null ) ? user : request.getRemoteAddr();
+            boolean error = failed || counting.getStatus() >= 400;
+            sketch.record(kind, name, nanos, cpu, request.getContentLengthLong(), counting.count(), error);
+        }
+    }
+
+    /** Count the bytes written to the response output stream. */
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream output = null;
+        private long count = 0;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if ( output == null ) {
+                ServletOutputStream out = super.getOutputStream();
+                output = new ServletOutputStream() {
+                    @Override public void write(int b) throws IOException { out.write(b); count++; }
+                    @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); count += len; }
+                    @Override public void flush() throws IOException { out.flush(); }
+                    @Override public void close() throws IOException { out.close(); }
+                    @Override public boolean isReady() { return out.isReady(); }
+                    @Override public void setWriteListener(WriteListener listener) { out.setWriteListener(listener); }
+                };
+            }
+            return output;
+        }
+    }
+}
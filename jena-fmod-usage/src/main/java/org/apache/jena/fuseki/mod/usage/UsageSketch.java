@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.fuseki.mod.usage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Top-K heavy hitters by request count, using the Space-Saving algorithm.
+ * <p>
+ * At most K entries are held. A request from a key not held replaces the entry
+ * with the fewest requests; the new entry starts from that count (recorded as its
+ * overestimate), so any key with more than N/K of N requests is always held.
+ * Entries to replace are taken in batches of the lowest counts from one scan of the
+ * entries, so there is one scan per batch, not one per new key.
+ * <p>
+ * Recording for a key that is held does not lock. If given a meter registry,
+ * each entry has counters tagged "kind" and "name" from its second request,
+ * removed when it is replaced. One-off keys, which are most of the replacements,
+ * do not add and remove meters.
+ */
+public class UsageSketch {
+
+    /** A candidate for replacement and its count when the batch was chosen. */
+    private static class Candidate {
+        final String key;
+        final UsageEntry entry;
+        final long count;
+        Candidate(String key, UsageEntry entry, long count) {
+            this.key = key;
+            this.entry = entry;
+            this.count = count;
+        }
+    }
+
+    private final int k;
+    private final int batchSize;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, UsageEntry> entries = new ConcurrentHashMap<>();
+    private final Map<UsageEntry, List<Meter>> meters = new ConcurrentHashMap<>();
+    // Lowest counts first; guarded by this.
+    private final Deque<Candidate> candidates = new ArrayDeque<>();
+    private long candidatesMax = 0;
+
+    public UsageSketch(int k, MeterRegistry meterRegistry) {
+        this.k = Math.max(1, k);
+        this.batchSize = Math.max(1, this.k / 16);
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void record(String kind, String name, long nanos, long cpuNanos, long bytesIn, long bytesOut, boolean error) {
+        String key = kind+":"+name;
+        UsageEntry entry = entries.get(key);
+        if ( entry == null )
+            entry = add(key, kind, name);
+        entry.record(nanos, cpuNanos, bytesIn, bytesOut, error);
+        if ( meterRegistry != null && entry.requests() - entry.overestimate >= 2 && ! meters.containsKey(entry) )
+            bindMeters(key, entry);
+    }
+
+    private synchronized UsageEntry add(String key, String kind, String name) {
+        UsageEntry entry = entries.get(key);
+        if ( entry != null )
+            return entry;
+        long overestimate = ( entries.size() >= k ) ? evict() : 0;
+        entry = new UsageEntry(kind, name, overestimate);
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private synchronized void bindMeters(String key, UsageEntry entry) {
+        // Not if replaced meanwhile, or already bound.
+        if ( entries.get(key) != entry || meters.containsKey(entry) )
+            return;
+        meters.put(entry, bind(entry));
+    }
+
+    /**
+     * Remove the entry with the fewest requests, from the current batch of
+     * candidates, and return its count. Candidates that have been removed, or whose
+     * count has grown past the batch, are skipped; if that empties the batch, the
+     * first of a new batch is removed.
+     */
+    private long evict() {
+        for ( int attempt = 0 ; attempt < 2 ; attempt++ ) {
+            if ( candidates.isEmpty() )
+                chooseCandidates();
+            while ( ! candidates.isEmpty() ) {
+                Candidate c = candidates.poll();
+                if ( entries.get(c.key) != c.entry )
+                    continue;
+                long count = c.entry.requests();
+                if ( attempt == 0 && count > candidatesMax )
+                    continue;
+                remove(c.key);
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /** Choose the batch of entries with the lowest counts, in one scan of the entries. */
+    private void chooseCandidates() {
+        // Max-heap of the lowest counts seen.
+        PriorityQueue<Candidate> lowest = new PriorityQueue<>(batchSize+1, (c1, c2) -> Long.compare(c2.count, c1.count));
+        for ( Map.Entry<String, UsageEntry> e : entries.entrySet() ) {
+            lowest.add(new Candidate(e.getKey(), e.getValue(), e.getValue().requests()));
+            if ( lowest.size() > batchSize )
+                lowest.poll();
+        }
+        List<Candidate> batch = new ArrayList<>(lowest);
+        batch.sort((c1, c2) -> Long.compare(c1.count, c2.count));
+        candidates.clear();
+        candidates.addAll(batch);
+        candidatesMax = batch.isEmpty() ? 0 : batch.get(batch.size()-1).count;
+    }
+
+    private void remove(String key) {
+        UsageEntry entry = entries.remove(key);
+        if ( entry == null )
+            return;
+        List<Meter> list = meters.remove(entry);
+        if ( list != null )
+            list.forEach(meterRegistry::remove);
+    }
+
+    private List<Meter> bind(UsageEntry entry) {
+        Tags tags = Tags.of("kind", entry.kind, "name", entry.name);
+        List<Meter> list = new ArrayList<>();
+        list.add(FunctionCounter.builder("fuseki_usage_requests", entry, UsageEntry::requests)
+                 .description("Requests (may be overestimated, see /$/usage)").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_usage_errors", entry, UsageEntry::errors)
+                 .description("Requests with a 4xx or 5xx response").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_usage_time", entry, UsageEntry::timeSeconds)
+                 .description("Request time").baseUnit("seconds").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_usage_cpu", entry, UsageEntry::cpuSeconds)
+                 .description("CPU time of the request threads").baseUnit("seconds").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_usage_received", entry, UsageEntry::bytesIn)
+                 .description("Request body bytes").baseUnit("bytes").tags(tags).register(meterRegistry));
+        list.add(FunctionCounter.builder("fuseki_usage_sent", entry, UsageEntry::bytesOut)
+                 .description("Response body bytes").baseUnit("bytes").tags(tags).register(meterRegistry));
+        return list;
+    }
+
+    /** The entries held. */
+    public List<UsageEntry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized void reset() {
+        new ArrayList<>(entries.keySet()).forEach(this::remove);
+        candidates.clear();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.fuseki.mod.usage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+/** Top-K heavy hitters held by {@link UsageSketch}, and their meters. */
+public class TestUsageSketch {
+
+    private static void record(UsageSketch sketch, String name) {
+        sketch.record("user", name, 1_000_000, 0, 0, 100, false);
+    }
+
+    private static UsageEntry entry(UsageSketch sketch, String name) {
+        for ( UsageEntry e : sketch.entries() ) {
+            if ( e.name.equals(name) )
+                return e;
+        }
+        return null;
+    }
+
+    @Test public void sketch_record() {
+        UsageSketch sketch = new UsageSketch(10, null);
+        record(sketch, "a");
+        record(sketch, "a");
+        sketch.record("ip", "10.0.0.1", 1_000_000, 0, 10, 100, true);
+        assertEquals(2, sketch.entries().size());
+        UsageEntry e = entry(sketch, "a");
+        assertEquals(2, e.requests());
+        assertEquals(0, e.overestimate);
+        UsageEntry ip = entry(sketch, "10.0.0.1");
+        assertEquals("ip", ip.kind);
+        assertEquals(1, ip.errors());
+    }
+
+    @Test public void sketch_bounded() {
+        UsageSketch sketch = new UsageSketch(8, null);
+        for ( int i = 0 ; i < 100 ; i++ )
+            record(sketch, "u"+i);
+        assertEquals(8, sketch.entries().size());
+    }
+
+    @Test public void sketch_replaceLowest() {
+        UsageSketch sketch = new UsageSketch(4, null);
+        for ( String name : new String[] {"a", "b", "c"} ) {
+            for ( int i = 0 ; i < 3 ; i++ )
+                record(sketch, name);
+        }
+        record(sketch, "d");
+        // Full: "e" replaces "d", the entry with the fewest requests, and starts from its count.
+        record(sketch, "e");
+        assertNull(entry(sketch, "d"));
+        UsageEntry e = entry(sketch, "e");
+        assertNotNull(e);
+        assertEquals(1, e.overestimate);
+        assertEquals(2, e.requests());
+    }
+
+    @Test public void sketch_topK() {
+        UsageSketch sketch = new UsageSketch(16, null);
+        // "heavy1" and "heavy2" each have more than 1/16 of the requests, so are always held.
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            record(sketch, "once"+i);
+            if ( i % 4 == 0 )
+                record(sketch, "heavy1");
+            if ( i % 5 == 0 )
+                record(sketch, "heavy2");
+        }
+        assertEquals(16, sketch.entries().size());
+        UsageEntry heavy1 = entry(sketch, "heavy1");
+        UsageEntry heavy2 = entry(sketch, "heavy2");
+        assertNotNull(heavy1);
+        assertNotNull(heavy2);
+        // Counts are never underestimated.
+        assertTrue(heavy1.requests() >= 250);
+        assertTrue(heavy2.requests() >= 200);
+    }
+
+    @Test public void sketch_meters() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UsageSketch sketch = new UsageSketch(2, meterRegistry);
+        record(sketch, "a");
+        // No meters for a key seen once.
+        assertNull(meterRegistry.find("fuseki_usage_requests").tag("name", "a").functionCounter());
+        record(sketch, "a");
+        assertEquals(2, meterRegistry.find("fuseki_usage_requests").tag("name", "a").functionCounter().count(), 0);
+        record(sketch, "b");
+        record(sketch, "b");
+        record(sketch, "b");
+        // "a" is replaced, and its meters removed.
+        record(sketch, "c");
+        assertNull(entry(sketch, "a"));
+        assertNull(meterRegistry.find("fuseki_usage_requests").tag("name", "a").functionCounter());
+        assertNotNull(meterRegistry.find("fuseki_usage_requests").tag("name", "b").functionCounter());
+        // "c" inherited a count but has been seen once.
+        assertNull(meterRegistry.find("fuseki_usage_requests").tag("name", "c").functionCounter());
+    }
+
+    @Test public void sketch_reset() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UsageSketch sketch = new UsageSketch(4, meterRegistry);
+        record(sketch, "a");
+        record(sketch, "a");
+        sketch.reset();
+        assertTrue(sketch.entries().isEmpty());
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}